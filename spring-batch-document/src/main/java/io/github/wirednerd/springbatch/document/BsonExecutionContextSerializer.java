@@ -0,0 +1,129 @@
+package io.github.wirednerd.springbatch.document;
+
+import org.bson.Document;
+import org.springframework.batch.core.repository.ExecutionContextSerializer;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Converts an {@link ExecutionContext} to a {@link Document} with one field per entry, and back.</p>
+ * <p>String, Integer, Long, Double, Boolean, and Date values are stored as native BSON values,
+ * so they are not encoded twice, and can be queried.  Any other value is stored as a sub-document
+ * with a single "serialized" field, created by the {@link ExecutionContextSerializer}.</p>
+ * <p>MongoDB field names must not contain '.' or start with '$', so '%', '.', and a leading '$'
+ * in keys are stored as "%25", "%2E", and "%24".</p>
+ *
+ * @author Peter Busch
+ * @since 1.2.0
+ */
+public class BsonExecutionContextSerializer {
+
+    /**
+     * Field of the sub-document used for values that are not stored as native BSON values
+     */
+    public static final String SERIALIZED = "serialized";
+
+    private static final String VALUE = "value";
+
+    private final ExecutionContextSerializer executionContextSerializer;
+    private final Charset executionContextCharset;
+
+    /**
+     * @param executionContextSerializer used for values that are not stored as native BSON values
+     * @param executionContextCharset    used for converting serialized values to {@link String}
+     */
+    public BsonExecutionContextSerializer(ExecutionContextSerializer executionContextSerializer,
+                                          Charset executionContextCharset) {
+        this.executionContextSerializer = executionContextSerializer;
+        this.executionContextCharset = executionContextCharset;
+    }
+
+    /**
+     * Convert an {@link ExecutionContext} to a {@link Document}
+     *
+     * @param executionContext {@link ExecutionContext} to convert
+     * @return {@link Document} with one field per entry
+     */
+    public Document serialize(ExecutionContext executionContext) {
+        var document = new Document();
+        for (var entry : executionContext.entrySet()) {
+            document.put(escapeKey(entry.getKey()), toBsonValue(entry.getValue()));
+        }
+        return document;
+    }
+
+    /**
+     * Convert a {@link Document} created by {@link #serialize(ExecutionContext)} to an {@link ExecutionContext}
+     *
+     * @param document {@link Map} with one field per entry
+     * @return {@link ExecutionContext}
+     */
+    public ExecutionContext deserialize(Map<String, Object> document) {
+        var executionContext = new ExecutionContext();
+        for (var entry : document.entrySet()) {
+            if (entry.getValue() != null) {
+                executionContext.put(unescapeKey(entry.getKey()), fromBsonValue(entry.getValue()));
+            }
+        }
+        return executionContext;
+    }
+
+    private Object toBsonValue(Object value) {
+        if (value instanceof String || value instanceof Integer || value instanceof Long
+                || value instanceof Double || value instanceof Boolean || value.getClass() == Date.class) {
+            return value;
+        }
+
+        var wrapper = new HashMap<String, Object>(); //NOPMD
+        wrapper.put(VALUE, value);
+        try {
+            var out = new ByteArrayOutputStream();
+            executionContextSerializer.serialize(wrapper, out);
+            return new Document(SERIALIZED, out.toString(executionContextCharset));
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("Could not serialize the execution context", ioe);
+        }
+    }
+
+    private Object fromBsonValue(Object value) {
+        if (!(value instanceof Map)) {
+            return value;
+        }
+
+        var serialized = (String) ((Map<?, ?>) value).get(SERIALIZED);
+        try {
+            return executionContextSerializer
+                    .deserialize(new ByteArrayInputStream(serialized.getBytes(executionContextCharset)))
+                    .get(VALUE);
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("Unable to deserialize the execution context", ioe);
+        }
+    }
+
+    /**
+     * @param key {@link ExecutionContext} key
+     * @return key that can be used as a MongoDB field name
+     */
+    public static String escapeKey(String key) {
+        var escaped = key.replace("%", "%25").replace(".", "%2E");
+        return escaped.startsWith("$") ? "%24" + escaped.substring(1) : escaped;
+    }
+
+    /**
+     * @param field MongoDB field name created by {@link #escapeKey(String)}
+     * @return {@link ExecutionContext} key
+     */
+    public static String unescapeKey(String field) {
+        if (field.indexOf('%') < 0) {
+            return field;
+        }
+        return field.replace("%2E", ".").replace("%24", "$").replace("%25", "%");
+    }
+}
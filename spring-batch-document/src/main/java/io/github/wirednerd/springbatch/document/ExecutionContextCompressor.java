@@ -0,0 +1,130 @@
+package io.github.wirednerd.springbatch.document;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>Compresses serialized execution contexts with deflate.</p>
+ * <p>Compressed contexts start with a header, so they can be recognized when read:</p>
+ * <ul>
+ * <li>2 bytes: "EC"</li>
+ * <li>1 byte: header version, currently 1</li>
+ * <li>1 byte: compression method, currently 1 for deflate</li>
+ * <li>4 bytes: length of the uncompressed data</li>
+ * </ul>
+ * <p>{@link Deflater#BEST_SPEED} is used, as execution contexts are compressed on every write.  Higher levels take
+ * 4 to 20 times longer to compress, for output about 15% smaller, and decompress at about the same speed.
+ * See ExecutionContextCompressorTest.compressionLevels</p>
+ *
+ * @author Peter Busch
+ * @since 1.2.0
+ */
+public final class ExecutionContextCompressor {
+
+    static final int HEADER_LENGTH = 8;
+
+    /**
+     * Deflate can not expand data more than about 1032 times, so a larger length in the header is corrupt.
+     */
+    static final int MAX_DEFLATE_RATIO = 1032;
+
+    private static final byte MAGIC_1 = 'E';
+    private static final byte MAGIC_2 = 'C';
+    private static final byte HEADER_VERSION = 1;
+    private static final byte DEFLATE = 1;
+
+    private ExecutionContextCompressor() {
+    }
+
+    /**
+     * Compress data with deflate, and prepend the header.
+     *
+     * @param data uncompressed data
+     * @return header followed by the compressed data
+     */
+    public static byte[] compress(byte[] data) {
+        return compress(data, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param data  uncompressed data
+     * @param level {@link Deflater} compression level
+     * @return header followed by the compressed data
+     */
+    static byte[] compress(byte[] data, int level) {
+        var deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            var out = new ByteArrayOutputStream(HEADER_LENGTH + data.length / 2);
+            out.writeBytes(ByteBuffer.allocate(HEADER_LENGTH)
+                    .put(MAGIC_1).put(MAGIC_2).put(HEADER_VERSION).put(DEFLATE)
+                    .putInt(data.length)
+                    .array());
+
+            var buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param data data to check
+     * @return true if data starts with the header of a compressed execution context
+     */
+    public static boolean isCompressed(byte[] data) {
+        return data != null
+                && data.length >= HEADER_LENGTH
+                && data[0] == MAGIC_1
+                && data[1] == MAGIC_2;
+    }
+
+    /**
+     * Decompress data created by {@link #compress(byte[])}.
+     *
+     * @param data header followed by the compressed data
+     * @return uncompressed data
+     * @throws IllegalArgumentException if data does not start with a supported header, or can not be decompressed
+     */
+    public static byte[] decompress(byte[] data) {
+        if (!isCompressed(data)) {
+            throw new IllegalArgumentException("Execution Context is not in a compressed format");
+        }
+        var header = ByteBuffer.wrap(data, 0, HEADER_LENGTH);
+        header.position(2);
+        var version = header.get();
+        var method = header.get();
+        if (version != HEADER_VERSION || method != DEFLATE) {
+            throw new IllegalArgumentException("Unsupported compressed Execution Context. version="
+                    + version + ", method=" + method);
+        }
+
+        // The length is checked before it is allocated, and the inflated data must match it exactly
+        var length = header.getInt();
+        if (length < 0 || length > (long) (data.length - HEADER_LENGTH) * MAX_DEFLATE_RATIO) {
+            throw new IllegalArgumentException("Compressed Execution Context is truncated or corrupt");
+        }
+
+        var result = new byte[length];
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+            if (inflater.inflate(result) != result.length || !inflater.finished()) {
+                throw new IllegalArgumentException("Compressed Execution Context is truncated or corrupt");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Unable to decompress the execution context", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
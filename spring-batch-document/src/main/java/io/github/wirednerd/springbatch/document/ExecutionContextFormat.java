@@ -0,0 +1,28 @@
+package io.github.wirednerd.springbatch.document;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * <p>How the {@link ExecutionContext} of job and step executions is stored in the "executionContext" field.
+ * See {@link JobExecutionDocumentMapper#setExecutionContextFormat(ExecutionContextFormat)}</p>
+ * <p>Both formats can always be read, so the format can be changed without migrating existing documents.</p>
+ *
+ * @author Peter Busch
+ * @since 1.2.0
+ */
+public enum ExecutionContextFormat {
+
+    /**
+     * A String created by the {@link org.springframework.batch.core.repository.ExecutionContextSerializer}.
+     * Supported by all converters.  This is the default.
+     * Large Strings can be compressed, see {@link JobExecutionDocumentMapper#setExecutionContextCompressionThreshold(int)}
+     */
+    STRING,
+
+    /**
+     * A sub-document with one field per entry.  See {@link BsonExecutionContextSerializer}.
+     * Intended for the {@link MongoTemplate} converter.  XML can only be written in the {@link #STRING} format.
+     */
+    BSON
+}
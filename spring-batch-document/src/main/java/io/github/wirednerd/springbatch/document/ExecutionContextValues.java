@@ -0,0 +1,51 @@
+package io.github.wirednerd.springbatch.document;
+
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.Binary;
+
+import java.util.Map;
+
+/**
+ * Typed views of the value of an "executionContext" field, shared by {@link JobExecutionDocument}
+ * and {@link StepExecutionDocument}.
+ *
+ * @author Peter Busch
+ * @since 1.2.0
+ */
+final class ExecutionContextValues {
+
+    private static final JsonWriterSettings EXTENDED_JSON = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+    private ExecutionContextValues() {
+    }
+
+    static String asString(Object executionContext) {
+        return executionContext instanceof String ? (String) executionContext : null;
+    }
+
+    static byte[] asCompressed(Object executionContext) {
+        if (executionContext instanceof Binary) {
+            return ((Binary) executionContext).getData();
+        }
+        return executionContext instanceof byte[] ? (byte[]) executionContext : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> asBson(Object executionContext) {
+        return executionContext instanceof Map ? (Map<String, Object>) executionContext : null;
+    }
+
+    /**
+     * BSON execution contexts are written to JSON and XML as Extended JSON, which keeps the BSON types of the values.
+     */
+    static String toExtendedJson(Object executionContext) {
+        var bson = asBson(executionContext);
+        return bson == null ? null : new Document(bson).toJson(EXTENDED_JSON);
+    }
+
+    static Document fromExtendedJson(String executionContext) {
+        return executionContext == null ? null : Document.parse(executionContext);
+    }
+}
@@ -1,8 +1,11 @@
 package io.github.wirednerd.springbatch.document;
 
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.bson.types.Binary;
 import org.springframework.batch.core.*;
 import org.springframework.batch.core.repository.ExecutionContextSerializer;
 import org.springframework.batch.core.repository.dao.Jackson2ExecutionContextStringSerializer;
@@ -14,12 +17,15 @@ import org.springframework.util.StringUtils;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -51,6 +57,8 @@ public class JobExecutionDocumentMapper {
     public static final String EXIT_CODE = "exitCode";
     public static final String EXIT_DESCRIPTION = "exitDescription";
     public static final String EXECUTION_CONTEXT = "executionContext";
+    public static final String COMPRESSED_EXECUTION_CONTEXT = "compressedExecutionContext";  // since 1.2.0
+    public static final String BSON_EXECUTION_CONTEXT = "bsonExecutionContext";  // since 1.2.0
     public static final String JOB_CONFIGURATION_NAME = "jobConfigurationName";
 
     // JobParameter
@@ -76,6 +84,55 @@ public class JobExecutionDocumentMapper {
     private JobKeyGenerator<JobParameters> jobKeyGenerator = new DefaultJobKeyGenerator();
     private ExecutionContextSerializer executionContextSerializer = new Jackson2ExecutionContextStringSerializer();
     private Charset executionContextCharset = StandardCharsets.UTF_8;  // Charset used by Jackson2ExecutionContextStringSerializer
+    private ExecutionContextFormat executionContextFormat = ExecutionContextFormat.STRING;  // since 1.2.0
+    private int executionContextCompressionThreshold;  // since 1.2.0, bytes.  0 disables compression
+
+    @Getter(AccessLevel.NONE)
+    private final Map<JobParameters, CachedJobKey> jobKeys = Collections.synchronizedMap(new WeakHashMap<>());  // since 1.2.0
+
+    /**
+     * Set the {@link JobKeyGenerator} used for the jobKey field, and clear the jobKey cache.
+     *
+     * @param jobKeyGenerator {@link JobKeyGenerator}
+     */
+    public void setJobKeyGenerator(JobKeyGenerator<JobParameters> jobKeyGenerator) {
+        this.jobKeyGenerator = jobKeyGenerator;
+        jobKeys.clear();
+    }
+
+    /**
+     * <p>Generate the jobKey for job parameters with the {@link JobKeyGenerator}.</p>
+     * <p>Keys are cached while the {@link JobParameters} instance is in use, so the parameters of a running job
+     * are only hashed once, instead of on every update.  A cached key is only returned for the same instance,
+     * because {@link JobParameters#equals(Object)} ignores the identifying flags that the key depends on.</p>
+     *
+     * @param jobParameters {@link JobParameters}
+     * @return jobKey
+     * @since 1.2.0
+     */
+    public String generateJobKey(JobParameters jobParameters) {
+        var cachedJobKey = jobKeys.get(jobParameters);
+        if (cachedJobKey != null && cachedJobKey.jobParameters.get() == jobParameters) {
+            return cachedJobKey.jobKey;
+        }
+
+        var jobKey = jobKeyGenerator.generateKey(jobParameters);
+        // An equal key keeps its place in a WeakHashMap, so remove it to key the entry by this instance
+        jobKeys.remove(jobParameters);
+        jobKeys.put(jobParameters, new CachedJobKey(new WeakReference<>(jobParameters), jobKey));
+        return jobKey;
+    }
+
+    /**
+     * jobKey generated for a {@link JobParameters} instance
+     */
+    @AllArgsConstructor
+    private static class CachedJobKey {
+
+        private final WeakReference<JobParameters> jobParameters;
+
+        private final String jobKey;
+    }
 
     /**
      * Convert the source object of type {@link JobExecution} to target type {@link JobExecutionDocument}.
@@ -99,7 +156,7 @@ public class JobExecutionDocumentMapper {
 
         document.setJobInstanceId(source.getJobInstance().getId());
         document.setJobName(source.getJobInstance().getJobName());
-        document.setJobKey(jobKeyGenerator.generateKey(source.getJobParameters()));
+        document.setJobKey(generateJobKey(source.getJobParameters()));
 
         var stepDocuments = source.getStepExecutions().stream()
                 .map(this::toStepExecutionDocument).collect(Collectors.toList());
@@ -112,7 +169,7 @@ public class JobExecutionDocumentMapper {
         document.setLastUpdated(source.getLastUpdated());
         document.setExitCode(source.getExitStatus().getExitCode());
         document.setExitDescription(source.getExitStatus().getExitDescription());
-        document.setExecutionContext(serializeContext(source.getExecutionContext()));
+        document.setExecutionContextValue(writeExecutionContext(source.getExecutionContext()));
         document.setJobConfigurationName(source.getJobConfigurationName());
 
         return document;
@@ -147,7 +204,7 @@ public class JobExecutionDocumentMapper {
         jobExecution.setEndTime(source.getEndTime());
         jobExecution.setLastUpdated(source.getLastUpdated());
         jobExecution.setExitStatus(new ExitStatus(source.getExitCode(), source.getExitDescription()));
-        jobExecution.setExecutionContext(deserializeContext(source.getExecutionContext()));
+        jobExecution.setExecutionContext(readExecutionContext(source.getExecutionContextValue()));
 
         return jobExecution;
     }
@@ -171,7 +228,7 @@ public class JobExecutionDocumentMapper {
 
         document.setJobInstanceId(source.getId());
         document.setJobName(source.getJobName());
-        document.setJobKey(jobKeyGenerator.generateKey(jobParameters));
+        document.setJobKey(generateJobKey(jobParameters));
 
         return document;
     }
@@ -195,7 +252,7 @@ public class JobExecutionDocumentMapper {
 
         document.setJobInstanceId(source.getId());
         document.setJobName(source.getJobName());
-        document.setJobKey(jobKeyGenerator.generateKey(jobParameters));
+        document.setJobKey(generateJobKey(jobParameters));
 
         return document;
     }
@@ -228,6 +285,7 @@ public class JobExecutionDocumentMapper {
 
         document.setStepExecutionId(source.getId());
         document.setStepName(source.getStepName());
+        document.setVersion(source.getVersion());
         document.setStatus(source.getStatus().toString());
         document.setReadCount(source.getReadCount());
         document.setWriteCount(source.getWriteCount());
@@ -239,7 +297,7 @@ public class JobExecutionDocumentMapper {
         document.setStartTime(source.getStartTime());
         document.setEndTime(source.getEndTime());
         document.setLastUpdated(source.getLastUpdated());
-        document.setExecutionContext(serializeContext(source.getExecutionContext()));
+        document.setExecutionContextValue(writeExecutionContext(source.getExecutionContext()));
         document.setExitCode(source.getExitStatus().getExitCode());
         document.setExitDescription(source.getExitStatus().getExitDescription());
         document.setFilterCount(source.getFilterCount());
@@ -258,6 +316,7 @@ public class JobExecutionDocumentMapper {
     public StepExecution toStepExecution(StepExecutionDocument source, JobExecution jobExecution) {
 
         var stepExecution = new StepExecution(source.getStepName(), jobExecution, source.getStepExecutionId());
+        stepExecution.setVersion(source.getVersion());
 
         stepExecution.setStatus(source.getStatus() == null ? BatchStatus.UNKNOWN : BatchStatus.valueOf(source.getStatus()));
 
@@ -271,7 +330,7 @@ public class JobExecutionDocumentMapper {
         stepExecution.setStartTime(source.getStartTime());
         stepExecution.setEndTime(source.getEndTime());
         stepExecution.setLastUpdated(source.getLastUpdated());
-        stepExecution.setExecutionContext(deserializeContext(source.getExecutionContext()));
+        stepExecution.setExecutionContext(readExecutionContext(source.getExecutionContextValue()));
         stepExecution.setExitStatus(new ExitStatus(source.getExitCode(), source.getExitDescription()));
         stepExecution.setFilterCount(ifNull(source.getFilterCount(), 0));
         return stepExecution;
@@ -363,6 +422,57 @@ public class JobExecutionDocumentMapper {
         throw new IllegalArgumentException("Job Parameter must include STRING, DATE, LONG, or DOUBLE field");
     }
 
+    /**
+     * Convert {@link ExecutionContext} to the value of an "executionContext" field,
+     * using the {@link ExecutionContextFormat} of this mapper.
+     *
+     * @param executionContext {@link ExecutionContext}
+     * @return String, or {@link org.bson.Document} when the format is {@link ExecutionContextFormat#BSON},
+     * or byte[] when the String is at least executionContextCompressionThreshold bytes long.
+     * See {@link ExecutionContextCompressor}
+     * @since 1.2.0
+     */
+    public Object writeExecutionContext(ExecutionContext executionContext) {
+        if (executionContextFormat == ExecutionContextFormat.BSON && executionContext != null) {
+            return bsonExecutionContextSerializer().serialize(executionContext);
+        }
+        var serializedContext = serializeContext(executionContext);
+        if (executionContextCompressionThreshold > 0 && serializedContext != null) {
+            var bytes = serializedContext.getBytes(executionContextCharset);
+            if (bytes.length >= executionContextCompressionThreshold) {
+                return ExecutionContextCompressor.compress(bytes);
+            }
+        }
+        return serializedContext;
+    }
+
+    /**
+     * Convert the value of an "executionContext" field to {@link ExecutionContext}.  Both formats can be read,
+     * regardless of the {@link ExecutionContextFormat} of this mapper.
+     *
+     * @param executionContext String, compressed byte[] or {@link Binary}, or {@link java.util.Map}
+     * @return {@link ExecutionContext}
+     * @since 1.2.0
+     */
+    @SuppressWarnings("unchecked")
+    public ExecutionContext readExecutionContext(Object executionContext) {
+        if (executionContext instanceof Map) {
+            return bsonExecutionContextSerializer().deserialize((Map<String, Object>) executionContext);
+        }
+        if (executionContext instanceof Binary) {
+            return readExecutionContext(((Binary) executionContext).getData());
+        }
+        if (executionContext instanceof byte[]) {
+            return deserializeContext(new String(ExecutionContextCompressor.decompress((byte[]) executionContext),
+                    executionContextCharset));
+        }
+        return deserializeContext((String) executionContext);
+    }
+
+    private BsonExecutionContextSerializer bsonExecutionContextSerializer() {
+        return new BsonExecutionContextSerializer(executionContextSerializer, executionContextCharset);
+    }
+
     /**
      * Serialize {@link ExecutionContext} to a String
      *
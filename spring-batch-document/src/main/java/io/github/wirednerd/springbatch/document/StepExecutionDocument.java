@@ -1,12 +1,16 @@
 package io.github.wirednerd.springbatch.document;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Data;
+import org.bson.types.Binary;
 import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -14,8 +18,10 @@ import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 import java.util.Date;
+import java.util.Map;
 
 import static io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper.*;
 
@@ -43,6 +49,11 @@ public class StepExecutionDocument {
     @XmlElement(name = STEP_NAME)
     private String stepName;
 
+    @JsonProperty(VERSION)
+    @Field(VERSION)
+    @XmlElement(name = VERSION)
+    private Integer version;
+
     @JsonProperty(READ_COUNT)
     @Field(READ_COUNT)
     @XmlElement(name = READ_COUNT)
@@ -119,8 +130,88 @@ public class StepExecutionDocument {
     @XmlElement(name = EXIT_DESCRIPTION)
     private String exitDescription;
 
-    @JsonProperty(EXECUTION_CONTEXT)
+    /**
+     * <p>Value of the "executionContext" field: a String, a compressed byte[] or {@link Binary}, a BSON sub-document,
+     * or a reference to the execution context in another collection.
+     * See {@link JobExecutionDocumentMapper#writeExecutionContext(ExecutionContext)}</p>
+     * <p>Only the String, compressed, and BSON values are written to JSON and XML,
+     * through the typed accessors below.</p>
+     *
+     * @param executionContextValue value of the "executionContext" field
+     * @return value of the "executionContext" field
+     * @since 1.2.0
+     */
+    @JsonIgnore
     @Field(EXECUTION_CONTEXT)
+    @XmlTransient
+    private Object executionContextValue;
+
+    /**
+     * @return execution context in the {@link ExecutionContextFormat#STRING} format,
+     * or null when it is compressed or stored in another format
+     */
+    @Transient
+    @JsonProperty(EXECUTION_CONTEXT)
     @XmlElement(name = EXECUTION_CONTEXT)
-    private String executionContext;
+    public String getExecutionContext() {
+        return ExecutionContextValues.asString(executionContextValue);
+    }
+
+    /**
+     * @param executionContext execution context in the {@link ExecutionContextFormat#STRING} format
+     */
+    @JsonProperty(EXECUTION_CONTEXT)
+    public void setExecutionContext(String executionContext) {
+        this.executionContextValue = executionContext;
+    }
+
+    /**
+     * @return execution context compressed by {@link ExecutionContextCompressor}, or null when it is not compressed
+     * @since 1.2.0
+     */
+    @Transient
+    @JsonProperty(COMPRESSED_EXECUTION_CONTEXT)
+    @XmlElement(name = COMPRESSED_EXECUTION_CONTEXT)
+    public byte[] getCompressedExecutionContext() {
+        return ExecutionContextValues.asCompressed(executionContextValue);
+    }
+
+    /**
+     * @param compressedExecutionContext execution context compressed by {@link ExecutionContextCompressor}
+     * @since 1.2.0
+     */
+    @JsonProperty(COMPRESSED_EXECUTION_CONTEXT)
+    public void setCompressedExecutionContext(byte[] compressedExecutionContext) {
+        this.executionContextValue = compressedExecutionContext;
+    }
+
+    /**
+     * @return execution context in the {@link ExecutionContextFormat#BSON} format, or null when it is stored in another format
+     * @since 1.2.0
+     */
+    @Transient
+    @JsonIgnore
+    public Map<String, Object> getBsonExecutionContext() {
+        return ExecutionContextValues.asBson(executionContextValue);
+    }
+
+    /**
+     * @param bsonExecutionContext execution context in the {@link ExecutionContextFormat#BSON} format
+     * @since 1.2.0
+     */
+    @JsonIgnore
+    public void setBsonExecutionContext(Map<String, Object> bsonExecutionContext) {
+        this.executionContextValue = bsonExecutionContext;
+    }
+
+    @JsonProperty(BSON_EXECUTION_CONTEXT)
+    @XmlElement(name = BSON_EXECUTION_CONTEXT)
+    private String getBsonExecutionContextJson() {
+        return ExecutionContextValues.toExtendedJson(executionContextValue);
+    }
+
+    @JsonProperty(BSON_EXECUTION_CONTEXT)
+    private void setBsonExecutionContextJson(String bsonExecutionContext) {
+        this.executionContextValue = ExecutionContextValues.fromExtendedJson(bsonExecutionContext);
+    }
 }
@@ -0,0 +1,141 @@
+package io.github.wirednerd.springbatch.document;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.repository.ExecutionContextSerializer;
+import org.springframework.batch.core.repository.dao.Jackson2ExecutionContextStringSerializer;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BsonExecutionContextSerializerTest {
+
+    private final BsonExecutionContextSerializer serializer = new BsonExecutionContextSerializer(
+            new Jackson2ExecutionContextStringSerializer(), StandardCharsets.UTF_8);
+
+    @Test
+    void serialize_nativeValues() {
+        var date = new Date();
+        var executionContext = new ExecutionContext();
+        executionContext.putString("String", "Value");
+        executionContext.putInt("Integer", 1);
+        executionContext.putLong("Long", 2L);
+        executionContext.putDouble("Double", 3.5);
+        executionContext.put("Boolean", true);
+        executionContext.put("Date", date);
+
+        var document = serializer.serialize(executionContext);
+
+        assertEquals(6, document.size());
+        assertEquals("Value", document.get("String"));
+        assertEquals(1, document.get("Integer"));
+        assertEquals(2L, document.get("Long"));
+        assertEquals(3.5, document.get("Double"));
+        assertEquals(true, document.get("Boolean"));
+        assertSame(date, document.get("Date"));
+
+        var actual = serializer.deserialize(document);
+
+        assertEquals(6, actual.size());
+        assertEquals(2L, actual.getLong("Long"));
+        assertEquals(1, actual.getInt("Integer"));
+        assertEquals(date, actual.get("Date"));
+    }
+
+    @Test
+    void serialize_serializedValues() {
+        var timestamp = new Timestamp(System.currentTimeMillis());
+        var parameter = new JobParameterDocument(null, null, 987L, null, true);
+        var executionContext = new ExecutionContext();
+        executionContext.put("Timestamp", timestamp);
+        executionContext.put("Parameter", parameter);
+
+        var document = serializer.serialize(executionContext);
+
+        assertTrue(document.get("Timestamp", Document.class).containsKey(BsonExecutionContextSerializer.SERIALIZED));
+        assertTrue(document.get("Parameter", Document.class).containsKey(BsonExecutionContextSerializer.SERIALIZED));
+
+        var actual = serializer.deserialize(document);
+
+        assertEquals(parameter, actual.get("Parameter"));
+    }
+
+    @Test
+    void serialize_escapedKeys() {
+        var executionContext = new ExecutionContext();
+        executionContext.putLong("FlatFileItemReader.read.count", 10L);
+        executionContext.putString("$key", "dollar");
+        executionContext.putString("100%.done", "percent");
+
+        var document = serializer.serialize(executionContext);
+
+        assertEquals(10L, document.get("FlatFileItemReader%2Eread%2Ecount"));
+        assertEquals("dollar", document.get("%24key"));
+        assertEquals("percent", document.get("100%25%2Edone"));
+
+        var actual = serializer.deserialize(document);
+
+        assertEquals(10L, actual.getLong("FlatFileItemReader.read.count"));
+        assertEquals("dollar", actual.getString("$key"));
+        assertEquals("percent", actual.getString("100%.done"));
+    }
+
+    @Test
+    void escapeKey_unescapeKey() {
+        for (var key : new String[]{"plain", "a.b", "$a.$b", "%2E", "%", "a$"}) {
+            assertEquals(key, BsonExecutionContextSerializer.unescapeKey(BsonExecutionContextSerializer.escapeKey(key)));
+        }
+        assertEquals("plain", BsonExecutionContextSerializer.escapeKey("plain"));
+        assertEquals("%252E", BsonExecutionContextSerializer.escapeKey("%2E"));
+    }
+
+    @Test
+    void deserialize_nullValue() {
+        var document = new Document("Key", null).append("Other", "Value");
+
+        var actual = serializer.deserialize(document);
+
+        assertEquals(1, actual.size());
+        assertEquals("Value", actual.getString("Other"));
+    }
+
+    @Test
+    void serialize_IllegalArgumentException() {
+        var failingSerializer = new BsonExecutionContextSerializer(new ExecutionContextSerializer() {
+            @Override
+            public Map<String, Object> deserialize(InputStream inputStream) throws IOException {
+                throw new IOException("Test Exception");
+            }
+
+            @Override
+            public void serialize(Map<String, Object> object, OutputStream outputStream) throws IOException {
+                throw new IOException("Test Exception");
+            }
+        }, StandardCharsets.UTF_8);
+
+        var executionContext = new ExecutionContext();
+        executionContext.put("Float", 1.5f);
+
+        try {
+            failingSerializer.serialize(executionContext);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Could not serialize the execution context", e.getMessage());
+        }
+
+        try {
+            failingSerializer.deserialize(new Document("Float", new Document(BsonExecutionContextSerializer.SERIALIZED, "{}")));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unable to deserialize the execution context", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package io.github.wirednerd.springbatch.document;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutionContextCompressorTest {
+
+    @Test
+    void compressAndDecompress() {
+        var data = "{\"key\":\"value\",\"key2\":\"value\",\"key3\":\"value\"}".getBytes(StandardCharsets.UTF_8);
+
+        var compressed = ExecutionContextCompressor.compress(data);
+
+        assertEquals('E', compressed[0]);
+        assertEquals('C', compressed[1]);
+        assertEquals(1, compressed[2]);
+        assertEquals(1, compressed[3]);
+        assertTrue(ExecutionContextCompressor.isCompressed(compressed));
+        assertArrayEquals(data, ExecutionContextCompressor.decompress(compressed));
+    }
+
+    @Test
+    void compressAndDecompress_empty() {
+        var compressed = ExecutionContextCompressor.compress(new byte[0]);
+
+        assertArrayEquals(new byte[0], ExecutionContextCompressor.decompress(compressed));
+    }
+
+    @Test
+    void isCompressed() {
+        assertFalse(ExecutionContextCompressor.isCompressed(null));
+        assertFalse(ExecutionContextCompressor.isCompressed(new byte[0]));
+        assertFalse(ExecutionContextCompressor.isCompressed("EC".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(ExecutionContextCompressor.isCompressed("{\"@class\":\"java.util.HashMap\"}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void decompress_notCompressed() {
+        var data = "{\"@class\":\"java.util.HashMap\"}".getBytes(StandardCharsets.UTF_8);
+        try {
+            ExecutionContextCompressor.decompress(data);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Execution Context is not in a compressed format", e.getMessage());
+        }
+    }
+
+    @Test
+    void decompress_unsupportedVersion() {
+        var compressed = ExecutionContextCompressor.compress(new byte[10]);
+        compressed[2] = 2;
+        try {
+            ExecutionContextCompressor.decompress(compressed);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unsupported compressed Execution Context. version=2, method=1", e.getMessage());
+        }
+    }
+
+    @Test
+    void decompress_truncated() {
+        var compressed = ExecutionContextCompressor.compress(new byte[1000]);
+        var truncated = Arrays.copyOf(compressed, compressed.length - 4);
+        try {
+            ExecutionContextCompressor.decompress(truncated);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Compressed Execution Context is truncated or corrupt", e.getMessage());
+        }
+    }
+
+    @Test
+    void decompress_invalidLength() {
+        var compressed = ExecutionContextCompressor.compress(new byte[1000]);
+        ByteBuffer.wrap(compressed).putInt(4, Integer.MAX_VALUE);
+        try {
+            ExecutionContextCompressor.decompress(compressed);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Compressed Execution Context is truncated or corrupt", e.getMessage());
+        }
+
+        ByteBuffer.wrap(compressed).putInt(4, -1);
+        assertThrows(IllegalArgumentException.class, () -> ExecutionContextCompressor.decompress(compressed));
+    }
+
+    @Test
+    void decompress_longerThanHeader() {
+        var compressed = ExecutionContextCompressor.compress(new byte[1000]);
+        ByteBuffer.wrap(compressed).putInt(4, 999);
+        try {
+            ExecutionContextCompressor.decompress(compressed);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Compressed Execution Context is truncated or corrupt", e.getMessage());
+        }
+    }
+
+    @Test
+    void decompress_maxDeflateRatio() {
+        var data = new byte[10_000_000];
+
+        var compressed = ExecutionContextCompressor.compress(data, Deflater.BEST_COMPRESSION);
+
+        assertArrayEquals(data, ExecutionContextCompressor.decompress(compressed));
+    }
+
+    @Test
+    void compressedSize() {
+        var serialized = serializedContext();
+        var compressed = ExecutionContextCompressor.compress(serialized);
+
+        assertTrue(serialized.length > 100_000);
+        assertTrue(compressed.length * 4 < serialized.length,
+                () -> "serialized=" + serialized.length + ", compressed=" + compressed.length);
+    }
+
+    /**
+     * Compares the compression levels on a serialized context of about 180 KB.
+     * Run with -Dbenchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void compressionLevels() {
+        var serialized = serializedContext();
+
+        var bestSpeed = measure(serialized, Deflater.BEST_SPEED);
+        var defaultCompression = measure(serialized, Deflater.DEFAULT_COMPRESSION);
+        var bestCompression = measure(serialized, Deflater.BEST_COMPRESSION);
+
+        System.out.printf("serialized=%d bytes%n", serialized.length);
+        System.out.printf("%-20s %10s %15s %17s%n", "level", "bytes", "compress us", "decompress us");
+        for (var result : List.of(bestSpeed, defaultCompression, bestCompression)) {
+            System.out.printf("%-20s %10d %15.1f %17.1f%n", result[0], result[1], result[2], result[3]);
+        }
+
+        assertTrue((double) bestSpeed[2] < (double) defaultCompression[2]);
+        assertTrue((double) bestSpeed[2] < (double) bestCompression[2]);
+    }
+
+    /**
+     * @return level name, compressed length, and average compress and decompress times in microseconds
+     */
+    private static Object[] measure(byte[] serialized, int level) {
+        var compressed = ExecutionContextCompressor.compress(serialized, level);
+        for (int i = 0; i < 50; i++) {
+            ExecutionContextCompressor.decompress(ExecutionContextCompressor.compress(serialized, level));
+        }
+
+        var iterations = 200;
+        var start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            ExecutionContextCompressor.compress(serialized, level);
+        }
+        var compressMicros = (System.nanoTime() - start) / 1000.0 / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            ExecutionContextCompressor.decompress(compressed);
+        }
+        var decompressMicros = (System.nanoTime() - start) / 1000.0 / iterations;
+
+        var name = level == Deflater.BEST_SPEED ? "BEST_SPEED"
+                : level == Deflater.BEST_COMPRESSION ? "BEST_COMPRESSION" : "DEFAULT_COMPRESSION";
+        return new Object[]{name, compressed.length, compressMicros, decompressMicros};
+    }
+
+    private static byte[] serializedContext() {
+        var mapper = new JobExecutionDocumentMapper();
+        var executionContext = new ExecutionContext();
+        for (int i = 0; i < 5000; i++) {
+            executionContext.putString("processed.item." + i, "ITEM-" + (1000000 + i * 7));
+        }
+        return mapper.serializeContext(executionContext).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,6 +1,7 @@
 package io.github.wirednerd.springbatch.document;
 
 import lombok.Data;
+import org.bson.types.Binary;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.batch.core.*;
@@ -12,11 +13,13 @@ import org.springframework.util.CollectionUtils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -57,6 +60,7 @@ class JobExecutionDocumentMapperTest extends MongoDBContainerConfig {
 
         stepExecution = new StepExecution("Example Step", jobExecution, 3L);
 
+        stepExecution.setVersion(4);
         stepExecution.setReadCount(1);
         stepExecution.setWriteCount(2);
         stepExecution.setCommitCount(3);
@@ -75,6 +79,37 @@ class JobExecutionDocumentMapperTest extends MongoDBContainerConfig {
         stepExecution.addFailureException(new RuntimeException("Test Exception"));
     }
 
+    @Test
+    void generateJobKey() {
+        var calls = new AtomicInteger();
+        jobExecutionDocumentMapper.setJobKeyGenerator(source -> calls.incrementAndGet() + ":" + jobKeyGenerator.generateKey(source));
+
+        assertEquals("1:" + jobKeyGenerator.generateKey(jobParameters), jobExecutionDocumentMapper.generateJobKey(jobParameters));
+        assertEquals("1:" + jobKeyGenerator.generateKey(jobParameters), jobExecutionDocumentMapper.generateJobKey(jobParameters));
+        assertEquals("1:" + jobKeyGenerator.generateKey(jobParameters),
+                jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution).getJobKey());
+        assertEquals(1, calls.get());
+
+        assertEquals("2:" + jobKeyGenerator.generateKey(new JobParameters()),
+                jobExecutionDocumentMapper.generateJobKey(new JobParameters()));
+
+        jobExecutionDocumentMapper.setJobKeyGenerator(jobKeyGenerator);
+        assertEquals(jobKeyGenerator.generateKey(jobParameters), jobExecutionDocumentMapper.generateJobKey(jobParameters));
+    }
+
+    @Test
+    void generateJobKey_identifying() {
+        var identifying = new JobParameters(Map.of("key", new JobParameter("value", true)));
+        var notIdentifying = new JobParameters(Map.of("key", new JobParameter("value", false)));
+        assertEquals(identifying, notIdentifying);
+
+        assertEquals(jobKeyGenerator.generateKey(identifying), jobExecutionDocumentMapper.generateJobKey(identifying));
+        assertEquals(jobKeyGenerator.generateKey(notIdentifying), jobExecutionDocumentMapper.generateJobKey(notIdentifying));
+        assertNotEquals(jobExecutionDocumentMapper.generateJobKey(identifying),
+                jobExecutionDocumentMapper.generateJobKey(notIdentifying));
+        assertEquals(jobKeyGenerator.generateKey(identifying), jobExecutionDocumentMapper.generateJobKey(identifying));
+    }
+
     @Test
     void toJobExecutionDocument() {
         var document = jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution);
@@ -309,6 +344,7 @@ class JobExecutionDocumentMapperTest extends MongoDBContainerConfig {
 
         assertEquals(stepExecution.getId(), document.getStepExecutionId());
         assertEquals(stepExecution.getStepName(), document.getStepName());
+        assertEquals(stepExecution.getVersion(), document.getVersion());
         assertEquals(stepExecution.getStatus().toString(), document.getStatus());
         assertEquals(stepExecution.getReadCount(), document.getReadCount());
         assertEquals(stepExecution.getWriteCount(), document.getWriteCount());
@@ -649,6 +685,115 @@ class JobExecutionDocumentMapperTest extends MongoDBContainerConfig {
         compare(expected, actual);
     }
 
+    @Test
+    void writeExecutionContext_string() {
+        assertEquals(jobExecutionDocumentMapper.serializeContext(executionContext),
+                jobExecutionDocumentMapper.writeExecutionContext(executionContext));
+        assertNull(jobExecutionDocumentMapper.writeExecutionContext(null));
+    }
+
+    @Test
+    void writeExecutionContext_bson() {
+        jobExecutionDocumentMapper.setExecutionContextFormat(ExecutionContextFormat.BSON);
+        executionContext.putLong("reader.read.count", 123L);
+
+        var document = (org.bson.Document) jobExecutionDocumentMapper.writeExecutionContext(executionContext);
+
+        assertEquals(2, document.size());
+        assertEquals("Value1", document.getString("Context"));
+        assertEquals(123L, document.getLong("reader%2Eread%2Ecount"));
+        assertNull(jobExecutionDocumentMapper.writeExecutionContext(null));
+    }
+
+    @Test
+    void readExecutionContext() {
+        jobExecutionDocumentMapper.setExecutionContextFormat(ExecutionContextFormat.BSON);
+
+        compare(executionContext, jobExecutionDocumentMapper.readExecutionContext(
+                jobExecutionDocumentMapper.writeExecutionContext(executionContext)));
+        compare(executionContext, jobExecutionDocumentMapper.readExecutionContext(
+                jobExecutionDocumentMapper.serializeContext(executionContext)));
+        assertNull(jobExecutionDocumentMapper.readExecutionContext(null));
+    }
+
+    @Test
+    void mongoInsertAndFindJobExecution_bson() {
+        jobExecutionDocumentMapper.setExecutionContextFormat(ExecutionContextFormat.BSON);
+        jobExecution.getExecutionContext().putLong("reader.read.count", 123L);
+        jobExecution.getExecutionContext().putInt("$page", 4);
+        jobExecution.getExecutionContext().put("lastUpdated", testDate);
+        jobExecution.getExecutionContext().put("parameter", new JobParameterDocument(null, null, 987L, null, true));
+
+        mongoTemplate.insert(jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution), "Test");
+
+        var saved = mongoTemplate.findOne(new Query(), org.bson.Document.class, "Test")
+                .get(JobExecutionDocumentMapper.EXECUTION_CONTEXT, org.bson.Document.class);
+        assertEquals(123L, saved.getLong("reader%2Eread%2Ecount"));
+        assertEquals(4, saved.getInteger("%24page"));
+        assertEquals(testDate, saved.getDate("lastUpdated"));
+        assertNotNull(saved.get("parameter", org.bson.Document.class).getString(BsonExecutionContextSerializer.SERIALIZED));
+
+        var document = mongoTemplate.findOne(new Query(), JobExecutionDocument.class, "Test");
+        var actual = jobExecutionDocumentMapper.toJobExecution(document);
+
+        compare(jobExecution, actual);
+        assertEquals(123L, actual.getExecutionContext().getLong("reader.read.count"));
+        assertEquals(4, actual.getExecutionContext().getInt("$page"));
+    }
+
+    @Test
+    void writeExecutionContext_compressed() {
+        var serialized = jobExecutionDocumentMapper.serializeContext(executionContext);
+        jobExecutionDocumentMapper.setExecutionContextCompressionThreshold(serialized.length() + 1);
+
+        assertEquals(serialized, jobExecutionDocumentMapper.writeExecutionContext(executionContext));
+
+        jobExecutionDocumentMapper.setExecutionContextCompressionThreshold(serialized.length());
+
+        var compressed = (byte[]) jobExecutionDocumentMapper.writeExecutionContext(executionContext);
+        assertTrue(ExecutionContextCompressor.isCompressed(compressed));
+        assertEquals(serialized, new String(ExecutionContextCompressor.decompress(compressed), StandardCharsets.UTF_8));
+        assertNull(jobExecutionDocumentMapper.writeExecutionContext(null));
+    }
+
+    @Test
+    void readExecutionContext_compressed() {
+        jobExecutionDocumentMapper.setExecutionContextCompressionThreshold(1);
+        var compressed = (byte[]) jobExecutionDocumentMapper.writeExecutionContext(executionContext);
+
+        compare(executionContext, jobExecutionDocumentMapper.readExecutionContext(compressed));
+        compare(executionContext, jobExecutionDocumentMapper.readExecutionContext(new Binary(compressed)));
+
+        jobExecutionDocumentMapper.setExecutionContextCompressionThreshold(0);
+        compare(executionContext, jobExecutionDocumentMapper.readExecutionContext(compressed));
+    }
+
+    @Test
+    void mongoInsertAndFindStepExecution_compressed() {
+        jobExecutionDocumentMapper.setExecutionContextCompressionThreshold(1);
+
+        mongoTemplate.insert(jobExecutionDocumentMapper.toStepExecutionDocument(stepExecution), "Test");
+
+        var saved = mongoTemplate.findOne(new Query(), org.bson.Document.class, "Test");
+        assertTrue(saved.get(JobExecutionDocumentMapper.EXECUTION_CONTEXT) instanceof Binary);
+
+        var document = mongoTemplate.findOne(new Query(), StepExecutionDocument.class, "Test");
+        var actual = jobExecutionDocumentMapper.toStepExecution(document, jobExecution);
+
+        compare(stepExecution, actual);
+    }
+
+    @Test
+    void mongoInsertAndFindStepExecution_legacyString() {
+        mongoTemplate.insert(jobExecutionDocumentMapper.toStepExecutionDocument(stepExecution), "Test");
+        jobExecutionDocumentMapper.setExecutionContextFormat(ExecutionContextFormat.BSON);
+
+        var document = mongoTemplate.findOne(new Query(), StepExecutionDocument.class, "Test");
+        var actual = jobExecutionDocumentMapper.toStepExecution(document, jobExecution);
+
+        compare(stepExecution, actual);
+    }
+
     @Test
     void serializeContext_Null() {
         assertNull(jobExecutionDocumentMapper.serializeContext(null));
@@ -766,6 +911,7 @@ class JobExecutionDocumentMapperTest extends MongoDBContainerConfig {
         }
 
         assertEquals(expected.getStepName(), actual.getStepName());
+        assertEquals(expected.getVersion(), actual.getVersion());
         assertEquals(expected.getStatus(), actual.getStatus());
         assertEquals(expected.getReadCount(), actual.getReadCount());
         assertEquals(expected.getWriteCount(), actual.getWriteCount());
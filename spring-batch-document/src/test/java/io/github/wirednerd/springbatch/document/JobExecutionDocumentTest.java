@@ -15,7 +15,10 @@ import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.Date;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class JobExecutionDocumentTest extends MongoDBContainerConfig {
@@ -218,4 +221,82 @@ class JobExecutionDocumentTest extends MongoDBContainerConfig {
 
         assertEquals(jobExecutionDocument, resultDoc);
     }
-}
\ No newline at end of file
+
+    @Test
+    void jacksonObjectMapper_compressedExecutionContext() throws JsonProcessingException {
+        var compressed = new byte[]{1, 2, 3};
+        jobExecutionDocument.setCompressedExecutionContext(compressed);
+
+        var om = new ObjectMapper();
+        String json = om.writeValueAsString(jobExecutionDocument);
+
+        assertTrue(json.contains("\"compressedExecutionContext\":\"AQID\""), json);
+        assertFalse(json.contains("\"executionContext\""), json);
+
+        var resultDoc = om.readValue(json, JobExecutionDocument.class);
+
+        assertArrayEquals(compressed, resultDoc.getCompressedExecutionContext());
+        assertNull(resultDoc.getExecutionContext());
+        assertNull(resultDoc.getBsonExecutionContext());
+    }
+
+    @Test
+    void jacksonObjectMapper_bsonExecutionContext() throws JsonProcessingException {
+        jobExecutionDocument.setBsonExecutionContext(new Document("long", 1L).append("string", "text"));
+
+        var om = new ObjectMapper();
+        String json = om.writeValueAsString(jobExecutionDocument);
+
+        assertTrue(json.contains("\"bsonExecutionContext\":"), json);
+        assertFalse(json.contains("\"executionContext\""), json);
+
+        var resultDoc = om.readValue(json, JobExecutionDocument.class);
+
+        assertEquals(jobExecutionDocument, resultDoc);
+        assertEquals(1L, resultDoc.getBsonExecutionContext().get("long"));
+        assertNull(resultDoc.getExecutionContext());
+        assertNull(resultDoc.getCompressedExecutionContext());
+    }
+
+    @Test
+    void jaxb_compressedExecutionContext() throws JAXBException {
+        var compressed = new byte[]{1, 2, 3};
+        jobExecutionDocument.setCompressedExecutionContext(compressed);
+
+        var context = JAXBContext.newInstance(JobExecutionDocument.class);
+
+        var stringWriter = new StringWriter();
+        context.createMarshaller().marshal(jobExecutionDocument, stringWriter);
+        String xmlString = stringWriter.toString();
+
+        assertTrue(xmlString.contains("<compressedExecutionContext>AQID</compressedExecutionContext>"), xmlString);
+        assertFalse(xmlString.contains("<executionContext>"), xmlString);
+
+        var resultDoc = (JobExecutionDocument) context.createUnmarshaller().unmarshal(new StringReader(xmlString));
+
+        assertArrayEquals(compressed, resultDoc.getCompressedExecutionContext());
+        assertNull(resultDoc.getExecutionContext());
+        assertNull(resultDoc.getBsonExecutionContext());
+    }
+
+    @Test
+    void jaxb_bsonExecutionContext() throws JAXBException {
+        jobExecutionDocument.setBsonExecutionContext(new Document("long", 1L).append("string", "text"));
+
+        var context = JAXBContext.newInstance(JobExecutionDocument.class);
+
+        var stringWriter = new StringWriter();
+        context.createMarshaller().marshal(jobExecutionDocument, stringWriter);
+        String xmlString = stringWriter.toString();
+
+        assertTrue(xmlString.contains("<bsonExecutionContext>"), xmlString);
+        assertFalse(xmlString.contains("<executionContext>"), xmlString);
+
+        var resultDoc = (JobExecutionDocument) context.createUnmarshaller().unmarshal(new StringReader(xmlString));
+
+        assertEquals(jobExecutionDocument, resultDoc);
+        assertEquals(1L, resultDoc.getBsonExecutionContext().get("long"));
+        assertNull(resultDoc.getExecutionContext());
+        assertNull(resultDoc.getCompressedExecutionContext());
+    }
+}
@@ -2,6 +2,7 @@ package io.github.wirednerd.springbatch.document;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -13,7 +14,10 @@ import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.Date;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class StepExecutionDocumentTest extends MongoDBContainerConfig {
@@ -30,6 +34,7 @@ class StepExecutionDocumentTest extends MongoDBContainerConfig {
 
         stepExecutionDocument.setStepExecutionId(1L);
         stepExecutionDocument.setStepName("Name");
+        stepExecutionDocument.setVersion(10);
         stepExecutionDocument.setReadCount(2);
         stepExecutionDocument.setWriteCount(3);
         stepExecutionDocument.setCommitCount(4);
@@ -55,6 +60,7 @@ class StepExecutionDocumentTest extends MongoDBContainerConfig {
 
         assertTrue(docJsonString.contains("\"stepExecutionId\":1"), docJsonString);
         assertTrue(docJsonString.contains("\"stepName\":\"Name\""), docJsonString);
+        assertTrue(docJsonString.contains("\"version\":10"), docJsonString);
         assertTrue(docJsonString.contains("\"readCount\":2"), docJsonString);
         assertTrue(docJsonString.contains("\"writeCount\":3"), docJsonString);
         assertTrue(docJsonString.contains("\"commitCount\":4"), docJsonString);
@@ -96,6 +102,7 @@ class StepExecutionDocumentTest extends MongoDBContainerConfig {
 
         assertEquals(stepExecutionDocument.getStepExecutionId(), docBson.getLong("stepExecutionId"));
         assertEquals(stepExecutionDocument.getStepName(), docBson.getString("stepName"));
+        assertEquals(stepExecutionDocument.getVersion(), docBson.getInteger("version"));
         assertEquals(stepExecutionDocument.getReadCount(), docBson.getInteger("readCount"));
         assertEquals(stepExecutionDocument.getWriteCount(), docBson.getInteger("writeCount"));
         assertEquals(stepExecutionDocument.getCommitCount(), docBson.getInteger("commitCount"));
@@ -111,7 +118,7 @@ class StepExecutionDocumentTest extends MongoDBContainerConfig {
         assertEquals(stepExecutionDocument.getExitCode(), docBson.getString("exitCode"));
         assertEquals(stepExecutionDocument.getExitDescription(), docBson.getString("exitDescription"));
         assertEquals(stepExecutionDocument.getExecutionContext(), docBson.getString("executionContext"));
-        assertEquals(17, docBson.size());
+        assertEquals(18, docBson.size());
 
         var resultDoc = mongoTemplate.getConverter().read(StepExecutionDocument.class, docBson);
 
@@ -146,6 +153,7 @@ class StepExecutionDocumentTest extends MongoDBContainerConfig {
         assertTrue(xmlString.contains("</stepExecution>"), xmlString);
         assertTrue(xmlString.contains("<stepExecutionId>1</stepExecutionId>"), xmlString);
         assertTrue(xmlString.contains("<stepName>Name</stepName>"), xmlString);
+        assertTrue(xmlString.contains("<version>10</version>"), xmlString);
         assertTrue(xmlString.contains("<readCount>2</readCount>"), xmlString);
         assertTrue(xmlString.contains("<writeCount>3</writeCount>"), xmlString);
         assertTrue(xmlString.contains("<commitCount>4</commitCount>"), xmlString);
@@ -187,4 +195,82 @@ class StepExecutionDocumentTest extends MongoDBContainerConfig {
 
         assertEquals(stepExecutionDocument, resultDoc);
     }
-}
\ No newline at end of file
+
+    @Test
+    void jacksonObjectMapper_compressedExecutionContext() throws JsonProcessingException {
+        var compressed = new byte[]{1, 2, 3};
+        stepExecutionDocument.setCompressedExecutionContext(compressed);
+
+        var om = new ObjectMapper();
+        String json = om.writeValueAsString(stepExecutionDocument);
+
+        assertTrue(json.contains("\"compressedExecutionContext\":\"AQID\""), json);
+        assertFalse(json.contains("\"executionContext\""), json);
+
+        var resultDoc = om.readValue(json, StepExecutionDocument.class);
+
+        assertArrayEquals(compressed, resultDoc.getCompressedExecutionContext());
+        assertNull(resultDoc.getExecutionContext());
+        assertNull(resultDoc.getBsonExecutionContext());
+    }
+
+    @Test
+    void jacksonObjectMapper_bsonExecutionContext() throws JsonProcessingException {
+        stepExecutionDocument.setBsonExecutionContext(new Document("long", 1L).append("string", "text"));
+
+        var om = new ObjectMapper();
+        String json = om.writeValueAsString(stepExecutionDocument);
+
+        assertTrue(json.contains("\"bsonExecutionContext\":"), json);
+        assertFalse(json.contains("\"executionContext\""), json);
+
+        var resultDoc = om.readValue(json, StepExecutionDocument.class);
+
+        assertEquals(stepExecutionDocument, resultDoc);
+        assertEquals(1L, resultDoc.getBsonExecutionContext().get("long"));
+        assertNull(resultDoc.getExecutionContext());
+        assertNull(resultDoc.getCompressedExecutionContext());
+    }
+
+    @Test
+    void jaxb_compressedExecutionContext() throws JAXBException {
+        var compressed = new byte[]{1, 2, 3};
+        stepExecutionDocument.setCompressedExecutionContext(compressed);
+
+        var context = JAXBContext.newInstance(StepExecutionDocument.class);
+
+        var stringWriter = new StringWriter();
+        context.createMarshaller().marshal(stepExecutionDocument, stringWriter);
+        String xmlString = stringWriter.toString();
+
+        assertTrue(xmlString.contains("<compressedExecutionContext>AQID</compressedExecutionContext>"), xmlString);
+        assertFalse(xmlString.contains("<executionContext>"), xmlString);
+
+        var resultDoc = (StepExecutionDocument) context.createUnmarshaller().unmarshal(new StringReader(xmlString));
+
+        assertArrayEquals(compressed, resultDoc.getCompressedExecutionContext());
+        assertNull(resultDoc.getExecutionContext());
+        assertNull(resultDoc.getBsonExecutionContext());
+    }
+
+    @Test
+    void jaxb_bsonExecutionContext() throws JAXBException {
+        stepExecutionDocument.setBsonExecutionContext(new Document("long", 1L).append("string", "text"));
+
+        var context = JAXBContext.newInstance(StepExecutionDocument.class);
+
+        var stringWriter = new StringWriter();
+        context.createMarshaller().marshal(stepExecutionDocument, stringWriter);
+        String xmlString = stringWriter.toString();
+
+        assertTrue(xmlString.contains("<bsonExecutionContext>"), xmlString);
+        assertFalse(xmlString.contains("<executionContext>"), xmlString);
+
+        var resultDoc = (StepExecutionDocument) context.createUnmarshaller().unmarshal(new StringReader(xmlString));
+
+        assertEquals(stepExecutionDocument, resultDoc);
+        assertEquals(1L, resultDoc.getBsonExecutionContext().get("long"));
+        assertNull(resultDoc.getExecutionContext());
+        assertNull(resultDoc.getCompressedExecutionContext());
+    }
+}
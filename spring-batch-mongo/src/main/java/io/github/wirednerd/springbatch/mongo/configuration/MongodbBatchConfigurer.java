@@ -1,10 +1,21 @@
 package io.github.wirednerd.springbatch.mongo.configuration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.ReadConcern;
+import com.mongodb.WriteConcern;
+import io.github.wirednerd.springbatch.document.ExecutionContextFormat;
 import io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper;
 import io.github.wirednerd.springbatch.mongo.explore.MongodbJobExplorer;
+import io.github.wirednerd.springbatch.mongo.repository.ConcernMongoTemplate;
+import io.github.wirednerd.springbatch.mongo.repository.IdGenerator;
+import io.github.wirednerd.springbatch.mongo.repository.MongodbCounter;
+import io.github.wirednerd.springbatch.mongo.repository.MongodbExecutionContextOverflow;
 import io.github.wirednerd.springbatch.mongo.repository.MongodbJobRepository;
+import io.github.wirednerd.springbatch.mongo.repository.MongodbStepExecutionCollection;
+import io.github.wirednerd.springbatch.mongo.repository.OperationCategory;
 import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
 import org.springframework.batch.core.JobKeyGenerator;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.configuration.annotation.BatchConfigurer;
@@ -14,27 +25,52 @@ import org.springframework.batch.core.launch.support.SimpleJobLauncher;
 import org.springframework.batch.core.repository.ExecutionContextSerializer;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.repository.dao.Jackson2ExecutionContextStringSerializer;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.MongoTransactionManager;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.util.Assert;
 
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper.*;
 import static io.github.wirednerd.springbatch.mongo.MongodbRepositoryConstants.DEFAULT_COUNTER_COLLECTION;
 import static io.github.wirednerd.springbatch.mongo.MongodbRepositoryConstants.DEFAULT_JOB_COLLECTION;
+import static io.github.wirednerd.springbatch.mongo.MongodbRepositoryConstants.STEP_EXECUTIONS_STEP_NAME;
 
 /**
  * <p>Primary class for enabling Mongodb for storing Spring Batch job execution data.</p>
  * <p>{@link MongoTemplate} and {@link PlatformTransactionManager} instances are required.
  * And it is strongly recommended to {@link EnableTransactionManagement}</p>
+ * <p>A {@link PlatformTransactionManager} is not required in transaction free mode.
+ * See {@link Builder#transactionFree(boolean)}</p>
  * <p>Example Configuration:</p>
  * <pre>
  * &#64;Configuration
@@ -56,24 +92,52 @@ import static io.github.wirednerd.springbatch.mongo.MongodbRepositoryConstants.D
  * }
  * </pre>
  *
- * <p>In the jobCollection, creates 4 Indexes:</p>
+ * <p>In the jobCollection, creates 6 Indexes:</p>
  * <ul>
  * <li>Unique Index on jobName, jobKey, and jobExecutionId named "jobInstance_jobExecution_unique"</li>
  * <li>Unique Index on jobExecutionId named "jobExecutionId_unique"</li>
  * <li>Index on jobInstanceId named "jobInstanceId"</li>
  * <li>Index on jobName, jobInstanceId named "jobName_jobInstanceId"</li>
+ * <li>Partial Unique Index on jobName, jobKey, launchGuard named "launchGuard_unique".
+ * See {@link MongodbJobRepository#launchGuardIndex()}</li>
+ * <li>Multikey Index on jobInstanceId, stepExecutions.stepName named "jobInstanceId_stepName"</li>
  * </ul>
+ * <p>When a step collection name is set, the indexes from {@link MongodbStepExecutionCollection#indexes()}
+ * are also created in the step collection.</p>
+ * <p>Existing indexes are read, and only missing indexes are created.
+ * Unique indexes are created before the counters, and before any other index.
+ * See {@link Builder#schemaInitialization(SchemaInitialization)} for other options.</p>
  *
  * @author Peter Busch
  */
+@Slf4j
 @SuppressWarnings({"SameNameButDifferent", "PMD.CommentSize"})
-public class MongodbBatchConfigurer implements BatchConfigurer {
+public class MongodbBatchConfigurer implements BatchConfigurer, DisposableBean {
 
     private final JobRepository jobRepository;
     private final PlatformTransactionManager transactionManager;
     private final SimpleJobLauncher jobLauncher;
     private final JobExplorer jobExplorer;
 
+    /**
+     * Created when no counter prefetch {@link Executor} is provided, and shut down by {@link #destroy()}.
+     */
+    @Nullable
+    private final ExecutorService ownedCounterPrefetchExecutor;
+
+    /**
+     * Number of threads of the counter prefetch {@link Executor} created by the configurer, one for each counter.
+     */
+    private static final int COUNTER_PREFETCH_THREADS = 3;
+
+    /**
+     * Appended to the job collection name, to name the document in the counter collection that records the settings
+     * of the last build.  Settings that need a check of existing data are only checked when they change.
+     */
+    private static final String SCHEMA_SETTINGS_SUFFIX = ".schema";
+    private static final String STEP_EXECUTION_ID_FROM_JOB_EXECUTION = "stepExecutionIdFromJobExecution";
+    private static final String STEP_COLLECTION_NAME = "stepCollectionName";
+
     /**
      * MongodbBatchConfigurer can be created using this constructor or the static {@link MongodbBatchConfigurer.Builder}
      *
@@ -95,54 +159,316 @@ public class MongodbBatchConfigurer implements BatchConfigurer {
                                   @Nullable ExecutionContextSerializer executionContextSerializer,
                                   @Nullable ObjectMapper objectMapper,
                                   @Nullable Charset executionContextCharset) {
+        this(builder()
+                .mongoTemplate(mongoTemplate)
+                .jobCollectionName(jobCollectionName)
+                .counterCollectionName(counterCollectionName)
+                .mongoTransactionManager(transactionManager)
+                .taskExecutor(taskExecutor)
+                .jobKeyGenerator(jobKeyGenerator)
+                .executionContextSerializer(executionContextSerializer)
+                .objectMapper(objectMapper)
+                .executionContextCharset(executionContextCharset));
+    }
+
+    private MongodbBatchConfigurer(final Builder builder) {
+        var mongoTemplate = builder.mongoTemplate;
+        var jobCollectionName = builder.jobCollectionName;
+        var counterCollectionName = builder.counterCollectionName;
 
         Assert.notNull(mongoTemplate, "A MongoTemplate is required");
-        Assert.notNull(transactionManager, "A MongoTransactionManager is required");
+        if (builder.transactionFree) {
+            Assert.isTrue(!(builder.mongoTransactionManager instanceof MongoTransactionManager),
+                    "A MongoTransactionManager must not be used in transaction free mode");
+        } else {
+            Assert.notNull(builder.mongoTransactionManager, "A MongoTransactionManager is required");
+        }
         Assert.hasLength(jobCollectionName, "Job Collection Name must not be null or blank");
         Assert.hasLength(counterCollectionName, "Counter Collection Name must not be null or blank");
+        Assert.notNull(builder.schemaInitialization, "Schema Initialization must not be null");
+        Assert.isTrue(builder.stepExecutionFlushIntervalMillis >= 0 && builder.stepExecutionFlushCommits >= 0,
+                "Step execution write behind limits must not be negative");
+        Assert.isTrue(builder.stepExecutionUpdateRetries >= 0 && builder.stepExecutionUpdateRetryBackoffMillis >= 0,
+                "Step execution update retries and backoff must not be negative");
 
-        JobExecutionDocumentMapper jobExecutionDocumentMapper = buildJobExecutionDocumentMapper(jobKeyGenerator,
-                executionContextSerializer, objectMapper, executionContextCharset);
+        Assert.notNull(builder.executionContextFormat, "Execution Context Format must not be null");
+        Assert.isTrue(builder.executionContextCompressionThreshold >= 0,
+                "Execution Context Compression Threshold must not be negative");
 
-        jobRepository = new MongodbJobRepository(mongoTemplate, jobCollectionName, counterCollectionName, jobExecutionDocumentMapper);
-        this.transactionManager = transactionManager;
+        JobExecutionDocumentMapper jobExecutionDocumentMapper = buildJobExecutionDocumentMapper(builder.jobKeyGenerator,
+                builder.executionContextSerializer, builder.objectMapper, builder.executionContextCharset);
+        jobExecutionDocumentMapper.setExecutionContextFormat(builder.executionContextFormat);
+        jobExecutionDocumentMapper.setExecutionContextCompressionThreshold(builder.executionContextCompressionThreshold);
+
+        ownedCounterPrefetchExecutor = builder.counterPrefetchExecutor == null ? newCounterPrefetchExecutor() : null;
+        Executor counterPrefetchExecutor = builder.counterPrefetchExecutor == null ? ownedCounterPrefetchExecutor
+                : builder.counterPrefetchExecutor;
+
+        jobRepository = new MongodbJobRepository(mongoTemplate, jobCollectionName, counterCollectionName, jobExecutionDocumentMapper,
+                builder.jobInstanceIdGenerator != null ? builder.jobInstanceIdGenerator
+                        : new MongodbCounter(mongoTemplate, JOB_INSTANCE_ID, counterCollectionName,
+                        builder.jobInstanceIdBlockSize, builder.jobInstanceIdLowWaterMark, counterPrefetchExecutor, false),
+                builder.jobExecutionIdGenerator != null ? builder.jobExecutionIdGenerator
+                        : new MongodbCounter(mongoTemplate, JOB_EXECUTION_ID, counterCollectionName,
+                        builder.jobExecutionIdBlockSize, builder.jobExecutionIdLowWaterMark, counterPrefetchExecutor, false),
+                builder.stepExecutionIdGenerator != null ? builder.stepExecutionIdGenerator
+                        : new MongodbCounter(mongoTemplate, STEP_EXECUTION_ID, counterCollectionName,
+                        builder.stepExecutionIdBlockSize, builder.stepExecutionIdLowWaterMark, counterPrefetchExecutor, false));
+        getMongodbJobRepository().setStepExecutionIdFromJobExecution(builder.stepExecutionIdFromJobExecution);
+        getMongodbJobRepository().setCombinedStepExecutionUpdate(builder.combinedStepExecutionUpdate || builder.transactionFree);
+        getMongodbJobRepository().setStepExecutionFlushIntervalMillis(builder.stepExecutionFlushIntervalMillis);
+        getMongodbJobRepository().setStepExecutionFlushCommits(builder.stepExecutionFlushCommits);
+        getMongodbJobRepository().setStepExecutionUpdateRetries(builder.stepExecutionUpdateRetries);
+        getMongodbJobRepository().setStepExecutionUpdateRetryBackoffMillis(builder.stepExecutionUpdateRetryBackoffMillis);
+        getMongodbJobRepository().setStepCollectionName(builder.stepCollectionName);
+        var executionContextOverflow = builder.executionContextOverflowCollectionName == null ? null
+                : new MongodbExecutionContextOverflow(mongoTemplate, builder.executionContextOverflowCollectionName,
+                builder.executionContextOverflowThreshold);
+        getMongodbJobRepository().setExecutionContextOverflow(executionContextOverflow);
+        getMongodbJobRepository().setDeltaExecutionContextUpdate(builder.deltaExecutionContextUpdate);
+        for (var category : OperationCategory.values()) {
+            getMongodbJobRepository().setOperationConcern(category,
+                    builder.writeConcerns.get(category), builder.readConcerns.get(category));
+        }
+        this.transactionManager = builder.mongoTransactionManager != null ? builder.mongoTransactionManager
+                : new ResourcelessTransactionManager();
 
         jobLauncher = new SimpleJobLauncher();
         jobLauncher.setJobRepository(jobRepository);
-        jobLauncher.setTaskExecutor(taskExecutor);
+        jobLauncher.setTaskExecutor(builder.taskExecutor);
         try {
             jobLauncher.afterPropertiesSet();
         } catch (Exception e) { //NOPMD
             throw new RuntimeException(e.getMessage(), e); //NOPMD
         }
 
-        jobExplorer = new MongodbJobExplorer(mongoTemplate, jobCollectionName, jobExecutionDocumentMapper);
+        jobExplorer = new MongodbJobExplorer(builder.explorerReadConcern == null ? mongoTemplate
+                : new ConcernMongoTemplate(mongoTemplate, null, builder.explorerReadConcern),
+                jobCollectionName, jobExecutionDocumentMapper);
+        getMongodbJobExplorer().setStepCollectionName(builder.stepCollectionName);
+        getMongodbJobExplorer().setExecutionContextOverflow(executionContextOverflow);
+
+        initializeSchema(mongoTemplate, jobCollectionName, counterCollectionName, builder.stepCollectionName,
+                builder.schemaInitialization, builder.schemaInitializationExecutor);
+    }
+
+    /**
+     * Reserving a counter block blocks on a database call, so it must not run on a shared pool such as
+     * {@link java.util.concurrent.ForkJoinPool#commonPool()}.  Threads are only started when a block is prefetched,
+     * and stop after a minute without work.
+     */
+    private static ExecutorService newCounterPrefetchExecutor() {
+        var threadFactory = new CustomizableThreadFactory("spring-batch-mongo-counter-");
+        threadFactory.setDaemon(true);
+
+        var executor = new ThreadPoolExecutor(COUNTER_PREFETCH_THREADS, COUNTER_PREFETCH_THREADS,
+                1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Shut down the counter prefetch {@link Executor} created by the configurer.  A provided Executor is not shut down.
+     * Counters used after this reserve their next block when the current block is used up.
+     */
+    @Override
+    public void destroy() {
+        if (ownedCounterPrefetchExecutor != null) {
+            ownedCounterPrefetchExecutor.shutdown();
+        }
+    }
+
+    private void initializeSchema(MongoTemplate mongoTemplate, String jobCollectionName, String counterCollectionName,
+                                  @Nullable String stepCollectionName, SchemaInitialization schemaInitialization,
+                                  @Nullable Executor schemaInitializationExecutor) {
+        if (schemaInitialization == SchemaInitialization.NONE) {
+            return;
+        }
 
-        mongoTemplate.indexOps(jobCollectionName)
-                .ensureIndex(new Index()
+        var repository = getMongodbJobRepository();
+        var schemaSettings = findSchemaSettings(mongoTemplate, jobCollectionName, counterCollectionName);
+        var changedSettings = new Update();
+        var savedStepCollectionName = schemaSettings.getString(STEP_COLLECTION_NAME);
+        if (stepCollectionName == null) {
+            if (savedStepCollectionName != null) {
+                changedSettings.unset(STEP_COLLECTION_NAME);
+            }
+        } else if (!stepCollectionName.equals(savedStepCollectionName)) {
+            Assert.state(!MongodbStepExecutionCollection.hasEmbeddedStepExecutions(mongoTemplate, jobCollectionName),
+                    () -> "Collection " + jobCollectionName + " contains embedded step executions.  "
+                            + "Move them to " + stepCollectionName + " before setting the step collection name.");
+            changedSettings.set(STEP_COLLECTION_NAME, stepCollectionName);
+        }
+        if (repository.isStepExecutionIdFromJobExecution()
+                != schemaSettings.getBoolean(STEP_EXECUTION_ID_FROM_JOB_EXECUTION, false)) {
+            verifyStepExecutionIds(mongoTemplate, jobCollectionName, counterCollectionName);
+            changedSettings.set(STEP_EXECUTION_ID_FROM_JOB_EXECUTION, repository.isStepExecutionIdFromJobExecution());
+        }
+        if (!changedSettings.getUpdateObject().isEmpty()) {
+            mongoTemplate.upsert(schemaSettingsQuery(jobCollectionName), changedSettings, counterCollectionName);
+        }
+
+        var counterNames = new ArrayList<String>();
+        for (var counter : Arrays.asList(repository.getJobInstanceCounter(),
+                repository.getJobExecutionCounter(), repository.getStepExecutionCounter())) {
+            if (counter != null) {
+                counterNames.add(counter.getCounterName());
+            }
+        }
+
+        var collectionIndexes = new ArrayList<Map.Entry<String, List<Index>>>();
+        if (!counterNames.isEmpty()) {
+            collectionIndexes.add(Map.entry(counterCollectionName, List.of(MongodbCounter.counterIndex())));
+        }
+        collectionIndexes.add(Map.entry(jobCollectionName, jobIndexes()));
+        if (stepCollectionName != null) {
+            collectionIndexes.add(Map.entry(stepCollectionName, MongodbStepExecutionCollection.indexes()));
+        }
+        if (repository.getExecutionContextOverflow() != null) {
+            collectionIndexes.add(Map.entry(repository.getExecutionContextOverflow().getCollectionName(),
+                    MongodbExecutionContextOverflow.indexes()));
+        }
+
+        // Both passes use the same listIndexes result, as the first pass only creates unique indexes
+        var existingIndexes = new HashMap<String, Set<String>>();
+        collectionIndexes.forEach(entry -> existingIndexes.put(entry.getKey(),
+                findIndexNames(mongoTemplate, entry.getKey())));
+
+        // Unique indexes prevent duplicate counters, ids, and launches, so they are never left to the background
+        collectionIndexes.forEach(entry -> initializeIndexes(mongoTemplate, entry.getKey(),
+                filterIndexes(entry.getValue(), true), existingIndexes.get(entry.getKey()), schemaInitialization));
+
+        if (schemaInitialization == SchemaInitialization.VERIFY) {
+            MongodbCounter.findMissingCounters(mongoTemplate, counterCollectionName, counterNames).forEach(counterName ->
+                    log.warn("Counter {} is missing from collection {}", counterName, counterCollectionName));
+        } else {
+            MongodbCounter.initializeCounters(mongoTemplate, counterCollectionName, counterNames);
+        }
+
+        Runnable indexes = () -> collectionIndexes.forEach(entry -> initializeIndexes(mongoTemplate, entry.getKey(),
+                filterIndexes(entry.getValue(), false), existingIndexes.get(entry.getKey()), schemaInitialization));
+
+        if (schemaInitialization == SchemaInitialization.CREATE_IN_BACKGROUND) {
+            var ownedExecutor = schemaInitializationExecutor == null ? newIndexExecutor() : null;
+            CompletableFuture.runAsync(indexes, ownedExecutor == null ? schemaInitializationExecutor : ownedExecutor)
+                    .exceptionally(e -> {
+                        log.error("Unable to create Spring Batch indexes", e);
+                        return null;
+                    });
+            if (ownedExecutor != null) {
+                // The index builds already submitted still run, then the thread ends
+                ownedExecutor.shutdown();
+            }
+        } else {
+            indexes.run();
+        }
+    }
+
+    /**
+     * @return the settings recorded by the last build, or an empty document if there are none
+     */
+    private static Document findSchemaSettings(MongoTemplate mongoTemplate, String jobCollectionName,
+                                               String counterCollectionName) {
+        var schemaSettings = mongoTemplate.findOne(schemaSettingsQuery(jobCollectionName), Document.class,
+                counterCollectionName);
+        return schemaSettings == null ? new Document() : schemaSettings;
+    }
+
+    private static Query schemaSettingsQuery(String jobCollectionName) {
+        return Query.query(Criteria.where(MongodbCounter.COUNTER_FIELD_NAME).is(jobCollectionName + SCHEMA_SETTINGS_SUFFIX));
+    }
+
+    /**
+     * stepExecutionIds from job execution sequences start at 2<sup>20</sup>, so they can only collide with counter
+     * values at or above that.  Switching either way is refused when such values exist.  Only called when the
+     * setting differs from the last build, so the job collection is not searched on every start.
+     */
+    private void verifyStepExecutionIds(MongoTemplate mongoTemplate, String jobCollectionName, String counterCollectionName) {
+        var stepExecutionCounter = getMongodbJobRepository().getStepExecutionCounter();
+        if (stepExecutionCounter == null) {
+            return;
+        }
+
+        var counterName = stepExecutionCounter.getCounterName();
+        var counterValue = MongodbCounter.findCounterValue(mongoTemplate, counterCollectionName, counterName);
+        if (getMongodbJobRepository().isStepExecutionIdFromJobExecution()) {
+            Assert.state(counterValue < 1L << MongodbJobRepository.STEP_EXECUTION_SEQUENCE_BITS,
+                    () -> "Counter " + counterName + " in collection " + counterCollectionName + " is at " + counterValue
+                            + ".  Its stepExecutionIds can collide with stepExecutionIds from job execution sequences.");
+        } else {
+            var lastSequencedId = MongodbJobRepository.findLastSequencedStepExecutionId(mongoTemplate, jobCollectionName);
+            Assert.state(counterValue >= lastSequencedId,
+                    () -> "Collection " + jobCollectionName + " contains stepExecutionIds up to " + lastSequencedId
+                            + " from job execution sequences.  Set counter " + counterName + " in collection "
+                            + counterCollectionName + " to at least " + lastSequencedId + " before using it.");
+        }
+    }
+
+    private List<Index> jobIndexes() {
+        return List.of(
+                new Index()
                         .on(JOB_NAME, Sort.Direction.ASC)
                         .on(JOB_KEY, Sort.Direction.ASC)
                         .on(JOB_EXECUTION_ID, Sort.Direction.DESC)
                         .named("jobInstance_jobExecution_unique")
-                        .unique());
-
-        mongoTemplate.indexOps(jobCollectionName)
-                .ensureIndex(new Index()
+                        .unique(),
+                new Index()
                         .on(JOB_EXECUTION_ID, Sort.Direction.DESC)
                         .named("jobExecutionId_unique")
-                        .unique());
-
-        mongoTemplate.indexOps(jobCollectionName)
-                .ensureIndex(new Index()
+                        .unique(),
+                new Index()
                         .on(JOB_INSTANCE_ID, Sort.Direction.DESC)
-                        .named("jobInstanceId"));
-
-        mongoTemplate.indexOps(jobCollectionName)
-                .ensureIndex(new Index()
+                        .named("jobInstanceId"),
+                new Index()
                         .on(JOB_NAME, Sort.Direction.ASC)
                         .on(JOB_INSTANCE_ID, Sort.Direction.DESC)
-                        .named("jobName_jobInstanceId"));
+                        .named("jobName_jobInstanceId"),
+                MongodbJobRepository.launchGuardIndex(),
+                new Index()
+                        .on(JOB_INSTANCE_ID, Sort.Direction.DESC)
+                        .on(STEP_EXECUTIONS_STEP_NAME, Sort.Direction.ASC)
+                        .named("jobInstanceId_stepName"));
+    }
+
+    private static List<Index> filterIndexes(List<Index> indexes, boolean unique) {
+        return indexes.stream()
+                .filter(index -> unique == Boolean.TRUE.equals(index.getIndexOptions().get("unique")))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Index builds can block for a long time on a large collection, so they must not run on a shared pool such as
+     * {@link java.util.concurrent.ForkJoinPool#commonPool()}.
+     */
+    private static ExecutorService newIndexExecutor() {
+        var threadFactory = new CustomizableThreadFactory("spring-batch-mongo-indexes-");
+        threadFactory.setDaemon(true);
+        return Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    private static Set<String> findIndexNames(MongoTemplate mongoTemplate, String collectionName) {
+        return mongoTemplate.indexOps(collectionName).getIndexInfo().stream()
+                .map(IndexInfo::getName)
+                .collect(Collectors.toSet());
+    }
 
+    /**
+     * Create or report each index that is not in the existing indexes.
+     */
+    private void initializeIndexes(MongoTemplate mongoTemplate, String collectionName, List<Index> indexes,
+                                   Set<String> existingIndexes, SchemaInitialization schemaInitialization) {
+        var indexOps = mongoTemplate.indexOps(collectionName);
+        for (var index : indexes) {
+            var indexName = index.getIndexOptions().getString("name");
+            if (existingIndexes.contains(indexName)) {
+                continue;
+            }
+            if (schemaInitialization == SchemaInitialization.VERIFY) {
+                log.warn("Index {} is missing from collection {}", indexName, collectionName);
+            } else {
+                indexOps.ensureIndex(index);
+            }
+        }
     }
 
     private JobExecutionDocumentMapper buildJobExecutionDocumentMapper(@Nullable JobKeyGenerator<JobParameters> jobKeyGenerator,
@@ -233,12 +559,40 @@ public class MongodbBatchConfigurer implements BatchConfigurer {
         private MongoTemplate mongoTemplate;
         private String jobCollectionName = DEFAULT_JOB_COLLECTION;
         private String counterCollectionName = DEFAULT_COUNTER_COLLECTION;
+        private String stepCollectionName;
+        private String executionContextOverflowCollectionName;
+        private int executionContextOverflowThreshold;
         private PlatformTransactionManager mongoTransactionManager;
+        private boolean transactionFree;
         private TaskExecutor taskExecutor;
         private JobKeyGenerator<JobParameters> jobKeyGenerator;
         private ExecutionContextSerializer executionContextSerializer;
         private ObjectMapper objectMapper;
         private Charset executionContextCharset;
+        private ExecutionContextFormat executionContextFormat = ExecutionContextFormat.STRING;
+        private int executionContextCompressionThreshold;
+        private int jobInstanceIdBlockSize = 1;
+        private int jobExecutionIdBlockSize = 1;
+        private int stepExecutionIdBlockSize = 1;
+        private int jobInstanceIdLowWaterMark;
+        private int jobExecutionIdLowWaterMark;
+        private int stepExecutionIdLowWaterMark;
+        private IdGenerator jobInstanceIdGenerator;
+        private IdGenerator jobExecutionIdGenerator;
+        private IdGenerator stepExecutionIdGenerator;
+        private Executor counterPrefetchExecutor;
+        private boolean stepExecutionIdFromJobExecution;
+        private boolean combinedStepExecutionUpdate;
+        private long stepExecutionFlushIntervalMillis;
+        private int stepExecutionFlushCommits;
+        private int stepExecutionUpdateRetries;
+        private long stepExecutionUpdateRetryBackoffMillis = 10;
+        private boolean deltaExecutionContextUpdate;
+        private final Map<OperationCategory, WriteConcern> writeConcerns = new EnumMap<>(OperationCategory.class);
+        private final Map<OperationCategory, ReadConcern> readConcerns = new EnumMap<>(OperationCategory.class);
+        private ReadConcern explorerReadConcern;
+        private SchemaInitialization schemaInitialization = SchemaInitialization.CREATE;
+        private Executor schemaInitializationExecutor;
 
         /**
          * Specify a {@link MongoTemplate} to be used for Spring Batch job execution data.
@@ -273,6 +627,44 @@ public class MongodbBatchConfigurer implements BatchConfigurer {
             return this;
         }
 
+        /**
+         * <p>Use to store step executions as separate documents in this collection,
+         * instead of in the "stepExecutions" array of the job execution document.
+         * Recommended for jobs with thousands of step executions, such as partitioned steps.</p>
+         * <p>Defaults to null, which embeds step executions in the job execution document.
+         * See {@link MongodbStepExecutionCollection}</p>
+         * <p>Existing step executions are not moved.  Unless schemaInitialization is
+         * {@link SchemaInitialization#NONE}, build fails with an {@link IllegalStateException}
+         * while the job collection still contains embedded step executions.  The step collection name is recorded,
+         * so the job collection is only searched for them when it changes.</p>
+         *
+         * @param stepCollectionName collection name to use for Step Execution Data, or null to embed step executions
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder stepCollectionName(@Nullable final String stepCollectionName) {
+            this.stepCollectionName = stepCollectionName;
+            return this;
+        }
+
+        /**
+         * <p>Use to store execution contexts that are at least threshold bytes long as chunk documents in this
+         * collection, instead of in the job or step execution document.  Prevents job failures when an execution
+         * context approaches the document size limit.  Smaller execution contexts are still stored inline.</p>
+         * <p>Defaults to null, which stores all execution contexts inline.
+         * See {@link MongodbExecutionContextOverflow}</p>
+         *
+         * @param collectionName collection name to use for oversized execution contexts, or null to store all inline
+         * @param threshold      minimum size in bytes of an execution context that is stored in this collection
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder executionContextOverflow(@Nullable final String collectionName, final int threshold) {
+            this.executionContextOverflowCollectionName = collectionName;
+            this.executionContextOverflowThreshold = threshold;
+            return this;
+        }
+
         /**
          * Specify a {@link MongoTransactionManager} that can be used to manage transactions on the provided {@link MongoTemplate}
          *
@@ -284,6 +676,69 @@ public class MongodbBatchConfigurer implements BatchConfigurer {
             return this;
         }
 
+        /**
+         * <p>When true, MongoDB transactions are not used, so a replica set is not required.
+         * Every job repository operation is then a single document write, which is atomic on its own:</p>
+         * <ul>
+         * <li>Job executions are created with one conditional insert.
+         * See {@link MongodbJobRepository#launchGuardIndex()}</li>
+         * <li>Each chunk commit writes the step execution and its execution context with one update,
+         * as with {@link #combinedStepExecutionUpdate(boolean)}, which is always enabled in this mode</li>
+         * <li>Counters and the "stepExecutionSequence" field are incremented with one update</li>
+         * <li>Overflow chunks are written before the execution context that references them,
+         * and replaced chunks are removed after it</li>
+         * </ul>
+         * <p>No {@link MongoTransactionManager} may be set.  Any other {@link PlatformTransactionManager},
+         * e.g. for a jdbc data source used by the steps, is still returned by
+         * {@link MongodbBatchConfigurer#getTransactionManager()}.  Otherwise a {@link ResourcelessTransactionManager}
+         * is used.</p>
+         * <p>Items written by a chunk are not committed together with the step execution.  If the application stops
+         * between the two writes, the chunk is written again when the job is restarted,
+         * so item writers must be idempotent.  Defaults to false.</p>
+         *
+         * @param transactionFree true to run without MongoDB transactions
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder transactionFree(final boolean transactionFree) {
+            this.transactionFree = transactionFree;
+            return this;
+        }
+
+        /**
+         * <p>Use a write and read concern for a category of job repository operations, instead of the defaults of the
+         * {@link MongoTemplate}.  For example, "majority" for {@link OperationCategory#CREATION} and
+         * {@link OperationCategory#STATUS}, and w:1 for {@link OperationCategory#PROGRESS}.</p>
+         * <p>MongoDB ignores these concerns inside a transaction, such as the chunk commits of a step that uses the
+         * {@link MongoTransactionManager}.  See {@link #transactionFree(boolean)}</p>
+         * <p>See {@link MongodbJobRepository#setOperationConcern(OperationCategory, WriteConcern, ReadConcern)}</p>
+         *
+         * @param category     category of job repository operations
+         * @param writeConcern write concern, or null for the default of the {@link MongoTemplate}
+         * @param readConcern  read concern, or null for the default of the {@link MongoTemplate}
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder operationConcern(final OperationCategory category, @Nullable final WriteConcern writeConcern,
+                                        @Nullable final ReadConcern readConcern) {
+            this.writeConcerns.put(category, writeConcern);
+            this.readConcerns.put(category, readConcern);
+            return this;
+        }
+
+        /**
+         * Read concern of all {@link MongodbJobExplorer} queries.  Defaults to null, which uses the default of the
+         * {@link MongoTemplate}.
+         *
+         * @param explorerReadConcern read concern of all job explorer queries, or null for the default
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder explorerReadConcern(@Nullable final ReadConcern explorerReadConcern) {
+            this.explorerReadConcern = explorerReadConcern;
+            return this;
+        }
+
         /**
          * {@link TaskExecutor} that will be used when building the {@link JobLauncher} (not required)
          *
@@ -344,14 +799,299 @@ public class MongodbBatchConfigurer implements BatchConfigurer {
             return this;
         }
 
+        /**
+         * <p>Use {@link ExecutionContextFormat#BSON} to store execution contexts as sub-documents,
+         * instead of Strings created by the {@link ExecutionContextSerializer}.
+         * Execution contexts in either format can always be read.  Defaults to {@link ExecutionContextFormat#STRING}</p>
+         *
+         * @param executionContextFormat how execution contexts are stored
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder executionContextFormat(final ExecutionContextFormat executionContextFormat) {
+            this.executionContextFormat = executionContextFormat;
+            return this;
+        }
+
+        /**
+         * <p>Execution contexts in the {@link ExecutionContextFormat#STRING} format that are at least this many bytes
+         * long are compressed with deflate, and stored as binary.  Compressed and uncompressed execution contexts can
+         * always be read.  Defaults to 0, which disables compression.</p>
+         * <p>See {@link io.github.wirednerd.springbatch.document.ExecutionContextCompressor}</p>
+         *
+         * @param executionContextCompressionThreshold minimum size in bytes of a compressed execution context
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder executionContextCompressionThreshold(final int executionContextCompressionThreshold) {
+            this.executionContextCompressionThreshold = executionContextCompressionThreshold;
+            return this;
+        }
+
+        /**
+         * <p>Number of jobInstanceId values the counter reserves from the database with each call.  Defaults to 1</p>
+         * <p>See {@link MongodbCounter}</p>
+         *
+         * @param jobInstanceIdBlockSize number of values to reserve with each call
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder jobInstanceIdBlockSize(final int jobInstanceIdBlockSize) {
+            return jobInstanceIdBlockSize(jobInstanceIdBlockSize, 0);
+        }
+
+        /**
+         * <p>Number of jobInstanceId values the counter reserves from the database with each call.
+         * When only lowWaterMark values remain, the next block is reserved in the background.</p>
+         * <p>See {@link MongodbCounter}</p>
+         *
+         * @param jobInstanceIdBlockSize number of values to reserve with each call
+         * @param lowWaterMark number of remaining values that triggers reserving the next block
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder jobInstanceIdBlockSize(final int jobInstanceIdBlockSize, final int lowWaterMark) {
+            this.jobInstanceIdBlockSize = jobInstanceIdBlockSize;
+            this.jobInstanceIdLowWaterMark = lowWaterMark;
+            return this;
+        }
+
+        /**
+         * <p>Number of jobExecutionId values the counter reserves from the database with each call.  Defaults to 1</p>
+         * <p>See {@link MongodbCounter}</p>
+         *
+         * @param jobExecutionIdBlockSize number of values to reserve with each call
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder jobExecutionIdBlockSize(final int jobExecutionIdBlockSize) {
+            return jobExecutionIdBlockSize(jobExecutionIdBlockSize, 0);
+        }
+
+        /**
+         * <p>Number of jobExecutionId values the counter reserves from the database with each call.
+         * When only lowWaterMark values remain, the next block is reserved in the background.</p>
+         * <p>See {@link MongodbCounter}</p>
+         *
+         * @param jobExecutionIdBlockSize number of values to reserve with each call
+         * @param lowWaterMark number of remaining values that triggers reserving the next block
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder jobExecutionIdBlockSize(final int jobExecutionIdBlockSize, final int lowWaterMark) {
+            this.jobExecutionIdBlockSize = jobExecutionIdBlockSize;
+            this.jobExecutionIdLowWaterMark = lowWaterMark;
+            return this;
+        }
+
+        /**
+         * <p>Number of stepExecutionId values the counter reserves from the database with each call.  Defaults to 1</p>
+         * <p>See {@link MongodbCounter}</p>
+         *
+         * @param stepExecutionIdBlockSize number of values to reserve with each call
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder stepExecutionIdBlockSize(final int stepExecutionIdBlockSize) {
+            return stepExecutionIdBlockSize(stepExecutionIdBlockSize, 0);
+        }
+
+        /**
+         * <p>Number of stepExecutionId values the counter reserves from the database with each call.
+         * When only lowWaterMark values remain, the next block is reserved in the background.</p>
+         * <p>See {@link MongodbCounter}</p>
+         *
+         * @param stepExecutionIdBlockSize number of values to reserve with each call
+         * @param lowWaterMark number of remaining values that triggers reserving the next block
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder stepExecutionIdBlockSize(final int stepExecutionIdBlockSize, final int lowWaterMark) {
+            this.stepExecutionIdBlockSize = stepExecutionIdBlockSize;
+            this.stepExecutionIdLowWaterMark = lowWaterMark;
+            return this;
+        }
+
+        /**
+         * <p>{@link Executor} used by the counters to reserve their next block in the background,
+         * when a low water mark is set.  It must not be shut down while the counters are in use.</p>
+         * <p>Defaults to null, which uses a small pool of daemon threads that is created by the configurer,
+         * and shut down by {@link MongodbBatchConfigurer#destroy()}.</p>
+         *
+         * @param counterPrefetchExecutor used to reserve counter blocks in the background, or null for the default
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder counterPrefetchExecutor(@Nullable final Executor counterPrefetchExecutor) {
+            this.counterPrefetchExecutor = counterPrefetchExecutor;
+            return this;
+        }
+
+        /**
+         * <p>Specify an {@link IdGenerator} to use for jobInstanceId, jobExecutionId, and stepExecutionId,
+         * instead of the default {@link MongodbCounter} objects.</p>
+         * <p>Example: {@code .idGenerator(new SnowflakeIdGenerator(nodeId))}</p>
+         *
+         * @param idGenerator to use for all ids
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder idGenerator(final IdGenerator idGenerator) {
+            this.jobInstanceIdGenerator = idGenerator;
+            this.jobExecutionIdGenerator = idGenerator;
+            this.stepExecutionIdGenerator = idGenerator;
+            return this;
+        }
+
+        /**
+         * Specify an {@link IdGenerator} to use for jobInstanceId, instead of the default {@link MongodbCounter}.
+         *
+         * @param jobInstanceIdGenerator to use for jobInstanceId
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder jobInstanceIdGenerator(final IdGenerator jobInstanceIdGenerator) {
+            this.jobInstanceIdGenerator = jobInstanceIdGenerator;
+            return this;
+        }
+
+        /**
+         * Specify an {@link IdGenerator} to use for jobExecutionId, instead of the default {@link MongodbCounter}.
+         *
+         * @param jobExecutionIdGenerator to use for jobExecutionId
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder jobExecutionIdGenerator(final IdGenerator jobExecutionIdGenerator) {
+            this.jobExecutionIdGenerator = jobExecutionIdGenerator;
+            return this;
+        }
+
+        /**
+         * Specify an {@link IdGenerator} to use for stepExecutionId, instead of the default {@link MongodbCounter}.
+         *
+         * @param stepExecutionIdGenerator to use for stepExecutionId
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder stepExecutionIdGenerator(final IdGenerator stepExecutionIdGenerator) {
+            this.stepExecutionIdGenerator = stepExecutionIdGenerator;
+            return this;
+        }
+
+        /**
+         * <p>When true, stepExecutionId values are created from a sequence kept in each job execution document,
+         * instead of the stepExecutionId counter.  Defaults to false.</p>
+         * <p>Unless schemaInitialization is NONE, the build fails when ids from the counter and from job execution
+         * sequences could collide: when turning this on after the counter reached 2<sup>20</sup>, or turning it off
+         * while the counter is below the largest id created from a sequence.  The setting is recorded in the counter
+         * collection, and only checked when it differs from the last build.</p>
+         * <p>See {@link MongodbJobRepository#setStepExecutionIdFromJobExecution(boolean)}</p>
+         *
+         * @param stepExecutionIdFromJobExecution true to use job execution sequences for stepExecutionId
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder stepExecutionIdFromJobExecution(final boolean stepExecutionIdFromJobExecution) {
+            this.stepExecutionIdFromJobExecution = stepExecutionIdFromJobExecution;
+            return this;
+        }
+
+        /**
+         * <p>When true, each chunk commit writes the step execution and its execution context with a single update.
+         * See {@link MongodbJobRepository#setCombinedStepExecutionUpdate(boolean)}.  Defaults to false.</p>
+         *
+         * @param combinedStepExecutionUpdate true to write step executions and their execution contexts together
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder combinedStepExecutionUpdate(final boolean combinedStepExecutionUpdate) {
+            this.combinedStepExecutionUpdate = combinedStepExecutionUpdate;
+            return this;
+        }
+
+        /**
+         * <p>Keep updates of running step executions in memory, and only write them when the given number of
+         * milliseconds or commits has passed since the last write.  Use 0 to ignore either limit.
+         * Status changes are always written immediately.  Both default to 0, which writes every update.</p>
+         * <p>See {@link MongodbJobRepository#setStepExecutionFlushCommits(int)}</p>
+         *
+         * @param flushIntervalMillis maximum milliseconds between writes of a running step execution
+         * @param flushCommits        maximum commits between writes of a running step execution
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder stepExecutionWriteBehind(final long flushIntervalMillis, final int flushCommits) {
+            this.stepExecutionFlushIntervalMillis = flushIntervalMillis;
+            this.stepExecutionFlushCommits = flushCommits;
+            return this;
+        }
+
+        /**
+         * <p>Retry step execution updates that fail with an optimistic locking conflict, when the conflicting write
+         * only changed the status, e.g. a stop request.  The saved status is merged before the retry.  The wait
+         * before each retry starts at backoffMillis, doubles for each further retry, and is jittered.
+         * Defaults to 0 retries and 10 milliseconds.</p>
+         * <p>See {@link MongodbJobRepository#setStepExecutionUpdateRetries(int)}</p>
+         *
+         * @param retries       maximum retries of a step execution update
+         * @param backoffMillis milliseconds to wait before the first retry
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder stepExecutionUpdateRetry(final int retries, final long backoffMillis) {
+            this.stepExecutionUpdateRetries = retries;
+            this.stepExecutionUpdateRetryBackoffMillis = backoffMillis;
+            return this;
+        }
+
+        /**
+         * <p>When true, only the keys of BSON execution contexts that changed since they were last written are written.
+         * See {@link MongodbJobRepository#setDeltaExecutionContextUpdate(boolean)}.  Defaults to false.</p>
+         *
+         * @param deltaExecutionContextUpdate true to write only the changed keys of BSON execution contexts
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder deltaExecutionContextUpdate(final boolean deltaExecutionContextUpdate) {
+            this.deltaExecutionContextUpdate = deltaExecutionContextUpdate;
+            return this;
+        }
+
+        /**
+         * <p>Controls how indexes and counters are set up when the configurer is built.
+         * Defaults to {@link SchemaInitialization#CREATE}</p>
+         *
+         * @param schemaInitialization how indexes and counters are set up
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder schemaInitialization(final SchemaInitialization schemaInitialization) {
+            this.schemaInitialization = schemaInitialization;
+            return this;
+        }
+
+        /**
+         * <p>{@link Executor} used to create the non-unique indexes with
+         * {@link SchemaInitialization#CREATE_IN_BACKGROUND}.</p>
+         * <p>Defaults to null, which creates the indexes on a single daemon thread that ends when they are created.</p>
+         *
+         * @param schemaInitializationExecutor used to create indexes in the background, or null for the default
+         * @return {@link Builder}
+         * @since 1.2.0
+         */
+        public Builder schemaInitializationExecutor(@Nullable final Executor schemaInitializationExecutor) {
+            this.schemaInitializationExecutor = schemaInitializationExecutor;
+            return this;
+        }
+
         /**
          * Build a {@link MongodbBatchConfigurer} using the provided values.
          *
          * @return {@link MongodbBatchConfigurer}
          */
         public MongodbBatchConfigurer build() {
-            return new MongodbBatchConfigurer(mongoTemplate, jobCollectionName, counterCollectionName, mongoTransactionManager,
-                    taskExecutor, jobKeyGenerator, executionContextSerializer, objectMapper, executionContextCharset);
+            return new MongodbBatchConfigurer(this);
         }
     }
 }
@@ -0,0 +1,39 @@
+package io.github.wirednerd.springbatch.mongo.configuration;
+
+/**
+ * <p>Controls the indexes and counters {@link MongodbBatchConfigurer} sets up while it is being built.</p>
+ * <p>Each mode reads the existing indexes with one listIndexes call per collection, and creates all missing counters
+ * with a single bulk write.  Unique indexes are always handled before the counters, so that concurrent starts on a new database
+ * cannot create duplicate counters.</p>
+ *
+ * @author Peter Busch
+ * @since 1.2.0
+ */
+public enum SchemaInitialization {
+
+    /**
+     * Create any missing indexes and counters before the configurer is returned.  This is the default.
+     */
+    CREATE,
+
+    /**
+     * <p>Create any missing unique indexes and counters before the configurer is returned,
+     * and create any other missing indexes in the background.</p>
+     * <p>Unique indexes guard against duplicate ids and launches, so only indexes used for query performance
+     * are created in the background.</p>
+     * <p>Background indexes are created on a single daemon thread, or on the
+     * {@link MongodbBatchConfigurer.Builder#schemaInitializationExecutor(java.util.concurrent.Executor)}.</p>
+     */
+    CREATE_IN_BACKGROUND,
+
+    /**
+     * Log a warning for each missing index and counter, without creating it.
+     * For environments where indexes are managed by a migration tool.
+     */
+    VERIFY,
+
+    /**
+     * Make no database calls.  All indexes and counters must already exist.
+     */
+    NONE
+}
@@ -3,7 +3,10 @@ package io.github.wirednerd.springbatch.mongo.explore;
 import io.github.wirednerd.springbatch.document.JobExecutionDocument;
 import io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper;
 import io.github.wirednerd.springbatch.document.JobInstanceDocument;
+import io.github.wirednerd.springbatch.mongo.repository.MongodbExecutionContextOverflow;
+import io.github.wirednerd.springbatch.mongo.repository.MongodbStepExecutionCollection;
 import lombok.Getter;
+import lombok.Setter;
 import org.bson.Document;
 import org.springframework.batch.core.*;
 import org.springframework.batch.core.explore.JobExplorer;
@@ -12,6 +15,7 @@ import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
@@ -56,6 +60,30 @@ public class MongodbJobExplorer implements JobExplorer {
     @Getter
     private final JobExecutionDocumentMapper jobExecutionDocumentMapper;
 
+    /**
+     * Collection where step executions are stored, when they are not embedded in the job execution documents.
+     *
+     * @return {@link MongodbStepExecutionCollection}, or null if step executions are embedded
+     * @since 1.2.0
+     */
+    @Getter
+    @Nullable
+    private MongodbStepExecutionCollection stepExecutionCollection;
+
+    /**
+     * Reads execution contexts that are too large to be kept in the job or step execution document.
+     * Defaults to null, which reads all execution contexts from the job or step execution document.
+     * See {@link MongodbExecutionContextOverflow}
+     *
+     * @param executionContextOverflow {@link MongodbExecutionContextOverflow}, or null
+     * @return {@link MongodbExecutionContextOverflow}, or null if all execution contexts are stored inline
+     * @since 1.2.0
+     */
+    @Getter
+    @Setter
+    @Nullable
+    private MongodbExecutionContextOverflow executionContextOverflow;
+
     /**
      * @param mongoTemplate              {@link MongoTemplate} to use.
      * @param jobCollectionName          where the job execution data is stored.
@@ -67,6 +95,49 @@ public class MongodbJobExplorer implements JobExplorer {
         this.jobExecutionDocumentMapper = jobExecutionDocumentMapper;
     }
 
+    /**
+     * <p>When set, step executions are read from this collection,
+     * instead of from the "stepExecutions" array of the job execution document.
+     * See {@link MongodbStepExecutionCollection}</p>
+     * <p>Defaults to null, which reads step executions embedded in the job execution document.</p>
+     *
+     * @param stepCollectionName collection for step executions, or null if step executions are embedded
+     * @since 1.2.0
+     */
+    public void setStepCollectionName(@Nullable String stepCollectionName) {
+        stepExecutionCollection = stepCollectionName == null ? null
+                : new MongodbStepExecutionCollection(mongoTemplate, stepCollectionName, jobExecutionDocumentMapper);
+    }
+
+    /**
+     * Collection where step executions are stored, when they are not embedded in the job execution documents.
+     *
+     * @return collection for step executions, or null if step executions are embedded
+     * @since 1.2.0
+     */
+    @Nullable
+    public String getStepCollectionName() {
+        return stepExecutionCollection == null ? null : stepExecutionCollection.getCollectionName();
+    }
+
+    private JobExecution toJobExecution(JobExecutionDocument document) {
+        loadReferences(List.of(document));
+        return jobExecutionDocumentMapper.toJobExecution(document);
+    }
+
+    /**
+     * Load the step executions and oversized execution contexts that are not stored in the job execution documents.
+     */
+    private List<JobExecutionDocument> loadReferences(List<JobExecutionDocument> documents) {
+        if (stepExecutionCollection != null) {
+            stepExecutionCollection.loadStepExecutions(documents);
+        }
+        if (executionContextOverflow != null) {
+            executionContextOverflow.loadExecutionContexts(documents);
+        }
+        return documents;
+    }
+
     /**
      * @param instanceId {@link Long} id for the jobInstance to obtain.
      * @return the {@link JobInstance} with this id, or null
@@ -212,7 +283,7 @@ public class MongodbJobExplorer implements JobExplorer {
                         .query(Criteria.where(JOB_EXECUTION_ID).is(executionId)),
                 JobExecutionDocument.class, jobCollectionName);
 
-        return document == null ? null : jobExecutionDocumentMapper.toJobExecution(document);
+        return document == null ? null : toJobExecution(document);
     }
 
     /**
@@ -226,10 +297,10 @@ public class MongodbJobExplorer implements JobExplorer {
     public List<JobExecution> getJobExecutions(JobInstance jobInstance) {
         Assert.notNull(jobInstance, "JobInstance must not be null.");
 
-        return mongoTemplate.find(Query
+        return loadReferences(mongoTemplate.find(Query
                                 .query(Criteria.where(JOB_INSTANCE_ID).is(jobInstance.getId()))
                                 .with(Sort.by(JOB_EXECUTION_ID).descending()),
-                        JobExecutionDocument.class, jobCollectionName)
+                        JobExecutionDocument.class, jobCollectionName))
                 .stream().map(jobExecutionDocumentMapper::toJobExecution)
                 .collect(Collectors.toList());
     }
@@ -252,7 +323,7 @@ public class MongodbJobExplorer implements JobExplorer {
                         .limit(1),
                 JobExecutionDocument.class, jobCollectionName);
 
-        return document == null ? null : jobExecutionDocumentMapper.toJobExecution(document);
+        return document == null ? null : toJobExecution(document);
     }
 
     /**
@@ -271,7 +342,7 @@ public class MongodbJobExplorer implements JobExplorer {
                 JobExecutionDocument.class, jobCollectionName);
 
         if (executionDoc != null) {
-            return this.getJobExecutionDocumentMapper().toJobExecution(executionDoc);
+            return toJobExecution(executionDoc);
         }
 
         return null;
@@ -286,11 +357,11 @@ public class MongodbJobExplorer implements JobExplorer {
      */
     @Override
     public Set<JobExecution> findRunningJobExecutions(String jobName) {
-        return mongoTemplate.find(Query.query(Criteria.where(JOB_NAME).is(jobName))
+        return loadReferences(mongoTemplate.find(Query.query(Criteria.where(JOB_NAME).is(jobName))
                                 .addCriteria(Criteria.where(START_TIME).ne(null))
                                 .addCriteria(Criteria.where(END_TIME).is(null))
                                 .with(Sort.by(JOB_EXECUTION_ID).descending()),
-                        JobExecutionDocument.class, jobCollectionName)
+                        JobExecutionDocument.class, jobCollectionName))
                 .stream().map(jobExecutionDocumentMapper::toJobExecution)
                 .collect(Collectors.toSet());
     }
@@ -318,7 +389,7 @@ public class MongodbJobExplorer implements JobExplorer {
             return null;
         }
 
-        var jobExecution = jobExecutionDocumentMapper.toJobExecution(document);
+        var jobExecution = toJobExecution(document);
 
         if (CollectionUtils.isEmpty(jobExecution.getStepExecutions())) {
             return null;
@@ -0,0 +1,433 @@
+package io.github.wirednerd.springbatch.mongo.explore;
+
+import io.github.wirednerd.springbatch.document.JobExecutionDocument;
+import io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper;
+import io.github.wirednerd.springbatch.document.JobInstanceDocument;
+import io.github.wirednerd.springbatch.document.StepExecutionDocument;
+import io.github.wirednerd.springbatch.mongo.repository.MongodbExecutionContextOverflow;
+import io.github.wirednerd.springbatch.mongo.repository.MongodbStepExecutionCollection;
+import lombok.Getter;
+import lombok.Setter;
+import org.bson.Document;
+import org.springframework.batch.core.*;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.NoSuchJobException;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper.*;
+import static io.github.wirednerd.springbatch.mongo.MongodbRepositoryConstants.ID;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * <p>Non-blocking counterpart of {@link MongodbJobExplorer}, which uses a {@link ReactiveMongoTemplate}
+ * and returns {@link Mono} and {@link Flux} instead of blocking on each call.</p>
+ * <p>It reads the same documents that are written by the {@link JobRepository}, so services that monitor jobs can
+ * query job and step executions from event-loop threads.  Jobs are still launched and executed by Spring Batch with
+ * the blocking {@link JobRepository}.</p>
+ * <p>Requires {@code reactor-core} and {@code mongodb-driver-reactivestreams}, which the application provides.</p>
+ *
+ * @author Peter Busch
+ * @since 1.2.0
+ */
+@SuppressWarnings("SameNameButDifferent")
+public class ReactiveMongodbJobExplorer {
+
+    /**
+     * {@link ReactiveMongoTemplate} used to access the job executions.
+     *
+     * @return {@link ReactiveMongoTemplate} used to access the job executions.
+     */
+    @Getter
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    /**
+     * Collection where Job Execution Data is being stored.
+     *
+     * @return Collection where Job Execution Data is being stored.
+     */
+    @Getter
+    private final String jobCollectionName;
+
+    /**
+     * Used for converting Batch Job Execution Objects to Document objects
+     *
+     * @return {@link JobExecutionDocumentMapper}
+     */
+    @Getter
+    private final JobExecutionDocumentMapper jobExecutionDocumentMapper;
+
+    /**
+     * <p>When set, step executions are read from this collection,
+     * instead of from the "stepExecutions" array of the job execution document.
+     * See {@link MongodbStepExecutionCollection}</p>
+     * <p>Defaults to null, which reads step executions embedded in the job execution document.</p>
+     *
+     * @param stepCollectionName collection for step executions, or null if step executions are embedded
+     * @return collection for step executions, or null if step executions are embedded
+     */
+    @Getter
+    @Setter
+    @Nullable
+    private String stepCollectionName;
+
+    /**
+     * <p>When set, execution contexts that were too large to be kept in the job or step execution document are read
+     * from this collection.  See {@link MongodbExecutionContextOverflow}</p>
+     * <p>Defaults to null, which reads all execution contexts from the job or step execution document.</p>
+     *
+     * @param executionContextOverflowCollectionName collection for oversized execution contexts, or null
+     * @return collection for oversized execution contexts, or null if all execution contexts are stored inline
+     */
+    @Getter
+    @Setter
+    @Nullable
+    private String executionContextOverflowCollectionName;
+
+    /**
+     * @param reactiveMongoTemplate      {@link ReactiveMongoTemplate} to use.
+     * @param jobCollectionName          where the job execution data is stored.
+     * @param jobExecutionDocumentMapper used for converting Job Execution data
+     */
+    public ReactiveMongodbJobExplorer(ReactiveMongoTemplate reactiveMongoTemplate, String jobCollectionName,
+                                      JobExecutionDocumentMapper jobExecutionDocumentMapper) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.jobCollectionName = jobCollectionName;
+        this.jobExecutionDocumentMapper = jobExecutionDocumentMapper;
+    }
+
+    /**
+     * Reads the same collections as the jobExplorer, with the same {@link JobExecutionDocumentMapper}.
+     *
+     * @param reactiveMongoTemplate {@link ReactiveMongoTemplate} to use.
+     * @param jobExplorer           {@link MongodbJobExplorer} to copy the collections and mapper from,
+     *                              see {@link io.github.wirednerd.springbatch.mongo.configuration.MongodbBatchConfigurer#getJobExplorer()}
+     */
+    public ReactiveMongodbJobExplorer(ReactiveMongoTemplate reactiveMongoTemplate, MongodbJobExplorer jobExplorer) {
+        this(reactiveMongoTemplate, jobExplorer.getJobCollectionName(), jobExplorer.getJobExecutionDocumentMapper());
+        this.stepCollectionName = jobExplorer.getStepCollectionName();
+        this.executionContextOverflowCollectionName = jobExplorer.getExecutionContextOverflow() == null ? null
+                : jobExplorer.getExecutionContextOverflow().getCollectionName();
+    }
+
+    private Mono<JobExecution> toJobExecution(JobExecutionDocument document) {
+        return loadReferences(List.of(document)).thenReturn(document).map(jobExecutionDocumentMapper::toJobExecution);
+    }
+
+    private Flux<JobExecution> toJobExecutions(Flux<JobExecutionDocument> documents) {
+        return documents.collectList()
+                .flatMap(this::loadReferences)
+                .flatMapIterable(loaded -> loaded)
+                .map(jobExecutionDocumentMapper::toJobExecution);
+    }
+
+    /**
+     * Load the step executions and oversized execution contexts that are not stored in the job execution documents.
+     */
+    private Mono<List<JobExecutionDocument>> loadReferences(List<JobExecutionDocument> documents) {
+        return Mono.defer(() -> loadStepExecutions(documents))
+                .then(Mono.defer(() -> loadExecutionContexts(documents)))
+                .thenReturn(documents);
+    }
+
+    private Mono<Void> loadStepExecutions(List<JobExecutionDocument> documents) {
+        if (stepCollectionName == null) {
+            return Mono.empty();
+        }
+
+        var byJobExecutionId = new HashMap<Long, JobExecutionDocument>();
+        for (var document : documents) {
+            if (document.getJobExecutionId() != null) {
+                document.setStepExecutions(new ArrayList<>());
+                byJobExecutionId.put(document.getJobExecutionId(), document);
+            }
+        }
+
+        if (byJobExecutionId.isEmpty()) {
+            return Mono.empty();
+        }
+
+        return reactiveMongoTemplate.find(MongodbStepExecutionCollection.stepExecutionsQuery(byJobExecutionId.keySet()),
+                        Document.class, stepCollectionName)
+                .doOnNext(stepDocument -> byJobExecutionId.get(stepDocument.getLong(JOB_EXECUTION_ID)).getStepExecutions()
+                        .add(reactiveMongoTemplate.getConverter().read(StepExecutionDocument.class, stepDocument)))
+                .then();
+    }
+
+    private Mono<Void> loadExecutionContexts(List<JobExecutionDocument> documents) {
+        if (executionContextOverflowCollectionName == null) {
+            return Mono.empty();
+        }
+
+        var overflowIds = MongodbExecutionContextOverflow.findReferences(documents);
+
+        if (overflowIds.isEmpty()) {
+            return Mono.empty();
+        }
+
+        return reactiveMongoTemplate.find(MongodbExecutionContextOverflow.chunksQuery(overflowIds),
+                        Document.class, executionContextOverflowCollectionName)
+                .collectList()
+                .doOnNext(chunks -> MongodbExecutionContextOverflow.replaceReferences(documents, chunks))
+                .then();
+    }
+
+    /**
+     * See {@link JobExplorer#getJobInstance(Long)}
+     *
+     * @param instanceId {@link Long} id for the jobInstance to obtain.
+     * @return the {@link JobInstance} with this id, or empty
+     */
+    public Mono<JobInstance> getJobInstance(Long instanceId) {
+        return reactiveMongoTemplate.findOne(Query
+                                .query(Criteria.where(JOB_INSTANCE_ID).is(instanceId)),
+                        JobInstanceDocument.class, jobCollectionName)
+                .map(jobExecutionDocumentMapper::toJobInstance);
+    }
+
+    /**
+     * See {@link JobExplorer#getJobNames()}
+     *
+     * @return the job names that have been executed, sorted alphabetically
+     */
+    public Flux<String> getJobNames() {
+
+        var query = newAggregation(
+                group(JOB_NAME),
+                sort(Sort.by(ID).ascending()));
+
+        return reactiveMongoTemplate.aggregate(query, jobCollectionName, Document.class)
+                .map(doc -> doc.getString(ID));
+    }
+
+    /**
+     * See {@link JobExplorer#getJobInstanceCount(String)}
+     *
+     * @param jobName the name of the job to query for
+     * @return the number of {@link JobInstance}s that exist within the associated job repository,
+     * or {@link NoSuchJobException} when there is no {@link JobInstance} for the jobName specified.
+     */
+    public Mono<Integer> getJobInstanceCount(String jobName) {
+
+        var query = newAggregation(
+                match(Criteria.where(JOB_NAME).is(jobName)),
+                group(JOB_INSTANCE_ID));
+
+        return reactiveMongoTemplate.aggregate(query, jobCollectionName, Document.class)
+                .count()
+                .flatMap(count -> count == 0
+                        ? Mono.error(new NoSuchJobException("No job instances were found for job name " + jobName))
+                        : Mono.just(count.intValue()));
+    }
+
+    /**
+     * See {@link JobExplorer#getJobInstances(String, int, int)}
+     *
+     * @param jobName the name of the job to query
+     * @param start   the start index of the instances to return
+     * @param count   the maximum number of instances to return
+     * @return the {@link JobInstance} values up to a maximum of count values, in descending order of creation
+     */
+    public Flux<JobInstance> getJobInstances(String jobName, int start, int count) {
+
+        var query = newAggregation(
+                match(Criteria.where(JOB_NAME).is(jobName)),
+                group(JOB_NAME, JOB_INSTANCE_ID),
+                replaceRoot(ID),
+                sort(Sort.by(JOB_INSTANCE_ID).descending()),
+                skip((long) start),
+                limit(count));
+
+        return reactiveMongoTemplate.aggregate(query, jobCollectionName, JobInstanceDocument.class)
+                .map(jobExecutionDocumentMapper::toJobInstance);
+    }
+
+    /**
+     * See {@link JobExplorer#findJobInstancesByJobName(String, int, int)}
+     *
+     * @param jobName the name of the job to query for, where '*' and '%' match any characters.
+     * @param start   the start index of the instances to return.
+     * @param count   the maximum number of instances to return.
+     * @return the {@link JobInstance} values for the job name requested, in descending order of creation
+     */
+    public Flux<JobInstance> findJobInstancesByJobName(String jobName, int start, int count) {
+
+        String jobNameRegex = jobName.replaceAll("\\*|%", ".*");
+
+        var query = newAggregation(
+                match(Criteria.where(JOB_NAME).regex(jobNameRegex)),
+                group(JOB_NAME, JOB_INSTANCE_ID),
+                replaceRoot(ID),
+                sort(Sort.by(JOB_INSTANCE_ID).descending()),
+                skip((long) start),
+                limit(count));
+
+        return reactiveMongoTemplate.aggregate(query, jobCollectionName, JobInstanceDocument.class)
+                .map(jobExecutionDocumentMapper::toJobInstance);
+    }
+
+    /**
+     * See {@link JobExplorer#getLastJobInstance(String)}
+     *
+     * @param jobName name of the job
+     * @return the last job instance by id, or empty
+     */
+    public Mono<JobInstance> getLastJobInstance(String jobName) {
+        return reactiveMongoTemplate.findOne(Query.query(Criteria.where(JOB_NAME).is(jobName))
+                                .with(Sort.by(JOB_INSTANCE_ID).descending())
+                                .limit(1),
+                        JobInstanceDocument.class, jobCollectionName)
+                .map(jobExecutionDocumentMapper::toJobInstance);
+    }
+
+    /**
+     * See {@link JobRepository#isJobInstanceExists(String, JobParameters)}
+     *
+     * @param jobName       the name of the job
+     * @param jobParameters the parameters to match
+     * @return true if a {@link JobInstance} already exists for this job name and job parameters
+     * @throws IllegalArgumentException if jobName or jobParameters is null/blank
+     */
+    public Mono<Boolean> isJobInstanceExists(String jobName, JobParameters jobParameters) {
+        validateJobInstance(jobName, jobParameters);
+
+        return reactiveMongoTemplate.exists(new Query()
+                        .addCriteria(Criteria.where(JOB_NAME).is(jobName))
+                        .addCriteria(Criteria.where(JOB_KEY).is(jobExecutionDocumentMapper.generateJobKey(jobParameters)))
+                        .limit(1),
+                jobCollectionName);
+    }
+
+    private void validateJobInstance(String jobName, JobParameters jobParameters) {
+        Assert.hasLength(jobName, "Job name must not be null or empty.");
+        Assert.notNull(jobParameters, "JobParameters must not be null.");
+    }
+
+    /**
+     * See {@link JobExplorer#getJobExecution(Long)}
+     * The returned data will be fully hydrated.
+     *
+     * @param executionId the job execution id
+     * @return the {@link JobExecution} with this id, or empty
+     */
+    public Mono<JobExecution> getJobExecution(Long executionId) {
+        return reactiveMongoTemplate.findOne(Query
+                                .query(Criteria.where(JOB_EXECUTION_ID).is(executionId)),
+                        JobExecutionDocument.class, jobCollectionName)
+                .flatMap(this::toJobExecution);
+    }
+
+    /**
+     * See {@link JobExplorer#getJobExecutions(JobInstance)}
+     * The returned data will be fully hydrated.
+     *
+     * @param jobInstance the {@link JobInstance} to query
+     * @return all executions for the specified {@link JobInstance}, latest first
+     */
+    public Flux<JobExecution> getJobExecutions(JobInstance jobInstance) {
+        Assert.notNull(jobInstance, "JobInstance must not be null.");
+
+        return toJobExecutions(reactiveMongoTemplate.find(Query
+                        .query(Criteria.where(JOB_INSTANCE_ID).is(jobInstance.getId()))
+                        .with(Sort.by(JOB_EXECUTION_ID).descending()),
+                JobExecutionDocument.class, jobCollectionName));
+    }
+
+    /**
+     * See {@link JobExplorer#getLastJobExecution(JobInstance)}
+     *
+     * @param jobInstance the {@link JobInstance}
+     * @return the last {@link JobExecution} that has been created for this instance, or empty
+     */
+    public Mono<JobExecution> getLastJobExecution(JobInstance jobInstance) {
+        Assert.notNull(jobInstance, "JobInstance must not be null.");
+
+        return reactiveMongoTemplate.findOne(Query
+                                .query(Criteria.where(JOB_INSTANCE_ID).is(jobInstance.getId()))
+                                .with(Sort.by(JOB_EXECUTION_ID).descending())
+                                .limit(1),
+                        JobExecutionDocument.class, jobCollectionName)
+                .flatMap(this::toJobExecution);
+    }
+
+    /**
+     * See {@link JobRepository#getLastJobExecution(String, JobParameters)}
+     *
+     * @param jobName       the name of the job that might have run
+     * @param jobParameters parameters identifying the {@link JobInstance}
+     * @return the last execution of job, or empty
+     * @throws IllegalArgumentException if jobName or jobParameters is null/blank
+     */
+    public Mono<JobExecution> getLastJobExecution(String jobName, JobParameters jobParameters) {
+        validateJobInstance(jobName, jobParameters);
+
+        return reactiveMongoTemplate.findOne(new Query()
+                                .addCriteria(Criteria.where(JOB_NAME).is(jobName))
+                                .addCriteria(Criteria.where(JOB_KEY).is(jobExecutionDocumentMapper.generateJobKey(jobParameters)))
+                                .addCriteria(Criteria.where(JOB_EXECUTION_ID).ne(null))
+                                .with(Sort.by(JOB_EXECUTION_ID).descending()),
+                        JobExecutionDocument.class, jobCollectionName)
+                .flatMap(this::toJobExecution);
+    }
+
+    /**
+     * See {@link MongodbJobExplorer#getLastCompletedJobExecution(String)}
+     *
+     * @param jobName name of the job
+     * @return the last {@link JobExecution} with the specified jobName and "Completed" status, or empty
+     */
+    public Mono<JobExecution> getLastCompletedJobExecution(String jobName) {
+        return reactiveMongoTemplate.findOne(Query
+                                .query(Criteria.where(JOB_NAME).is(jobName)
+                                        .and(STATUS).is(BatchStatus.COMPLETED)
+                                        .and(EXIT_CODE).is("COMPLETED"))
+                                .with(Sort.by(JOB_EXECUTION_ID).descending()),
+                        JobExecutionDocument.class, jobCollectionName)
+                .flatMap(this::toJobExecution);
+    }
+
+    /**
+     * See {@link JobExplorer#findRunningJobExecutions(String)}
+     * The returned data will be fully hydrated.
+     *
+     * @param jobName the name of the job
+     * @return the running executions for jobs with the specified name, latest first
+     */
+    public Flux<JobExecution> findRunningJobExecutions(String jobName) {
+        return toJobExecutions(reactiveMongoTemplate.find(Query.query(Criteria.where(JOB_NAME).is(jobName))
+                        .addCriteria(Criteria.where(START_TIME).ne(null))
+                        .addCriteria(Criteria.where(END_TIME).is(null))
+                        .with(Sort.by(JOB_EXECUTION_ID).descending()),
+                JobExecutionDocument.class, jobCollectionName));
+    }
+
+    /**
+     * See {@link JobExplorer#getStepExecution(Long, Long)}
+     * The returned data will be fully hydrated.
+     *
+     * @param jobExecutionId  the parent job execution id
+     * @param stepExecutionId the step execution id
+     * @return the {@link StepExecution} with this id, or empty
+     */
+    public Mono<StepExecution> getStepExecution(Long jobExecutionId, Long stepExecutionId) {
+
+        Assert.notNull(jobExecutionId, "jobExecutionId must not be null.");
+        Assert.notNull(stepExecutionId, "stepExecutionId must not be null.");
+
+        return getJobExecution(jobExecutionId)
+                .flatMapIterable(JobExecution::getStepExecutions)
+                .filter(step -> stepExecutionId.equals(step.getId()))
+                .next();
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.wirednerd.springbatch.mongo.repository;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoCollection;
+import lombok.Getter;
+import org.bson.Document;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.lang.Nullable;
+
+/**
+ * <p>{@link MongoTemplate} on a database and converter, with its own write and read concerns.</p>
+ * <p>Only the database factory and converter are shared with other templates.  Settings such as the read preference
+ * or write concern resolver can be applied with the public setters of {@link MongoTemplate}.</p>
+ * <p>MongoDB ignores these concerns for operations inside a transaction, which use the concerns of the transaction.</p>
+ *
+ * @author Peter Busch
+ * @since 1.2.0
+ */
+@SuppressWarnings("SameNameButDifferent")
+public class ConcernMongoTemplate extends MongoTemplate {
+
+    /**
+     * Write concern of all writes, or null for the default of the database.
+     *
+     * @return Write concern of all writes, or null for the default of the database.
+     */
+    @Getter
+    @Nullable
+    private final WriteConcern writeConcern;
+
+    /**
+     * Read concern of all reads, or null for the default of the database.
+     *
+     * @return Read concern of all reads, or null for the default of the database.
+     */
+    @Getter
+    @Nullable
+    private final ReadConcern readConcern;
+
+    /**
+     * @param mongoDatabaseFactory {@link MongoDatabaseFactory} of the database
+     * @param mongoConverter       {@link MongoConverter}, or null for a default converter
+     * @param writeConcern         write concern of all writes, or null for the default of the database
+     * @param readConcern          read concern of all reads, or null for the default of the database
+     */
+    public ConcernMongoTemplate(MongoDatabaseFactory mongoDatabaseFactory, @Nullable MongoConverter mongoConverter,
+                                @Nullable WriteConcern writeConcern, @Nullable ReadConcern readConcern) {
+        super(mongoDatabaseFactory, mongoConverter);
+        this.writeConcern = writeConcern;
+        this.readConcern = readConcern;
+
+        if (writeConcern != null) {
+            setWriteConcern(writeConcern);
+        }
+    }
+
+    /**
+     * @param mongoTemplate {@link MongoTemplate} to take the database factory and converter from
+     * @param writeConcern  write concern of all writes, or null for the default of the database
+     * @param readConcern   read concern of all reads, or null for the default of the database
+     */
+    public ConcernMongoTemplate(MongoTemplate mongoTemplate, @Nullable WriteConcern writeConcern,
+                                @Nullable ReadConcern readConcern) {
+        this(mongoTemplate.getMongoDatabaseFactory(), mongoTemplate.getConverter(), writeConcern, readConcern);
+    }
+
+    @Override
+    protected MongoCollection<Document> prepareCollection(MongoCollection<Document> collection) {
+        var prepared = super.prepareCollection(collection);
+        return readConcern == null ? prepared : prepared.withReadConcern(readConcern);
+    }
+}
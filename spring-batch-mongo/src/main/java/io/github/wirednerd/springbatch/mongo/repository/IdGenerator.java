@@ -0,0 +1,45 @@
+package io.github.wirednerd.springbatch.mongo.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Source of unique ids for {@link org.springframework.batch.core.JobInstance},
+ * {@link org.springframework.batch.core.JobExecution}, and {@link org.springframework.batch.core.StepExecution} objects.</p>
+ * <p>Implementations must be thread safe, and must never return the same value twice for the same kind of object,
+ * including across all applications sharing the same job collection.</p>
+ * <p>Provided implementations:</p>
+ * <ul>
+ * <li>{@link MongodbCounter} (default) - sequence stored in a MongoDB collection</li>
+ * <li>{@link SnowflakeIdGenerator} - time, node id, and sequence packed into a long, without any database calls</li>
+ * </ul>
+ *
+ * @author Peter Busch
+ * @since 1.2.0
+ */
+@FunctionalInterface
+public interface IdGenerator {
+
+    /**
+     * Generate the next id.
+     *
+     * @return next unique id, never {@code null}
+     */
+    Long nextValue();
+
+    /**
+     * <p>Generate the given number of ids.</p>
+     * <p>The default implementation calls {@link #nextValue()} for each id.  Implementations backed by a database
+     * should override this to reserve all ids with a single call.</p>
+     *
+     * @param count number of ids to generate
+     * @return count unique ids, never {@code null}
+     */
+    default List<Long> nextValues(int count) {
+        var values = new ArrayList<Long>(count);
+        for (var i = 0; i < count; i++) {
+            values.add(nextValue());
+        }
+        return values;
+    }
+}
@@ -1,8 +1,10 @@
 package io.github.wirednerd.springbatch.mongo.repository;
 
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.index.Index;
@@ -11,6 +13,20 @@ import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.util.Assert;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
 /**
  * <p>This class represents a sequence object stores in a MongoDB collection.</p>
  * <p>Counter documents consist of 2 fields "counter" and "value".
@@ -18,6 +34,12 @@ import org.springframework.util.Assert;
  * "value" is a Long field that contains the last returned value.</p>
  * <p>It will ensure there is an index on the collection called "counter_unique".
  * This index enforces that the "counter" field is unique.</p>
+ * <p>When created with a blockSize greater than 1, each database call reserves a block of values
+ * by incrementing "value" by blockSize.  The reserved values are then handed out from memory,
+ * and "value" contains the last reserved value instead of the last returned value.
+ * Values that are reserved but not used before the application stops are skipped.</p>
+ * <p>When a lowWaterMark is also provided, the next block is reserved in the background as soon as
+ * only lowWaterMark values remain in the current block.</p>
  * <pre>
  * {
  *    "counter": "&lt;string&gt;",
@@ -26,8 +48,9 @@ import org.springframework.util.Assert;
  *
  * @author Peter Busch
  */
+@Slf4j
 @SuppressWarnings("SameNameButDifferent")
-public class MongodbCounter {
+public class MongodbCounter implements IdGenerator {
 
     /**
      * {@link MongoTemplate} used to access this counter.
@@ -53,18 +76,60 @@ public class MongodbCounter {
     @Getter
     private final String counterName;
 
+    /**
+     * Number of values reserved from the database with each call.
+     *
+     * @return Number of values reserved from the database with each call.
+     */
+    @Getter
+    private final int blockSize;
+
+    /**
+     * Number of values remaining in the current block when the next block is reserved in the background.
+     * Zero if blocks are only reserved when the current block is used up.
+     *
+     * @return Number of values remaining in the current block when the next block is reserved.
+     */
+    @Getter
+    private final int lowWaterMark;
+
+    /**
+     * Values reserved from the database, but not yet returned.
+     */
+    private final AtomicReference<Block> currentBlock = new AtomicReference<>(Block.EMPTY);
+
+    /**
+     * Block being reserved in the background, if any.
+     */
+    private final AtomicReference<CompletableFuture<Block>> nextBlock = new AtomicReference<>();
+
+    /**
+     * Held while replacing a used up block.  Values are returned from the current block without locking.
+     */
+    private final ReentrantLock refillLock = new ReentrantLock();
+
+    private final Executor prefetchExecutor;
+
+    private final LongAdder refillCount = new LongAdder();
+    private final LongAdder refillWaitCount = new LongAdder();
+
     /**
      * Reusable {@link Query} for accessing the counter.
      */
     private transient final Query findCounter;
 
-    private static final String COUNTER_FIELD_NAME = "counter";
+    /**
+     * Field with the name of the counter, unique in the counter collection.
+     */
+    public static final String COUNTER_FIELD_NAME = "counter";
+
     private static final String COUNTER_VALUE_NAME = "value";
     private static final String COUNTER_INDEX_NAME = "counter_unique";
 
-    private static final Update INCREMENT_COUNTER = new Update().inc(COUNTER_VALUE_NAME, 1);
     private static final FindAndModifyOptions RETURN_NEW = new FindAndModifyOptions().returnNew(true);
 
+    private final Update incrementCounter;
+
     /**
      * <p>Create new counter object in the specified Collection using the provided {@link MongoTemplate}</p>
      * <p>If the counter does not exist yet, it will be initialized with value=0</p>
@@ -76,35 +141,316 @@ public class MongodbCounter {
      * @param counterCollection collection to use for storing the document.
      */
     public MongodbCounter(final MongoTemplate mongoTemplate, final String counterName, final String counterCollection) {
+        this(mongoTemplate, counterName, counterCollection, 1);
+    }
+
+    /**
+     * <p>Create new counter object in the specified Collection using the provided {@link MongoTemplate}</p>
+     * <p>If the counter does not exist yet, it will be initialized with value=0</p>
+     * <p>This will also ensure there is an index on the collection called "counter_unique".
+     * This index enforces that the "counter" field is unique.</p>
+     * <p>Each database call will reserve blockSize values, which are then returned from memory.</p>
+     *
+     * @param mongoTemplate     {@link MongoTemplate} to use
+     * @param counterName       value to use in the "counter" field of the document
+     * @param counterCollection collection to use for storing the document.
+     * @param blockSize         number of values to reserve with each database call. Must be at least 1.
+     * @since 1.2.0
+     */
+    public MongodbCounter(final MongoTemplate mongoTemplate, final String counterName, final String counterCollection,
+                          final int blockSize) {
+        this(mongoTemplate, counterName, counterCollection, blockSize, 0, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * <p>Create new counter object in the specified Collection using the provided {@link MongoTemplate}</p>
+     * <p>If the counter does not exist yet, it will be initialized with value=0</p>
+     * <p>This will also ensure there is an index on the collection called "counter_unique".
+     * This index enforces that the "counter" field is unique.</p>
+     * <p>Each database call will reserve blockSize values, which are then returned from memory.
+     * When only lowWaterMark values remain, the next block is reserved using the prefetchExecutor.</p>
+     *
+     * @param mongoTemplate     {@link MongoTemplate} to use
+     * @param counterName       value to use in the "counter" field of the document
+     * @param counterCollection collection to use for storing the document.
+     * @param blockSize         number of values to reserve with each database call. Must be at least 1.
+     * @param lowWaterMark      number of remaining values that triggers reserving the next block.
+     *                          Must be less than blockSize.  Use 0 to disable reserving in the background.
+     * @param prefetchExecutor  {@link Executor} used for reserving the next block.
+     * @since 1.2.0
+     */
+    public MongodbCounter(final MongoTemplate mongoTemplate, final String counterName, final String counterCollection,
+                          final int blockSize, final int lowWaterMark, final Executor prefetchExecutor) {
+        this(mongoTemplate, counterName, counterCollection, blockSize, lowWaterMark, prefetchExecutor, true);
+    }
+
+    /**
+     * <p>Create new counter object in the specified Collection using the provided {@link MongoTemplate}</p>
+     * <p>When initialize is true, the counter is created with value=0 if it does not exist yet,
+     * and the "counter_unique" index is ensured.  When initialize is false, no database calls are made,
+     * and the counter must already exist.  See {@link #initializeCounters(MongoTemplate, String, Collection)}</p>
+     *
+     * @param mongoTemplate     {@link MongoTemplate} to use
+     * @param counterName       value to use in the "counter" field of the document
+     * @param counterCollection collection to use for storing the document.
+     * @param blockSize         number of values to reserve with each database call. Must be at least 1.
+     * @param lowWaterMark      number of remaining values that triggers reserving the next block.
+     *                          Must be less than blockSize.  Use 0 to disable reserving in the background.
+     * @param prefetchExecutor  {@link Executor} used for reserving the next block.
+     * @param initialize        true to create the counter and index now.
+     * @since 1.2.0
+     */
+    public MongodbCounter(final MongoTemplate mongoTemplate, final String counterName, final String counterCollection,
+                          final int blockSize, final int lowWaterMark, final Executor prefetchExecutor,
+                          final boolean initialize) {
+        Assert.isTrue(blockSize > 0, "Counter block size must be greater than 0");
+        Assert.isTrue(lowWaterMark >= 0 && lowWaterMark < blockSize,
+                "Counter low water mark must be at least 0 and less than block size");
+        Assert.notNull(prefetchExecutor, "Counter prefetch Executor must not be null");
+
         this.mongoTemplate = mongoTemplate;
         this.counterCollection = counterCollection;
         this.counterName = counterName;
+        this.blockSize = blockSize;
+        this.lowWaterMark = lowWaterMark;
+        this.prefetchExecutor = prefetchExecutor;
+
+        incrementCounter = new Update().inc(COUNTER_VALUE_NAME, blockSize);
 
         findCounter = new Query().addCriteria(Criteria.where(COUNTER_FIELD_NAME).is(counterName));
 
-        mongoTemplate.indexOps(counterCollection)
-                .ensureIndex(new Index()
-                        .on(COUNTER_FIELD_NAME, Sort.Direction.ASC)
-                        .named(COUNTER_INDEX_NAME)
-                        .unique());
+        if (initialize) {
+            mongoTemplate.indexOps(counterCollection).ensureIndex(counterIndex());
+
+            mongoTemplate.upsert(findCounter, initializeCounter(counterName), counterCollection);
+        }
+    }
+
+    /**
+     * Definition of the "counter_unique" index.
+     *
+     * @return new {@link Index} on the "counter" field named "counter_unique"
+     * @since 1.2.0
+     */
+    public static Index counterIndex() {
+        return new Index()
+                .on(COUNTER_FIELD_NAME, Sort.Direction.ASC)
+                .named(COUNTER_INDEX_NAME)
+                .unique();
+    }
+
+    /**
+     * Create any of the named counters that do not exist yet with value=0, using a single bulk write.
+     *
+     * @param mongoTemplate     {@link MongoTemplate} to use
+     * @param counterCollection collection the counters are stored in
+     * @param counterNames      names of the counters to create
+     * @since 1.2.0
+     */
+    public static void initializeCounters(final MongoTemplate mongoTemplate, final String counterCollection,
+                                          final Collection<String> counterNames) {
+        if (counterNames.isEmpty()) {
+            return;
+        }
+
+        var bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, counterCollection);
+        counterNames.forEach(counterName -> bulkOps.upsert(
+                new Query().addCriteria(Criteria.where(COUNTER_FIELD_NAME).is(counterName)),
+                initializeCounter(counterName)));
+        bulkOps.execute();
+    }
+
+    /**
+     * Find which of the named counters do not exist, using a single query.
+     *
+     * @param mongoTemplate     {@link MongoTemplate} to use
+     * @param counterCollection collection the counters are stored in
+     * @param counterNames      names of the counters to look for
+     * @return names of the counters that do not exist
+     * @since 1.2.0
+     */
+    public static List<String> findMissingCounters(final MongoTemplate mongoTemplate, final String counterCollection,
+                                                   final Collection<String> counterNames) {
+        if (counterNames.isEmpty()) {
+            return List.of();
+        }
 
-        mongoTemplate.upsert(findCounter, new Update()
-                        .setOnInsert(COUNTER_FIELD_NAME, counterName)
-                        .setOnInsert(COUNTER_VALUE_NAME, 0L),
-                counterCollection);
+        var existingCounters = mongoTemplate.findDistinct(
+                new Query().addCriteria(Criteria.where(COUNTER_FIELD_NAME).in(counterNames)),
+                COUNTER_FIELD_NAME, counterCollection, String.class);
+
+        return counterNames.stream()
+                .filter(counterName -> !existingCounters.contains(counterName))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Find the current value of a counter, which is the last value it has reserved.
+     *
+     * @param mongoTemplate     {@link MongoTemplate} to use
+     * @param counterCollection collection the counter is stored in
+     * @param counterName       name of the counter
+     * @return current value of the counter, or 0 if it does not exist
+     * @since 1.2.0
+     */
+    public static long findCounterValue(final MongoTemplate mongoTemplate, final String counterCollection,
+                                        final String counterName) {
+        var query = new Query().addCriteria(Criteria.where(COUNTER_FIELD_NAME).is(counterName));
+        query.fields().include(COUNTER_VALUE_NAME);
+
+        var counterDoc = mongoTemplate.findOne(query, Document.class, counterCollection);
+        return counterDoc == null ? 0 : counterDoc.get(COUNTER_VALUE_NAME, Number.class).longValue();
+    }
+
+    private static Update initializeCounter(String counterName) {
+        return new Update()
+                .setOnInsert(COUNTER_FIELD_NAME, counterName)
+                .setOnInsert(COUNTER_VALUE_NAME, 0L);
     }
 
     /**
-     * Increment the value for this counter in the database, and return the updated value.
+     * <p>Increment the value for this counter in the database, and return the updated value.</p>
+     * <p>When blockSize is greater than 1, the next value is returned from the current reserved block,
+     * and the database is only called when the block is used up.</p>
      *
      * @return Updated counter value.
      */
+    @Override
     public Long nextValue() {
-        var counterDoc = mongoTemplate.findAndModify(findCounter, INCREMENT_COUNTER, RETURN_NEW,
+        if (blockSize == 1) {
+            refillCount.increment();
+            refillWaitCount.increment();
+            return reserveBlock().last;
+        }
+
+        while (true) {
+            var block = currentBlock.get();
+            var value = block.next.getAndIncrement();
+            if (value <= block.last) {
+                if (lowWaterMark > 0 && block.last - value == lowWaterMark) {
+                    prefetchNextBlock();
+                }
+                return value;
+            }
+            refill(block);
+        }
+    }
+
+    /**
+     * <p>Reserve a range of count values with a single database call, and return all of them.</p>
+     * <p>The range is reserved directly from the database, separately from the current block.</p>
+     *
+     * @param count number of values to reserve
+     * @return count consecutive values
+     * @since 1.2.0
+     */
+    @Override
+    public List<Long> nextValues(int count) {
+        if (count <= 0) {
+            return List.of();
+        }
+
+        long last = reserve(new Update().inc(COUNTER_VALUE_NAME, count));
+        return LongStream.rangeClosed(last - count + 1, last).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * Number of times a new block of values was put into use.
+     *
+     * @return Number of times a new block of values was put into use.
+     * @since 1.2.0
+     */
+    public long getRefillCount() {
+        return refillCount.sum();
+    }
+
+    /**
+     * <p>Number of times a caller of {@link #nextValue()} had to wait for the database to reserve a new block.</p>
+     * <p>Compare with {@link #getRefillCount()} to decide if blockSize or lowWaterMark should be increased.</p>
+     *
+     * @return Number of times a caller had to wait for a new block.
+     * @since 1.2.0
+     */
+    public long getRefillWaitCount() {
+        return refillWaitCount.sum();
+    }
+
+    private void refill(Block usedBlock) {
+        refillLock.lock();
+        try {
+            if (currentBlock.get() != usedBlock) {
+                return; // Another thread already replaced the block.
+            }
+
+            var prefetched = nextBlock.getAndSet(null);
+            if (prefetched == null || !prefetched.isDone()) {
+                refillWaitCount.increment();
+            }
+
+            currentBlock.set(prefetched == null ? reserveBlock() : awaitPrefetched(prefetched));
+            refillCount.increment();
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    private void prefetchNextBlock() {
+        var future = new CompletableFuture<Block>();
+        if (nextBlock.compareAndSet(null, future)) {
+            try {
+                prefetchExecutor.execute(() -> {
+                    try {
+                        future.complete(reserveBlock());
+                    } catch (RuntimeException e) { //NOPMD
+                        future.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // e.g. the executor is shut down.  The next block is reserved when the current block is used up.
+                nextBlock.compareAndSet(future, null);
+            }
+        }
+    }
+
+    private Block awaitPrefetched(CompletableFuture<Block> prefetched) {
+        try {
+            return prefetched.join();
+        } catch (CompletionException e) {
+            log.warn("Unable to reserve next block for counter " + counterName + " in background", e.getCause());
+            return reserveBlock();
+        }
+    }
+
+    private Block reserveBlock() {
+        long last = reserve(incrementCounter);
+        return new Block(last - blockSize + 1, last);
+    }
+
+    /**
+     * @return the last reserved value
+     */
+    private long reserve(Update increment) {
+        var counterDoc = mongoTemplate.findAndModify(findCounter, increment, RETURN_NEW,
                 Document.class, counterCollection);
 
         Assert.state(counterDoc != null, () -> "Could not find counter: " + counterName);
 
         return counterDoc.getLong(COUNTER_VALUE_NAME);
     }
+
+    /**
+     * Range of reserved values.  next is the next value to return, and last is the last reserved value.
+     */
+    private static final class Block {
+
+        private static final Block EMPTY = new Block(1, 0);
+
+        private final AtomicLong next;
+        private final long last;
+
+        private Block(long next, long last) {
+            this.next = new AtomicLong(next);
+            this.last = last;
+        }
+    }
 }
@@ -0,0 +1,385 @@
+package io.github.wirednerd.springbatch.mongo.repository;
+
+import io.github.wirednerd.springbatch.document.JobExecutionDocument;
+import io.github.wirednerd.springbatch.document.StepExecutionDocument;
+import lombok.Getter;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * <p>Stores execution contexts that are too large to be kept in the job or step execution document.</p>
+ * <p>An execution context that is at least "threshold" bytes long is split into chunk documents in a separate
+ * collection, and the "executionContext" field only contains the {@link ObjectId} of the chunks.  Smaller execution
+ * contexts are returned unchanged, and stay in the job or step execution document.</p>
+ * <p>Each chunk document contains:</p>
+ * <ul>
+ * <li>overflowId: {@link ObjectId} stored in the "executionContext" field</li>
+ * <li>owner: "job:&lt;jobExecutionId&gt;" or "step:&lt;stepExecutionId&gt;"</li>
+ * <li>n: sequence of the chunk, starting at 0</li>
+ * <li>type: "string", "binary" or "bson", the type of the original "executionContext" value</li>
+ * <li>data: up to {@value #CHUNK_SIZE} bytes</li>
+ * </ul>
+ *
+ * @author Peter Busch
+ * @since 1.2.0
+ */
+@SuppressWarnings("SameNameButDifferent")
+public class MongodbExecutionContextOverflow {
+
+    /**
+     * Maximum number of bytes in each chunk document.
+     */
+    public static final int CHUNK_SIZE = 255 * 1024;
+
+    /**
+     * Field with the {@link ObjectId} that the "executionContext" field refers to, shared by all chunks of a context.
+     */
+    public static final String OVERFLOW_ID = "overflowId";
+
+    /**
+     * Field with the job or step execution the chunk belongs to.  See {@link #jobOwner(Long)} and {@link #stepOwner(Long)}
+     */
+    public static final String OWNER = "owner";
+
+    /**
+     * Field with the sequence of the chunk, starting at 0.
+     */
+    public static final String CHUNK_NUMBER = "n";
+
+    /**
+     * Field with the type of the original "executionContext" value: "string", "binary" or "bson".
+     */
+    public static final String TYPE = "type";
+
+    /**
+     * Field with up to {@value #CHUNK_SIZE} bytes of the execution context.
+     */
+    public static final String DATA = "data";
+
+    private static final String TYPE_STRING = "string";
+    private static final String TYPE_BINARY = "binary";
+    private static final String TYPE_BSON = "bson";
+
+    /**
+     * {@link MongoTemplate} used to access the overflow collection.
+     *
+     * @return {@link MongoTemplate} used to access the overflow collection.
+     */
+    @Getter
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Collection where the chunks of oversized execution contexts are stored.
+     *
+     * @return Collection where the chunks of oversized execution contexts are stored.
+     */
+    @Getter
+    private final String collectionName;
+
+    /**
+     * Minimum size in bytes of an execution context that is stored in the overflow collection.
+     *
+     * @return Minimum size in bytes of an execution context that is stored in the overflow collection.
+     */
+    @Getter
+    private final int threshold;
+
+    /**
+     * Owners with chunks stored by this instance, whose chunks are removed when their execution context is replaced.
+     * An execution context is only written by the instance that runs its job or step execution.
+     */
+    private final Set<String> overflowOwners = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param mongoTemplate  {@link MongoTemplate} to use.
+     * @param collectionName where the chunks of oversized execution contexts are stored.
+     * @param threshold      minimum size in bytes of an execution context that is stored in the overflow collection
+     */
+    public MongodbExecutionContextOverflow(MongoTemplate mongoTemplate, String collectionName, int threshold) {
+        Assert.hasLength(collectionName, "Execution Context Overflow Collection Name must not be null or blank");
+        Assert.isTrue(threshold > 0, "Execution Context Overflow Threshold must be greater than 0");
+
+        this.mongoTemplate = mongoTemplate;
+        this.collectionName = collectionName;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Indexes used by this collection:
+     * <ul>
+     * <li>Unique index on overflowId, n named "overflowId_n_unique"</li>
+     * <li>Index on owner named "owner"</li>
+     * </ul>
+     *
+     * @return indexes used by this collection.
+     */
+    public static List<Index> indexes() {
+        return List.of(
+                new Index()
+                        .on(OVERFLOW_ID, Sort.Direction.ASC)
+                        .on(CHUNK_NUMBER, Sort.Direction.ASC)
+                        .named("overflowId_n_unique")
+                        .unique(),
+                new Index()
+                        .on(OWNER, Sort.Direction.ASC)
+                        .named(OWNER));
+    }
+
+    /**
+     * @param jobExecutionId id of the job execution
+     * @return owner of the execution context of the job execution
+     */
+    public static String jobOwner(Long jobExecutionId) {
+        return "job:" + jobExecutionId;
+    }
+
+    /**
+     * @param stepExecutionId id of the step execution
+     * @return owner of the execution context of the step execution
+     */
+    public static String stepOwner(Long stepExecutionId) {
+        return "step:" + stepExecutionId;
+    }
+
+    /**
+     * If the execution context is at least {@link #getThreshold()} bytes long, store it in chunk documents.
+     *
+     * @param owner            see {@link #jobOwner(Long)} and {@link #stepOwner(Long)}
+     * @param executionContext value of an "executionContext" field
+     * @return the {@link ObjectId} of the chunks, or the execution context if it is smaller than the threshold
+     */
+    @Nullable
+    public Object store(String owner, @Nullable Object executionContext) {
+        if (executionContext == null
+                || executionContext instanceof String && ((String) executionContext).length() * 3L < threshold) {
+            return executionContext;
+        }
+
+        String type;
+        byte[] data;
+        if (executionContext instanceof byte[]) {
+            type = TYPE_BINARY;
+            data = (byte[]) executionContext;
+        } else if (executionContext instanceof Document) {
+            if (estimateBsonSize(executionContext) < threshold) {
+                return executionContext;
+            }
+            type = TYPE_BSON;
+            var rawDocument = new RawBsonDocument((Document) executionContext, new DocumentCodec());
+            var buffer = rawDocument.getByteBuffer();
+            data = new byte[buffer.remaining()];
+            buffer.get(data);
+        } else {
+            type = TYPE_STRING;
+            data = executionContext.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        if (data.length < threshold) {
+            return executionContext;
+        }
+
+        // Added before the insert, so chunks of a failed insert are removed by the next write
+        overflowOwners.add(owner);
+
+        var overflowId = new ObjectId();
+        var chunks = new ArrayList<Document>();
+        for (int offset = 0, n = 0; offset < data.length; offset += CHUNK_SIZE, n++) {
+            chunks.add(new Document(OVERFLOW_ID, overflowId)
+                    .append(OWNER, owner)
+                    .append(CHUNK_NUMBER, n)
+                    .append(TYPE, type)
+                    .append(DATA, new Binary(Arrays.copyOfRange(data, offset, Math.min(data.length, offset + CHUNK_SIZE)))));
+        }
+        mongoTemplate.insert(chunks, collectionName);
+        return overflowId;
+    }
+
+    /**
+     * Upper bound of the BSON size of a value created by the BSON execution context format, without encoding it.
+     * Characters are counted as 3 bytes, the most a char takes in UTF-8.
+     *
+     * @return upper bound of the size in bytes, or {@link Long#MAX_VALUE} for a value of another type
+     */
+    static long estimateBsonSize(@Nullable Object value) {
+        if (value == null || value instanceof Boolean) {
+            return 1;
+        }
+        if (value instanceof Integer) {
+            return 4;
+        }
+        if (value instanceof Long || value instanceof Double || value instanceof Date) {
+            return 8;
+        }
+        if (value instanceof String) {
+            return 5 + ((String) value).length() * 3L;
+        }
+        if (value instanceof Map) {
+            long size = 5;
+            for (var entry : ((Map<?, ?>) value).entrySet()) {
+                var valueSize = estimateBsonSize(entry.getValue());
+                if (valueSize == Long.MAX_VALUE) {
+                    return Long.MAX_VALUE;
+                }
+                size += 2 + entry.getKey().toString().length() * 3L + valueSize;
+            }
+            return size;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * <p>Called after an execution context was written, to remove the chunks it replaced: all chunks of the owner
+     * with another overflowId.</p>
+     * <p>Only owners with chunks stored by this instance are removed, with one delete on the "owner" index.  Writes of
+     * execution contexts that never overflowed do not call the database.</p>
+     *
+     * @param owner            see {@link #jobOwner(Long)} and {@link #stepOwner(Long)}
+     * @param executionContext value written to the "executionContext" field, returned by {@link #store(String, Object)}
+     */
+    public void removeReplaced(String owner, @Nullable Object executionContext) {
+        if (!overflowOwners.contains(owner)) {
+            return;
+        }
+
+        var criteria = Criteria.where(OWNER).is(owner);
+        if (executionContext instanceof ObjectId) {
+            criteria.and(OVERFLOW_ID).ne(executionContext);
+        }
+        mongoTemplate.remove(Query.query(criteria), collectionName);
+
+        if (!(executionContext instanceof ObjectId)) {
+            overflowOwners.remove(owner);
+        }
+    }
+
+    /**
+     * Stop tracking the chunks of an owner whose execution context will not be written again,
+     * because its job or step execution is no longer running.
+     *
+     * @param owner see {@link #jobOwner(Long)} and {@link #stepOwner(Long)}
+     */
+    public void forget(String owner) {
+        overflowOwners.remove(owner);
+    }
+
+    /**
+     * Replace {@link ObjectId} references in the "executionContext" fields of the job execution documents, and their
+     * step execution documents, with the stored execution contexts.
+     * Chunks are only read if a reference is found, with a single query.
+     *
+     * @param jobExecutionDocuments job execution documents to load the execution contexts for
+     * @throws IllegalStateException if the chunks of a referenced execution context are missing
+     */
+    public void loadExecutionContexts(Collection<JobExecutionDocument> jobExecutionDocuments) {
+        var overflowIds = findReferences(jobExecutionDocuments);
+
+        if (overflowIds.isEmpty()) {
+            return;
+        }
+
+        replaceReferences(jobExecutionDocuments,
+                mongoTemplate.find(chunksQuery(overflowIds), Document.class, collectionName));
+    }
+
+    /**
+     * @param jobExecutionDocuments job execution documents, with their step execution documents
+     * @return {@link ObjectId} references found in the "executionContext" fields
+     */
+    public static Set<ObjectId> findReferences(Collection<JobExecutionDocument> jobExecutionDocuments) {
+        return references(jobExecutionDocuments).keySet();
+    }
+
+    /**
+     * @param overflowIds {@link ObjectId} references returned by {@link #findReferences(Collection)}
+     * @return query for the chunks of the referenced execution contexts, in order
+     */
+    public static Query chunksQuery(Collection<ObjectId> overflowIds) {
+        return Query.query(Criteria.where(OVERFLOW_ID).in(overflowIds))
+                .with(Sort.by(OVERFLOW_ID, CHUNK_NUMBER).ascending());
+    }
+
+    /**
+     * Replace {@link ObjectId} references in the "executionContext" fields with the execution contexts
+     * assembled from the chunks.
+     *
+     * @param jobExecutionDocuments job execution documents, with their step execution documents
+     * @param chunks                chunk documents read with {@link #chunksQuery(Collection)}
+     * @throws IllegalStateException if the chunks of a referenced execution context are missing
+     */
+    public static void replaceReferences(Collection<JobExecutionDocument> jobExecutionDocuments, List<Document> chunks) {
+        var chunksById = new HashMap<ObjectId, List<Document>>();
+        chunks.forEach(chunk -> chunksById.computeIfAbsent(chunk.getObjectId(OVERFLOW_ID), id -> new ArrayList<>()).add(chunk));
+
+        references(jobExecutionDocuments).forEach((overflowId, setters) -> {
+            var executionContext = toExecutionContext(overflowId, chunksById.get(overflowId));
+            setters.forEach(setter -> setter.accept(executionContext));
+        });
+    }
+
+    private static Map<ObjectId, List<Consumer<Object>>> references(Collection<JobExecutionDocument> jobExecutionDocuments) {
+        var references = new HashMap<ObjectId, List<Consumer<Object>>>();
+        for (var jobExecutionDocument : jobExecutionDocuments) {
+            addReference(references, jobExecutionDocument.getExecutionContextValue(), jobExecutionDocument::setExecutionContextValue);
+            if (jobExecutionDocument.getStepExecutions() != null) {
+                for (StepExecutionDocument stepExecutionDocument : jobExecutionDocument.getStepExecutions()) {
+                    addReference(references, stepExecutionDocument.getExecutionContextValue(),
+                            stepExecutionDocument::setExecutionContextValue);
+                }
+            }
+        }
+        return references;
+    }
+
+    private static void addReference(Map<ObjectId, List<Consumer<Object>>> references, Object executionContext,
+                                     Consumer<Object> setter) {
+        if (executionContext instanceof ObjectId) {
+            references.computeIfAbsent((ObjectId) executionContext, id -> new ArrayList<>()).add(setter);
+        }
+    }
+
+    private static Object toExecutionContext(ObjectId overflowId, @Nullable List<Document> chunks) {
+        Assert.state(chunks != null, () -> "Execution Context overflow not found.  overflowId=" + overflowId);
+
+        var out = new ByteArrayOutputStream(chunks.size() * CHUNK_SIZE);
+        for (var n = 0; n < chunks.size(); n++) {
+            var chunk = chunks.get(n);
+            Assert.state(chunk.getInteger(CHUNK_NUMBER) == n,
+                    () -> "Execution Context overflow is incomplete.  overflowId=" + overflowId);
+            var data = chunk.get(DATA);
+            out.writeBytes(data instanceof Binary ? ((Binary) data).getData() : (byte[]) data);
+        }
+
+        var data = out.toByteArray();
+        switch (chunks.get(0).getString(TYPE)) {
+            case TYPE_BINARY:
+                return data;
+            case TYPE_BSON:
+                return new RawBsonDocument(data).decode(new DocumentCodec());
+            default:
+                return new String(data, StandardCharsets.UTF_8);
+        }
+    }
+}
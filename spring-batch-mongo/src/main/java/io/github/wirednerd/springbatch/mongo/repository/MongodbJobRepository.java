@@ -1,11 +1,12 @@
 package io.github.wirednerd.springbatch.mongo.repository;
 
-
+import com.mongodb.ReadConcern;
+import com.mongodb.WriteConcern;
 import io.github.wirednerd.springbatch.document.JobExecutionDocument;
 import io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper;
 import io.github.wirednerd.springbatch.document.StepExecutionDocument;
-import lombok.Data;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
 import org.springframework.batch.core.*;
@@ -14,10 +15,16 @@ import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteExcep
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.repository.JobRestartException;
 import org.springframework.batch.item.ExecutionContext;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
@@ -25,11 +32,24 @@ import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper.*;
 import static io.github.wirednerd.springbatch.mongo.MongodbRepositoryConstants.*;
@@ -38,7 +58,8 @@ import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
 /**
  * <p>Implementation of a {@link JobRepository} that uses MongoDB instead of a jdbc database.</p>
  * <p>It uses one one collection for storing all job execution data, and another for storing counters.  See: {@link MongodbCounter}</p>
- * <p>In the counterCollection, creates Counter objects for jobInstanceId, jobExecutionId, and stepExecutionId</p>
+ * <p>In the counterCollection, creates Counter objects for jobInstanceId, jobExecutionId, and stepExecutionId,
+ * unless other {@link IdGenerator} objects are provided.</p>
  * <p>Schema for job execution data</p>
  * <pre>
  * {
@@ -73,6 +94,7 @@ import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
  *   "exitCode": "&lt;string&gt;",
  *   "exitDescription": "&lt;string&gt;",
  *   "jobConfigurationName": "&lt;string&gt;",
+ *   "launchGuard": "&lt;boolean, only while the execution blocks a new launch&gt;",
  *   "executionContext": {
  *     "&lt;key&gt;": "&lt;value&gt;"
  *   },
@@ -101,6 +123,11 @@ import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
  *   ]
  * }
  * </pre>
+ * <p>When a step collection name is set, step executions are stored in a separate collection instead.
+ * See {@link MongodbStepExecutionCollection}</p>
+ * <p>Job executions created by {@link #createJobExecution(String, JobParameters)} keep a "launchGuard" field while
+ * they are running, or while they prevent the job instance from being started again.  With the partial unique index
+ * from {@link #launchGuardIndex()}, MongoDB rejects a second launch of the same job instance.</p>
  *
  * @author Peter Busch
  */
@@ -133,28 +160,31 @@ public class MongodbJobRepository implements JobRepository {
     private final String counterCollectionName;
 
     /**
-     * Counter for jobInstanceId
+     * {@link IdGenerator} for jobInstanceId
      *
-     * @return Counter for jobInstanceId
+     * @return {@link IdGenerator} for jobInstanceId
+     * @since 1.2.0
      */
     @Getter
-    private final MongodbCounter jobInstanceCounter;
+    private final IdGenerator jobInstanceIdGenerator;
 
     /**
-     * Counter for jobExecutionId
+     * {@link IdGenerator} for jobExecutionId
      *
-     * @return Counter for jobExecutionId
+     * @return {@link IdGenerator} for jobExecutionId
+     * @since 1.2.0
      */
     @Getter
-    private final MongodbCounter jobExecutionCounter;
+    private final IdGenerator jobExecutionIdGenerator;
 
     /**
-     * Counter for stepExecutionId
+     * {@link IdGenerator} for stepExecutionId
      *
-     * @return Counter for stepExecutionId
+     * @return {@link IdGenerator} for stepExecutionId
+     * @since 1.2.0
      */
     @Getter
-    private final MongodbCounter stepExecutionCounter;
+    private final IdGenerator stepExecutionIdGenerator;
 
     /**
      * Used for converting Batch Job Execution Objects to Document objects
@@ -164,6 +194,201 @@ public class MongodbJobRepository implements JobRepository {
     @Getter
     private final JobExecutionDocumentMapper jobExecutionDocumentMapper;
 
+    /**
+     * <p>When true, stepExecutionId values are not taken from the stepExecutionIdGenerator.
+     * Instead, each job execution document keeps a "stepExecutionSequence" field, which is incremented
+     * in the same update that adds the step execution to the document.  The ids are computed from the sequence by
+     * the server, with a pipeline update that requires MongoDB 4.2.</p>
+     * <p>The stepExecutionId is the jobExecutionId shifted left {@value #STEP_EXECUTION_SEQUENCE_BITS} bits,
+     * plus the sequence.  So jobExecutionId values must be less than 2<sup>43</sup>,
+     * and each job execution may have up to 2<sup>20</sup>-1 step executions.
+     * This rules out using a {@link SnowflakeIdGenerator} for jobExecutionId.</p>
+     * <p>Ids from the stepExecutionIdGenerator at or above 2<sup>20</sup> can collide with these ids, so changing this
+     * on existing data needs care.  See {@link #findLastSequencedStepExecutionId(MongoTemplate, String)}</p>
+     * <p>Defaults to false.</p>
+     *
+     * @param stepExecutionIdFromJobExecution true to use job execution sequences for stepExecutionId
+     * @return true if stepExecutionId values are created from job execution sequences
+     * @since 1.2.0
+     */
+    @Getter
+    @Setter
+    private boolean stepExecutionIdFromJobExecution;
+
+    /**
+     * <p>When true, {@link #updateExecutionContext(StepExecution)} does not write to the database.
+     * Instead, the execution context is written by the next {@link #update(StepExecution)} for the same step,
+     * together with the step execution and its version, in a single conditional update.</p>
+     * <p>Spring Batch steps always call {@link #update(StepExecution)} after
+     * {@link #updateExecutionContext(StepExecution)}, so each chunk commit takes one database call instead of two.</p>
+     * <p>Defaults to false.</p>
+     *
+     * @param combinedStepExecutionUpdate true to write step executions and their execution contexts together
+     * @return true if step executions and their execution contexts are written together
+     * @since 1.2.0
+     */
+    @Getter
+    @Setter
+    private boolean combinedStepExecutionUpdate;
+
+    private final Set<Long> pendingStepExecutionContexts = ConcurrentHashMap.newKeySet();
+
+    /**
+     * <p>When greater than 0, {@link #update(StepExecution)} only writes to the database if this many milliseconds
+     * have passed since the step execution was last written, or if any other flush condition is met.
+     * Defaults to 0.  See {@link #setStepExecutionFlushCommits(int)}.</p>
+     *
+     * @param stepExecutionFlushIntervalMillis maximum milliseconds between writes of a running step execution
+     * @return maximum milliseconds between writes of a running step execution
+     * @since 1.2.0
+     */
+    @Getter
+    @Setter
+    private long stepExecutionFlushIntervalMillis;
+
+    /**
+     * <p>When greater than 0, {@link #update(StepExecution)} only writes to the database if the commit count
+     * has increased by this many since the step execution was last written, or if any other flush condition is met.
+     * Defaults to 0.</p>
+     * <p>When either this or {@link #getStepExecutionFlushIntervalMillis()} is set, updates of running step executions
+     * are kept in memory.  A step execution is always written immediately when:</p>
+     * <ul>
+     * <li>it is updated for the first time</li>
+     * <li>its status or exit code changes, including when the step completes or fails</li>
+     * <li>its execution context is written with it</li>
+     * </ul>
+     * <p>Execution contexts are always written immediately, so restarts are not affected.
+     * Only the counts of a running step may be behind, and stop requests are detected when the step is next written.</p>
+     * <p>What is kept in memory for a step execution is dropped when it is no longer running, or when its
+     * {@link JobExecution} is updated as ended, so abandoned steps are not retained.</p>
+     *
+     * @param stepExecutionFlushCommits maximum commits between writes of a running step execution
+     * @return maximum commits between writes of a running step execution
+     * @since 1.2.0
+     */
+    @Getter
+    @Setter
+    private int stepExecutionFlushCommits;
+
+    private final Map<Long, StepExecutionFlush> stepExecutionFlushes = new ConcurrentHashMap<>();
+
+    /**
+     * <p>Number of times a step execution update is retried after an {@link OptimisticLockingFailureException}.
+     * Defaults to 0, which fails on the first conflict.</p>
+     * <p>Before each retry, the saved step execution is read.  The update is only retried when the conflicting write
+     * changed nothing but the status and version since the last update of this repository, e.g. a stop request.
+     * The saved status is merged with {@link BatchStatus#upgradeTo(BatchStatus)}, so the retried update does not
+     * overwrite it.  Any other conflict, e.g. another thread writing the counts of the same step execution, fails
+     * without retry.  When the update fails, the version and status of the {@link StepExecution} are restored.</p>
+     *
+     * @param stepExecutionUpdateRetries maximum retries of a step execution update
+     * @return maximum retries of a step execution update
+     * @since 1.2.0
+     */
+    @Getter
+    @Setter
+    private int stepExecutionUpdateRetries;
+
+    /**
+     * <p>Wait before the first retry of a step execution update, doubled for each further retry.
+     * Each wait is a random value between half and all of it, so conflicting threads do not retry at the same time.
+     * Defaults to 10.</p>
+     *
+     * @param stepExecutionUpdateRetryBackoffMillis milliseconds to wait before the first retry
+     * @return milliseconds to wait before the first retry
+     * @since 1.2.0
+     */
+    @Getter
+    @Setter
+    private long stepExecutionUpdateRetryBackoffMillis = 10;
+
+    private final LongAdder stepExecutionUpdateRetryCount = new LongAdder();
+    private final LongAdder stepExecutionUpdateRetryWaitMillis = new LongAdder();
+    private final LongAdder stepExecutionUpdateRetryExhaustedCount = new LongAdder();
+
+    /**
+     * Fields of the last update of each running step execution, compared with the saved step execution before a retry.
+     */
+    private final Map<Long, Document> writtenStepExecutions = new ConcurrentHashMap<>();
+
+    /**
+     * Collection where step executions are stored, when they are not embedded in the job execution documents.
+     * See {@link #setStepCollectionName(String)}
+     *
+     * @return {@link MongodbStepExecutionCollection}, or null if step executions are embedded
+     * @since 1.2.0
+     */
+    @Getter
+    @Nullable
+    private MongodbStepExecutionCollection stepExecutionCollection;
+
+    /**
+     * Stores execution contexts that are too large to be kept in the job or step execution document.
+     * See {@link #setExecutionContextOverflow(MongodbExecutionContextOverflow)}
+     *
+     * @return {@link MongodbExecutionContextOverflow}, or null if all execution contexts are stored inline
+     * @since 1.2.0
+     */
+    @Getter
+    @Nullable
+    private MongodbExecutionContextOverflow executionContextOverflow;
+
+    private final Map<OperationCategory, MongoTemplate> operationTemplates = new EnumMap<>(OperationCategory.class);
+
+    private final LongAdder stepExecutionWriteCount = new LongAdder();
+    private final LongAdder stepExecutionSkippedWriteCount = new LongAdder();
+
+    /**
+     * <p>When true, the last execution context written for each running job and step execution is kept in memory,
+     * if it was written as a {@link org.bson.Document} by {@link io.github.wirednerd.springbatch.document.ExecutionContextFormat#BSON}.
+     * The next write only sets the keys whose values changed, and unsets the keys that were removed.
+     * An execution context without changes is not written again, including when it would be written together
+     * with its step execution.</p>
+     * <p>Execution contexts in the string format, or stored in the {@link MongodbExecutionContextOverflow},
+     * are always written whole.  What is kept for a job or step execution is removed when it is written with a
+     * status that is not running.</p>
+     * <p>Defaults to false.</p>
+     *
+     * @param deltaExecutionContextUpdate true to write only the changed keys of BSON execution contexts
+     * @return true if only the changed keys of BSON execution contexts are written
+     * @since 1.2.0
+     */
+    @Getter
+    @Setter
+    private boolean deltaExecutionContextUpdate;
+
+    private final Map<Long, Document> writtenJobExecutionContexts = new ConcurrentHashMap<>();
+    private final Map<Long, Document> writtenStepExecutionContexts = new ConcurrentHashMap<>();
+
+    private final LongAdder executionContextSkippedWriteCount = new LongAdder();
+
+    /**
+     * Serialize updates of the same job execution.  A monitor held during the database round trip would pin a
+     * virtual thread to its carrier thread, a {@link ReentrantLock} does not.
+     */
+    private final Lock[] jobExecutionLocks = IntStream.range(0, JOB_EXECUTION_LOCK_STRIPES)
+            .mapToObj(i -> new ReentrantLock())
+            .toArray(Lock[]::new);
+
+    /**
+     * Number of bits used for the job execution sequence in a stepExecutionId,
+     * when {@link #isStepExecutionIdFromJobExecution()} is true.
+     */
+    public static final int STEP_EXECUTION_SEQUENCE_BITS = 20;
+
+    /**
+     * Maximum number of step executions pushed to a job execution document with one update in {@link #addAll(Collection)}.
+     */
+    public static final int ADD_ALL_BATCH_SIZE = 1000;
+
+    /**
+     * Number of locks shared by all job executions, must be a power of 2.
+     */
+    private static final int JOB_EXECUTION_LOCK_STRIPES = 64;
+
+    private static final long MAX_STEP_EXECUTION_SEQUENCE = (1L << STEP_EXECUTION_SEQUENCE_BITS) - 1;
+    private static final long MAX_SEQUENCED_JOB_EXECUTION_ID = Long.MAX_VALUE >> STEP_EXECUTION_SEQUENCE_BITS;
+
     /**
      * <p>Initializes Counter objects for jobInstanceId, jobExecutionId, and stepExecutionId</p>
      * <p>Ensures Unique Index on jobName, jobKey, and jobExecutionId named "jobInstance_jobExecution_unique"</p>
@@ -176,14 +401,216 @@ public class MongodbJobRepository implements JobRepository {
      */
     public MongodbJobRepository(MongoTemplate mongoTemplate, String jobCollectionName, String counterCollectionName,
                                 JobExecutionDocumentMapper jobExecutionDocumentMapper) {
+        this(mongoTemplate, jobCollectionName, counterCollectionName, jobExecutionDocumentMapper, 1, 1, 1);
+    }
+
+    /**
+     * <p>Initializes Counter objects for jobInstanceId, jobExecutionId, and stepExecutionId
+     * that reserve the specified number of values from the database with each call.  See: {@link MongodbCounter}</p>
+     * <p>Ensures Unique Index on jobName, jobKey, and jobExecutionId named "jobInstance_jobExecution_unique"</p>
+     * <p>Ensures Unique Index on jobExecutionId named "jobExecutionId_unique"</p>
+     *
+     * @param mongoTemplate              {@link MongoTemplate} to use.
+     * @param jobCollectionName          to be used for storing job execution data.
+     * @param counterCollectionName      to be used for storing sequence objects.
+     * @param jobExecutionDocumentMapper used for converting Job Execution data
+     * @param jobInstanceIdBlockSize     number of jobInstanceId values to reserve with each database call
+     * @param jobExecutionIdBlockSize    number of jobExecutionId values to reserve with each database call
+     * @param stepExecutionIdBlockSize   number of stepExecutionId values to reserve with each database call
+     * @since 1.2.0
+     */
+    public MongodbJobRepository(MongoTemplate mongoTemplate, String jobCollectionName, String counterCollectionName,
+                                JobExecutionDocumentMapper jobExecutionDocumentMapper,
+                                int jobInstanceIdBlockSize, int jobExecutionIdBlockSize, int stepExecutionIdBlockSize) {
+        this(mongoTemplate, jobCollectionName, counterCollectionName, jobExecutionDocumentMapper,
+                new MongodbCounter(mongoTemplate, JOB_INSTANCE_ID, counterCollectionName, jobInstanceIdBlockSize),
+                new MongodbCounter(mongoTemplate, JOB_EXECUTION_ID, counterCollectionName, jobExecutionIdBlockSize),
+                new MongodbCounter(mongoTemplate, STEP_EXECUTION_ID, counterCollectionName, stepExecutionIdBlockSize));
+    }
+
+    /**
+     * <p>Uses the provided {@link IdGenerator} objects for jobInstanceId, jobExecutionId, and stepExecutionId.</p>
+     *
+     * @param mongoTemplate              {@link MongoTemplate} to use.
+     * @param jobCollectionName          to be used for storing job execution data.
+     * @param counterCollectionName      where the counters are stored, if {@link MongodbCounter} is used.
+     * @param jobExecutionDocumentMapper used for converting Job Execution data
+     * @param jobInstanceIdGenerator     {@link IdGenerator} for jobInstanceId
+     * @param jobExecutionIdGenerator    {@link IdGenerator} for jobExecutionId
+     * @param stepExecutionIdGenerator   {@link IdGenerator} for stepExecutionId
+     * @since 1.2.0
+     */
+    public MongodbJobRepository(MongoTemplate mongoTemplate, String jobCollectionName, String counterCollectionName,
+                                JobExecutionDocumentMapper jobExecutionDocumentMapper,
+                                IdGenerator jobInstanceIdGenerator, IdGenerator jobExecutionIdGenerator,
+                                IdGenerator stepExecutionIdGenerator) {
+        Assert.notNull(jobInstanceIdGenerator, "jobInstanceIdGenerator must not be null");
+        Assert.notNull(jobExecutionIdGenerator, "jobExecutionIdGenerator must not be null");
+        Assert.notNull(stepExecutionIdGenerator, "stepExecutionIdGenerator must not be null");
+
         this.mongoTemplate = mongoTemplate;
         this.jobCollectionName = jobCollectionName;
         this.counterCollectionName = counterCollectionName;
         this.jobExecutionDocumentMapper = jobExecutionDocumentMapper;
+        this.jobInstanceIdGenerator = jobInstanceIdGenerator;
+        this.jobExecutionIdGenerator = jobExecutionIdGenerator;
+        this.stepExecutionIdGenerator = stepExecutionIdGenerator;
+    }
+
+    /**
+     * <p>Partial unique index on jobName, jobKey, launchGuard named "launchGuard_unique".</p>
+     * <p>Only job executions with a "launchGuard" field are indexed, so at most one execution of each job instance
+     * can be running, or prevent a new launch, at a time.</p>
+     *
+     * @return index required for race-free launches
+     * @since 1.2.0
+     */
+    public static Index launchGuardIndex() {
+        return new Index()
+                .on(JOB_NAME, Sort.Direction.ASC)
+                .on(JOB_KEY, Sort.Direction.ASC)
+                .on(LAUNCH_GUARD, Sort.Direction.ASC)
+                .named("launchGuard_unique")
+                .unique()
+                .partial(PartialIndexFilter.of(Criteria.where(LAUNCH_GUARD).exists(true)));
+    }
+
+    /**
+     * Counter for jobInstanceId
+     *
+     * @return Counter for jobInstanceId, or null if jobInstanceIdGenerator is not a {@link MongodbCounter}
+     */
+    @Nullable
+    public MongodbCounter getJobInstanceCounter() {
+        return asCounter(jobInstanceIdGenerator);
+    }
+
+    /**
+     * Counter for jobExecutionId
+     *
+     * @return Counter for jobExecutionId, or null if jobExecutionIdGenerator is not a {@link MongodbCounter}
+     */
+    @Nullable
+    public MongodbCounter getJobExecutionCounter() {
+        return asCounter(jobExecutionIdGenerator);
+    }
+
+    /**
+     * Counter for stepExecutionId
+     *
+     * @return Counter for stepExecutionId, or null if stepExecutionIdGenerator is not a {@link MongodbCounter}
+     */
+    @Nullable
+    public MongodbCounter getStepExecutionCounter() {
+        return asCounter(stepExecutionIdGenerator);
+    }
+
+    private MongodbCounter asCounter(IdGenerator idGenerator) {
+        return idGenerator instanceof MongodbCounter ? (MongodbCounter) idGenerator : null;
+    }
+
+    /**
+     * <p>When set, step executions are stored as separate documents in this collection,
+     * instead of in the "stepExecutions" array of the job execution document.
+     * This keeps job execution documents small for jobs with thousands of step executions.
+     * See {@link MongodbStepExecutionCollection}</p>
+     * <p>Defaults to null, which embeds step executions in the job execution document.</p>
+     *
+     * @param stepCollectionName collection for step executions, or null to embed step executions
+     * @since 1.2.0
+     */
+    public void setStepCollectionName(@Nullable String stepCollectionName) {
+        stepExecutionCollection = stepCollectionName == null ? null
+                : new MongodbStepExecutionCollection(mongoTemplate, stepCollectionName, jobExecutionDocumentMapper);
+        if (stepExecutionCollection != null) {
+            stepExecutionCollection.setExecutionContextOverflow(executionContextOverflow);
+        }
+    }
+
+    /**
+     * Collection where step executions are stored, when they are not embedded in the job execution documents.
+     *
+     * @return collection for step executions, or null if step executions are embedded
+     * @since 1.2.0
+     */
+    @Nullable
+    public String getStepCollectionName() {
+        return stepExecutionCollection == null ? null : stepExecutionCollection.getCollectionName();
+    }
+
+    /**
+     * <p>When set, execution contexts that are at least {@link MongodbExecutionContextOverflow#getThreshold()} bytes
+     * long are split into chunk documents in a separate collection, and only referenced from the job or step execution
+     * document.  This prevents updates from failing when an execution context approaches the document size limit.
+     * Chunks are only read when a job execution document with a reference is read.</p>
+     * <p>Defaults to null, which stores all execution contexts in the job or step execution document.</p>
+     *
+     * @param executionContextOverflow {@link MongodbExecutionContextOverflow}, or null to store all execution contexts inline
+     * @since 1.2.0
+     */
+    public void setExecutionContextOverflow(@Nullable MongodbExecutionContextOverflow executionContextOverflow) {
+        this.executionContextOverflow = executionContextOverflow;
+        if (stepExecutionCollection != null) {
+            stepExecutionCollection.setExecutionContextOverflow(executionContextOverflow);
+        }
+    }
+
+    /**
+     * <p>Use a write and read concern for the operations of a category, instead of the defaults of the
+     * {@link MongoTemplate}.  For example, job creation and status updates can use "majority", while the frequent
+     * updates of running step executions use w:1.  See {@link OperationCategory}</p>
+     * <p>MongoDB ignores these concerns inside a transaction, so chunk commits of a step that uses a
+     * MongoTransactionManager always use the concerns of the transaction.</p>
+     * <p>Counters, the overflow collection, and step executions loaded by {@link MongodbStepExecutionCollection}
+     * always use the defaults.</p>
+     * <p>The operations of the category use a {@link ConcernMongoTemplate} on the database factory and converter of
+     * the {@link MongoTemplate}.  Other settings of the {@link MongoTemplate} can be applied to
+     * {@link #getOperationTemplate(OperationCategory)}.</p>
+     *
+     * @param category     category of the operations
+     * @param writeConcern write concern, or null for the default of the database
+     * @param readConcern  read concern, or null for the default of the database
+     * @since 1.2.0
+     */
+    public void setOperationConcern(OperationCategory category, @Nullable WriteConcern writeConcern,
+                                    @Nullable ReadConcern readConcern) {
+        Assert.notNull(category, "Operation Category must not be null");
+
+        if (writeConcern == null && readConcern == null) {
+            operationTemplates.remove(category);
+        } else {
+            operationTemplates.put(category, new ConcernMongoTemplate(mongoTemplate, writeConcern, readConcern));
+        }
+    }
 
-        jobInstanceCounter = new MongodbCounter(mongoTemplate, JOB_INSTANCE_ID, counterCollectionName);
-        jobExecutionCounter = new MongodbCounter(mongoTemplate, JOB_EXECUTION_ID, counterCollectionName);
-        stepExecutionCounter = new MongodbCounter(mongoTemplate, STEP_EXECUTION_ID, counterCollectionName);
+    /**
+     * @param category category of the operations
+     * @return {@link MongoTemplate} used for the operations of the category
+     * @since 1.2.0
+     */
+    public MongoTemplate getOperationTemplate(OperationCategory category) {
+        return template(category);
+    }
+
+    private MongoTemplate template(OperationCategory category) {
+        return operationTemplates.getOrDefault(category, mongoTemplate);
+    }
+
+    private Object storeExecutionContext(String owner, @Nullable Object executionContext) {
+        return executionContextOverflow == null ? executionContext
+                : executionContextOverflow.store(owner, executionContext);
+    }
+
+    private void removeReplacedExecutionContext(String owner, @Nullable Object executionContext) {
+        if (executionContextOverflow != null) {
+            executionContextOverflow.removeReplaced(owner, executionContext);
+        }
+    }
+
+    private void forgetExecutionContext(String owner) {
+        if (executionContextOverflow != null) {
+            executionContextOverflow.forget(owner);
+        }
     }
 
     /**
@@ -198,9 +625,9 @@ public class MongodbJobRepository implements JobRepository {
     @Override
     public boolean isJobInstanceExists(String jobName, JobParameters jobParameters) {
         validateJobInstance(jobName, jobParameters);
-        return mongoTemplate.exists(new Query()
+        return template(OperationCategory.CREATION).exists(new Query()
                         .addCriteria(Criteria.where(JOB_NAME).is(jobName))
-                        .addCriteria(Criteria.where(JOB_KEY).is(jobExecutionDocumentMapper.getJobKeyGenerator().generateKey(jobParameters)))
+                        .addCriteria(Criteria.where(JOB_KEY).is(jobExecutionDocumentMapper.generateJobKey(jobParameters)))
                         .limit(1),
                 jobCollectionName);
     }
@@ -221,9 +648,9 @@ public class MongodbJobRepository implements JobRepository {
 
         Assert.state(!isJobInstanceExists(jobName, jobParameters), "JobInstance must not already exist.");
 
-        var jobInstance = new JobInstance(jobInstanceCounter.nextValue(), jobName);
+        var jobInstance = new JobInstance(jobInstanceIdGenerator.nextValue(), jobName);
 
-        mongoTemplate.insert(jobExecutionDocumentMapper.toJobExecutionDocument(jobInstance, jobParameters), jobCollectionName);
+        template(OperationCategory.CREATION).insert(jobExecutionDocumentMapper.toJobExecutionDocument(jobInstance, jobParameters), jobCollectionName);
 
         return jobInstance;
     }
@@ -253,7 +680,7 @@ public class MongodbJobRepository implements JobRepository {
         JobExecution jobExecution = new JobExecution(jobInstance, jobParameters, jobConfigurationName);
         jobExecution.setLastUpdated(new Date(System.currentTimeMillis()));
 
-        return insertNewJobExecution(jobExecution);
+        return insertNewJobExecution(jobExecution, false);
     }
 
     /**
@@ -264,6 +691,11 @@ public class MongodbJobRepository implements JobRepository {
      * completed. If matching {@link JobInstance} does not exist yet it will be
      * created.
      * </p>
+     * <p>
+     * The new execution is inserted with a "launchGuard" field.  If another launcher inserted a guarded execution
+     * for the same job instance after the existing executions were read, the insert is rejected by the
+     * "launchGuard_unique" index, and the executions are checked again.
+     * </p>
      *
      * @param jobName       the name of the job that is to be executed
      * @param jobParameters the runtime parameters for the job
@@ -292,22 +724,26 @@ public class MongodbJobRepository implements JobRepository {
          * has finished.
          */
 
-        var jobKey = jobExecutionDocumentMapper.getJobKeyGenerator().generateKey(jobParameters);
+        var jobKey = jobExecutionDocumentMapper.generateJobKey(jobParameters);
 
-        var jobExecutionDocs = mongoTemplate.find(new Query()
-                        .addCriteria(Criteria.where(JOB_NAME).is(jobName))
-                        .addCriteria(Criteria.where(JOB_KEY).is(jobKey))
-                        .with(Sort.by(JOB_EXECUTION_ID).descending())
-                , JobExecutionDocument.class, jobCollectionName);
+        // Only the fields used by checkForRunningExecutions are read.
+        // Step executions and execution contexts of earlier attempts are never needed here.
+        var query = new Query()
+                .addCriteria(Criteria.where(JOB_NAME).is(jobName))
+                .addCriteria(Criteria.where(JOB_KEY).is(jobKey))
+                .with(Sort.by(JOB_EXECUTION_ID).descending());
+        query.fields().include(JOB_INSTANCE_ID, JOB_EXECUTION_ID, STATUS, START_TIME, END_TIME).exclude("_id");
+
+        var jobExecutionDocs = template(OperationCategory.CREATION).find(query, JobExecutionDocument.class, jobCollectionName);
 
         if (CollectionUtils.isEmpty(jobExecutionDocs)) {
             // No JobInstance or JobExecution Found
             // Create new JobInstance and JobExecution
-            var jobInstance = new JobInstance(jobInstanceCounter.nextValue(), jobName);
+            var jobInstance = new JobInstance(jobInstanceIdGenerator.nextValue(), jobName);
             JobExecution jobExecution = new JobExecution(jobInstance, jobParameters, null);
             jobExecution.setLastUpdated(new Date(System.currentTimeMillis()));
 
-            return insertNewJobExecution(jobExecution);
+            return insertGuardedJobExecution(jobExecution, query, jobKey);
         }
 
         // Remove JobInstance only record, if present
@@ -318,55 +754,104 @@ public class MongodbJobRepository implements JobRepository {
             throw new IllegalStateException("Cannot find any job execution for jobName=" + jobName + " jobKey=" + jobKey);
         }
 
-        checkForRunningExecutions(jobExecutionDocs.stream()
-                .map(jobExecutionDocumentMapper::toJobExecution)
-                .collect(Collectors.toList()));
+        checkForRunningExecutions(jobExecutionDocs, hasIdentifyingParameters(jobParameters));
 
         // build new JobExecution using JobInstance and ExecutionContext from most recent JobExecution
-        var previousJobExecution = jobExecutionDocumentMapper.toJobExecution(jobExecutionDocs.get(0));
-        var jobExecution = new JobExecution(previousJobExecution.getJobInstance(), jobParameters, null);
-        jobExecution.setExecutionContext(previousJobExecution.getExecutionContext());
+        var previousJobExecutionDoc = jobExecutionDocs.get(0);
+        var jobInstance = new JobInstance(previousJobExecutionDoc.getJobInstanceId(), jobName);
+        var jobExecution = new JobExecution(jobInstance, jobParameters, null);
+        jobExecution.setExecutionContext(getJobExecutionContext(previousJobExecutionDoc.getJobExecutionId()));
         jobExecution.setLastUpdated(new Date(System.currentTimeMillis()));
 
-        return insertNewJobExecution(jobExecution);
+        return insertGuardedJobExecution(jobExecution, query, jobKey);
     }
 
-    private JobExecution insertNewJobExecution(JobExecution jobExecution) {
-        jobExecution.setId(jobExecutionCounter.nextValue());
+    /**
+     * Insert with a "launchGuard" field.  When the "launchGuard_unique" index rejects the insert, report the
+     * execution that won the race the same way as {@link #checkForRunningExecutions(Collection, boolean)}.
+     */
+    private JobExecution insertGuardedJobExecution(JobExecution jobExecution, Query query, String jobKey)
+            throws JobExecutionAlreadyRunningException, JobRestartException, JobInstanceAlreadyCompleteException {
+        try {
+            return insertNewJobExecution(jobExecution, true);
+        } catch (DuplicateKeyException e) {
+            removeReplacedExecutionContext(MongodbExecutionContextOverflow.jobOwner(jobExecution.getId()), null);
+
+            var jobExecutionDocs = template(OperationCategory.CREATION).find(query, JobExecutionDocument.class, jobCollectionName);
+            jobExecutionDocs.removeIf(doc -> doc.getJobExecutionId() == null);
+            checkForRunningExecutions(jobExecutionDocs, hasIdentifyingParameters(jobExecution.getJobParameters()));
+
+            throw new JobExecutionAlreadyRunningException("A job execution for this job is already being launched."
+                    + " jobName=" + jobExecution.getJobInstance().getJobName() + " jobKey=" + jobKey, e);
+        }
+    }
+
+    /**
+     * Read only the execution context of a job execution.
+     */
+    private ExecutionContext getJobExecutionContext(Long jobExecutionId) {
+        var query = Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecutionId));
+        query.fields().include(JOB_EXECUTION_ID, EXECUTION_CONTEXT).exclude("_id");
+
+        var jobExecutionDoc = template(OperationCategory.CREATION).findOne(query, JobExecutionDocument.class, jobCollectionName);
+
+        Assert.state(jobExecutionDoc != null, () -> "Job Execution not found for jobExecutionId=" + jobExecutionId);
+
+        if (executionContextOverflow != null) {
+            executionContextOverflow.loadExecutionContexts(List.of(jobExecutionDoc));
+        }
+        return jobExecutionDocumentMapper.readExecutionContext(jobExecutionDoc.getExecutionContextValue());
+    }
+
+    private JobExecution insertNewJobExecution(JobExecution jobExecution, boolean launchGuard) {
+        jobExecution.setId(jobExecutionIdGenerator.nextValue());
         jobExecution.incrementVersion();
 
-        var document = (Document) mongoTemplate.getConverter().convertToMongoType(jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution));
+        var jobExecutionDocument = jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution);
+        jobExecutionDocument.setExecutionContextValue(storeExecutionContext(
+                MongodbExecutionContextOverflow.jobOwner(jobExecution.getId()), jobExecutionDocument.getExecutionContextValue()));
+        var document = (Document) mongoTemplate.getConverter().convertToMongoType(jobExecutionDocument);
+        document.put(STEP_EXECUTION_COUNTS, new Document());
+        if (launchGuard) {
+            document.put(LAUNCH_GUARD, true);
+        }
 
-        mongoTemplate.upsert(new Query()
+        template(OperationCategory.CREATION).upsert(new Query()
                         .addCriteria(Criteria.where(JOB_NAME).is(jobExecution.getJobInstance().getJobName()))
-                        .addCriteria(Criteria.where(JOB_KEY).is(jobExecutionDocumentMapper.getJobKeyGenerator().generateKey(jobExecution.getJobParameters())))
+                        .addCriteria(Criteria.where(JOB_KEY).is(jobExecutionDocumentMapper.generateJobKey(jobExecution.getJobParameters())))
                         .addCriteria(Criteria.where(JOB_EXECUTION_ID).is(null)),
                 Update.fromDocument(document), jobCollectionName);
 
         return jobExecution;
     }
 
+    /**
+     * Same checks as {@link org.springframework.batch.core.repository.support.SimpleJobRepository}, using only the
+     * status, startTime and endTime fields.  All executions found share the jobKey, which is generated from the
+     * identifying parameters, so they have identifying parameters if the new execution does.
+     */
     @SuppressWarnings("PMD.CyclomaticComplexity")
-    private void checkForRunningExecutions(Collection<JobExecution> jobExecutions)
+    private void checkForRunningExecutions(Collection<JobExecutionDocument> jobExecutionDocs, boolean identifying)
             throws JobExecutionAlreadyRunningException, JobRestartException, JobInstanceAlreadyCompleteException {
-        for (var jobExecution : jobExecutions) {
-            if (jobExecution.isRunning() || jobExecution.isStopping()) {
+        for (var jobExecutionDoc : jobExecutionDocs) {
+            BatchStatus status = jobExecutionDoc.getStatus() == null ? BatchStatus.UNKNOWN
+                    : BatchStatus.valueOf(jobExecutionDoc.getStatus());
+            var running = jobExecutionDoc.getStartTime() != null && jobExecutionDoc.getEndTime() == null;
+            if (running || status == BatchStatus.STOPPING) {
                 throw new JobExecutionAlreadyRunningException("A job execution for this job is already running."
-                        + " jobExecutionId=" + jobExecution.getId());
+                        + " jobExecutionId=" + jobExecutionDoc.getJobExecutionId());
             }
-            BatchStatus status = jobExecution.getStatus();
             if (status == BatchStatus.UNKNOWN) {
                 throw new JobRestartException("Cannot restart job from UNKNOWN status. "
                         + "The last execution ended with a failure that could not be rolled back, "
                         + "so it may be dangerous to proceed. Manual intervention is probably necessary."
-                        + " jobExecutionId=" + jobExecution.getId());
+                        + " jobExecutionId=" + jobExecutionDoc.getJobExecutionId());
             }
-            if ((status == BatchStatus.COMPLETED || status == BatchStatus.ABANDONED)
-                    && hasIdentifyingParameters(jobExecution.getJobParameters())) {
+            if ((status == BatchStatus.COMPLETED || status == BatchStatus.ABANDONED) && identifying) {
                 throw new JobInstanceAlreadyCompleteException(
                         "A job instance already exists and is complete."
                                 + " If you want to run this job again, change the identifying parameters."
-                                + " jobExecutionId=" + jobExecution.getId());
+                                + " jobExecutionId=" + jobExecutionDoc.getJobExecutionId());
             }
         }
     }
@@ -400,25 +885,57 @@ public class MongodbJobRepository implements JobRepository {
         jobExecution.setLastUpdated(new Date(System.currentTimeMillis()));
 
         updateJobExecution(jobExecution);
+
+        if (!jobExecution.getStatus().isRunning() || jobExecution.getEndTime() != null) {
+            writtenJobExecutionContexts.remove(jobExecution.getId());
+            forgetExecutionContext(MongodbExecutionContextOverflow.jobOwner(jobExecution.getId()));
+            forgetStepExecutions(jobExecution);
+        }
+    }
+
+    /**
+     * Steps that are abandoned without a final {@link #update(StepExecution)} would otherwise stay in the
+     * write-behind and pending execution context state until the repository is discarded.
+     */
+    private void forgetStepExecutions(JobExecution jobExecution) {
+        for (var stepExecution : jobExecution.getStepExecutions()) {
+            var stepExecutionId = stepExecution.getId();
+            if (stepExecutionId != null) {
+                stepExecutionFlushes.remove(stepExecutionId);
+                pendingStepExecutionContexts.remove(stepExecutionId);
+                writtenStepExecutionContexts.remove(stepExecutionId);
+                writtenStepExecutions.remove(stepExecutionId);
+                forgetExecutionContext(MongodbExecutionContextOverflow.stepOwner(stepExecutionId));
+            }
+        }
     }
 
+    /**
+     * Only the version and status are read, so that the saved {@link JobExecutionDocument}
+     * and the execution context of each step do not need to be mapped.
+     */
     private void synchronizeStatusAndVersion(JobExecution jobExecution) {
-        var jobExecutionSavedDoc = mongoTemplate.findOne(new Query()
-                        .addCriteria(Criteria.where(JOB_NAME).is(jobExecution.getJobInstance().getJobName()))
-                        .addCriteria(Criteria.where(JOB_KEY).is(jobExecutionDocumentMapper.getJobKeyGenerator().generateKey(jobExecution.getJobParameters())))
-                        .addCriteria(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId()))
-                , JobExecutionDocument.class, jobCollectionName);
+        var query = new Query()
+                .addCriteria(Criteria.where(JOB_NAME).is(jobExecution.getJobInstance().getJobName()))
+                .addCriteria(Criteria.where(JOB_KEY).is(jobExecutionDocumentMapper.generateJobKey(jobExecution.getJobParameters())))
+                .addCriteria(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId()));
+        query.fields().include(VERSION, STATUS).exclude("_id");
 
-        Assert.state(jobExecutionSavedDoc != null,
+        var savedStatusAndVersion = template(OperationCategory.STATUS).findOne(query, Document.class, jobCollectionName);
+
+        Assert.state(savedStatusAndVersion != null,
                 () -> "Job Execution not found for jobExecutionId=" + jobExecution.getId());
 
-        var savedJobExecution = jobExecutionDocumentMapper.toJobExecution(jobExecutionSavedDoc);
+        synchronizeStatusAndVersion(jobExecution, savedStatusAndVersion);
+    }
 
-        var savedVersion = savedJobExecution.getVersion();
+    private void synchronizeStatusAndVersion(JobExecution jobExecution, Document savedStatusAndVersion) {
+        var savedVersion = savedStatusAndVersion.get(VERSION, Number.class);
 
-        if (!savedVersion.equals(jobExecution.getVersion())) {
-            jobExecution.upgradeStatus(savedJobExecution.getStatus());
-            jobExecution.setVersion(savedVersion);
+        if (savedVersion != null && savedVersion.intValue() != jobExecution.getVersion()) {
+            var savedStatus = savedStatusAndVersion.getString(STATUS);
+            jobExecution.upgradeStatus(savedStatus == null ? BatchStatus.UNKNOWN : BatchStatus.valueOf(savedStatus));
+            jobExecution.setVersion(savedVersion.intValue());
         }
     }
 
@@ -427,22 +944,33 @@ public class MongodbJobRepository implements JobRepository {
         Assert.notNull(jobExecution.getId(), "JobExecution must be already saved (have an id assigned).");
     }
 
+    private Lock jobExecutionLock(JobExecution jobExecution) {
+        return jobExecutionLocks[Long.hashCode(jobExecution.getId()) & (JOB_EXECUTION_LOCK_STRIPES - 1)];
+    }
+
     private void updateJobExecution(JobExecution jobExecution) {
-        synchronized (jobExecution) {
+        var lock = jobExecutionLock(jobExecution);
+        lock.lock();
+        try {
             var currentVersion = jobExecution.getVersion();
             var nextVersion = currentVersion + 1;
 
-            var updateResult = mongoTemplate.updateFirst(
+            var update = Update.update(START_TIME, jobExecution.getStartTime())
+                    .set(END_TIME, jobExecution.getEndTime())
+                    .set(STATUS, jobExecution.getStatus().toString())
+                    .set(EXIT_CODE, jobExecution.getExitStatus().getExitCode())
+                    .set(EXIT_DESCRIPTION, jobExecution.getExitStatus().getExitDescription())
+                    .set(VERSION, nextVersion)
+                    .set(CREATE_TIME, jobExecution.getCreateTime())
+                    .set(LAST_UPDATED, jobExecution.getLastUpdated());
+            if (!isLaunchBlocking(jobExecution)) {
+                update.unset(LAUNCH_GUARD);
+            }
+
+            var updateResult = template(OperationCategory.STATUS).updateFirst(
                     Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId()))
                             .addCriteria(Criteria.where(VERSION).is(currentVersion)),
-                    Update.update(START_TIME, jobExecution.getStartTime())
-                            .set(END_TIME, jobExecution.getEndTime())
-                            .set(STATUS, jobExecution.getStatus().toString())
-                            .set(EXIT_CODE, jobExecution.getExitStatus().getExitCode())
-                            .set(EXIT_DESCRIPTION, jobExecution.getExitStatus().getExitDescription())
-                            .set(VERSION, nextVersion)
-                            .set(CREATE_TIME, jobExecution.getCreateTime())
-                            .set(LAST_UPDATED, jobExecution.getLastUpdated()),
+                    update,
                     jobCollectionName);
 
             if (updateResult.getModifiedCount() == 0) {
@@ -452,9 +980,40 @@ public class MongodbJobRepository implements JobRepository {
             }
 
             jobExecution.incrementVersion();
+
+            if (stepExecutionCollection != null) {
+                updateStepJobStatusAndVersion(jobExecution);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Copy the status and version of the job execution to its step execution documents, unless they already have
+     * a later version.  Step documents stored before the copy was added are left without it.
+     */
+    private void updateStepJobStatusAndVersion(JobExecution jobExecution) {
+        template(OperationCategory.STATUS).updateMulti(Query.query(Criteria
+                        .where(JOB_EXECUTION_ID).is(jobExecution.getId())
+                        .and(JOB_EXECUTION + "." + VERSION).lt(jobExecution.getVersion())),
+                Update.update(JOB_EXECUTION, MongodbStepExecutionCollection.jobStatusAndVersion(jobExecution)),
+                stepExecutionCollection.getCollectionName());
+    }
+
+    /**
+     * True while the execution would fail {@link #checkForRunningExecutions(Collection, boolean)}, so its
+     * "launchGuard" field must be kept.  Once it is removed, it is never set again.
+     */
+    private boolean isLaunchBlocking(JobExecution jobExecution) {
+        var status = jobExecution.getStatus();
+        return jobExecution.isRunning()
+                || status.isRunning()
+                || status == BatchStatus.UNKNOWN
+                || (status == BatchStatus.COMPLETED || status == BatchStatus.ABANDONED)
+                && hasIdentifyingParameters(jobExecution.getJobParameters());
+    }
+
     /**
      * Persist the updated {@link ExecutionContext} of the given
      * {@link JobExecution}.
@@ -466,15 +1025,86 @@ public class MongodbJobRepository implements JobRepository {
     public void updateExecutionContext(JobExecution jobExecution) {
         validateJobExecution(jobExecution);
 
-        var updateResult = mongoTemplate.updateFirst(
+        var owner = MongodbExecutionContextOverflow.jobOwner(jobExecution.getId());
+        var storedContext = storeExecutionContext(owner,
+                jobExecutionDocumentMapper.writeExecutionContext(jobExecution.getExecutionContext()));
+        var update = new Update();
+        if (!setExecutionContext(update, EXECUTION_CONTEXT, writtenJobExecutionContexts.get(jobExecution.getId()),
+                storedContext)) {
+            executionContextSkippedWriteCount.increment();
+            return;
+        }
+
+        var updateResult = template(OperationCategory.CONTEXT).updateFirst(
                 Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
-                Update.update(EXECUTION_CONTEXT,
-                        jobExecutionDocumentMapper.serializeContext(jobExecution.getExecutionContext())),
+                update,
                 jobCollectionName);
 
         Assert.state(updateResult.getMatchedCount() == 1,
                 () -> "Unable to update Execution Context for missing Job Execution.  jobExecutionId="
                         + jobExecution.getId());
+
+        removeReplacedExecutionContext(owner, storedContext);
+        rememberExecutionContext(writtenJobExecutionContexts, jobExecution.getId(), storedContext);
+    }
+
+    /**
+     * <p>Add the execution context to the update.  Only the changed keys are set, and the removed keys unset,
+     * if a BSON execution context was written before and is still stored in the document.</p>
+     *
+     * @param update         update of the job or step execution
+     * @param field          "executionContext" field, with the prefix of the step execution
+     * @param writtenContext execution context written before, or null if it is not known
+     * @param storedContext  value to store in the "executionContext" field
+     * @return false if the execution context has not changed, so nothing was added to the update
+     */
+    private static boolean setExecutionContext(Update update, String field, @Nullable Document writtenContext,
+                                               @Nullable Object storedContext) {
+        if (writtenContext == null || !(storedContext instanceof Document)
+                || ((Document) storedContext).containsKey("")) {
+            update.set(field, storedContext);
+            return true;
+        }
+
+        var context = (Document) storedContext;
+        var changed = false;
+        for (var entry : context.entrySet()) {
+            if (!writtenContext.containsKey(entry.getKey())
+                    || !Objects.equals(writtenContext.get(entry.getKey()), entry.getValue())) {
+                update.set(field + "." + entry.getKey(), entry.getValue());
+                changed = true;
+            }
+        }
+        for (var key : writtenContext.keySet()) {
+            if (!context.containsKey(key)) {
+                update.unset(field + "." + key);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Keep the execution context just written, if it is a BSON execution context stored in the document
+     * and delta updates are enabled.
+     */
+    private void rememberExecutionContext(Map<Long, Document> writtenContexts, Long id, @Nullable Object storedContext) {
+        if (deltaExecutionContextUpdate && storedContext instanceof Document) {
+            writtenContexts.put(id, (Document) storedContext);
+        } else {
+            writtenContexts.remove(id);
+        }
+    }
+
+    /**
+     * <p>Number of execution context writes skipped because the context had not changed.</p>
+     * <p>See {@link #setDeltaExecutionContextUpdate(boolean)}</p>
+     *
+     * @return Number of execution context writes that were not needed.
+     * @since 1.2.0
+     */
+    public long getExecutionContextSkippedWriteCount() {
+        return executionContextSkippedWriteCount.sum();
     }
 
     /**
@@ -488,14 +1118,20 @@ public class MongodbJobRepository implements JobRepository {
     public JobExecution getLastJobExecution(String jobName, JobParameters jobParameters) {
         validateJobInstance(jobName, jobParameters);
 
-        var jobKey = jobExecutionDocumentMapper.getJobKeyGenerator().generateKey(jobParameters);
-        var jobExecutionDoc = mongoTemplate.findOne(new Query()
+        var jobKey = jobExecutionDocumentMapper.generateJobKey(jobParameters);
+        var jobExecutionDoc = template(OperationCategory.CREATION).findOne(new Query()
                         .addCriteria(Criteria.where(JOB_NAME).is(jobName))
                         .addCriteria(Criteria.where(JOB_KEY).is(jobKey))
                         .addCriteria(Criteria.where(JOB_EXECUTION_ID).ne(null))
                         .with(Sort.by(JOB_EXECUTION_ID).descending())
                 , JobExecutionDocument.class, jobCollectionName);
-        return jobExecutionDoc == null ? null : jobExecutionDocumentMapper.toJobExecution(jobExecutionDoc);
+
+        if (jobExecutionDoc == null) {
+            return null;
+        }
+
+        loadReferences(jobExecutionDoc);
+        return jobExecutionDocumentMapper.toJobExecution(jobExecutionDoc);
     }
 
     /**
@@ -512,17 +1148,230 @@ public class MongodbJobRepository implements JobRepository {
      */
     @Override
     public void add(StepExecution stepExecution) {
+        prepareNewStepExecution(stepExecution);
+
+        pushStepExecutions(List.of(stepExecution));
+    }
+
+    private void prepareNewStepExecution(StepExecution stepExecution) {
         validateStepExecution(stepExecution);
         Assert.isNull(stepExecution.getId(),
                 "to-be-saved (not updated) StepExecution can't already have an id assigned");
 
-        stepExecution.setId(stepExecutionCounter.nextValue());
         stepExecution.setLastUpdated(new Date(System.currentTimeMillis()));
+        stepExecution.setVersion(0);
+    }
 
-        mongoTemplate.updateFirst(Query.query(Criteria
-                        .where(JOB_EXECUTION_ID).is(stepExecution.getJobExecutionId())),
-                new Update().push(STEP_EXECUTIONS, jobExecutionDocumentMapper.toStepExecutionDocument(stepExecution)),
-                jobCollectionName);
+    /**
+     * Load the step executions and oversized execution contexts that are not stored in the job execution document.
+     */
+    private void loadReferences(JobExecutionDocument jobExecutionDoc) {
+        if (stepExecutionCollection != null) {
+            stepExecutionCollection.loadStepExecutions(List.of(jobExecutionDoc));
+        }
+        if (executionContextOverflow != null) {
+            executionContextOverflow.loadExecutionContexts(List.of(jobExecutionDoc));
+        }
+    }
+
+    /**
+     * Assign ids to step executions of the same job execution, and push all of them with a single update,
+     * or insert them into the step execution collection.
+     */
+    private void pushStepExecutions(List<StepExecution> stepExecutions) {
+        if (stepExecutionIdFromJobExecution) {
+            addWithJobExecutionSequence(stepExecutions);
+            return;
+        }
+
+        var ids = stepExecutions.size() == 1
+                ? List.of(stepExecutionIdGenerator.nextValue())
+                : stepExecutionIdGenerator.nextValues(stepExecutions.size());
+        for (var i = 0; i < stepExecutions.size(); i++) {
+            stepExecutions.get(i).setId(ids.get(i));
+        }
+
+        if (stepExecutionCollection != null) {
+            insertSeparateStepExecutions(stepExecutions);
+            return;
+        }
+
+        var update = new Update().push(STEP_EXECUTIONS).each(toStepExecutionDocuments(stepExecutions));
+        incrementStepExecutionCounts(update, stepExecutions);
+
+        template(OperationCategory.CREATION).updateFirst(Query.query(Criteria
+                        .where(JOB_EXECUTION_ID).is(stepExecutions.get(0).getJobExecutionId())),
+                update, jobCollectionName);
+    }
+
+    /**
+     * Insert the step executions of the same job execution into the step collection.  The job execution may be
+     * updated between reading the status and version copied to them and the insert, so the saved job execution is
+     * read once afterwards, and its status and version copied again if they changed.
+     */
+    private void insertSeparateStepExecutions(List<StepExecution> stepExecutions) {
+        var jobExecution = stepExecutions.get(0).getJobExecution();
+        var copiedVersion = jobExecution.getVersion();
+        stepExecutionCollection.insert(stepExecutions, template(OperationCategory.CREATION));
+
+        var query = Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId()));
+        query.fields().include(VERSION, STATUS).exclude("_id");
+        var savedStatusAndVersion = template(OperationCategory.CREATION).findOne(query, Document.class, jobCollectionName);
+        var savedVersion = savedStatusAndVersion == null ? null : savedStatusAndVersion.get(VERSION, Number.class);
+
+        if (savedVersion != null && !Objects.equals(savedVersion.intValue(), copiedVersion)) {
+            template(OperationCategory.CREATION).updateMulti(Query.query(Criteria
+                            .where(STEP_EXECUTION_ID).in(stepExecutions.stream()
+                                    .map(StepExecution::getId)
+                                    .collect(Collectors.toList()))
+                            .and(JOB_EXECUTION + "." + VERSION).lt(savedVersion.intValue())),
+                    Update.update(JOB_EXECUTION, savedStatusAndVersion),
+                    stepExecutionCollection.getCollectionName());
+        }
+    }
+
+    /**
+     * Increment the "stepExecutionCounts" field of each step name, in the update that pushes the step executions.
+     */
+    private static void incrementStepExecutionCounts(Update update, List<StepExecution> stepExecutions) {
+        stepExecutions.stream()
+                .collect(Collectors.groupingBy(StepExecution::getStepName, LinkedHashMap::new, Collectors.counting()))
+                .forEach((stepName, count) -> update.inc(STEP_EXECUTION_COUNTS + "." + stepExecutionCountKey(stepName), count));
+    }
+
+    /**
+     * Step names may contain "." and "$", which are not allowed in field names, so they are percent encoded.
+     *
+     * @param stepName name of the step
+     * @return key of the step in the "stepExecutionCounts" field
+     */
+    static String stepExecutionCountKey(String stepName) {
+        return stepName
+                .replace("%", "%25")
+                .replace(".", "%2E")
+                .replace("$", "%24");
+    }
+
+    private Object[] toStepExecutionDocuments(List<StepExecution> stepExecutions) {
+        return stepExecutions.stream()
+                .map(this::toStepExecutionDocument)
+                .toArray();
+    }
+
+    private StepExecutionDocument toStepExecutionDocument(StepExecution stepExecution) {
+        var document = jobExecutionDocumentMapper.toStepExecutionDocument(stepExecution);
+        document.setExecutionContextValue(storeExecutionContext(
+                MongodbExecutionContextOverflow.stepOwner(stepExecution.getId()), document.getExecutionContextValue()));
+        return document;
+    }
+
+    /**
+     * <p>Assigns the stepExecutionIds from the "stepExecutionSequence" field of the job execution document.
+     * The sequence is read and incremented by the server, so concurrent adds never guess or retry.</p>
+     * <p>When step executions are embedded, one pipeline update computes their ids from the saved sequence and pushes
+     * them.  When they are stored in a separate collection, or their execution contexts may overflow, the ids are
+     * needed first, so the sequence is incremented before they are stored.</p>
+     */
+    private void addWithJobExecutionSequence(List<StepExecution> stepExecutions) {
+        var jobExecutionId = stepExecutions.get(0).getJobExecutionId();
+        Assert.state(jobExecutionId <= MAX_SEQUENCED_JOB_EXECUTION_ID,
+                () -> "jobExecutionId=" + jobExecutionId + " is too large to create stepExecutionId from job execution sequence");
+
+        var query = Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecutionId)
+                .and(STEP_EXECUTION_SEQUENCE).not().gt(MAX_STEP_EXECUTION_SEQUENCE - stepExecutions.size()));
+        query.fields().include(STEP_EXECUTION_SEQUENCE);
+
+        var firstId = (jobExecutionId << STEP_EXECUTION_SEQUENCE_BITS) + 1;
+        for (var i = 0; i < stepExecutions.size(); i++) {
+            stepExecutions.get(i).setId(firstId + i);
+        }
+
+        var pushInUpdate = stepExecutionCollection == null && executionContextOverflow == null;
+        var savedSequenceDoc = template(OperationCategory.CREATION).findAndModify(query,
+                pushInUpdate ? pushWithJobExecutionSequence(stepExecutions)
+                        : new Update().inc(STEP_EXECUTION_SEQUENCE, stepExecutions.size()),
+                Document.class, jobCollectionName);
+
+        if (savedSequenceDoc == null) {
+            stepExecutions.forEach(stepExecution -> stepExecution.setId(null));
+            Assert.state(template(OperationCategory.CREATION).exists(Query.query(Criteria
+                            .where(JOB_EXECUTION_ID).is(jobExecutionId)), jobCollectionName),
+                    () -> "Job Execution not found for jobExecutionId=" + jobExecutionId);
+            throw new IllegalStateException("Too many step executions for jobExecutionId=" + jobExecutionId);
+        }
+
+        var savedSequence = savedSequenceDoc.get(STEP_EXECUTION_SEQUENCE, Number.class);
+        if (savedSequence != null) {
+            stepExecutions.forEach(stepExecution -> stepExecution.setId(stepExecution.getId() + savedSequence.longValue()));
+        }
+
+        if (stepExecutionCollection != null) {
+            insertSeparateStepExecutions(stepExecutions);
+        } else if (!pushInUpdate) {
+            var update = new Update().push(STEP_EXECUTIONS).each(toStepExecutionDocuments(stepExecutions));
+            incrementStepExecutionCounts(update, stepExecutions);
+            template(OperationCategory.CREATION).updateFirst(Query.query(Criteria
+                    .where(JOB_EXECUTION_ID).is(jobExecutionId)), update, jobCollectionName);
+        }
+    }
+
+    /**
+     * <p>Pipeline update that increments the "stepExecutionSequence" field, and pushes the step executions.
+     * Their ids so far are relative to a sequence of 0, so the sequence before the update is added to them.
+     * Expressions in a single $set stage all read the document before the update.</p>
+     * <p>The step execution documents are wrapped in $literal, so values starting with "$" are not read as field paths.</p>
+     */
+    private AggregationUpdate pushWithJobExecutionSequence(List<StepExecution> stepExecutions) {
+        var savedSequence = new Document("$ifNull", Arrays.asList("$" + STEP_EXECUTION_SEQUENCE, 0L));
+
+        var stepDocuments = new ArrayList<Document>();
+        for (var stepExecution : stepExecutions) {
+            var stepDocument = (Document) mongoTemplate.getConverter().convertToMongoType(toStepExecutionDocument(stepExecution));
+            stepDocument.remove(STEP_EXECUTION_ID);
+            stepDocuments.add(new Document("$mergeObjects", Arrays.asList(
+                    new Document(STEP_EXECUTION_ID, new Document("$add", Arrays.asList(stepExecution.getId(), savedSequence))),
+                    new Document("$literal", stepDocument))));
+        }
+
+        var set = new Document(STEP_EXECUTION_SEQUENCE, new Document("$add", Arrays.asList(savedSequence, (long) stepExecutions.size())))
+                .append(STEP_EXECUTIONS, new Document("$concatArrays", Arrays.asList(
+                        new Document("$ifNull", Arrays.asList("$" + STEP_EXECUTIONS, List.of())), stepDocuments)));
+        stepExecutions.stream()
+                .collect(Collectors.groupingBy(StepExecution::getStepName, LinkedHashMap::new, Collectors.counting()))
+                .forEach((stepName, count) -> {
+                    var countField = STEP_EXECUTION_COUNTS + "." + stepExecutionCountKey(stepName);
+                    set.append(countField, new Document("$add", Arrays.asList(
+                            new Document("$ifNull", Arrays.asList("$" + countField, 0L)), count)));
+                });
+
+        return AggregationUpdate.from(List.of(context -> new Document("$set", set)));
+    }
+
+    /**
+     * <p>Find the largest stepExecutionId created from a job execution sequence.
+     * See {@link #isStepExecutionIdFromJobExecution()}</p>
+     * <p>The job execution with the largest jobExecutionId that has a sequence holds the largest id.  Job executions
+     * are read in jobExecutionId order until one with a sequence is found, so when there is none, the whole collection
+     * is read.  {@link io.github.wirednerd.springbatch.mongo.configuration.MongodbBatchConfigurer} only calls this when
+     * the stepExecutionId setting changes.</p>
+     *
+     * @param mongoTemplate     {@link MongoTemplate} to use
+     * @param jobCollectionName collection the job executions are stored in
+     * @return largest stepExecutionId created from a job execution sequence, or 0 if there is none
+     * @since 1.2.0
+     */
+    public static long findLastSequencedStepExecutionId(MongoTemplate mongoTemplate, String jobCollectionName) {
+        var query = Query.query(Criteria.where(STEP_EXECUTION_SEQUENCE).exists(true))
+                .with(Sort.by(Sort.Direction.DESC, JOB_EXECUTION_ID))
+                .limit(1);
+        query.fields().include(JOB_EXECUTION_ID).include(STEP_EXECUTION_SEQUENCE);
+
+        var sequenceDoc = mongoTemplate.findOne(query, Document.class, jobCollectionName);
+        if (sequenceDoc == null) {
+            return 0;
+        }
+        return (sequenceDoc.get(JOB_EXECUTION_ID, Number.class).longValue() << STEP_EXECUTION_SEQUENCE_BITS)
+                + sequenceDoc.get(STEP_EXECUTION_SEQUENCE, Number.class).longValue();
     }
 
     /**
@@ -530,6 +1379,10 @@ public class MongodbJobRepository implements JobRepository {
      * StepExecution ID will be assigned - it is not permitted that an ID be assigned before calling
      * this method. Instead, it should be left blank, to be assigned by {@link JobRepository}.
      * <p>
+     * The ids for each job execution are reserved together, and the step executions are pushed to the
+     * job execution document, or inserted into the step execution collection,
+     * with a single call for every {@value #ADD_ALL_BATCH_SIZE} step executions.
+     * <p>
      * Preconditions: {@link StepExecution} must have a valid {@link Step}.
      *
      * @param stepExecutions collection of {@link StepExecution} instances to be added to the repo.
@@ -538,18 +1391,36 @@ public class MongodbJobRepository implements JobRepository {
      */
     @Override
     public void addAll(Collection<StepExecution> stepExecutions) {
-        if (!CollectionUtils.isEmpty(stepExecutions)) {
-            stepExecutions.forEach(this::add);
+        if (CollectionUtils.isEmpty(stepExecutions)) {
+            return;
+        }
+
+        stepExecutions.forEach(this::prepareNewStepExecution);
+
+        var stepExecutionsByJobExecution = stepExecutions.stream()
+                .collect(Collectors.groupingBy(StepExecution::getJobExecutionId, LinkedHashMap::new, Collectors.toList()));
+
+        for (var jobStepExecutions : stepExecutionsByJobExecution.values()) {
+            for (var from = 0; from < jobStepExecutions.size(); from += ADD_ALL_BATCH_SIZE) {
+                pushStepExecutions(jobStepExecutions.subList(from,
+                        Math.min(from + ADD_ALL_BATCH_SIZE, jobStepExecutions.size())));
+            }
         }
     }
 
     /**
      * Update the {@link StepExecution} (but not its {@link ExecutionContext}).
      * <p>
+     * Each step execution has its own version, so step executions of the same job can be updated in parallel.
+     * The status and version of the parent {@link JobExecution} are returned by the same database call,
+     * and used to detect stop requests.
+     * <p>
      * Preconditions: {@link StepExecution} must be saved (have an id assigned).
      *
      * @param stepExecution {@link StepExecution} instance to be updated in the repo.
-     * @throws IllegalArgumentException if StepExecution, StepExecutionId, or jobExecutionId is null
+     * @throws IllegalArgumentException          if StepExecution, StepExecutionId, or jobExecutionId is null
+     * @throws IllegalStateException             if the job execution is not found
+     * @throws OptimisticLockingFailureException if the step execution version is out of date
      */
     @Override
     public void update(StepExecution stepExecution) {
@@ -558,53 +1429,362 @@ public class MongodbJobRepository implements JobRepository {
 
         stepExecution.setLastUpdated(new Date(System.currentTimeMillis()));
 
-        synchronizeStatusAndVersion(stepExecution.getJobExecution());
+        var includeExecutionContext = combinedStepExecutionUpdate
+                && pendingStepExecutionContexts.remove(stepExecution.getId());
+
+        if (!includeExecutionContext && isStepExecutionWriteBehind() && !isFlushRequired(stepExecution)) {
+            stepExecutionSkippedWriteCount.increment();
+            return;
+        }
 
-        updateStepExecution(stepExecution);
+        updateStepExecution(stepExecution, includeExecutionContext);
     }
 
-    private void updateStepExecution(StepExecution stepExecution) {
-        synchronized (stepExecution.getJobExecution()) {
-            var currentVersion = stepExecution.getJobExecution().getVersion();
-            var nextVersion = currentVersion + 1;
+    private boolean isStepExecutionWriteBehind() {
+        return stepExecutionFlushIntervalMillis > 0 || stepExecutionFlushCommits > 0;
+    }
 
-            var updateResult = mongoTemplate.updateFirst(new Query()
-                            .addCriteria(Criteria.where(JOB_EXECUTION_ID).is(stepExecution.getJobExecutionId()))
-                            .addCriteria(Criteria.where(VERSION).is(currentVersion)),
-                    new Update()
-                            .set(VERSION, nextVersion)
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_START_TIME, stepExecution.getStartTime())
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_END_TIME, stepExecution.getEndTime())
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_STATUS, stepExecution.getStatus().toString())
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_COMMIT_COUNT, stepExecution.getCommitCount())
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_READ_COUNT, stepExecution.getReadCount())
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_FILTER_COUNT, stepExecution.getFilterCount())
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_WRITE_COUNT, stepExecution.getWriteCount())
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_EXIT_CODE, stepExecution.getExitStatus().getExitCode())
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_EXIT_DESCRIPTION, stepExecution.getExitStatus().getExitDescription())
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_READ_SKIP_COUNT, stepExecution.getReadSkipCount())
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_PROCESS_SKIP_COUNT, stepExecution.getProcessSkipCount())
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_WRITE_SKIP_COUNT, stepExecution.getWriteSkipCount())
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_ROLLBACK_COUNT, stepExecution.getRollbackCount())
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_LAST_UPDATED, stepExecution.getLastUpdated())
-                            .filterArray(Criteria.where(ELEMENT_STEP_EXECUTION_ID).is(stepExecution.getId())),
-                    jobCollectionName);
+    private boolean isFlushRequired(StepExecution stepExecution) {
+        var lastFlush = stepExecutionFlushes.get(stepExecution.getId());
 
-            if (updateResult.getMatchedCount() == 0) {
-                throw new OptimisticLockingFailureException("Attempt to update job execution id="
-                        + stepExecution.getJobExecution().getId() + " with version=" + currentVersion
-                        + " which was not found");
+        return lastFlush == null
+                || lastFlush.status != stepExecution.getStatus()
+                || !Objects.equals(lastFlush.exitCode, stepExecution.getExitStatus().getExitCode())
+                || (stepExecutionFlushCommits > 0
+                && stepExecution.getCommitCount() - lastFlush.commitCount >= stepExecutionFlushCommits)
+                || (stepExecutionFlushIntervalMillis > 0
+                && System.nanoTime() - lastFlush.nanoTime >= TimeUnit.MILLISECONDS.toNanos(stepExecutionFlushIntervalMillis));
+    }
+
+    /**
+     * Number of step execution updates written to the database.
+     *
+     * @return Number of step execution updates written to the database.
+     * @since 1.2.0
+     */
+    public long getStepExecutionWriteCount() {
+        return stepExecutionWriteCount.sum();
+    }
+
+    /**
+     * <p>Number of step execution updates kept in memory instead of being written to the database.</p>
+     * <p>See {@link #setStepExecutionFlushIntervalMillis(long)} and {@link #setStepExecutionFlushCommits(int)}</p>
+     *
+     * @return Number of step execution updates that were not written.
+     * @since 1.2.0
+     */
+    public long getStepExecutionSkippedWriteCount() {
+        return stepExecutionSkippedWriteCount.sum();
+    }
+
+    /**
+     * Number of step execution updates retried after an {@link OptimisticLockingFailureException}.
+     * See {@link #setStepExecutionUpdateRetries(int)}
+     *
+     * @return Number of retried step execution updates.
+     * @since 1.2.0
+     */
+    public long getStepExecutionUpdateRetryCount() {
+        return stepExecutionUpdateRetryCount.sum();
+    }
+
+    /**
+     * Total milliseconds waited before retrying step execution updates.
+     *
+     * @return Total milliseconds waited before retrying step execution updates.
+     * @since 1.2.0
+     */
+    public long getStepExecutionUpdateRetryWaitMillis() {
+        return stepExecutionUpdateRetryWaitMillis.sum();
+    }
+
+    /**
+     * Number of step execution updates that failed after all retries.
+     *
+     * @return Number of step execution updates that failed after all retries.
+     * @since 1.2.0
+     */
+    public long getStepExecutionUpdateRetryExhaustedCount() {
+        return stepExecutionUpdateRetryExhaustedCount.sum();
+    }
+
+    /**
+     * Update the {@link StepExecution} and its {@link ExecutionContext} with a single conditional update.
+     * The status of the parent {@link JobExecution} is read from the result of the same update,
+     * and {@link StepExecution#setTerminateOnly()} is called if the job is stopping.
+     * <p>
+     * Preconditions: {@link StepExecution} must be saved (have an id assigned).
+     *
+     * @param stepExecution {@link StepExecution} instance to be updated in the repo.
+     * @throws IllegalArgumentException          if StepExecution, jobExecutionId, or stepExecutionId is null
+     * @throws IllegalStateException             if the job execution is not found
+     * @throws OptimisticLockingFailureException if the step execution version is out of date
+     * @since 1.2.0
+     */
+    public void updateWithExecutionContext(StepExecution stepExecution) {
+        validateStepExecution(stepExecution);
+        Assert.notNull(stepExecution.getId(), "StepExecution must already be saved (have an id assigned)");
+
+        stepExecution.setLastUpdated(new Date(System.currentTimeMillis()));
+        pendingStepExecutionContexts.remove(stepExecution.getId());
+
+        updateStepExecution(stepExecution, true);
+    }
+
+    /**
+     * Update the step execution, optionally with its execution context, if the saved step version matches.
+     * Only the job execution status and version are returned.
+     */
+    private void updateStepExecution(StepExecution stepExecution, boolean includeExecutionContext) {
+        var jobExecution = stepExecution.getJobExecution();
+        var currentVersion = stepExecution.getVersion();
+        var currentStatus = stepExecution.getStatus();
+        var nextVersion = currentVersion == null ? 0 : currentVersion + 1;
+
+        var fieldPrefix = stepExecutionCollection == null ? STEP_EXECUTION_ARRAY_ELEMENT : "";
+        var fields = stepExecutionFields(stepExecution);
+        var update = stepExecutionUpdate(fields, nextVersion, fieldPrefix);
+        if (stepExecutionCollection == null) {
+            update.filterArray(Criteria.where(ELEMENT_STEP_EXECUTION_ID).is(stepExecution.getId()));
+        }
+
+        var owner = MongodbExecutionContextOverflow.stepOwner(stepExecution.getId());
+        var writeExecutionContext = false;
+        Object storedContext = null;
+        if (includeExecutionContext) {
+            storedContext = storeExecutionContext(owner,
+                    jobExecutionDocumentMapper.writeExecutionContext(stepExecution.getExecutionContext()));
+            writeExecutionContext = setExecutionContext(update, fieldPrefix + EXECUTION_CONTEXT,
+                    writtenStepExecutionContexts.get(stepExecution.getId()), storedContext);
+            if (!writeExecutionContext) {
+                executionContextSkippedWriteCount.increment();
+            }
+        }
+
+        var template = template(!stepExecution.getStatus().isRunning() ? OperationCategory.STATUS
+                : writeExecutionContext ? OperationCategory.CONTEXT : OperationCategory.PROGRESS);
+        Document savedStatusAndVersion = null;
+        try {
+            for (var retry = 0; savedStatusAndVersion == null; retry++) {
+                try {
+                    savedStatusAndVersion = stepExecutionCollection == null
+                            ? updateEmbeddedStepExecution(template, stepExecution, update)
+                            : updateSeparateStepExecution(template, stepExecution, update);
+                } catch (OptimisticLockingFailureException e) {
+                    nextVersion = prepareStepExecutionUpdateRetry(template, stepExecution, fields, retry, e) + 1;
+                    update.set(fieldPrefix + VERSION, nextVersion)
+                            .set(fieldPrefix + STATUS, fields.get(STATUS));
+                }
             }
+        } catch (RuntimeException e) {
+            stepExecution.setVersion(currentVersion);
+            stepExecution.setStatus(currentStatus);
+            throw e;
+        }
+
+        stepExecution.setVersion(nextVersion);
+        stepExecutionWriteCount.increment();
+
+        if (stepExecutionUpdateRetries > 0 && stepExecution.getStatus().isRunning()) {
+            writtenStepExecutions.put(stepExecution.getId(), fields);
+        } else {
+            writtenStepExecutions.remove(stepExecution.getId());
+        }
 
-            stepExecution.getJobExecution().incrementVersion();
+        if (writeExecutionContext) {
+            removeReplacedExecutionContext(owner, storedContext);
+            rememberExecutionContext(writtenStepExecutionContexts, stepExecution.getId(), storedContext);
         }
 
-        if (stepExecution.getJobExecution().isStopping()) {
+        if (isStepExecutionWriteBehind() && stepExecution.getStatus().isRunning()) {
+            stepExecutionFlushes.put(stepExecution.getId(), new StepExecutionFlush(stepExecution));
+        } else {
+            stepExecutionFlushes.remove(stepExecution.getId());
+        }
+
+        if (!stepExecution.getStatus().isRunning()) {
+            writtenStepExecutionContexts.remove(stepExecution.getId());
+            forgetExecutionContext(owner);
+        }
+
+        var lock = jobExecutionLock(jobExecution);
+        lock.lock();
+        try {
+            synchronizeStatusAndVersion(jobExecution, savedStatusAndVersion);
+        } finally {
+            lock.unlock();
+        }
+
+        if (jobExecution.isStopping()) {
             log.info("Parent JobExecution is stopped, so passing message on to StepExecution");
             stepExecution.setTerminateOnly();
         }
     }
 
+    /**
+     * Wait, then read the saved step execution.  If the conflicting write only changed the status, merge the saved
+     * status into the step execution and its fields, so the update can be retried.
+     *
+     * @return the saved version, which is also set on the step execution
+     * @throws OptimisticLockingFailureException the conflict, if no retry is left, the step execution is not found,
+     *                                           or the conflicting write changed more than the status
+     */
+    private int prepareStepExecutionUpdateRetry(MongoTemplate template, StepExecution stepExecution, Document fields,
+                                                int retry, OptimisticLockingFailureException conflict) {
+        if (retry >= stepExecutionUpdateRetries) {
+            if (stepExecutionUpdateRetries > 0) {
+                stepExecutionUpdateRetryExhaustedCount.increment();
+            }
+            throw conflict;
+        }
+
+        var backoff = stepExecutionUpdateRetryBackoffMillis << Math.min(retry, 16);
+        var wait = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff - backoff / 2 + 1);
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw conflict;
+        }
+        stepExecutionUpdateRetryWaitMillis.add(wait);
+
+        var savedStep = stepExecutionCollection == null
+                ? savedEmbeddedStep(template, stepExecution)
+                : savedSeparateStep(template, stepExecution);
+        var savedVersion = savedStep == null ? null : savedStep.get(VERSION, Number.class);
+
+        if (savedVersion == null || !isOnlyStatusChanged(writtenStepExecutions.get(stepExecution.getId()), savedStep)) {
+            throw conflict;
+        }
+
+        var status = stepExecution.getStatus().upgradeTo(BatchStatus.valueOf(savedStep.getString(STATUS)));
+        log.debug("Retrying update of step execution id={} with saved version={} and status={}",
+                stepExecution.getId(), savedVersion, status);
+        stepExecutionUpdateRetryCount.increment();
+        stepExecution.setVersion(savedVersion.intValue());
+        stepExecution.setStatus(status);
+        fields.put(STATUS, status.toString());
+        return savedVersion.intValue();
+    }
+
+    /**
+     * @return true if the saved step execution differs from the last written fields in nothing but the status
+     */
+    private static boolean isOnlyStatusChanged(@Nullable Document writtenFields, Document savedStep) {
+        if (writtenFields == null) {
+            return false;
+        }
+        return writtenFields.entrySet().stream()
+                .filter(field -> !STATUS.equals(field.getKey()))
+                .allMatch(field -> Objects.equals(field.getValue(), savedStep.get(field.getKey())));
+    }
+
+    @Nullable
+    private Document savedEmbeddedStep(MongoTemplate template, StepExecution stepExecution) {
+        var query = newAggregation(
+                match(Criteria.where(JOB_EXECUTION_ID).is(stepExecution.getJobExecutionId())),
+                unwind(STEP_EXECUTIONS),
+                match(Criteria.where(STEP_EXECUTIONS_STEP_EXECUTION_ID).is(stepExecution.getId())),
+                replaceRoot(STEP_EXECUTIONS),
+                project().andExclude(EXECUTION_CONTEXT));
+
+        return template.aggregate(query, jobCollectionName, Document.class).getUniqueMappedResult();
+    }
+
+    @Nullable
+    private Document savedSeparateStep(MongoTemplate template, StepExecution stepExecution) {
+        var query = Query.query(Criteria.where(STEP_EXECUTION_ID).is(stepExecution.getId()));
+        query.fields().exclude(EXECUTION_CONTEXT, JOB_EXECUTION, "_id");
+
+        return template.findOne(query, Document.class, stepExecutionCollection.getCollectionName());
+    }
+
+    private Document updateEmbeddedStepExecution(MongoTemplate template, StepExecution stepExecution, Update update) {
+        var query = Query.query(Criteria.where(JOB_EXECUTION_ID).is(stepExecution.getJobExecutionId())
+                .and(STEP_EXECUTIONS).elemMatch(Criteria
+                        .where(STEP_EXECUTION_ID).is(stepExecution.getId())
+                        .and(VERSION).is(stepExecution.getVersion())));
+        query.fields().include(VERSION, STATUS).exclude("_id");
+
+        var savedStatusAndVersion = template.findAndModify(query, update, Document.class, jobCollectionName);
+
+        if (savedStatusAndVersion == null) {
+            Assert.state(template.exists(Query.query(Criteria
+                            .where(JOB_EXECUTION_ID).is(stepExecution.getJobExecutionId())), jobCollectionName),
+                    () -> "Job Execution not found for jobExecutionId=" + stepExecution.getJobExecutionId());
+
+            throw stepVersionNotFound(stepExecution);
+        }
+
+        return savedStatusAndVersion;
+    }
+
+    /**
+     * Update the step execution document, and return the copy of the job execution status and version it holds.
+     * The job execution is only read when the copy is missing, or older than the job execution in memory.
+     */
+    private Document updateSeparateStepExecution(MongoTemplate template, StepExecution stepExecution, Update update) {
+        var query = Query.query(Criteria
+                .where(STEP_EXECUTION_ID).is(stepExecution.getId())
+                .and(VERSION).is(stepExecution.getVersion()));
+        query.fields().include(JOB_EXECUTION).exclude("_id");
+
+        var savedStep = template.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                Document.class, stepExecutionCollection.getCollectionName());
+
+        var jobQuery = Query.query(Criteria.where(JOB_EXECUTION_ID).is(stepExecution.getJobExecutionId()));
+        if (savedStep == null) {
+            Assert.state(template.exists(jobQuery, jobCollectionName),
+                    () -> "Job Execution not found for jobExecutionId=" + stepExecution.getJobExecutionId());
+
+            throw stepVersionNotFound(stepExecution);
+        }
+
+        var copiedStatusAndVersion = savedStep.get(JOB_EXECUTION, Document.class);
+        var copiedVersion = copiedStatusAndVersion == null ? null : copiedStatusAndVersion.get(VERSION, Number.class);
+        var jobVersion = stepExecution.getJobExecution().getVersion();
+        if (copiedVersion != null && (jobVersion == null || copiedVersion.intValue() >= jobVersion)) {
+            return copiedStatusAndVersion;
+        }
+
+        jobQuery.fields().include(VERSION, STATUS).exclude("_id");
+        var savedStatusAndVersion = template.findOne(jobQuery, Document.class, jobCollectionName);
+
+        Assert.state(savedStatusAndVersion != null,
+                () -> "Job Execution not found for jobExecutionId=" + stepExecution.getJobExecutionId());
+
+        return savedStatusAndVersion;
+    }
+
+    private OptimisticLockingFailureException stepVersionNotFound(StepExecution stepExecution) {
+        return new OptimisticLockingFailureException("Attempt to update step execution id="
+                + stepExecution.getId() + " with version=" + stepExecution.getVersion()
+                + " which was not found");
+    }
+
+    private Document stepExecutionFields(StepExecution stepExecution) {
+        return new Document(START_TIME, stepExecution.getStartTime())
+                .append(END_TIME, stepExecution.getEndTime())
+                .append(STATUS, stepExecution.getStatus().toString())
+                .append(COMMIT_COUNT, stepExecution.getCommitCount())
+                .append(READ_COUNT, stepExecution.getReadCount())
+                .append(FILTER_COUNT, stepExecution.getFilterCount())
+                .append(WRITE_COUNT, stepExecution.getWriteCount())
+                .append(EXIT_CODE, stepExecution.getExitStatus().getExitCode())
+                .append(EXIT_DESCRIPTION, stepExecution.getExitStatus().getExitDescription())
+                .append(READ_SKIP_COUNT, stepExecution.getReadSkipCount())
+                .append(PROCESS_SKIP_COUNT, stepExecution.getProcessSkipCount())
+                .append(WRITE_SKIP_COUNT, stepExecution.getWriteSkipCount())
+                .append(ROLLBACK_COUNT, stepExecution.getRollbackCount())
+                .append(LAST_UPDATED, stepExecution.getLastUpdated());
+    }
+
+    private Update stepExecutionUpdate(Document fields, int nextVersion, String fieldPrefix) {
+        var update = new Update().set(fieldPrefix + VERSION, nextVersion);
+        fields.forEach((field, value) -> update.set(fieldPrefix + field, value));
+        return update;
+    }
+
     /**
      * Persist the updated {@link ExecutionContext}s of the given
      * {@link StepExecution}.
@@ -617,16 +1797,34 @@ public class MongodbJobRepository implements JobRepository {
         validateStepExecution(stepExecution);
         Assert.notNull(stepExecution.getId(), "StepExecution must already be saved (have an id assigned)");
 
-        synchronized (stepExecution.getJobExecution()) {
-            var executionContextDoc = jobExecutionDocumentMapper.serializeContext(stepExecution.getExecutionContext());
+        if (combinedStepExecutionUpdate) {
+            pendingStepExecutionContexts.add(stepExecution.getId());
+            return;
+        }
+
+        var owner = MongodbExecutionContextOverflow.stepOwner(stepExecution.getId());
+        var storedContext = storeExecutionContext(owner,
+                jobExecutionDocumentMapper.writeExecutionContext(stepExecution.getExecutionContext()));
+        var update = new Update();
+        if (!setExecutionContext(update, stepExecutionCollection == null ? STEP_EXECUTION_ARRAY_ELEMENT_EXECUTION_CONTEXT
+                : EXECUTION_CONTEXT, writtenStepExecutionContexts.get(stepExecution.getId()), storedContext)) {
+            executionContextSkippedWriteCount.increment();
+            return;
+        }
 
-            mongoTemplate.updateFirst(new Query()
+        if (stepExecutionCollection != null) {
+            template(OperationCategory.CONTEXT).updateFirst(Query.query(Criteria.where(STEP_EXECUTION_ID).is(stepExecution.getId())),
+                    update,
+                    stepExecutionCollection.getCollectionName());
+        } else {
+            template(OperationCategory.CONTEXT).updateFirst(new Query()
                             .addCriteria(Criteria.where(JOB_EXECUTION_ID).is(stepExecution.getJobExecutionId())),
-                    new Update()
-                            .set(STEP_EXECUTION_ARRAY_ELEMENT_EXECUTION_CONTEXT, executionContextDoc)
-                            .filterArray(Criteria.where(ELEMENT_STEP_EXECUTION_ID).is(stepExecution.getId())),
+                    update.filterArray(Criteria.where(ELEMENT_STEP_EXECUTION_ID).is(stepExecution.getId())),
                     jobCollectionName);
         }
+
+        removeReplacedExecutionContext(owner, storedContext);
+        rememberExecutionContext(writtenStepExecutionContexts, stepExecution.getId(), storedContext);
     }
 
     private void validateStepExecution(StepExecution stepExecution) {
@@ -635,19 +1833,31 @@ public class MongodbJobRepository implements JobRepository {
     }
 
     /**
-     * Temporary storage of query results
+     * State of a step execution when it was last written
      */
-    @Data
-    private static class StepExecutionSearchResult {
-
-        @Field(STEP_EXECUTIONS)
-        private StepExecutionDocument stepExecutions;
-
-        @Field(JOB_EXECUTION)
-        private List<JobExecutionDocument> jobExecution;
+    private static class StepExecutionFlush {
+
+        private final BatchStatus status;
+        private final String exitCode;
+        private final int commitCount;
+        private final long nanoTime;
+
+        StepExecutionFlush(StepExecution stepExecution) {
+            status = stepExecution.getStatus();
+            exitCode = stepExecution.getExitStatus().getExitCode();
+            commitCount = stepExecution.getCommitCount();
+            nanoTime = System.nanoTime();
+        }
     }
 
     /**
+     * <p>The job executions of the job instance that contain the step are found with the multikey index
+     * "jobInstanceId_stepName", and their "stepExecutions" arrays are filtered to the executions of this step on the
+     * server.  The step execution with the latest startTime across all of them is returned, so only one job
+     * execution document is read.</p>
+     * <p>The {@link JobExecution} of the returned step execution has its {@link ExecutionContext},
+     * but only contains that step execution.</p>
+     *
      * @param jobInstance {@link JobInstance} instance containing the step executions.
      * @param stepName    the name of the step execution that might have run.
      * @return the last execution of step for the given job instance.
@@ -657,27 +1867,63 @@ public class MongodbJobRepository implements JobRepository {
     public StepExecution getLastStepExecution(JobInstance jobInstance, String stepName) {
         validateStepExecutionSearch(jobInstance, stepName);
 
+        if (stepExecutionCollection != null) {
+            return getLastSeparateStepExecution(jobInstance, stepName);
+        }
+
         var query = newAggregation(
-                match(Criteria.where(JOB_NAME).is(jobInstance.getJobName())),
-                match(Criteria.where(JOB_INSTANCE_ID).is(jobInstance.getId())),
+                match(Criteria.where(JOB_INSTANCE_ID).is(jobInstance.getId())
+                        .and(STEP_EXECUTIONS_STEP_NAME).is(stepName)
+                        .and(JOB_NAME).is(jobInstance.getJobName())),
+                project(JOB_EXECUTION_ID, VERSION, JOB_PARAMETERS, JOB_INSTANCE_ID, JOB_NAME, JOB_KEY, STATUS,
+                        START_TIME, CREATE_TIME, END_TIME, LAST_UPDATED, EXIT_CODE, EXIT_DESCRIPTION, JOB_CONFIGURATION_NAME,
+                        EXECUTION_CONTEXT)
+                        .and(ArrayOperators.Filter.filter(STEP_EXECUTIONS).as("step")
+                                .by(ComparisonOperators.valueOf("step." + STEP_NAME).equalToValue(stepName)))
+                        .as(STEP_EXECUTIONS),
                 unwind(STEP_EXECUTIONS),
-                match(Criteria.where(STEP_EXECUTIONS_STEP_NAME).is(stepName)),
                 sort(Sort.by(STEP_EXECUTIONS_START_TIME, STEP_EXECUTIONS_STEP_EXECUTION_ID).descending()),
-                limit(1),
-                lookup(jobCollectionName, JOB_EXECUTION_ID, JOB_EXECUTION_ID, JOB_EXECUTION));
+                limit(1));
 
-        var resultDoc = mongoTemplate
-                .aggregate(query, jobCollectionName, StepExecutionSearchResult.class)
+        var resultDoc = template(OperationCategory.CREATION)
+                .aggregate(query, jobCollectionName, Document.class)
                 .getUniqueMappedResult();
 
         if (resultDoc == null) {
             return null;
         }
 
-        var stepExecutionId = resultDoc.getStepExecutions().getStepExecutionId();
+        resultDoc.put(STEP_EXECUTIONS, List.of(resultDoc.get(STEP_EXECUTIONS)));
+        var jobExecutionDoc = mongoTemplate.getConverter().read(JobExecutionDocument.class, resultDoc);
+        loadReferences(jobExecutionDoc);
+
+        return jobExecutionDocumentMapper.toJobExecution(jobExecutionDoc).getStepExecutions().iterator().next();
+    }
+
+    private StepExecution getLastSeparateStepExecution(JobInstance jobInstance, String stepName) {
+        var stepQuery = Query.query(Criteria.where(JOB_INSTANCE_ID).is(jobInstance.getId()).and(STEP_NAME).is(stepName))
+                .with(Sort.by(START_TIME, STEP_EXECUTION_ID).descending());
+        stepQuery.fields().include(JOB_EXECUTION_ID, STEP_EXECUTION_ID).exclude("_id");
+
+        var stepDoc = template(OperationCategory.CREATION).findOne(stepQuery, Document.class, stepExecutionCollection.getCollectionName());
+
+        if (stepDoc == null) {
+            return null;
+        }
+
+        var jobExecutionDoc = template(OperationCategory.CREATION).findOne(Query.query(Criteria
+                        .where(JOB_EXECUTION_ID).is(stepDoc.get(JOB_EXECUTION_ID))),
+                JobExecutionDocument.class, jobCollectionName);
+
+        if (jobExecutionDoc == null) {
+            return null;
+        }
 
-        var jobExecutionDoc = resultDoc.getJobExecution().get(0);
+        loadReferences(jobExecutionDoc);
+        return findStepExecution(jobExecutionDoc, stepDoc.get(STEP_EXECUTION_ID, Number.class).longValue());
+    }
 
+    private StepExecution findStepExecution(JobExecutionDocument jobExecutionDoc, Long stepExecutionId) {
         for (var stepExecution : jobExecutionDocumentMapper.toJobExecution(jobExecutionDoc).getStepExecutions()) {
             if (Objects.equals(stepExecutionId, stepExecution.getId())) {
                 return stepExecution;
@@ -688,6 +1934,11 @@ public class MongodbJobRepository implements JobRepository {
     }
 
     /**
+     * <p>Step executions added to a job execution document are counted by step name in its "stepExecutionCounts"
+     * field, which is created empty with the job execution.  The counts of all job executions of the job instance are
+     * summed on the server with one aggregation.  Job execution documents written by earlier versions, without the
+     * field, are counted from their "stepExecutions" array in the same aggregation.</p>
+     *
      * @param jobInstance {@link JobInstance} instance containing the step executions.
      * @param stepName    the name of the step execution that might have run.
      * @return the execution count of the step within the given job instance.
@@ -696,14 +1947,30 @@ public class MongodbJobRepository implements JobRepository {
     public int getStepExecutionCount(JobInstance jobInstance, String stepName) {
         validateStepExecutionSearch(jobInstance, stepName);
 
+        if (stepExecutionCollection != null) {
+            return (int) template(OperationCategory.CREATION).count(Query.query(Criteria
+                            .where(JOB_INSTANCE_ID).is(jobInstance.getId()).and(STEP_NAME).is(stepName)),
+                    stepExecutionCollection.getCollectionName());
+        }
+
+        var countedSteps = new Document("$ifNull", Arrays.asList(
+                "$" + STEP_EXECUTION_COUNTS + "." + stepExecutionCountKey(stepName), 0));
+        var filteredSteps = new Document("$size", new Document("$filter", new Document("input",
+                new Document("$ifNull", Arrays.asList("$" + STEP_EXECUTIONS, List.of())))
+                .append("as", "step")
+                .append("cond", new Document("$eq", Arrays.asList("$$step." + STEP_NAME, new Document("$literal", stepName))))));
+        var steps = new Document("$cond", Arrays.asList(
+                new Document("$eq", Arrays.asList(new Document("$type", "$" + STEP_EXECUTION_COUNTS), "object")),
+                countedSteps, filteredSteps));
+
         var query = newAggregation(
-                match(Criteria.where(JOB_NAME).is(jobInstance.getJobName())),
-                match(Criteria.where(JOB_INSTANCE_ID).is(jobInstance.getId())),
-                unwind(STEP_EXECUTIONS),
-                match(Criteria.where(STEP_EXECUTIONS_STEP_NAME).is(stepName)),
-                count().as("steps"));
+                match(Criteria.where(JOB_INSTANCE_ID).is(jobInstance.getId())
+                        .and(JOB_NAME).is(jobInstance.getJobName())
+                        .and(JOB_EXECUTION_ID).ne(null)),
+                context -> new Document("$group", new Document("_id", null)
+                        .append("steps", new Document("$sum", steps))));
 
-        var resultDoc = mongoTemplate
+        var resultDoc = template(OperationCategory.CREATION)
                 .aggregate(query, jobCollectionName, Document.class)
                 .getUniqueMappedResult();
 
@@ -711,7 +1978,7 @@ public class MongodbJobRepository implements JobRepository {
             return 0;
         }
 
-        return resultDoc.getInteger("steps", 0);
+        return resultDoc.get("steps", Number.class).intValue();
     }
 
     private void validateStepExecutionSearch(JobInstance jobInstance, String stepName) {
@@ -0,0 +1,201 @@
+package io.github.wirednerd.springbatch.mongo.repository;
+
+import io.github.wirednerd.springbatch.document.JobExecutionDocument;
+import io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper;
+import io.github.wirednerd.springbatch.document.StepExecutionDocument;
+import lombok.Getter;
+import org.bson.Document;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper.*;
+import static io.github.wirednerd.springbatch.mongo.MongodbRepositoryConstants.JOB_EXECUTION;
+
+/**
+ * <p>Stores step executions as separate documents, instead of in the "stepExecutions" array of the job execution.</p>
+ * <p>Each document contains the fields of a {@link StepExecutionDocument}, plus the jobExecutionId and jobInstanceId
+ * of its job execution.  This keeps job execution documents small for jobs with thousands of step executions.</p>
+ * <p>Each document also contains a "jobExecution" copy of the status and version of its job execution, which the
+ * {@link MongodbJobRepository} keeps up to date, so a step update returns a stop request without a second read.</p>
+ * <p>Step executions already embedded in job execution documents are not read from this collection,
+ * so they must be moved before it is used.  See {@link #hasEmbeddedStepExecutions(MongoTemplate, String)}</p>
+ *
+ * @author Peter Busch
+ * @since 1.2.0
+ */
+@SuppressWarnings("SameNameButDifferent")
+public class MongodbStepExecutionCollection {
+
+    /**
+     * {@link MongoTemplate} used to access the step execution collection.
+     *
+     * @return {@link MongoTemplate} used to access the step execution collection.
+     */
+    @Getter
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Collection where step executions are stored.
+     *
+     * @return Collection where step executions are stored.
+     */
+    @Getter
+    private final String collectionName;
+
+    private final JobExecutionDocumentMapper jobExecutionDocumentMapper;
+
+    @Nullable
+    private MongodbExecutionContextOverflow executionContextOverflow;
+
+    /**
+     * @param mongoTemplate              {@link MongoTemplate} to use.
+     * @param collectionName             where the step executions are stored.
+     * @param jobExecutionDocumentMapper used for converting Step Execution data
+     */
+    public MongodbStepExecutionCollection(MongoTemplate mongoTemplate, String collectionName,
+                                          JobExecutionDocumentMapper jobExecutionDocumentMapper) {
+        Assert.hasLength(collectionName, "Step Collection Name must not be null or blank");
+
+        this.mongoTemplate = mongoTemplate;
+        this.collectionName = collectionName;
+        this.jobExecutionDocumentMapper = jobExecutionDocumentMapper;
+    }
+
+    /**
+     * Indexes used by this collection:
+     * <ul>
+     * <li>Unique index on stepExecutionId named "stepExecutionId_unique"</li>
+     * <li>Index on jobExecutionId, stepExecutionId named "jobExecutionId_stepExecutionId"</li>
+     * <li>Index on jobInstanceId, stepName, startTime named "jobInstanceId_stepName"</li>
+     * </ul>
+     *
+     * @return indexes used by this collection.
+     */
+    public static List<Index> indexes() {
+        return List.of(
+                new Index()
+                        .on(STEP_EXECUTION_ID, Sort.Direction.ASC)
+                        .named("stepExecutionId_unique")
+                        .unique(),
+                new Index()
+                        .on(JOB_EXECUTION_ID, Sort.Direction.ASC)
+                        .on(STEP_EXECUTION_ID, Sort.Direction.ASC)
+                        .named("jobExecutionId_stepExecutionId"),
+                new Index()
+                        .on(JOB_INSTANCE_ID, Sort.Direction.ASC)
+                        .on(STEP_NAME, Sort.Direction.ASC)
+                        .on(START_TIME, Sort.Direction.DESC)
+                        .named("jobInstanceId_stepName"));
+    }
+
+    /**
+     * Check whether any job execution document still embeds step executions, which would be ignored once
+     * step executions are read from a step collection.
+     *
+     * @param mongoTemplate     {@link MongoTemplate} to use
+     * @param jobCollectionName collection where the job executions are stored
+     * @return true if any job execution document has step executions in its "stepExecutions" array
+     */
+    public static boolean hasEmbeddedStepExecutions(MongoTemplate mongoTemplate, String jobCollectionName) {
+        return mongoTemplate.exists(Query.query(Criteria.where(STEP_EXECUTIONS + ".0").exists(true)), jobCollectionName);
+    }
+
+    /**
+     * @param executionContextOverflow used to store oversized execution contexts of inserted step executions,
+     *                                 or null to always store them in the step execution document
+     */
+    void setExecutionContextOverflow(@Nullable MongodbExecutionContextOverflow executionContextOverflow) {
+        this.executionContextOverflow = executionContextOverflow;
+    }
+
+    /**
+     * Insert step executions, which must already have ids, with a single call.
+     *
+     * @param stepExecutions step executions to insert
+     */
+    public void insert(Collection<StepExecution> stepExecutions) {
+        insert(stepExecutions, mongoTemplate);
+    }
+
+    /**
+     * @param stepExecutions step executions to insert
+     * @param template       {@link MongoTemplate} with the write concern to use
+     */
+    void insert(Collection<StepExecution> stepExecutions, MongoTemplate template) {
+        template.insert(stepExecutions.stream()
+                .map(this::toDocument)
+                .collect(Collectors.toList()), collectionName);
+    }
+
+    private Document toDocument(StepExecution stepExecution) {
+        var stepExecutionDocument = jobExecutionDocumentMapper.toStepExecutionDocument(stepExecution);
+        if (executionContextOverflow != null) {
+            stepExecutionDocument.setExecutionContextValue(executionContextOverflow.store(
+                    MongodbExecutionContextOverflow.stepOwner(stepExecution.getId()),
+                    stepExecutionDocument.getExecutionContextValue()));
+        }
+        var document = (Document) mongoTemplate.getConverter().convertToMongoType(stepExecutionDocument);
+        document.put(JOB_EXECUTION_ID, stepExecution.getJobExecutionId());
+        document.put(JOB_INSTANCE_ID, stepExecution.getJobExecution().getJobInstance().getId());
+        document.put(JOB_EXECUTION, jobStatusAndVersion(stepExecution.getJobExecution()));
+        return document;
+    }
+
+    /**
+     * @param jobExecution job execution of the step executions
+     * @return the "jobExecution" copy of the status and version stored in each step execution document
+     */
+    static Document jobStatusAndVersion(JobExecution jobExecution) {
+        return new Document(STATUS, jobExecution.getStatus().toString())
+                .append(VERSION, jobExecution.getVersion());
+    }
+
+    /**
+     * Load the step executions of each job execution document into its "stepExecutions" list, with a single query.
+     *
+     * @param jobExecutionDocuments job execution documents to load the step executions for
+     */
+    public void loadStepExecutions(Collection<JobExecutionDocument> jobExecutionDocuments) {
+        var byJobExecutionId = new HashMap<Long, JobExecutionDocument>();
+        for (var jobExecutionDocument : jobExecutionDocuments) {
+            if (jobExecutionDocument.getJobExecutionId() != null) {
+                jobExecutionDocument.setStepExecutions(new ArrayList<>());
+                byJobExecutionId.put(jobExecutionDocument.getJobExecutionId(), jobExecutionDocument);
+            }
+        }
+
+        if (byJobExecutionId.isEmpty()) {
+            return;
+        }
+
+        var stepDocuments = mongoTemplate.find(stepExecutionsQuery(byJobExecutionId.keySet()),
+                Document.class, collectionName);
+
+        for (var stepDocument : stepDocuments) {
+            byJobExecutionId.get(stepDocument.getLong(JOB_EXECUTION_ID)).getStepExecutions()
+                    .add(mongoTemplate.getConverter().read(StepExecutionDocument.class, stepDocument));
+        }
+    }
+
+    /**
+     * @param jobExecutionIds ids of the job executions
+     * @return query for the step executions of the job executions, ordered by jobExecutionId and stepExecutionId
+     */
+    public static Query stepExecutionsQuery(Collection<Long> jobExecutionIds) {
+        return Query.query(Criteria.where(JOB_EXECUTION_ID).in(jobExecutionIds))
+                .with(Sort.by(JOB_EXECUTION_ID, STEP_EXECUTION_ID).ascending());
+    }
+}
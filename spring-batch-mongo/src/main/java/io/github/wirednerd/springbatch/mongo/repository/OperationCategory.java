@@ -0,0 +1,33 @@
+package io.github.wirednerd.springbatch.mongo.repository;
+
+/**
+ * <p>Categories of {@link MongodbJobRepository} operations that can use their own write and read concerns.
+ * See {@link MongodbJobRepository#setOperationConcern(OperationCategory, com.mongodb.WriteConcern, com.mongodb.ReadConcern)}</p>
+ *
+ * @author Peter Busch
+ * @since 1.2.0
+ */
+public enum OperationCategory {
+
+    /**
+     * Creating job instances, job executions and step executions, and the reads used to decide whether a job or step
+     * is started or restarted: isJobInstanceExists, getLastJobExecution, getLastStepExecution and getStepExecutionCount.
+     */
+    CREATION,
+
+    /**
+     * Updates of running step executions, without their execution context.
+     */
+    PROGRESS,
+
+    /**
+     * Updates of job and step execution contexts, including updates of running step executions that also write
+     * the execution context.
+     */
+    CONTEXT,
+
+    /**
+     * Updates of job executions, and updates of step executions that are no longer running.
+     */
+    STATUS
+}
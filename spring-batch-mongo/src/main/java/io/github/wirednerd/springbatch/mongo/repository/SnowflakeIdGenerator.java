@@ -0,0 +1,93 @@
+package io.github.wirednerd.springbatch.mongo.repository;
+
+import lombok.Getter;
+import org.springframework.util.Assert;
+
+import java.time.Clock;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>{@link IdGenerator} that builds ids from the current time, a node id, and a sequence.
+ * No database calls are made, so each application instance must be given a different node id.</p>
+ * <p>Id layout (most significant bit first):</p>
+ * <ul>
+ * <li>1 bit - always 0, so ids are positive</li>
+ * <li>41 bits - milliseconds since {@link #EPOCH} (2022-01-01T00:00:00Z)</li>
+ * <li>10 bits - node id, 0 to 1023</li>
+ * <li>12 bits - sequence within the millisecond, 0 to 4095</li>
+ * </ul>
+ * <p>If more than 4096 ids are requested in one millisecond, or the clock moves backwards,
+ * the generator continues from the last timestamp used, so ids are always increasing for a node.</p>
+ *
+ * @author Peter Busch
+ * @since 1.2.0
+ */
+@SuppressWarnings("SameNameButDifferent")
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    /**
+     * Start of the timestamp portion of the ids. 2022-01-01T00:00:00Z
+     */
+    public static final long EPOCH = 1_640_995_200_000L;
+
+    private static final int NODE_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    /**
+     * Largest node id allowed
+     */
+    public static final long MAX_NODE_ID = (1L << NODE_ID_BITS) - 1;
+
+    /**
+     * Node id included in each generated id.
+     *
+     * @return Node id included in each generated id.
+     */
+    @Getter
+    private final long nodeId;
+
+    private final Clock clock;
+
+    /**
+     * Last timestamp and sequence used, stored as (timestamp &lt;&lt; 12) | sequence
+     */
+    private final AtomicLong lastTimestampAndSequence = new AtomicLong();
+
+    /**
+     * @param nodeId unique id of this application instance, 0 to 1023
+     */
+    public SnowflakeIdGenerator(long nodeId) {
+        this(nodeId, Clock.systemUTC());
+    }
+
+    /**
+     * @param nodeId unique id of this application instance, 0 to 1023
+     * @param clock  {@link Clock} used for the timestamp portion of the ids
+     */
+    public SnowflakeIdGenerator(long nodeId, Clock clock) {
+        Assert.isTrue(nodeId >= 0 && nodeId <= MAX_NODE_ID, () -> "Node id must be between 0 and " + MAX_NODE_ID);
+        Assert.notNull(clock, "Clock must not be null");
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    /**
+     * Generate the next id for this node.
+     *
+     * @return next unique id
+     */
+    @Override
+    public Long nextValue() {
+        var timestamp = clock.millis() - EPOCH;
+        Assert.state(timestamp >= 0, "Clock is set before SnowflakeIdGenerator.EPOCH");
+
+        var candidate = timestamp << SEQUENCE_BITS;
+        var next = lastTimestampAndSequence.accumulateAndGet(candidate,
+                (last, now) -> now > last ? now : last + 1);
+
+        var nextTimestamp = next >>> SEQUENCE_BITS;
+        var sequence = next & ((1L << SEQUENCE_BITS) - 1);
+
+        return (nextTimestamp << (NODE_ID_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+}
@@ -1,33 +1,61 @@
 package io.github.wirednerd.springbatch.mongo.configuration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.ReadConcern;
+import com.mongodb.WriteConcern;
+import io.github.wirednerd.springbatch.document.ExecutionContextFormat;
 import io.github.wirednerd.springbatch.mongo.MongoDBContainerConfig;
 import io.github.wirednerd.springbatch.mongo.explore.MongodbJobExplorer;
+import io.github.wirednerd.springbatch.mongo.repository.ConcernMongoTemplate;
+import io.github.wirednerd.springbatch.mongo.repository.IdGenerator;
+import io.github.wirednerd.springbatch.mongo.repository.MongodbCounter;
+import io.github.wirednerd.springbatch.mongo.repository.SnowflakeIdGenerator;
 import io.github.wirednerd.springbatch.mongo.repository.MongodbJobRepository;
+import io.github.wirednerd.springbatch.mongo.repository.OperationCategory;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.DefaultJobKeyGenerator;
 import org.springframework.batch.core.JobKeyGenerator;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.launch.support.SimpleJobLauncher;
 import org.springframework.batch.core.repository.dao.DefaultExecutionContextSerializer;
 import org.springframework.batch.core.repository.dao.Jackson2ExecutionContextStringSerializer;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
 import org.springframework.core.task.SyncTaskExecutor;
 import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import static io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper.*;
+import static io.github.wirednerd.springbatch.mongo.MongodbRepositoryConstants.LAUNCH_GUARD;
+import static io.github.wirednerd.springbatch.mongo.MongodbRepositoryConstants.STEP_EXECUTION_SEQUENCE;
+import static io.github.wirednerd.springbatch.mongo.MongodbRepositoryConstants.STEP_EXECUTIONS_STEP_NAME;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 class MongodbBatchConfigurerTest extends MongoDBContainerConfig {
 
+    private static final String STEP_EXECUTION_ID_FROM_JOB_EXECUTION = "stepExecutionIdFromJobExecution";
+
     private MongoTransactionManager mongoTransactionManager;
 
     private MongodbBatchConfigurer mongodbBatchConfigurer;
@@ -122,7 +150,7 @@ class MongodbBatchConfigurerTest extends MongoDBContainerConfig {
         buildWithAllOptions();
 
         var jobIndexes = mongoTemplate.indexOps("jobs").getIndexInfo();
-        assertEquals(5, jobIndexes.size());
+        assertEquals(7, jobIndexes.size());
         assertEquals("_id_", jobIndexes.get(0).getName());
     }
 
@@ -185,6 +213,38 @@ class MongodbBatchConfigurerTest extends MongoDBContainerConfig {
         assertFalse(jobIndex.isUnique());
     }
 
+    @Test
+    void constructor_ensureIndexes_launchGuard_unique() {
+        buildWithAllOptions();
+
+        var jobIndexes = mongoTemplate.indexOps("jobs").getIndexInfo();
+
+        var jobIndex = jobIndexes.get(5);
+        assertEquals("launchGuard_unique", jobIndex.getName());
+        var indexFields = jobIndex.getIndexFields();
+        assertEquals(3, indexFields.size());
+        assertEquals(JOB_NAME, indexFields.get(0).getKey());
+        assertEquals(JOB_KEY, indexFields.get(1).getKey());
+        assertEquals(LAUNCH_GUARD, indexFields.get(2).getKey());
+        assertTrue(jobIndex.isUnique());
+        assertTrue(jobIndex.getPartialFilterExpression().contains(LAUNCH_GUARD));
+    }
+
+    @Test
+    void constructor_ensureIndexes_jobInstanceId_stepName() {
+        buildWithAllOptions();
+
+        var jobIndexes = mongoTemplate.indexOps("jobs").getIndexInfo();
+
+        var jobIndex = jobIndexes.get(6);
+        assertEquals("jobInstanceId_stepName", jobIndex.getName());
+        var indexFields = jobIndex.getIndexFields();
+        assertEquals(2, indexFields.size());
+        assertEquals(JOB_INSTANCE_ID, indexFields.get(0).getKey());
+        assertEquals(STEP_EXECUTIONS_STEP_NAME, indexFields.get(1).getKey());
+        assertFalse(jobIndex.isUnique());
+    }
+
     @Test
     void getJobRepository() {
         buildWithAllOptions();
@@ -315,5 +375,671 @@ class MongodbBatchConfigurerTest extends MongoDBContainerConfig {
 
         assertSame(StandardCharsets.UTF_8, ((MongodbJobRepository) mongodbBatchConfigurer.getJobRepository()).getJobExecutionDocumentMapper().getExecutionContextCharset());
         assertSame(StandardCharsets.UTF_8, ((MongodbJobExplorer) mongodbBatchConfigurer.getJobExplorer()).getJobExecutionDocumentMapper().getExecutionContextCharset());
+
+        assertEquals(1, repository.getJobInstanceCounter().getBlockSize());
+        assertEquals(1, repository.getJobExecutionCounter().getBlockSize());
+        assertEquals(1, repository.getStepExecutionCounter().getBlockSize());
+        assertFalse(repository.isStepExecutionIdFromJobExecution());
+        assertFalse(repository.isCombinedStepExecutionUpdate());
+        assertEquals(0, repository.getStepExecutionFlushIntervalMillis());
+        assertEquals(0, repository.getStepExecutionFlushCommits());
+        assertEquals(0, repository.getStepExecutionUpdateRetries());
+        assertEquals(10, repository.getStepExecutionUpdateRetryBackoffMillis());
+        assertNull(repository.getStepCollectionName());
+        assertNull(mongodbBatchConfigurer.getMongodbJobExplorer().getStepCollectionName());
+        assertFalse(repository.isDeltaExecutionContextUpdate());
+        assertEquals(ExecutionContextFormat.STRING, repository.getJobExecutionDocumentMapper().getExecutionContextFormat());
+        assertEquals(0, repository.getJobExecutionDocumentMapper().getExecutionContextCompressionThreshold());
+        assertNull(repository.getExecutionContextOverflow());
+        assertNull(mongodbBatchConfigurer.getMongodbJobExplorer().getExecutionContextOverflow());
+    }
+
+    @Test
+    void counterBlockSizes() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .jobInstanceIdBlockSize(10)
+                .jobExecutionIdBlockSize(100)
+                .stepExecutionIdBlockSize(1000)
+                .build();
+
+        var repository = mongodbBatchConfigurer.getMongodbJobRepository();
+        assertEquals(10, repository.getJobInstanceCounter().getBlockSize());
+        assertEquals(100, repository.getJobExecutionCounter().getBlockSize());
+        assertEquals(1000, repository.getStepExecutionCounter().getBlockSize());
+    }
+
+    @Test
+    void counterLowWaterMarks() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .jobInstanceIdBlockSize(10, 1)
+                .jobExecutionIdBlockSize(100, 10)
+                .stepExecutionIdBlockSize(1000, 100)
+                .build();
+
+        var repository = mongodbBatchConfigurer.getMongodbJobRepository();
+        assertEquals(10, repository.getJobInstanceCounter().getBlockSize());
+        assertEquals(1, repository.getJobInstanceCounter().getLowWaterMark());
+        assertEquals(100, repository.getJobExecutionCounter().getBlockSize());
+        assertEquals(10, repository.getJobExecutionCounter().getLowWaterMark());
+        assertEquals(1000, repository.getStepExecutionCounter().getBlockSize());
+        assertEquals(100, repository.getStepExecutionCounter().getLowWaterMark());
+    }
+
+    @Test
+    void counterPrefetchExecutor_default() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .stepExecutionIdBlockSize(1000, 100)
+                .build();
+
+        var repository = mongodbBatchConfigurer.getMongodbJobRepository();
+        var executor = (ExecutorService) ReflectionTestUtils.getField(repository.getStepExecutionCounter(), "prefetchExecutor");
+        assertNotSame(ForkJoinPool.commonPool(), executor);
+        assertSame(executor, ReflectionTestUtils.getField(repository.getJobInstanceCounter(), "prefetchExecutor"));
+        assertSame(executor, ReflectionTestUtils.getField(repository.getJobExecutionCounter(), "prefetchExecutor"));
+
+        mongodbBatchConfigurer.destroy();
+
+        assertTrue(executor.isShutdown());
+        assertEquals(1L, repository.getStepExecutionCounter().nextValue());
+    }
+
+    @Test
+    void counterPrefetchExecutor() {
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                    .mongoTemplate(mongoTemplate)
+                    .mongoTransactionManager(mongoTransactionManager)
+                    .stepExecutionIdBlockSize(1000, 100)
+                    .counterPrefetchExecutor(executor)
+                    .build();
+
+            var repository = mongodbBatchConfigurer.getMongodbJobRepository();
+            assertSame(executor, ReflectionTestUtils.getField(repository.getStepExecutionCounter(), "prefetchExecutor"));
+
+            mongodbBatchConfigurer.destroy();
+
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void idGenerator() {
+        var idGenerator = new SnowflakeIdGenerator(1L);
+
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .idGenerator(idGenerator)
+                .build();
+
+        var repository = mongodbBatchConfigurer.getMongodbJobRepository();
+        assertSame(idGenerator, repository.getJobInstanceIdGenerator());
+        assertSame(idGenerator, repository.getJobExecutionIdGenerator());
+        assertSame(idGenerator, repository.getStepExecutionIdGenerator());
+        assertNull(repository.getJobInstanceCounter());
+        assertNull(repository.getJobExecutionCounter());
+        assertNull(repository.getStepExecutionCounter());
+        assertFalse(mongoTemplate.collectionExists("counters"));
+    }
+
+    @Test
+    void idGenerator_perId() {
+        IdGenerator jobInstanceIdGenerator = () -> 1L;
+        IdGenerator stepExecutionIdGenerator = () -> 3L;
+
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .jobInstanceIdGenerator(jobInstanceIdGenerator)
+                .stepExecutionIdGenerator(stepExecutionIdGenerator)
+                .build();
+
+        var repository = mongodbBatchConfigurer.getMongodbJobRepository();
+        assertSame(jobInstanceIdGenerator, repository.getJobInstanceIdGenerator());
+        assertInstanceOf(MongodbCounter.class, repository.getJobExecutionIdGenerator());
+        assertEquals(JOB_EXECUTION_ID, repository.getJobExecutionCounter().getCounterName());
+        assertSame(stepExecutionIdGenerator, repository.getStepExecutionIdGenerator());
+    }
+
+    @Test
+    void stepExecutionIdFromJobExecution() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .stepExecutionIdFromJobExecution(true)
+                .build();
+
+        assertTrue(mongodbBatchConfigurer.getMongodbJobRepository().isStepExecutionIdFromJobExecution());
+    }
+
+    @Test
+    void combinedStepExecutionUpdate() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .combinedStepExecutionUpdate(true)
+                .build();
+
+        assertTrue(mongodbBatchConfigurer.getMongodbJobRepository().isCombinedStepExecutionUpdate());
+    }
+
+    @Test
+    void transactionFree() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .transactionFree(true)
+                .build();
+
+        assertTrue(mongodbBatchConfigurer.getTransactionManager() instanceof ResourcelessTransactionManager);
+        assertTrue(mongodbBatchConfigurer.getMongodbJobRepository().isCombinedStepExecutionUpdate());
+    }
+
+    /**
+     * Compares the latency of a chunk commit: the execution context and step execution updates made in the
+     * transaction of each chunk.  Run with -Dbenchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void transactionFree_chunkLatency() throws Exception {
+        var transactions = chunkLatencyMicros(MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .build(), "Transactions");
+        var combinedTransactions = chunkLatencyMicros(MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .combinedStepExecutionUpdate(true)
+                .build(), "Combined Transactions");
+        var transactionFree = chunkLatencyMicros(MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .transactionFree(true)
+                .build(), "Transaction Free");
+
+        System.out.printf("%-24s %12s%n", "mode", "chunk us");
+        System.out.printf("%-24s %12.1f%n", "transactions", transactions);
+        System.out.printf("%-24s %12.1f%n", "combined, transactions", combinedTransactions);
+        System.out.printf("%-24s %12.1f%n", "transaction free", transactionFree);
+
+        assertTrue(transactionFree < transactions);
+    }
+
+    /**
+     * @return average time of a chunk commit in microseconds, after 100 chunks to warm up
+     */
+    private double chunkLatencyMicros(MongodbBatchConfigurer configurer, String jobName) throws Exception {
+        var jobRepository = configurer.getJobRepository();
+        var jobExecution = jobRepository.createJobExecution(jobName, new JobParameters());
+        var stepExecution = jobExecution.createStepExecution("Step 1");
+        jobRepository.add(stepExecution);
+        stepExecution.setStatus(BatchStatus.STARTED);
+
+        var transactionTemplate = new TransactionTemplate(configurer.getTransactionManager());
+        var chunks = 1000;
+        var start = 0L;
+        for (int i = -100; i < chunks; i++) {
+            if (i == 0) {
+                start = System.nanoTime();
+            }
+            stepExecution.setCommitCount(stepExecution.getCommitCount() + 1);
+            stepExecution.setReadCount(stepExecution.getReadCount() + 100);
+            stepExecution.getExecutionContext().putLong("reader.read.count", stepExecution.getReadCount());
+            transactionTemplate.executeWithoutResult(status -> {
+                jobRepository.updateExecutionContext(stepExecution);
+                jobRepository.update(stepExecution);
+            });
+        }
+        return (System.nanoTime() - start) / 1000.0 / chunks;
+    }
+
+    @Test
+    void transactionFree_otherTransactionManager() {
+        var transactionManager = new ResourcelessTransactionManager();
+
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(transactionManager)
+                .transactionFree(true)
+                .build();
+
+        assertSame(transactionManager, mongodbBatchConfigurer.getTransactionManager());
+    }
+
+    @Test
+    void transactionFree_mongoTransactionManager() {
+        try {
+            MongodbBatchConfigurer.builder()
+                    .mongoTemplate(mongoTemplate)
+                    .mongoTransactionManager(mongoTransactionManager)
+                    .transactionFree(true)
+                    .build();
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("A MongoTransactionManager must not be used in transaction free mode", e.getMessage());
+        }
+    }
+
+    @Test
+    void stepCollectionName() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .stepCollectionName("steps")
+                .build();
+
+        assertEquals("steps", mongodbBatchConfigurer.getMongodbJobRepository().getStepCollectionName());
+        assertEquals("steps", mongodbBatchConfigurer.getMongodbJobExplorer().getStepCollectionName());
+
+        var stepIndexes = mongoTemplate.indexOps("steps").getIndexInfo().stream()
+                .map(IndexInfo::getName)
+                .collect(Collectors.toList());
+        assertEquals(List.of("_id_", "stepExecutionId_unique", "jobExecutionId_stepExecutionId", "jobInstanceId_stepName"),
+                stepIndexes);
+    }
+
+    @Test
+    void stepCollectionName_embeddedStepExecutions() {
+        mongoTemplate.insert(new Document(JOB_EXECUTION_ID, 1L).append(STEP_EXECUTIONS, List.of(
+                new Document(STEP_EXECUTION_ID, 1L))), "jobExecutions");
+        mongoTemplate.insert(new Document(JOB_EXECUTION_ID, 2L).append(STEP_EXECUTIONS, List.of()), "jobExecutions");
+
+        try {
+            MongodbBatchConfigurer.builder()
+                    .mongoTemplate(mongoTemplate)
+                    .mongoTransactionManager(mongoTransactionManager)
+                    .stepCollectionName("steps")
+                    .build();
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Collection jobExecutions contains embedded step executions.  "
+                    + "Move them to steps before setting the step collection name.", e.getMessage());
+        }
+
+        mongoTemplate.remove(Query.query(Criteria.where(JOB_EXECUTION_ID).is(1L)), "jobExecutions");
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .stepCollectionName("steps")
+                .build();
+        assertEquals("steps", mongodbBatchConfigurer.getMongodbJobRepository().getStepCollectionName());
+        assertEquals("steps", getSchemaSettings().getString("stepCollectionName"));
+
+        // Once recorded, the job collection is not searched again until the step collection name changes
+        mongoTemplate.insert(new Document(JOB_EXECUTION_ID, 1L).append(STEP_EXECUTIONS, List.of(
+                new Document(STEP_EXECUTION_ID, 1L))), "jobExecutions");
+        MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .stepCollectionName("steps")
+                .build();
+
+        MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .build();
+        assertNull(getSchemaSettings().get("stepCollectionName"));
+    }
+
+    @Test
+    void stepExecutionIdFromJobExecution_counterTooLarge() {
+        mongoTemplate.insert(new Document("counter", STEP_EXECUTION_ID).append("value", 1L << 20), "counters");
+
+        try {
+            MongodbBatchConfigurer.builder()
+                    .mongoTemplate(mongoTemplate)
+                    .mongoTransactionManager(mongoTransactionManager)
+                    .stepExecutionIdFromJobExecution(true)
+                    .build();
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Counter stepExecutionId in collection counters is at 1048576.  "
+                    + "Its stepExecutionIds can collide with stepExecutionIds from job execution sequences.", e.getMessage());
+        }
+
+        mongoTemplate.updateFirst(Query.query(Criteria.where("counter").is(STEP_EXECUTION_ID)),
+                Update.update("value", (1L << 20) - 1), "counters");
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .stepExecutionIdFromJobExecution(true)
+                .build();
+        assertTrue(mongodbBatchConfigurer.getMongodbJobRepository().isStepExecutionIdFromJobExecution());
+    }
+
+    @Test
+    void stepExecutionIdFromJobExecution_switchBack() {
+        MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .stepExecutionIdFromJobExecution(true)
+                .build();
+        assertTrue(getSchemaSettings().getBoolean(STEP_EXECUTION_ID_FROM_JOB_EXECUTION));
+
+        mongoTemplate.insert(new Document(JOB_EXECUTION_ID, 3L).append(STEP_EXECUTION_SEQUENCE, 2), "jobExecutions");
+        mongoTemplate.insert(new Document(JOB_EXECUTION_ID, 4L), "jobExecutions");
+
+        try {
+            MongodbBatchConfigurer.builder()
+                    .mongoTemplate(mongoTemplate)
+                    .mongoTransactionManager(mongoTransactionManager)
+                    .build();
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Collection jobExecutions contains stepExecutionIds up to 3145730 from job execution sequences.  "
+                    + "Set counter stepExecutionId in collection counters to at least 3145730 before using it.", e.getMessage());
+        }
+
+        mongoTemplate.upsert(Query.query(Criteria.where("counter").is(STEP_EXECUTION_ID)),
+                Update.update("value", 3145730L), "counters");
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .build();
+        assertEquals(3145731L, mongodbBatchConfigurer.getMongodbJobRepository().getStepExecutionCounter().nextValue());
+        assertFalse(getSchemaSettings().getBoolean(STEP_EXECUTION_ID_FROM_JOB_EXECUTION));
+    }
+
+    @Test
+    void stepExecutionIdFromJobExecution_unchanged() {
+        mongoTemplate.insert(new Document(JOB_EXECUTION_ID, 3L).append(STEP_EXECUTION_SEQUENCE, 2), "jobExecutions");
+
+        // Without a recorded change of the setting, the job collection is not searched for sequences
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .build();
+
+        assertNull(mongoTemplate.findOne(Query.query(Criteria.where("counter").is("jobExecutions.schema")),
+                Document.class, "counters"));
+    }
+
+    private Document getSchemaSettings() {
+        return mongoTemplate.findOne(Query.query(Criteria.where("counter").is("jobExecutions.schema")),
+                Document.class, "counters");
+    }
+
+    @Test
+    void stepCollectionName_blank() {
+        try {
+            MongodbBatchConfigurer.builder()
+                    .mongoTemplate(mongoTemplate)
+                    .mongoTransactionManager(mongoTransactionManager)
+                    .stepCollectionName("")
+                    .build();
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Step Collection Name must not be null or blank", e.getMessage());
+        }
+    }
+
+    @Test
+    void executionContextOverflow() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .executionContextOverflow("overflow", 8 * 1024 * 1024)
+                .build();
+
+        var overflow = mongodbBatchConfigurer.getMongodbJobRepository().getExecutionContextOverflow();
+        assertEquals("overflow", overflow.getCollectionName());
+        assertEquals(8 * 1024 * 1024, overflow.getThreshold());
+        assertSame(overflow, mongodbBatchConfigurer.getMongodbJobExplorer().getExecutionContextOverflow());
+
+        var overflowIndexes = mongoTemplate.indexOps("overflow").getIndexInfo().stream()
+                .map(IndexInfo::getName)
+                .collect(Collectors.toList());
+        assertEquals(List.of("_id_", "overflowId_n_unique", "owner"), overflowIndexes);
+    }
+
+    @Test
+    void executionContextOverflow_threshold() {
+        try {
+            MongodbBatchConfigurer.builder()
+                    .mongoTemplate(mongoTemplate)
+                    .mongoTransactionManager(mongoTransactionManager)
+                    .executionContextOverflow("overflow", 0)
+                    .build();
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Execution Context Overflow Threshold must be greater than 0", e.getMessage());
+        }
+    }
+
+    @Test
+    void operationConcern() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .operationConcern(OperationCategory.CREATION, WriteConcern.MAJORITY, ReadConcern.MAJORITY)
+                .operationConcern(OperationCategory.PROGRESS, WriteConcern.W1, null)
+                .explorerReadConcern(ReadConcern.LOCAL)
+                .build();
+
+        var repository = mongodbBatchConfigurer.getMongodbJobRepository();
+        var creationTemplate = (ConcernMongoTemplate) repository.getOperationTemplate(OperationCategory.CREATION);
+        assertEquals(WriteConcern.MAJORITY, creationTemplate.getWriteConcern());
+        assertEquals(ReadConcern.MAJORITY, creationTemplate.getReadConcern());
+        var progressTemplate = (ConcernMongoTemplate) repository.getOperationTemplate(OperationCategory.PROGRESS);
+        assertEquals(WriteConcern.W1, progressTemplate.getWriteConcern());
+        assertNull(progressTemplate.getReadConcern());
+        assertSame(mongoTemplate, repository.getOperationTemplate(OperationCategory.CONTEXT));
+        assertSame(mongoTemplate, repository.getOperationTemplate(OperationCategory.STATUS));
+
+        var explorerTemplate = (ConcernMongoTemplate) mongodbBatchConfigurer.getMongodbJobExplorer().getMongoTemplate();
+        assertNull(explorerTemplate.getWriteConcern());
+        assertEquals(ReadConcern.LOCAL, explorerTemplate.getReadConcern());
+    }
+
+    @Test
+    void executionContextFormat() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .executionContextFormat(ExecutionContextFormat.BSON)
+                .build();
+
+        assertEquals(ExecutionContextFormat.BSON, mongodbBatchConfigurer.getMongodbJobRepository()
+                .getJobExecutionDocumentMapper().getExecutionContextFormat());
+        assertEquals(ExecutionContextFormat.BSON, mongodbBatchConfigurer.getMongodbJobExplorer()
+                .getJobExecutionDocumentMapper().getExecutionContextFormat());
+    }
+
+    @Test
+    void executionContextFormat_null() {
+        try {
+            MongodbBatchConfigurer.builder()
+                    .mongoTemplate(mongoTemplate)
+                    .mongoTransactionManager(mongoTransactionManager)
+                    .executionContextFormat(null)
+                    .build();
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Execution Context Format must not be null", e.getMessage());
+        }
+    }
+
+    @Test
+    void executionContextCompressionThreshold() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .executionContextCompressionThreshold(16384)
+                .build();
+
+        assertEquals(16384, mongodbBatchConfigurer.getMongodbJobRepository()
+                .getJobExecutionDocumentMapper().getExecutionContextCompressionThreshold());
+    }
+
+    @Test
+    void executionContextCompressionThreshold_negative() {
+        try {
+            MongodbBatchConfigurer.builder()
+                    .mongoTemplate(mongoTemplate)
+                    .mongoTransactionManager(mongoTransactionManager)
+                    .executionContextCompressionThreshold(-1)
+                    .build();
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Execution Context Compression Threshold must not be negative", e.getMessage());
+        }
+    }
+
+    @Test
+    void deltaExecutionContextUpdate() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .deltaExecutionContextUpdate(true)
+                .build();
+
+        assertTrue(mongodbBatchConfigurer.getMongodbJobRepository().isDeltaExecutionContextUpdate());
+    }
+
+    @Test
+    void stepExecutionWriteBehind() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .stepExecutionWriteBehind(1000, 20)
+                .build();
+
+        assertEquals(1000, mongodbBatchConfigurer.getMongodbJobRepository().getStepExecutionFlushIntervalMillis());
+        assertEquals(20, mongodbBatchConfigurer.getMongodbJobRepository().getStepExecutionFlushCommits());
+    }
+
+    @Test
+    void stepExecutionWriteBehind_negative() {
+        try {
+            MongodbBatchConfigurer.builder()
+                    .mongoTemplate(mongoTemplate)
+                    .mongoTransactionManager(mongoTransactionManager)
+                    .stepExecutionWriteBehind(-1, 0)
+                    .build();
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Step execution write behind limits must not be negative", e.getMessage());
+        }
+    }
+
+    @Test
+    void stepExecutionUpdateRetry() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .stepExecutionUpdateRetry(3, 50)
+                .build();
+
+        assertEquals(3, mongodbBatchConfigurer.getMongodbJobRepository().getStepExecutionUpdateRetries());
+        assertEquals(50, mongodbBatchConfigurer.getMongodbJobRepository().getStepExecutionUpdateRetryBackoffMillis());
+    }
+
+    @Test
+    void stepExecutionUpdateRetry_negative() {
+        try {
+            MongodbBatchConfigurer.builder()
+                    .mongoTemplate(mongoTemplate)
+                    .mongoTransactionManager(mongoTransactionManager)
+                    .stepExecutionUpdateRetry(-1, 10)
+                    .build();
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Step execution update retries and backoff must not be negative", e.getMessage());
+        }
+    }
+
+    @Test
+    void schemaInitialization_null() {
+        try {
+            MongodbBatchConfigurer.builder()
+                    .mongoTemplate(mongoTemplate)
+                    .mongoTransactionManager(mongoTransactionManager)
+                    .schemaInitialization(null)
+                    .build();
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Schema Initialization must not be null", e.getMessage());
+        }
+    }
+
+    @Test
+    void schemaInitialization_create_existingIndexes() {
+        buildWithAllOptions();
+        buildWithAllOptions();
+
+        assertEquals(7, mongoTemplate.indexOps("jobs").getIndexInfo().size());
+        assertEquals(2, mongoTemplate.indexOps("numbers").getIndexInfo().size());
+        assertEquals(3, mongoTemplate.count(new Query(), "numbers"));
+    }
+
+    @Test
+    void schemaInitialization_createInBackground() throws Exception {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .schemaInitialization(SchemaInitialization.CREATE_IN_BACKGROUND)
+                .build();
+
+        assertEquals(3, mongoTemplate.count(new Query(), "counters"));
+        assertEquals(2, mongoTemplate.indexOps("counters").getIndexInfo().size());
+        var uniqueIndexNames = mongoTemplate.indexOps("jobExecutions").getIndexInfo().stream()
+                .map(IndexInfo::getName)
+                .collect(Collectors.toSet());
+        assertTrue(uniqueIndexNames.containsAll(
+                List.of("jobInstance_jobExecution_unique", "jobExecutionId_unique", "launchGuard_unique")));
+
+        for (int i = 0; i < 100 && mongoTemplate.indexOps("jobExecutions").getIndexInfo().size() < 7; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(7, mongoTemplate.indexOps("jobExecutions").getIndexInfo().size());
+    }
+
+    @Test
+    void schemaInitialization_createInBackground_executor() {
+        var pendingIndexes = new ArrayList<Runnable>();
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .schemaInitialization(SchemaInitialization.CREATE_IN_BACKGROUND)
+                .schemaInitializationExecutor(pendingIndexes::add)
+                .build();
+
+        assertEquals(1, pendingIndexes.size());
+        assertEquals(4, mongoTemplate.indexOps("jobExecutions").getIndexInfo().size());
+
+        pendingIndexes.get(0).run();
+
+        assertEquals(7, mongoTemplate.indexOps("jobExecutions").getIndexInfo().size());
+    }
+
+    @Test
+    void schemaInitialization_verify() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .schemaInitialization(SchemaInitialization.VERIFY)
+                .build();
+
+        assertFalse(mongoTemplate.collectionExists("jobExecutions"));
+        assertFalse(mongoTemplate.collectionExists("counters"));
+    }
+
+    @Test
+    void schemaInitialization_none() {
+        mongodbBatchConfigurer = MongodbBatchConfigurer.builder()
+                .mongoTemplate(mongoTemplate)
+                .mongoTransactionManager(mongoTransactionManager)
+                .schemaInitialization(SchemaInitialization.NONE)
+                .build();
+
+        assertFalse(mongoTemplate.collectionExists("jobExecutions"));
+        assertFalse(mongoTemplate.collectionExists("counters"));
     }
-}
\ No newline at end of file
+}
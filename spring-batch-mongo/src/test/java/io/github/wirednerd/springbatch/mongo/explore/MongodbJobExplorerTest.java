@@ -2,6 +2,8 @@ package io.github.wirednerd.springbatch.mongo.explore;
 
 import io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper;
 import io.github.wirednerd.springbatch.mongo.MongoDBContainerConfig;
+import io.github.wirednerd.springbatch.mongo.repository.MongodbExecutionContextOverflow;
+import io.github.wirednerd.springbatch.mongo.repository.MongodbStepExecutionCollection;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.batch.core.*;
@@ -349,4 +351,66 @@ class MongodbJobExplorerTest extends MongoDBContainerConfig {
             assertEquals("stepExecutionId must not be null.", e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void executionContextOverflow() {
+        var overflow = new MongodbExecutionContextOverflow(mongoTemplate, "testOverflow", 1000);
+
+        var jobExecution = new JobExecution(new JobInstance(40L, "Job4"), 41L, new JobParameters(), "");
+        jobExecution.setStartTime(new Date(System.currentTimeMillis()));
+        jobExecution.setStatus(BatchStatus.STARTED);
+        jobExecution.getExecutionContext().putString("large", "x".repeat(1000));
+        var step = jobExecution.createStepExecution("Step1");
+        step.setId(401L);
+        step.getExecutionContext().putString("large", "y".repeat(1000));
+
+        var document = jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution);
+        document.setExecutionContextValue(overflow.store(MongodbExecutionContextOverflow.jobOwner(41L),
+                document.getExecutionContextValue()));
+        document.getStepExecutions().get(0).setExecutionContextValue(overflow.store(MongodbExecutionContextOverflow.stepOwner(401L),
+                document.getStepExecutions().get(0).getExecutionContextValue()));
+        mongoTemplate.insert(document, jobCollectionName);
+
+        explorer.setExecutionContextOverflow(overflow);
+        assertSame(overflow, explorer.getExecutionContextOverflow());
+
+        assertEquals("x".repeat(1000), explorer.getJobExecution(41L).getExecutionContext().getString("large"));
+        assertEquals("x".repeat(1000), explorer.getLastJobExecution(new JobInstance(40L, "Job4"))
+                .getExecutionContext().getString("large"));
+        assertEquals("x".repeat(1000), explorer.getJobExecutions(new JobInstance(40L, "Job4")).get(0)
+                .getExecutionContext().getString("large"));
+        assertEquals("x".repeat(1000), explorer.findRunningJobExecutions("Job4").iterator().next()
+                .getExecutionContext().getString("large"));
+        assertEquals("y".repeat(1000), explorer.getStepExecution(41L, 401L).getExecutionContext().getString("large"));
+        assertTrue(explorer.getJobExecution(13L).getExecutionContext().isEmpty());
+    }
+
+    @Test
+    void stepCollection() {
+        var jobExecution = new JobExecution(new JobInstance(30L, "Job3"), 31L, new JobParameters(), "");
+        jobExecution.setStartTime(new Date(System.currentTimeMillis()));
+        jobExecution.setStatus(BatchStatus.STARTED);
+        mongoTemplate.insert(jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution), jobCollectionName);
+
+        var step1 = jobExecution.createStepExecution("Step1");
+        step1.setId(301L);
+        var step2 = jobExecution.createStepExecution("Step2");
+        step2.setId(302L);
+        new MongodbStepExecutionCollection(mongoTemplate, "testSteps", jobExecutionDocumentMapper)
+                .insert(List.of(step1, step2));
+
+        explorer.setStepCollectionName("testSteps");
+        assertEquals("testSteps", explorer.getStepCollectionName());
+
+        assertEquals(2, explorer.getJobExecution(31L).getStepExecutions().size());
+        assertEquals(2, explorer.getLastJobExecution(new JobInstance(30L, "Job3")).getStepExecutions().size());
+        assertEquals(2, explorer.getJobExecutions(new JobInstance(30L, "Job3")).get(0).getStepExecutions().size());
+        assertEquals(2, explorer.findRunningJobExecutions("Job3").iterator().next().getStepExecutions().size());
+        assertEquals("Step2", explorer.getStepExecution(31L, 302L).getStepName());
+        assertTrue(explorer.getJobExecution(13L).getStepExecutions().isEmpty());
+
+        explorer.setStepCollectionName(null);
+        assertNull(explorer.getStepCollectionName());
+        assertTrue(explorer.getJobExecution(31L).getStepExecutions().isEmpty());
+    }
+}
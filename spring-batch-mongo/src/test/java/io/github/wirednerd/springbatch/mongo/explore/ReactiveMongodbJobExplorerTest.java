@@ -0,0 +1,295 @@
+package io.github.wirednerd.springbatch.mongo.explore;
+
+import io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper;
+import io.github.wirednerd.springbatch.mongo.MongoDBContainerConfig;
+import io.github.wirednerd.springbatch.mongo.repository.MongodbExecutionContextOverflow;
+import io.github.wirednerd.springbatch.mongo.repository.MongodbStepExecutionCollection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.*;
+import org.springframework.batch.core.launch.NoSuchJobException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactiveMongodbJobExplorerTest extends MongoDBContainerConfig {
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private ReactiveMongodbJobExplorer explorer;
+
+    private final String jobCollectionName = "testJobs";
+
+    private final JobExecutionDocumentMapper jobExecutionDocumentMapper = new JobExecutionDocumentMapper();
+
+    @BeforeEach
+    void setUp() {
+        explorer = new ReactiveMongodbJobExplorer(reactiveMongoTemplate, jobCollectionName, jobExecutionDocumentMapper);
+
+        var jobExecution11 = new JobExecution(new JobInstance(10L, "Job1"), 11L, new JobParameters(), "");
+        jobExecution11.setStartTime(new Date(System.currentTimeMillis()));
+        jobExecution11.setEndTime(new Date(System.currentTimeMillis()));
+        jobExecution11.setStatus(BatchStatus.COMPLETED);
+        jobExecution11.setExitStatus(ExitStatus.COMPLETED);
+
+        var jobExecution12 = new JobExecution(new JobInstance(10L, "Job1"), 12L, new JobParameters(), "");
+        jobExecution12.setStartTime(new Date(System.currentTimeMillis()));
+        jobExecution12.setStatus(BatchStatus.COMPLETED);
+        jobExecution12.setExitStatus(ExitStatus.COMPLETED);
+
+        var paramMap = new LinkedHashMap<String, JobParameter>();
+        paramMap.put("Key", new JobParameter("Value"));
+
+        var jobExecution13 = new JobExecution(new JobInstance(11L, "Job1"), 13L, new JobParameters(paramMap), "");
+        jobExecution13.setStartTime(new Date(System.currentTimeMillis()));
+        jobExecution13.setStatus(BatchStatus.STARTED);
+        jobExecution13.createStepExecution("Step1").setId(1L);
+        jobExecution13.createStepExecution("Step2").setId(2L);
+
+        var jobExecution21 = new JobExecution(new JobInstance(20L, "Job2"), 21L, new JobParameters(), "");
+        jobExecution21.setStatus(BatchStatus.COMPLETED);
+        jobExecution21.setExitStatus(ExitStatus.FAILED);
+
+        for (var jobExecution : List.of(jobExecution11, jobExecution12, jobExecution13, jobExecution21)) {
+            mongoTemplate.insert(jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution), jobCollectionName);
+        }
+    }
+
+    @Test
+    void constructor_fromJobExplorer() {
+        var jobExplorer = new MongodbJobExplorer(mongoTemplate, jobCollectionName, jobExecutionDocumentMapper);
+        jobExplorer.setStepCollectionName("testSteps");
+        jobExplorer.setExecutionContextOverflow(new MongodbExecutionContextOverflow(mongoTemplate, "testOverflow", 1000));
+
+        var reactiveExplorer = new ReactiveMongodbJobExplorer(reactiveMongoTemplate, jobExplorer);
+
+        assertSame(reactiveMongoTemplate, reactiveExplorer.getReactiveMongoTemplate());
+        assertEquals(jobCollectionName, reactiveExplorer.getJobCollectionName());
+        assertSame(jobExecutionDocumentMapper, reactiveExplorer.getJobExecutionDocumentMapper());
+        assertEquals("testSteps", reactiveExplorer.getStepCollectionName());
+        assertEquals("testOverflow", reactiveExplorer.getExecutionContextOverflowCollectionName());
+
+        reactiveExplorer = new ReactiveMongodbJobExplorer(reactiveMongoTemplate,
+                new MongodbJobExplorer(mongoTemplate, jobCollectionName, jobExecutionDocumentMapper));
+
+        assertNull(reactiveExplorer.getStepCollectionName());
+        assertNull(reactiveExplorer.getExecutionContextOverflowCollectionName());
+    }
+
+    @Test
+    void getJobInstance() {
+        var jobInstance = explorer.getJobInstance(10L).block();
+        assertEquals(10L, jobInstance.getId());
+        assertEquals("Job1", jobInstance.getJobName());
+
+        assertNull(explorer.getJobInstance(0L).block());
+    }
+
+    @Test
+    void getJobNames() {
+        assertEquals(List.of("Job1", "Job2"), explorer.getJobNames().collectList().block());
+
+        mongoTemplate.remove(new Query(), jobCollectionName);
+
+        assertEquals(List.of(), explorer.getJobNames().collectList().block());
+    }
+
+    @Test
+    void getJobInstanceCount() {
+        assertEquals(2, explorer.getJobInstanceCount("Job1").block());
+        assertEquals(1, explorer.getJobInstanceCount("Job2").block());
+
+        var count = explorer.getJobInstanceCount("Job0");
+        var exception = assertThrows(RuntimeException.class, count::block);
+        assertTrue(exception.getCause() instanceof NoSuchJobException);
+        assertEquals("No job instances were found for job name Job0", exception.getCause().getMessage());
+    }
+
+    @Test
+    void getJobInstances() {
+        var result = explorer.getJobInstances("Job1", 0, 10).collectList().block();
+
+        assertEquals(2, result.size());
+        assertEquals(11L, result.get(0).getId());
+        assertEquals(10L, result.get(1).getId());
+
+        assertEquals(1, explorer.getJobInstances("Job1", 1, 10).collectList().block().size());
+        assertEquals(0, explorer.getJobInstances("Not Found", 0, 10).collectList().block().size());
+    }
+
+    @Test
+    void findJobInstancesByJobName() {
+        assertEquals(2, explorer.findJobInstancesByJobName("J*1", 0, 10).collectList().block().size());
+        assertEquals(2, explorer.findJobInstancesByJobName("J%1", 0, 10).collectList().block().size());
+        assertEquals(0, explorer.findJobInstancesByJobName("Job0*", 0, 10).collectList().block().size());
+    }
+
+    @Test
+    void getLastJobInstance() {
+        assertEquals(11L, explorer.getLastJobInstance("Job1").block().getId());
+        assertEquals(20L, explorer.getLastJobInstance("Job2").block().getId());
+        assertNull(explorer.getLastJobInstance("Not Found").block());
+    }
+
+    @Test
+    void isJobInstanceExists() {
+        var paramMap = new LinkedHashMap<String, JobParameter>();
+        paramMap.put("Key", new JobParameter("Value"));
+
+        assertTrue(explorer.isJobInstanceExists("Job1", new JobParameters(paramMap)).block());
+        assertTrue(explorer.isJobInstanceExists("Job2", new JobParameters()).block());
+        assertFalse(explorer.isJobInstanceExists("Job3", new JobParameters()).block());
+    }
+
+    @Test
+    void isJobInstanceExists_blankJobName() {
+        try {
+            explorer.isJobInstanceExists("", new JobParameters());
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Job name must not be null or empty.", e.getMessage());
+        }
+    }
+
+    @Test
+    void getJobExecution() {
+        var result = explorer.getJobExecution(13L).block();
+
+        assertEquals(13L, result.getId());
+        assertEquals("Job1", result.getJobInstance().getJobName());
+        assertEquals(1, result.getJobParameters().getParameters().size());
+        assertEquals(2, result.getStepExecutions().size());
+
+        assertNull(explorer.getJobExecution(0L).block());
+    }
+
+    @Test
+    void getJobExecutions() {
+        var result = explorer.getJobExecutions(new JobInstance(10L, "Job1")).collectList().block();
+
+        assertEquals(2, result.size());
+        assertEquals(12L, result.get(0).getId());
+        assertEquals(11L, result.get(1).getId());
+
+        assertEquals(0, explorer.getJobExecutions(new JobInstance(0L, "Job1")).collectList().block().size());
+    }
+
+    @Test
+    void getJobExecutions_nullInput() {
+        try {
+            explorer.getJobExecutions(null);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("JobInstance must not be null.", e.getMessage());
+        }
+    }
+
+    @Test
+    void getLastJobExecution() {
+        assertEquals(12L, explorer.getLastJobExecution(new JobInstance(10L, "Job1")).block().getId());
+        assertNull(explorer.getLastJobExecution(new JobInstance(0L, "Job1")).block());
+    }
+
+    @Test
+    void getLastJobExecution_jobNameAndParameters() {
+        assertEquals(12L, explorer.getLastJobExecution("Job1", new JobParameters()).block().getId());
+        assertEquals(21L, explorer.getLastJobExecution("Job2", new JobParameters()).block().getId());
+        assertNull(explorer.getLastJobExecution("Job3", new JobParameters()).block());
+    }
+
+    @Test
+    void getLastCompletedJobExecution() {
+        assertEquals(12L, explorer.getLastCompletedJobExecution("Job1").block().getId());
+        assertNull(explorer.getLastCompletedJobExecution("Job2").block());
+    }
+
+    @Test
+    void findRunningJobExecutions() {
+        var result = explorer.findRunningJobExecutions("Job1").collectList().block();
+
+        var idSet = result.stream().map(Entity::getId).collect(Collectors.toSet());
+        assertEquals(Set.of(12L, 13L), idSet);
+    }
+
+    @Test
+    void getStepExecution() {
+        var result = explorer.getStepExecution(13L, 2L).block();
+
+        assertEquals("Step2", result.getStepName());
+        assertEquals(13L, result.getJobExecutionId());
+
+        assertNull(explorer.getStepExecution(0L, 2L).block());
+        assertNull(explorer.getStepExecution(11L, 2L).block());
+        assertNull(explorer.getStepExecution(13L, 0L).block());
+    }
+
+    @Test
+    void getStepExecution_nullStepExecutionId() {
+        try {
+            explorer.getStepExecution(1L, null);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("stepExecutionId must not be null.", e.getMessage());
+        }
+    }
+
+    @Test
+    void executionContextOverflow() {
+        var overflow = new MongodbExecutionContextOverflow(mongoTemplate, "testOverflow", 1000);
+
+        var jobExecution = new JobExecution(new JobInstance(40L, "Job4"), 41L, new JobParameters(), "");
+        jobExecution.setStartTime(new Date(System.currentTimeMillis()));
+        jobExecution.setStatus(BatchStatus.STARTED);
+        jobExecution.getExecutionContext().putString("large", "x".repeat(1000));
+        var step = jobExecution.createStepExecution("Step1");
+        step.setId(401L);
+        step.getExecutionContext().putString("large", "y".repeat(1000));
+
+        var document = jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution);
+        document.setExecutionContextValue(overflow.store(MongodbExecutionContextOverflow.jobOwner(41L),
+                document.getExecutionContextValue()));
+        document.getStepExecutions().get(0).setExecutionContextValue(overflow.store(MongodbExecutionContextOverflow.stepOwner(401L),
+                document.getStepExecutions().get(0).getExecutionContextValue()));
+        mongoTemplate.insert(document, jobCollectionName);
+
+        explorer.setExecutionContextOverflowCollectionName("testOverflow");
+
+        assertEquals("x".repeat(1000), explorer.getJobExecution(41L).block().getExecutionContext().getString("large"));
+        assertEquals("x".repeat(1000), explorer.findRunningJobExecutions("Job4").blockFirst()
+                .getExecutionContext().getString("large"));
+        assertEquals("y".repeat(1000), explorer.getStepExecution(41L, 401L).block()
+                .getExecutionContext().getString("large"));
+        assertTrue(explorer.getJobExecution(13L).block().getExecutionContext().isEmpty());
+    }
+
+    @Test
+    void stepCollection() {
+        var jobExecution = new JobExecution(new JobInstance(30L, "Job3"), 31L, new JobParameters(), "");
+        jobExecution.setStartTime(new Date(System.currentTimeMillis()));
+        jobExecution.setStatus(BatchStatus.STARTED);
+        mongoTemplate.insert(jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution), jobCollectionName);
+
+        var step1 = jobExecution.createStepExecution("Step1");
+        step1.setId(301L);
+        var step2 = jobExecution.createStepExecution("Step2");
+        step2.setId(302L);
+        new MongodbStepExecutionCollection(mongoTemplate, "testSteps", jobExecutionDocumentMapper)
+                .insert(List.of(step1, step2));
+
+        explorer.setStepCollectionName("testSteps");
+
+        assertEquals(2, explorer.getJobExecution(31L).block().getStepExecutions().size());
+        assertEquals(2, explorer.getJobExecutions(new JobInstance(30L, "Job3")).blockFirst().getStepExecutions().size());
+        assertEquals("Step2", explorer.getStepExecution(31L, 302L).block().getStepName());
+        assertTrue(explorer.getJobExecution(13L).block().getStepExecutions().isEmpty());
+
+        explorer.setStepCollectionName(null);
+        assertTrue(explorer.getJobExecution(31L).block().getStepExecutions().isEmpty());
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.wirednerd.springbatch.mongo.repository;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import io.github.wirednerd.springbatch.mongo.MongoDBContainerConfig;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoAction;
+import org.springframework.data.mongodb.core.MongoActionOperation;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcernMongoTemplateTest extends MongoDBContainerConfig {
+
+    @Test
+    void concerns() {
+        var template = new ConcernMongoTemplate(mongoTemplate, WriteConcern.MAJORITY, ReadConcern.MAJORITY);
+
+        assertEquals(WriteConcern.MAJORITY, template.getWriteConcern());
+        assertEquals(ReadConcern.MAJORITY, template.getReadConcern());
+        assertSame(mongoTemplate.getConverter(), template.getConverter());
+        ReadConcern readConcern = template.execute("testConcerns", collection -> collection.getReadConcern());
+        assertEquals(ReadConcern.MAJORITY, readConcern);
+
+        template.insert(new Document("key", "value"), "testConcerns");
+        assertEquals("value", template.findOne(new Query(), Document.class, "testConcerns").getString("key"));
+    }
+
+    @Test
+    void defaultConcerns() {
+        var template = new ConcernMongoTemplate(mongoTemplate, null, null);
+
+        assertNull(template.getWriteConcern());
+        assertNull(template.getReadConcern());
+        ReadConcern defaultReadConcern = mongoTemplate.execute("testConcerns", collection -> collection.getReadConcern());
+        ReadConcern readConcern = template.execute("testConcerns", collection -> collection.getReadConcern());
+        assertEquals(defaultReadConcern, readConcern);
+    }
+
+    @Test
+    void databaseFactoryAndConverter() {
+        var source = new MongoTemplate(mongoTemplate.getMongoDatabaseFactory(), mongoTemplate.getConverter());
+        source.setReadPreference(ReadPreference.primaryPreferred());
+
+        var template = new ConcernMongoTemplate(source, null, ReadConcern.MAJORITY);
+
+        assertSame(source.getMongoDatabaseFactory(), template.getMongoDatabaseFactory());
+        assertSame(source.getConverter(), template.getConverter());
+        assertEquals(ReadPreference.primary(),
+                template.execute("testConcerns", collection -> collection.getReadPreference()));
+        assertEquals(ReadConcern.MAJORITY, template.execute("testConcerns", collection -> collection.getReadConcern()));
+
+        template.setReadPreference(ReadPreference.primaryPreferred());
+
+        assertEquals(ReadPreference.primaryPreferred(),
+                template.execute("testConcerns", collection -> collection.getReadPreference()));
+        assertEquals(ReadConcern.MAJORITY, template.execute("testConcerns", collection -> collection.getReadConcern()));
+    }
+
+    @Test
+    void writeConcern() {
+        var template = new ConcernMongoTemplate(mongoTemplate.getMongoDatabaseFactory(), mongoTemplate.getConverter(),
+                WriteConcern.MAJORITY, null);
+
+        assertEquals(WriteConcern.MAJORITY, ReflectionTestUtils.invokeMethod(template, "prepareWriteConcern",
+                new MongoAction(null, MongoActionOperation.INSERT, "testConcerns", null, null, null)));
+    }
+}
@@ -6,6 +6,13 @@ import org.junit.jupiter.api.Test;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class MongodbCounterTest extends MongoDBContainerConfig {
@@ -98,4 +105,223 @@ class MongodbCounterTest extends MongoDBContainerConfig {
             assertEquals("Could not find counter: testCounter", e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void constructor_invalidBlockSize() {
+        try {
+            new MongodbCounter(mongoTemplate, "testCounter", "testCounters", 0);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Counter block size must be greater than 0", e.getMessage());
+        }
+    }
+
+    @Test
+    void nextValue_blockSize() {
+        var counter = new MongodbCounter(mongoTemplate, "testCounter", "testCounters", 3);
+
+        assertEquals(3, counter.getBlockSize());
+
+        assertEquals(1L, counter.nextValue());
+        assertEquals(3L, getCounterValue());
+        assertEquals(2L, counter.nextValue());
+        assertEquals(3L, counter.nextValue());
+        assertEquals(3L, getCounterValue());
+
+        assertEquals(4L, counter.nextValue());
+        assertEquals(6L, getCounterValue());
+    }
+
+    @Test
+    void nextValues() {
+        var counter = new MongodbCounter(mongoTemplate, "testCounter", "testCounters", 3);
+
+        assertEquals(1L, counter.nextValue());
+        assertEquals(List.of(4L, 5L, 6L, 7L), counter.nextValues(4));
+        assertEquals(7L, getCounterValue());
+        assertEquals(2L, counter.nextValue());
+
+        assertEquals(List.of(), counter.nextValues(0));
+        assertEquals(7L, getCounterValue());
+    }
+
+    @Test
+    void nextValue_blockSize_sharedCounter() {
+        var counter1 = new MongodbCounter(mongoTemplate, "testCounter", "testCounters", 10);
+        var counter2 = new MongodbCounter(mongoTemplate, "testCounter", "testCounters", 10);
+
+        assertEquals(1L, counter1.nextValue());
+        assertEquals(11L, counter2.nextValue());
+        assertEquals(2L, counter1.nextValue());
+        assertEquals(12L, counter2.nextValue());
+    }
+
+    @Test
+    void nextValue_blockSize_concurrent() throws Exception {
+        var counter = new MongodbCounter(mongoTemplate, "testCounter", "testCounters", 7);
+        var values = ConcurrentHashMap.<Long>newKeySet();
+
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 50; j++) {
+                        assertTrue(values.add(counter.nextValue()));
+                    }
+                }));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(400, values.size());
+    }
+
+    @Test
+    void constructor_invalidLowWaterMark() {
+        try {
+            new MongodbCounter(mongoTemplate, "testCounter", "testCounters", 10, 10, Runnable::run);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Counter low water mark must be at least 0 and less than block size", e.getMessage());
+        }
+    }
+
+    @Test
+    void nextValue_lowWaterMark() {
+        var counter = new MongodbCounter(mongoTemplate, "testCounter", "testCounters", 5, 2, Runnable::run);
+
+        assertEquals(2, counter.getLowWaterMark());
+
+        assertEquals(1L, counter.nextValue());
+        assertEquals(2L, counter.nextValue());
+        assertEquals(5L, getCounterValue());
+
+        assertEquals(3L, counter.nextValue());
+        assertEquals(10L, getCounterValue());
+
+        assertEquals(4L, counter.nextValue());
+        assertEquals(5L, counter.nextValue());
+        assertEquals(6L, counter.nextValue());
+
+        assertEquals(2, counter.getRefillCount());
+        assertEquals(1, counter.getRefillWaitCount());
+    }
+
+    @Test
+    void nextValue_lowWaterMark_prefetchPending() {
+        var pending = new ArrayList<Runnable>();
+        var counter = new MongodbCounter(mongoTemplate, "testCounter", "testCounters", 3, 1, pending::add);
+
+        assertEquals(1L, counter.nextValue());
+        assertEquals(2L, counter.nextValue());
+        assertEquals(1, pending.size());
+        assertEquals(3L, counter.nextValue());
+
+        var prefetch = new Thread(pending.get(0));
+        prefetch.start();
+
+        assertEquals(4L, counter.nextValue());
+        assertEquals(2, counter.getRefillWaitCount());
+    }
+
+    @Test
+    void nextValue_lowWaterMark_prefetchFailed() {
+        var counter = new MongodbCounter(mongoTemplate, "testCounter", "testCounters", 3, 1, runnable -> {
+            mongoTemplate.remove(new Query().addCriteria(Criteria.where("counter").is("testCounter")), "testCounters");
+            runnable.run();
+            mongoTemplate.insert(new Document("counter", "testCounter").append("value", 20L), "testCounters");
+        });
+
+        assertEquals(1L, counter.nextValue());
+        assertEquals(2L, counter.nextValue());
+        assertEquals(3L, counter.nextValue());
+        assertEquals(21L, counter.nextValue());
+    }
+
+    @Test
+    void nextValue_lowWaterMark_prefetchRejected() {
+        var counter = new MongodbCounter(mongoTemplate, "testCounter", "testCounters", 3, 1, runnable -> {
+            throw new RejectedExecutionException("shut down");
+        });
+
+        assertEquals(1L, counter.nextValue());
+        assertEquals(2L, counter.nextValue());
+        assertEquals(3L, counter.nextValue());
+        assertEquals(4L, counter.nextValue());
+        assertEquals(5L, counter.nextValue());
+        assertEquals(2, counter.getRefillWaitCount());
+    }
+
+    @Test
+    void refillCounts_blockSizeOne() {
+        var counter = new MongodbCounter(mongoTemplate, "testCounter", "testCounters");
+
+        counter.nextValue();
+        counter.nextValue();
+
+        assertEquals(2, counter.getRefillCount());
+        assertEquals(2, counter.getRefillWaitCount());
+    }
+
+    @Test
+    void constructor_noInitialize() {
+        new MongodbCounter(mongoTemplate, "testCounter", "testCounters", 1, 0, Runnable::run, false);
+
+        assertFalse(mongoTemplate.collectionExists("testCounters"));
+    }
+
+    @Test
+    void initializeCounters() {
+        var existingCounterDoc = new Document();
+        existingCounterDoc.put("counter", "existingCounter");
+        existingCounterDoc.put("value", 10L);
+        mongoTemplate.insert(existingCounterDoc, "testCounters");
+
+        MongodbCounter.initializeCounters(mongoTemplate, "testCounters", List.of("testCounter", "existingCounter"));
+
+        assertEquals(0L, getCounterValue());
+        assertEquals(10L, mongoTemplate.findOne(new Query().addCriteria(Criteria
+                .where("counter").is("existingCounter")), Document.class, "testCounters").getLong("value"));
+        assertEquals(2, mongoTemplate.count(new Query(), "testCounters"));
+    }
+
+    @Test
+    void initializeCounters_empty() {
+        MongodbCounter.initializeCounters(mongoTemplate, "testCounters", List.of());
+
+        assertFalse(mongoTemplate.collectionExists("testCounters"));
+    }
+
+    @Test
+    void findMissingCounters() {
+        var existingCounterDoc = new Document();
+        existingCounterDoc.put("counter", "existingCounter");
+        existingCounterDoc.put("value", 10L);
+        mongoTemplate.insert(existingCounterDoc, "testCounters");
+
+        assertEquals(List.of("missingCounter"), MongodbCounter.findMissingCounters(mongoTemplate, "testCounters",
+                List.of("existingCounter", "missingCounter")));
+        assertEquals(List.of(), MongodbCounter.findMissingCounters(mongoTemplate, "testCounters", List.of()));
+    }
+
+    @Test
+    void findCounterValue() {
+        var existingCounterDoc = new Document();
+        existingCounterDoc.put("counter", "existingCounter");
+        existingCounterDoc.put("value", 10L);
+        mongoTemplate.insert(existingCounterDoc, "testCounters");
+
+        assertEquals(10L, MongodbCounter.findCounterValue(mongoTemplate, "testCounters", "existingCounter"));
+        assertEquals(0L, MongodbCounter.findCounterValue(mongoTemplate, "testCounters", "missingCounter"));
+    }
+
+    private Long getCounterValue() {
+        return mongoTemplate.findOne(new Query().addCriteria(Criteria
+                .where("counter").is("testCounter")), Document.class, "testCounters").getLong("value");
+    }
+}
@@ -0,0 +1,252 @@
+package io.github.wirednerd.springbatch.mongo.repository;
+
+import io.github.wirednerd.springbatch.document.JobExecutionDocument;
+import io.github.wirednerd.springbatch.document.StepExecutionDocument;
+import io.github.wirednerd.springbatch.mongo.MongoDBContainerConfig;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Date;
+import java.util.List;
+
+import static io.github.wirednerd.springbatch.mongo.repository.MongodbExecutionContextOverflow.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MongodbExecutionContextOverflowTest extends MongoDBContainerConfig {
+
+    private static final String COLLECTION_NAME = "testOverflow";
+
+    private MongodbExecutionContextOverflow overflow;
+
+    @BeforeEach
+    void setUp() {
+        overflow = new MongodbExecutionContextOverflow(mongoTemplate, COLLECTION_NAME, 1000);
+    }
+
+    @Test
+    void constructor() {
+        assertSame(mongoTemplate, overflow.getMongoTemplate());
+        assertEquals(COLLECTION_NAME, overflow.getCollectionName());
+        assertEquals(1000, overflow.getThreshold());
+    }
+
+    @Test
+    void constructor_blankCollectionName() {
+        try {
+            new MongodbExecutionContextOverflow(mongoTemplate, "", 1000);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Execution Context Overflow Collection Name must not be null or blank", e.getMessage());
+        }
+    }
+
+    @Test
+    void constructor_threshold() {
+        try {
+            new MongodbExecutionContextOverflow(mongoTemplate, COLLECTION_NAME, 0);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Execution Context Overflow Threshold must be greater than 0", e.getMessage());
+        }
+    }
+
+    @Test
+    void owners() {
+        assertEquals("job:12", jobOwner(12L));
+        assertEquals("step:34", stepOwner(34L));
+    }
+
+    @Test
+    void store_belowThreshold() {
+        var bytes = new byte[999];
+        var document = new Document("key", "value");
+
+        assertNull(overflow.store(jobOwner(1L), null));
+        assertEquals("x".repeat(999), overflow.store(jobOwner(1L), "x".repeat(999)));
+        assertSame(bytes, overflow.store(jobOwner(1L), bytes));
+        assertSame(document, overflow.store(jobOwner(1L), document));
+
+        assertFalse(mongoTemplate.collectionExists(COLLECTION_NAME));
+    }
+
+    @Test
+    void store_string() {
+        var context = "x".repeat(CHUNK_SIZE * 2 + 10);
+
+        var overflowId = overflow.store(jobOwner(1L), context);
+
+        assertTrue(overflowId instanceof ObjectId);
+        var chunks = mongoTemplate.find(new Query(), Document.class, COLLECTION_NAME);
+        assertEquals(3, chunks.size());
+        assertEquals(overflowId, chunks.get(0).get(OVERFLOW_ID));
+        assertEquals("job:1", chunks.get(0).get(OWNER));
+        assertEquals("string", chunks.get(0).get(TYPE));
+
+        var jobExecutionDocument = new JobExecutionDocument();
+        jobExecutionDocument.setExecutionContextValue(overflowId);
+        overflow.loadExecutionContexts(List.of(jobExecutionDocument));
+
+        assertEquals(context, jobExecutionDocument.getExecutionContextValue());
+    }
+
+    @Test
+    void store_binaryAndBson() {
+        var bytes = new byte[2000];
+        bytes[1999] = 7;
+        var date = new Date();
+        var document = new Document("key", "x".repeat(1000)).append("date", date).append("count", 5L);
+
+        var jobExecutionDocument = new JobExecutionDocument();
+        jobExecutionDocument.setExecutionContextValue(overflow.store(jobOwner(1L), bytes));
+        var stepExecutionDocument = new StepExecutionDocument();
+        stepExecutionDocument.setExecutionContextValue(overflow.store(stepOwner(2L), document));
+        var inlineStepExecutionDocument = new StepExecutionDocument();
+        inlineStepExecutionDocument.setExecutionContextValue("inline");
+        jobExecutionDocument.setStepExecutions(List.of(stepExecutionDocument, inlineStepExecutionDocument));
+
+        overflow.loadExecutionContexts(List.of(jobExecutionDocument));
+
+        assertArrayEquals(bytes, (byte[]) jobExecutionDocument.getExecutionContextValue());
+        assertEquals(document, stepExecutionDocument.getExecutionContextValue());
+        assertEquals("inline", inlineStepExecutionDocument.getExecutionContextValue());
+    }
+
+    @Test
+    void loadExecutionContexts_noReferences() {
+        var jobExecutionDocument = new JobExecutionDocument();
+        jobExecutionDocument.setExecutionContextValue("inline");
+
+        overflow.loadExecutionContexts(List.of(jobExecutionDocument));
+
+        assertEquals("inline", jobExecutionDocument.getExecutionContextValue());
+    }
+
+    @Test
+    void loadExecutionContexts_notFound() {
+        var overflowId = new ObjectId();
+        var jobExecutionDocument = new JobExecutionDocument();
+        jobExecutionDocument.setExecutionContextValue(overflowId);
+
+        try {
+            overflow.loadExecutionContexts(List.of(jobExecutionDocument));
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Execution Context overflow not found.  overflowId=" + overflowId, e.getMessage());
+        }
+    }
+
+    @Test
+    void loadExecutionContexts_incomplete() {
+        var overflowId = overflow.store(jobOwner(1L), "x".repeat(CHUNK_SIZE * 2 + 10));
+        mongoTemplate.remove(Query.query(Criteria.where(CHUNK_NUMBER).is(1)), COLLECTION_NAME);
+        var jobExecutionDocument = new JobExecutionDocument();
+        jobExecutionDocument.setExecutionContextValue(overflowId);
+
+        try {
+            overflow.loadExecutionContexts(List.of(jobExecutionDocument));
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Execution Context overflow is incomplete.  overflowId=" + overflowId, e.getMessage());
+        }
+    }
+
+    @Test
+    void removeReplaced() {
+        var first = overflow.store(stepOwner(1L), "a".repeat(1000));
+        overflow.store(stepOwner(2L), "b".repeat(1000));
+        var second = overflow.store(stepOwner(1L), "c".repeat(1000));
+
+        overflow.removeReplaced(stepOwner(1L), second);
+
+        assertFalse(mongoTemplate.exists(Query.query(Criteria.where(OVERFLOW_ID).is(first)), COLLECTION_NAME));
+        assertTrue(mongoTemplate.exists(Query.query(Criteria.where(OVERFLOW_ID).is(second)), COLLECTION_NAME));
+        assertTrue(mongoTemplate.exists(Query.query(Criteria.where(OWNER).is("step:2")), COLLECTION_NAME));
+
+        overflow.removeReplaced(stepOwner(1L), "small");
+
+        assertFalse(mongoTemplate.exists(Query.query(Criteria.where(OWNER).is("step:1")), COLLECTION_NAME));
+        assertTrue(mongoTemplate.exists(Query.query(Criteria.where(OWNER).is("step:2")), COLLECTION_NAME));
+    }
+
+    @Test
+    void removeReplaced_storedByAnotherInstance() {
+        var first = overflow.store(stepOwner(1L), "a".repeat(1000));
+
+        var restarted = new MongodbExecutionContextOverflow(mongoTemplate, COLLECTION_NAME, 1000);
+        var second = restarted.store(stepOwner(1L), "b".repeat(1000));
+        restarted.removeReplaced(stepOwner(1L), second);
+
+        assertFalse(mongoTemplate.exists(Query.query(Criteria.where(OVERFLOW_ID).is(first)), COLLECTION_NAME));
+        assertTrue(mongoTemplate.exists(Query.query(Criteria.where(OVERFLOW_ID).is(second)), COLLECTION_NAME));
+    }
+
+    @Test
+    void removeReplaced_notStored() {
+        var overflowId = overflow.store(stepOwner(1L), "a".repeat(1000));
+
+        // Only the instance that stored the chunks of an owner removes them
+        new MongodbExecutionContextOverflow(mongoTemplate, COLLECTION_NAME, 1000).removeReplaced(stepOwner(1L), "small");
+        overflow.removeReplaced(stepOwner(2L), "small");
+
+        assertTrue(mongoTemplate.exists(Query.query(Criteria.where(OVERFLOW_ID).is(overflowId)), COLLECTION_NAME));
+    }
+
+    @Test
+    void removeReplaced_inlineAfterOverflow() {
+        overflow.store(stepOwner(1L), "a".repeat(1000));
+        overflow.removeReplaced(stepOwner(1L), "small");
+
+        assertFalse(mongoTemplate.exists(Query.query(Criteria.where(OWNER).is("step:1")), COLLECTION_NAME));
+
+        // The owner is no longer tracked once its chunks are removed
+        var chunk = new Document(OVERFLOW_ID, new ObjectId()).append(OWNER, "step:1").append(CHUNK_NUMBER, 0);
+        mongoTemplate.insert(chunk, COLLECTION_NAME);
+        overflow.removeReplaced(stepOwner(1L), "small");
+
+        assertTrue(mongoTemplate.exists(Query.query(Criteria.where(OWNER).is("step:1")), COLLECTION_NAME));
+    }
+
+    @Test
+    void forget() {
+        var overflowId = overflow.store(jobOwner(1L), "a".repeat(1000));
+
+        overflow.forget(jobOwner(1L));
+        overflow.removeReplaced(jobOwner(1L), "small");
+
+        assertTrue(mongoTemplate.exists(Query.query(Criteria.where(OVERFLOW_ID).is(overflowId)), COLLECTION_NAME));
+    }
+
+    @Test
+    void estimateBsonSize() {
+        var document = new Document("key", "x".repeat(100))
+                .append("ключ", "значение")
+                .append("int", 1)
+                .append("long", 2L)
+                .append("double", 3.5)
+                .append("boolean", true)
+                .append("date", new Date())
+                .append("serialized", new Document("serialized", "{\"@class\":\"java.util.HashMap\"}"));
+
+        var bsonSize = new RawBsonDocument(document, new DocumentCodec()).getByteBuffer().remaining();
+
+        assertTrue(MongodbExecutionContextOverflow.estimateBsonSize(document) >= bsonSize);
+        assertTrue(MongodbExecutionContextOverflow.estimateBsonSize(document) < bsonSize * 3L);
+        assertEquals(Long.MAX_VALUE, MongodbExecutionContextOverflow.estimateBsonSize(
+                new Document("list", List.of("a"))));
+    }
+
+    @Test
+    void store_bsonEstimatedAboveThreshold() {
+        // Estimated at 3 bytes per char, but only 511 bytes when encoded
+        var document = new Document("key", "x".repeat(490));
+
+        assertSame(document, overflow.store(jobOwner(1L), document));
+        assertFalse(mongoTemplate.collectionExists(COLLECTION_NAME));
+    }
+}
@@ -4,20 +4,27 @@ import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.read.ListAppender;
+import com.mongodb.ReadConcern;
+import com.mongodb.WriteConcern;
+import io.github.wirednerd.springbatch.document.ExecutionContextFormat;
 import io.github.wirednerd.springbatch.document.JobExecutionDocument;
 import io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper;
 import io.github.wirednerd.springbatch.mongo.MongoDBContainerConfig;
 import org.assertj.core.util.Lists;
 import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mockito.Mockito;
 import org.springframework.batch.core.*;
 import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
 import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
 import org.springframework.batch.core.repository.JobRestartException;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
@@ -25,11 +32,26 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 import static io.github.wirednerd.springbatch.document.JobExecutionDocumentMapper.*;
+import static io.github.wirednerd.springbatch.mongo.MongodbRepositoryConstants.LAUNCH_GUARD;
+import static io.github.wirednerd.springbatch.mongo.MongodbRepositoryConstants.STEP_EXECUTION_COUNTS;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 class MongodbJobRepositoryTest extends MongoDBContainerConfig {
 
@@ -152,6 +174,22 @@ class MongodbJobRepositoryTest extends MongoDBContainerConfig {
         assertEquals(1L, repository.getStepExecutionCounter().nextValue());
     }
 
+    @Test
+    void constructor_idGenerators() throws Exception {
+        var idGenerator = new SnowflakeIdGenerator(1L);
+        repository = new MongodbJobRepository(mongoTemplate, jobCollectionName, counterCollectionName, new JobExecutionDocumentMapper(),
+                idGenerator, idGenerator, idGenerator);
+
+        assertSame(idGenerator, repository.getJobInstanceIdGenerator());
+        assertSame(idGenerator, repository.getJobExecutionIdGenerator());
+        assertSame(idGenerator, repository.getStepExecutionIdGenerator());
+        assertNull(repository.getJobInstanceCounter());
+
+        var newJobExecution = repository.createJobExecution("Snowflake Job", new JobParameters());
+        assertEquals(1L, (newJobExecution.getJobId() >>> 12) & 1023L);
+        assertEquals(1L, (newJobExecution.getId() >>> 12) & 1023L);
+    }
+
     @Test
     void isJobInstanceExists() {
         assertTrue(repository.isJobInstanceExists(jobExecution.getJobInstance().getJobName(), jobExecution.getJobParameters()));
@@ -377,6 +415,30 @@ class MongodbJobRepositoryTest extends MongoDBContainerConfig {
         assertEquals(jobKeyGenerator.generateKey(newJobExecution.getJobParameters()), jobExecutionDoc.getString(JOB_KEY));
     }
 
+    @Test
+    void createJobExecution_onlyLatestExecutionContextIsRead() throws Exception {
+        var jobParameters = new JobParameters();
+        var jobInstance = new JobInstance(repository.getJobInstanceCounter().nextValue(), "New Job");
+        var jobExecution = new JobExecution(jobInstance, repository.getJobExecutionCounter().nextValue(), jobParameters, null);
+        jobExecution.setStatus(BatchStatus.FAILED);
+        jobExecution.createStepExecution("Step 1").setId(1L);
+        mongoTemplate.insert(jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution), jobCollectionName);
+        mongoTemplate.updateFirst(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Update.update(EXECUTION_CONTEXT, "not an execution context")
+                        .set(STEP_EXECUTIONS + ".0." + EXECUTION_CONTEXT, "not an execution context"),
+                jobCollectionName);
+
+        var lastJobExecution = new JobExecution(jobInstance, repository.getJobExecutionCounter().nextValue(), jobParameters, null);
+        lastJobExecution.setStatus(BatchStatus.FAILED);
+        lastJobExecution.getExecutionContext().putString("String", "String Value");
+        mongoTemplate.insert(jobExecutionDocumentMapper.toJobExecutionDocument(lastJobExecution), jobCollectionName);
+
+        var newJobExecution = repository.createJobExecution("New Job", jobParameters);
+
+        assertEquals(jobInstance.getId(), newJobExecution.getJobId());
+        assertEquals(lastJobExecution.getExecutionContext(), newJobExecution.getExecutionContext());
+    }
+
     @Test
     void createJobExecution_newExecutionForAbandonedJob_NoIdentifyingParameters() throws Exception {
         var paramMap = new LinkedHashMap<String, JobParameter>();
@@ -544,6 +606,72 @@ class MongodbJobRepositoryTest extends MongoDBContainerConfig {
         }
     }
 
+    @Test
+    void createJobExecution_launchGuard() throws Exception {
+        mongoTemplate.indexOps(jobCollectionName).ensureIndex(MongodbJobRepository.launchGuardIndex());
+        var paramMap = new LinkedHashMap<String, JobParameter>();
+        paramMap.put("Test Long Key", new JobParameter(123L, false));
+        var jobParameters = new JobParameters(paramMap);
+
+        var firstExecution = repository.createJobExecution("New Job", jobParameters);
+
+        var jobExecutionDoc = mongoTemplate.findOne(new Query(Criteria.where(JOB_EXECUTION_ID).is(firstExecution.getId())), Document.class, jobCollectionName);
+        assertTrue(jobExecutionDoc.getBoolean(LAUNCH_GUARD));
+
+        // The first execution has not started yet, so only the index prevents the second launch
+        try {
+            repository.createJobExecution("New Job", jobParameters);
+            fail("JobExecutionAlreadyRunningException expected");
+        } catch (JobExecutionAlreadyRunningException e) {
+            assertEquals("A job execution for this job is already being launched. jobName=New Job jobKey="
+                    + jobKeyGenerator.generateKey(jobParameters), e.getMessage());
+        }
+        assertEquals(1, mongoTemplate.count(new Query(Criteria.where(JOB_NAME).is("New Job")), jobCollectionName));
+
+        firstExecution.setStartTime(new Date(System.currentTimeMillis()));
+        firstExecution.setStatus(BatchStatus.STARTED);
+        repository.update(firstExecution);
+
+        jobExecutionDoc = mongoTemplate.findOne(new Query(Criteria.where(JOB_EXECUTION_ID).is(firstExecution.getId())), Document.class, jobCollectionName);
+        assertTrue(jobExecutionDoc.getBoolean(LAUNCH_GUARD));
+
+        firstExecution.setEndTime(new Date(System.currentTimeMillis()));
+        firstExecution.setStatus(BatchStatus.FAILED);
+        repository.update(firstExecution);
+
+        jobExecutionDoc = mongoTemplate.findOne(new Query(Criteria.where(JOB_EXECUTION_ID).is(firstExecution.getId())), Document.class, jobCollectionName);
+        assertFalse(jobExecutionDoc.containsKey(LAUNCH_GUARD));
+
+        var secondExecution = repository.createJobExecution("New Job", jobParameters);
+
+        assertEquals(firstExecution.getJobId(), secondExecution.getJobId());
+        jobExecutionDoc = mongoTemplate.findOne(new Query(Criteria.where(JOB_EXECUTION_ID).is(secondExecution.getId())), Document.class, jobCollectionName);
+        assertTrue(jobExecutionDoc.getBoolean(LAUNCH_GUARD));
+    }
+
+    @Test
+    void createJobExecution_launchGuard_keptForCompletedJob_WithIdentifyingParameters() throws Exception {
+        var paramMap = new LinkedHashMap<String, JobParameter>();
+        paramMap.put("Test Long Key", new JobParameter(123L));
+        var jobExecution = repository.createJobExecution("New Job", new JobParameters(paramMap));
+
+        jobExecution.setStartTime(new Date(System.currentTimeMillis()));
+        jobExecution.setEndTime(new Date(System.currentTimeMillis()));
+        jobExecution.setStatus(BatchStatus.COMPLETED);
+        repository.update(jobExecution);
+
+        var jobExecutionDoc = mongoTemplate.findOne(new Query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())), Document.class, jobCollectionName);
+        assertTrue(jobExecutionDoc.getBoolean(LAUNCH_GUARD));
+    }
+
+    @Test
+    void createJobExecutionWithConfigName_noLaunchGuard() {
+        var jobExecution = repository.createJobExecution(new JobInstance(5L, "New Job"), new JobParameters(), "Config");
+
+        var jobExecutionDoc = mongoTemplate.findOne(new Query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())), Document.class, jobCollectionName);
+        assertFalse(jobExecutionDoc.containsKey(LAUNCH_GUARD));
+    }
+
     @Test
     void update_sameVersion() {
         mongoTemplate.updateFirst(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
@@ -594,6 +722,22 @@ class MongodbJobRepositoryTest extends MongoDBContainerConfig {
         assertEquals(beforeVersion + 2, updatedDoc.getInteger(VERSION));
     }
 
+    @Test
+    void update_differentVersion_stepExecutionContextNotRead() {
+        var beforeVersion = jobExecution.getVersion();
+
+        mongoTemplate.updateFirst(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Update.update(STATUS, "STOPPING")
+                        .set(VERSION, beforeVersion + 1)
+                        .set(STEP_EXECUTIONS + ".0." + EXECUTION_CONTEXT, "not an execution context"), jobCollectionName);
+        jobExecution.setStatus(BatchStatus.STARTED);
+
+        repository.update(jobExecution);
+
+        assertEquals(BatchStatus.STOPPING, jobExecution.getStatus());
+        assertEquals(beforeVersion + 2, jobExecution.getVersion());
+    }
+
     @Test
     void update_notFound() {
         jobExecution.setId(repository.getJobExecutionCounter().nextValue());
@@ -830,6 +974,141 @@ class MongodbJobRepositoryTest extends MongoDBContainerConfig {
         assertEquals("Step 2", actualStep2.getStepName());
         assertEquals(1L, actualStep2.getId());
         assertEquals(step2.getLastUpdated(), actualStep2.getLastUpdated());
+        assertEquals(0, step2.getVersion());
+        assertEquals(0, actualStep2.getVersion());
+    }
+
+    @Test
+    void add_stepExecutionIdFromJobExecution() throws Exception {
+        repository.setStepExecutionIdFromJobExecution(true);
+        var newJobExecution = repository.createJobExecution("Sequence Job", new JobParameters());
+
+        var step1 = newJobExecution.createStepExecution("Step 1");
+        step1.getExecutionContext().putString("key", "$notAFieldPath");
+        repository.add(step1);
+        var step2 = newJobExecution.createStepExecution("Step 2");
+        repository.add(step2);
+
+        assertEquals((newJobExecution.getId() << 20) + 1, step1.getId());
+        assertEquals((newJobExecution.getId() << 20) + 2, step2.getId());
+        assertEquals(1L, repository.getStepExecutionCounter().nextValue());
+
+        var jobExecutionDoc = mongoTemplate.findOne(Query.query(Criteria
+                .where(JOB_EXECUTION_ID).is(newJobExecution.getId())), Document.class, jobCollectionName);
+        assertEquals(2, jobExecutionDoc.get("stepExecutionSequence", Number.class).intValue());
+
+        var savedJobExecution = jobExecutionDocumentMapper.toJobExecution(mongoTemplate.findOne(Query.query(Criteria
+                .where(JOB_EXECUTION_ID).is(newJobExecution.getId())), JobExecutionDocument.class, jobCollectionName));
+        assertEquals(2, savedJobExecution.getStepExecutions().size());
+        var savedStep1 = savedJobExecution.getStepExecutions().stream()
+                .filter(step -> step.getId().equals(step1.getId())).findFirst().orElseThrow();
+        assertEquals("Step 1", savedStep1.getStepName());
+        assertEquals("$notAFieldPath", savedStep1.getExecutionContext().getString("key"));
+        assertEquals(0, savedStep1.getVersion());
+        assertEquals(1L, jobExecutionDoc.get(STEP_EXECUTION_COUNTS, Document.class).get("Step 1", Number.class).longValue());
+    }
+
+    @Test
+    void add_stepExecutionIdFromJobExecution_sequenceChanged() {
+        repository.setStepExecutionIdFromJobExecution(true);
+        mongoTemplate.updateFirst(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Update.update("stepExecutionSequence", 5), jobCollectionName);
+
+        var step2 = jobExecution.createStepExecution("Step 2");
+        repository.add(step2);
+
+        assertEquals(6L, step2.getId());
+
+        var jobExecutionDoc = mongoTemplate.findOne(Query.query(Criteria
+                .where(JOB_EXECUTION_ID).is(jobExecution.getId())), Document.class, jobCollectionName);
+        assertEquals(6, jobExecutionDoc.get("stepExecutionSequence", Number.class).intValue());
+    }
+
+    @Test
+    void add_stepExecutionIdFromJobExecution_tooManyStepExecutions() {
+        repository.setStepExecutionIdFromJobExecution(true);
+        mongoTemplate.updateFirst(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Update.update("stepExecutionSequence", (1L << 20) - 2), jobCollectionName);
+
+        var step2 = jobExecution.createStepExecution("Step 2");
+        var step3 = jobExecution.createStepExecution("Step 3");
+
+        try {
+            repository.addAll(Lists.newArrayList(step2, step3));
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Too many step executions for jobExecutionId=" + jobExecution.getId(), e.getMessage());
+        }
+        assertNull(step2.getId());
+
+        repository.add(step2);
+        assertEquals((1L << 20) - 1, step2.getId());
+    }
+
+    @Test
+    void add_stepExecutionIdFromJobExecution_executionContextOverflow() throws Exception {
+        repository.setStepExecutionIdFromJobExecution(true);
+        repository.setExecutionContextOverflow(new MongodbExecutionContextOverflow(mongoTemplate, "testOverflow", 1000));
+        var newJobExecution = repository.createJobExecution("Sequence Job", new JobParameters());
+
+        var step1 = newJobExecution.createStepExecution("Step 1");
+        step1.getExecutionContext().putString("key", "x".repeat(2000));
+        var step2 = newJobExecution.createStepExecution("Step 2");
+        repository.addAll(Lists.newArrayList(step1, step2));
+
+        assertEquals((newJobExecution.getId() << 20) + 1, step1.getId());
+        assertEquals((newJobExecution.getId() << 20) + 2, step2.getId());
+
+        var jobExecutionDoc = mongoTemplate.findOne(Query.query(Criteria
+                .where(JOB_EXECUTION_ID).is(newJobExecution.getId())), Document.class, jobCollectionName);
+        assertEquals(2, jobExecutionDoc.get("stepExecutionSequence", Number.class).intValue());
+        assertEquals(2, jobExecutionDoc.getList(STEP_EXECUTIONS, Document.class).size());
+        assertTrue(mongoTemplate.count(new Query(), "testOverflow") > 0);
+
+        var lastStep = repository.getLastStepExecution(newJobExecution.getJobInstance(), "Step 1");
+        assertEquals(step1.getId(), lastStep.getId());
+        assertEquals("x".repeat(2000), lastStep.getExecutionContext().getString("key"));
+    }
+
+    @Test
+    void findLastSequencedStepExecutionId() {
+        assertEquals(0, MongodbJobRepository.findLastSequencedStepExecutionId(mongoTemplate, jobCollectionName));
+
+        mongoTemplate.insert(new Document(JOB_EXECUTION_ID, 10L).append("stepExecutionSequence", 3), jobCollectionName);
+        mongoTemplate.insert(new Document(JOB_EXECUTION_ID, 11L).append("stepExecutionSequence", 1), jobCollectionName);
+        mongoTemplate.insert(new Document(JOB_EXECUTION_ID, 12L), jobCollectionName);
+
+        assertEquals((11L << 20) + 1, MongodbJobRepository.findLastSequencedStepExecutionId(mongoTemplate, jobCollectionName));
+    }
+
+    @Test
+    void add_stepExecutionIdFromJobExecution_jobExecutionNotFound() {
+        repository.setStepExecutionIdFromJobExecution(true);
+        jobExecution.setId(99L);
+        var step2 = jobExecution.createStepExecution("Step 2");
+
+        try {
+            repository.add(step2);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Job Execution not found for jobExecutionId=99", e.getMessage());
+        }
+        assertNull(step2.getId());
+    }
+
+    @Test
+    void add_stepExecutionIdFromJobExecution_jobExecutionIdTooLarge() {
+        repository.setStepExecutionIdFromJobExecution(true);
+        jobExecution.setId(1L << 43);
+        var step2 = jobExecution.createStepExecution("Step 2");
+
+        try {
+            repository.add(step2);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("jobExecutionId=8796093022208 is too large to create stepExecutionId from job execution sequence",
+                    e.getMessage());
+        }
     }
 
     @Test
@@ -900,6 +1179,238 @@ class MongodbJobRepositoryTest extends MongoDBContainerConfig {
         assertEquals(step3.getLastUpdated(), actualStep3.getLastUpdated());
     }
 
+    @Test
+    void addAll_singleIdReservation() {
+        var steps = new ArrayList<StepExecution>();
+        for (int i = 0; i < 5; i++) {
+            steps.add(jobExecution.createStepExecution("Partition " + i));
+        }
+
+        repository.addAll(steps);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1L, steps.get(i).getId());
+            assertEquals(0, steps.get(i).getVersion());
+        }
+        assertEquals(6L, repository.getStepExecutionCounter().nextValue());
+
+        var stepDocs = mongoTemplate.findOne(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Document.class, jobCollectionName).getList(STEP_EXECUTIONS, Document.class);
+        assertEquals(6, stepDocs.size());
+        assertEquals("Partition 4", stepDocs.get(5).getString(STEP_NAME));
+        assertEquals(5L, stepDocs.get(5).getLong(STEP_EXECUTION_ID));
+    }
+
+    @Test
+    void addAll_batches() {
+        var steps = new ArrayList<StepExecution>();
+        for (int i = 0; i < MongodbJobRepository.ADD_ALL_BATCH_SIZE + 1; i++) {
+            steps.add(jobExecution.createStepExecution("Partition " + i));
+        }
+
+        repository.addAll(steps);
+
+        var stepDocs = mongoTemplate.findOne(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Document.class, jobCollectionName).getList(STEP_EXECUTIONS, Document.class);
+        assertEquals(MongodbJobRepository.ADD_ALL_BATCH_SIZE + 2, stepDocs.size());
+        assertEquals(MongodbJobRepository.ADD_ALL_BATCH_SIZE + 1L,
+                stepDocs.get(MongodbJobRepository.ADD_ALL_BATCH_SIZE + 1).getLong(STEP_EXECUTION_ID));
+    }
+
+    @Test
+    void addAll_stepExecutionIdFromJobExecution() throws Exception {
+        repository.setStepExecutionIdFromJobExecution(true);
+        var newJobExecution = repository.createJobExecution("Sequence Job", new JobParameters());
+
+        var step1 = newJobExecution.createStepExecution("Step 1");
+        repository.add(step1);
+        var step2 = newJobExecution.createStepExecution("Step 2");
+        var step3 = newJobExecution.createStepExecution("Step 3");
+        repository.addAll(Lists.newArrayList(step2, step3));
+
+        assertEquals((newJobExecution.getId() << 20) + 2, step2.getId());
+        assertEquals((newJobExecution.getId() << 20) + 3, step3.getId());
+
+        var jobExecutionDoc = mongoTemplate.findOne(Query.query(Criteria
+                .where(JOB_EXECUTION_ID).is(newJobExecution.getId())), Document.class, jobCollectionName);
+        assertEquals(3, jobExecutionDoc.get("stepExecutionSequence", Number.class).intValue());
+        assertEquals(3, jobExecutionDoc.getList(STEP_EXECUTIONS, Document.class).size());
+    }
+
+    @Test
+    void stepCollection() throws Exception {
+        repository.setStepCollectionName("testSteps");
+        assertEquals("testSteps", repository.getStepCollectionName());
+
+        var newJobExecution = repository.createJobExecution("Step Collection Job", new JobParameters());
+        var step1 = newJobExecution.createStepExecution("Step 1");
+        repository.add(step1);
+        var step2 = newJobExecution.createStepExecution("Step 2");
+        var step3 = newJobExecution.createStepExecution("Step 3");
+        repository.addAll(Lists.newArrayList(step2, step3));
+
+        var jobExecutionDoc = mongoTemplate.findOne(Query.query(Criteria
+                .where(JOB_EXECUTION_ID).is(newJobExecution.getId())), Document.class, jobCollectionName);
+        assertNull(jobExecutionDoc.get(STEP_EXECUTIONS));
+
+        var stepDocs = mongoTemplate.find(Query.query(Criteria
+                .where(JOB_EXECUTION_ID).is(newJobExecution.getId())), Document.class, "testSteps");
+        assertEquals(3, stepDocs.size());
+        assertEquals(newJobExecution.getJobId(), stepDocs.get(0).get(JOB_INSTANCE_ID, Number.class).longValue());
+        assertEquals(new Document(STATUS, "STARTING").append(VERSION, newJobExecution.getVersion()),
+                stepDocs.get(0).get("jobExecution"));
+
+        step2.setStartTime(new Date());
+        step2.setReadCount(100);
+        step2.getExecutionContext().putString("key", "value");
+        repository.updateExecutionContext(step2);
+        repository.update(step2);
+        assertEquals(1, step2.getVersion());
+
+        var lastStep = repository.getLastStepExecution(newJobExecution.getJobInstance(), "Step 2");
+        assertEquals(step2.getId(), lastStep.getId());
+        assertEquals(100, lastStep.getReadCount());
+        assertEquals(1, lastStep.getVersion());
+        assertEquals("value", lastStep.getExecutionContext().getString("key"));
+        assertEquals(3, lastStep.getJobExecution().getStepExecutions().size());
+
+        assertEquals(1, repository.getStepExecutionCount(newJobExecution.getJobInstance(), "Step 2"));
+        assertEquals(0, repository.getStepExecutionCount(newJobExecution.getJobInstance(), "Step 4"));
+        assertNull(repository.getLastStepExecution(newJobExecution.getJobInstance(), "Step 4"));
+
+        var lastJobExecution = repository.getLastJobExecution("Step Collection Job", new JobParameters());
+        assertEquals(3, lastJobExecution.getStepExecutions().size());
+
+        repository.setStepCollectionName(null);
+        assertNull(repository.getStepCollectionName());
+        assertNull(repository.getStepExecutionCollection());
+    }
+
+    @Test
+    void stepCollection_stepExecutionIdFromJobExecution() throws Exception {
+        repository.setStepCollectionName("testSteps");
+        repository.setStepExecutionIdFromJobExecution(true);
+
+        var newJobExecution = repository.createJobExecution("Step Collection Job", new JobParameters());
+        var step1 = newJobExecution.createStepExecution("Step 1");
+        var step2 = newJobExecution.createStepExecution("Step 2");
+        repository.addAll(Lists.newArrayList(step1, step2));
+
+        assertEquals((newJobExecution.getId() << 20) + 2, step2.getId());
+
+        var jobExecutionDoc = mongoTemplate.findOne(Query.query(Criteria
+                .where(JOB_EXECUTION_ID).is(newJobExecution.getId())), Document.class, jobCollectionName);
+        assertEquals(2, jobExecutionDoc.get("stepExecutionSequence", Number.class).intValue());
+        assertNull(jobExecutionDoc.get(STEP_EXECUTIONS));
+        assertEquals(2, mongoTemplate.count(new Query(), "testSteps"));
+    }
+
+    @Test
+    void stepCollection_versionNotFound() throws Exception {
+        repository.setStepCollectionName("testSteps");
+
+        var newJobExecution = repository.createJobExecution("Step Collection Job", new JobParameters());
+        var step = newJobExecution.createStepExecution("Step 1");
+        repository.add(step);
+        step.setVersion(7);
+
+        try {
+            repository.update(step);
+            fail("OptimisticLockingFailureException expected");
+        } catch (OptimisticLockingFailureException e) {
+            assertEquals("Attempt to update step execution id=" + step.getId()
+                    + " with version=7 which was not found", e.getMessage());
+        }
+    }
+
+    @Test
+    void stepCollection_retry() throws Exception {
+        repository.setStepCollectionName("testSteps");
+        repository.setStepExecutionUpdateRetries(1);
+        repository.setStepExecutionUpdateRetryBackoffMillis(0);
+
+        var newJobExecution = repository.createJobExecution("Step Collection Job", new JobParameters());
+        var step = newJobExecution.createStepExecution("Step 1");
+        repository.add(step);
+        repository.update(step);
+        mongoTemplate.updateFirst(Query.query(Criteria.where(STEP_EXECUTION_ID).is(step.getId())),
+                Update.update(STATUS, "STOPPING").set(VERSION, 2), "testSteps");
+        step.setCommitCount(5);
+
+        repository.update(step);
+
+        assertEquals(3, step.getVersion());
+        assertEquals(BatchStatus.STOPPING, step.getStatus());
+        var stepDoc = mongoTemplate.findOne(Query.query(Criteria.where(STEP_EXECUTION_ID).is(step.getId())),
+                Document.class, "testSteps");
+        assertEquals(3, stepDoc.getInteger(VERSION));
+        assertEquals(5, stepDoc.getInteger(COMMIT_COUNT));
+        assertEquals("STOPPING", stepDoc.getString(STATUS));
+        assertEquals(1, repository.getStepExecutionUpdateRetryCount());
+    }
+
+    @Test
+    void stepCollection_stoppingJob() throws Exception {
+        repository.setStepCollectionName("testSteps");
+
+        var newJobExecution = repository.createJobExecution("Step Collection Job", new JobParameters());
+        var step = newJobExecution.createStepExecution("Step 1");
+        repository.add(step);
+
+        var stoppingJobExecution = repository.getLastJobExecution("Step Collection Job", new JobParameters());
+        stoppingJobExecution.setStatus(BatchStatus.STOPPING);
+        repository.update(stoppingJobExecution);
+
+        var stepDoc = mongoTemplate.findOne(Query.query(Criteria.where(STEP_EXECUTION_ID).is(step.getId())),
+                Document.class, "testSteps");
+        assertEquals(new Document(STATUS, "STOPPING").append(VERSION, stoppingJobExecution.getVersion()),
+                stepDoc.get("jobExecution"));
+
+        repository.update(step);
+
+        assertTrue(step.isTerminateOnly());
+        assertEquals(BatchStatus.STOPPING, newJobExecution.getStatus());
+        assertEquals(stoppingJobExecution.getVersion(), newJobExecution.getVersion());
+    }
+
+    @Test
+    void stepCollection_stoppingJob_withoutJobStatusCopy() throws Exception {
+        repository.setStepCollectionName("testSteps");
+
+        var newJobExecution = repository.createJobExecution("Step Collection Job", new JobParameters());
+        var step = newJobExecution.createStepExecution("Step 1");
+        repository.add(step);
+
+        // Step executions stored before the copy was added, or moved from the job collection, are updated too
+        mongoTemplate.updateFirst(Query.query(Criteria.where(STEP_EXECUTION_ID).is(step.getId())),
+                new Update().unset("jobExecution"), "testSteps");
+        mongoTemplate.updateFirst(Query.query(Criteria.where(JOB_EXECUTION_ID).is(newJobExecution.getId())),
+                Update.update(STATUS, BatchStatus.STOPPING.toString()).inc(VERSION, 1), jobCollectionName);
+
+        repository.update(step);
+
+        assertTrue(step.isTerminateOnly());
+        assertEquals(BatchStatus.STOPPING, newJobExecution.getStatus());
+    }
+
+    @Test
+    void addAll_invalidStepExecution() {
+        var step2 = jobExecution.createStepExecution("Step 2");
+        var step3 = jobExecution.createStepExecution("Step 3");
+        step3.setId(99L);
+
+        try {
+            repository.addAll(Lists.newArrayList(step2, step3));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("to-be-saved (not updated) StepExecution can't already have an id assigned", e.getMessage());
+        }
+
+        assertNull(step2.getId());
+        assertEquals(1, mongoTemplate.findOne(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Document.class, jobCollectionName).getList(STEP_EXECUTIONS, Document.class).size());
+    }
+
     @Test
     void addAll_null() {
         repository.addAll(null);  // no errors thrown
@@ -1022,15 +1533,16 @@ class MongodbJobRepositoryTest extends MongoDBContainerConfig {
         jobExecution.getStepExecutions().iterator().next().setCommitCount(9999);
         repository.update(jobExecution.getStepExecutions().iterator().next());
 
+        // The job version is only changed by job level updates, so it is read, but not incremented
         assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
-        assertEquals(beforeVersion + 2, jobExecution.getVersion());
+        assertEquals(beforeVersion + 1, jobExecution.getVersion());
 
         var updatedDoc = mongoTemplate.findOne(Query
                 .query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())), Document.class, jobCollectionName);
 
         assertEquals(jobExecution.getLastUpdated(), updatedDoc.getDate(LAST_UPDATED));
         assertEquals("COMPLETED", updatedDoc.getString(STATUS));
-        assertEquals(beforeVersion + 2, updatedDoc.getInteger(VERSION));
+        assertEquals(beforeVersion + 1, updatedDoc.getInteger(VERSION));
 
         assertEquals(9999, updatedDoc.getList(STEP_EXECUTIONS, Document.class).get(0).getInteger(COMMIT_COUNT));
     }
@@ -1048,48 +1560,303 @@ class MongodbJobRepositoryTest extends MongoDBContainerConfig {
     }
 
     @Test
-    void updateStepExecution_versionNotFound() {
-        jobExecution.incrementVersion();  // wrong current version
-        var currentVersion = jobExecution.getVersion();
+    void updateStep_versionNotFound() {
+        var step = jobExecution.getStepExecutions().iterator().next();
+        step.setVersion(3);  // wrong current version
 
         try {
-            ReflectionTestUtils.invokeMethod(repository, "updateStepExecution", jobExecution.getStepExecutions().iterator().next());
+            repository.update(step);
             fail("OptimisticLockingFailureException expected");
         } catch (OptimisticLockingFailureException e) {
-            assertEquals("Attempt to update job execution id="
-                    + jobExecution.getId() + " with version=" + currentVersion
-                    + " which was not found", e.getMessage());
+            assertEquals("Attempt to update step execution id="
+                    + step.getId() + " with version=3 which was not found", e.getMessage());
         }
     }
 
     @Test
-    void updateStep_JobIsStopping() {
-        jobExecution.setStatus(BatchStatus.STOPPING);
-
+    void updateStep_retry() {
+        repository.setStepExecutionUpdateRetries(2);
+        repository.setStepExecutionUpdateRetryBackoffMillis(1);
         var step = jobExecution.getStepExecutions().iterator().next();
-        assertFalse(step.isTerminateOnly());
         repository.update(step);
+        var version = step.getVersion();
+        // a stop request from another writer only changes the status and version
+        mongoTemplate.updateFirst(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Update.update(STEP_EXECUTIONS + ".0." + STATUS, "STOPPING")
+                        .set(STEP_EXECUTIONS + ".0." + VERSION, version + 1), jobCollectionName);
+        step.setCommitCount(5);
 
-        assertTrue(step.isTerminateOnly());
+        repository.update(step);
 
-        assertEquals(1, appender.list.size());
-        assertEquals(Level.INFO, appender.list.get(0).getLevel());
-        assertEquals("Parent JobExecution is stopped, so passing message on to StepExecution",
-                appender.list.get(0).getMessage());
+        assertEquals(version + 2, step.getVersion());
+        assertEquals(BatchStatus.STOPPING, step.getStatus());
+        var stepDoc = mongoTemplate.findOne(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Document.class, jobCollectionName).getList(STEP_EXECUTIONS, Document.class).get(0);
+        assertEquals(version + 2, stepDoc.getInteger(VERSION));
+        assertEquals(5, stepDoc.getInteger(COMMIT_COUNT));
+        assertEquals("STOPPING", stepDoc.getString(STATUS));
+        assertEquals(1, repository.getStepExecutionUpdateRetryCount());
+        assertTrue(repository.getStepExecutionUpdateRetryWaitMillis() <= 1);
+        assertEquals(0, repository.getStepExecutionUpdateRetryExhaustedCount());
     }
 
     @Test
-    void updateStepExecutionContext() {
-        var step2 = jobExecution.createStepExecution("Step 2");
-        var step3 = jobExecution.createStepExecution("Step 3");
+    void updateStep_retryOtherChanges() {
+        repository.setStepExecutionUpdateRetries(2);
+        repository.setStepExecutionUpdateRetryBackoffMillis(0);
+        var step = jobExecution.getStepExecutions().iterator().next();
+        repository.update(step);
+        var version = step.getVersion();
+        // another thread writing the same step execution changes its counts
+        mongoTemplate.updateFirst(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Update.update(STEP_EXECUTIONS + ".0." + COMMIT_COUNT, 3)
+                        .set(STEP_EXECUTIONS + ".0." + VERSION, version + 1), jobCollectionName);
+        step.setCommitCount(5);
 
-        step2.getExecutionContext().put("Existing", "Existing");
+        try {
+            repository.update(step);
+            fail("OptimisticLockingFailureException expected");
+        } catch (OptimisticLockingFailureException e) {
+            assertEquals("Attempt to update step execution id=" + step.getId()
+                    + " with version=" + version + " which was not found", e.getMessage());
+        }
 
-        repository.add(step2);
-        repository.add(step3);
+        assertEquals(version, step.getVersion());
+        var stepDoc = mongoTemplate.findOne(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Document.class, jobCollectionName).getList(STEP_EXECUTIONS, Document.class).get(0);
+        assertEquals(3, stepDoc.getInteger(COMMIT_COUNT));
+        assertEquals(0, repository.getStepExecutionUpdateRetryCount());
+    }
 
-        assertEquals(1L, step2.getId());
-        assertEquals(2L, step3.getId());
+    @Test
+    void updateStep_retryExhausted() {
+        repository.setStepExecutionUpdateRetries(2);
+        repository.setStepExecutionUpdateRetryBackoffMillis(4);
+        var step = jobExecution.getStepExecutions().iterator().next();
+        repository.update(step);
+        var version = step.getVersion();
+
+        var operationTemplates = (Map<OperationCategory, MongoTemplate>) ReflectionTestUtils.getField(repository, "operationTemplates");
+        var template = Mockito.spy(mongoTemplate);
+        Mockito.doReturn(null).when(template)
+                .findAndModify(any(Query.class), any(Update.class), eq(Document.class), eq(jobCollectionName));
+        for (var category : OperationCategory.values()) {
+            operationTemplates.put(category, template);
+        }
+
+        try {
+            repository.update(step);
+            fail("OptimisticLockingFailureException expected");
+        } catch (OptimisticLockingFailureException e) {
+            assertEquals("Attempt to update step execution id="
+                    + step.getId() + " with version=" + version + " which was not found", e.getMessage());
+        }
+
+        assertEquals(version, step.getVersion());
+
+        verify(template, times(3))
+                .findAndModify(any(Query.class), any(Update.class), eq(Document.class), eq(jobCollectionName));
+        assertEquals(2, repository.getStepExecutionUpdateRetryCount());
+        assertTrue(repository.getStepExecutionUpdateRetryWaitMillis() >= 2 + 4);
+        assertEquals(1, repository.getStepExecutionUpdateRetryExhaustedCount());
+    }
+
+    @Test
+    void updateStep_retryStepNotFound() {
+        repository.setStepExecutionUpdateRetries(2);
+        repository.setStepExecutionUpdateRetryBackoffMillis(0);
+        var step = jobExecution.getStepExecutions().iterator().next();
+        step.setId(999L);
+        step.setVersion(0);
+
+        try {
+            repository.update(step);
+            fail("OptimisticLockingFailureException expected");
+        } catch (OptimisticLockingFailureException e) {
+            assertEquals("Attempt to update step execution id=999 with version=0 which was not found", e.getMessage());
+        }
+
+        assertEquals(0, repository.getStepExecutionUpdateRetryCount());
+    }
+
+    @Test
+    void updateStep_stepVersion() {
+        var step2 = jobExecution.createStepExecution("Step 2");
+        repository.add(step2);
+        assertEquals(0, step2.getVersion());
+
+        repository.update(step2);
+        repository.update(step2);
+        assertEquals(2, step2.getVersion());
+
+        var stepDoc = mongoTemplate.findOne(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Document.class, jobCollectionName).getList(STEP_EXECUTIONS, Document.class).get(1);
+        assertEquals(2, stepDoc.getInteger(VERSION));
+    }
+
+    @Test
+    void updateStep_parallelSteps() {
+        var step2 = jobExecution.createStepExecution("Step 2");
+        var step3 = jobExecution.createStepExecution("Step 3");
+        repository.add(step2);
+        repository.add(step3);
+
+        var beforeVersion = jobExecution.getVersion();
+
+        // Both steps are updated without checking, or changing, the job version
+        var staleStep2 = jobExecutionDocumentMapper.toJobExecution(mongoTemplate.findOne(Query.query(Criteria
+                        .where(JOB_EXECUTION_ID).is(jobExecution.getId())), JobExecutionDocument.class, jobCollectionName))
+                .getStepExecutions().stream().filter(step -> step.getId().equals(step2.getId())).findFirst().get();
+
+        step3.setCommitCount(3);
+        repository.update(step3);
+        staleStep2.setCommitCount(2);
+        repository.update(staleStep2);
+
+        assertEquals(beforeVersion, jobExecution.getVersion());
+
+        var stepDocs = mongoTemplate.findOne(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Document.class, jobCollectionName).getList(STEP_EXECUTIONS, Document.class);
+        assertEquals(2, stepDocs.get(1).getInteger(COMMIT_COUNT));
+        assertEquals(3, stepDocs.get(2).getInteger(COMMIT_COUNT));
+        assertEquals(beforeVersion, mongoTemplate.findOne(Query.query(Criteria
+                .where(JOB_EXECUTION_ID).is(jobExecution.getId())), Document.class, jobCollectionName).getInteger(VERSION));
+    }
+
+    @Test
+    void updateStep_concurrentPartitions() throws Exception {
+        var partitions = new ArrayList<StepExecution>();
+        for (var i = 0; i < 8; i++) {
+            var partition = jobExecution.createStepExecution("Partition " + i);
+            repository.add(partition);
+            partitions.add(partition);
+        }
+
+        var executor = Executors.newFixedThreadPool(partitions.size());
+        try {
+            var updates = new ArrayList<Future<?>>();
+            for (var partition : partitions) {
+                updates.add(executor.submit(() -> {
+                    for (var commit = 1; commit <= 5; commit++) {
+                        partition.setCommitCount(commit);
+                        repository.update(partition);
+                    }
+                }));
+            }
+            for (var update : updates) {
+                update.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        var stepDocs = mongoTemplate.findOne(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Document.class, jobCollectionName).getList(STEP_EXECUTIONS, Document.class);
+        for (var i = 1; i <= partitions.size(); i++) {
+            assertEquals(5, stepDocs.get(i).getInteger(COMMIT_COUNT));
+            assertEquals(5, stepDocs.get(i).getInteger(VERSION));
+        }
+    }
+
+    /**
+     * Compares the throughput of step and job execution updates from platform threads, when each thread updates a job
+     * execution with its own lock stripe, and when all job executions share one lock stripe.  Run with -Dbenchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void updateStep_lockStripeContention() throws Exception {
+        var threads = 8;
+        var stripes = ((Lock[]) ReflectionTestUtils.getField(repository, "jobExecutionLocks")).length;
+        var jobExecutionsByStripe = new HashMap<Integer, List<JobExecution>>();
+        var ownStripes = new ArrayList<JobExecution>();
+        List<JobExecution> sharedStripe = List.of();
+        for (var i = 0; ownStripes.size() < threads || sharedStripe.size() < threads; i++) {
+            var contentionJobExecution = repository.createJobExecution("Contention " + i, new JobParameters());
+            var stripe = Long.hashCode(contentionJobExecution.getId()) & (stripes - 1);
+            var stripeJobExecutions = jobExecutionsByStripe.computeIfAbsent(stripe, key -> new ArrayList<>());
+            stripeJobExecutions.add(contentionJobExecution);
+            if (stripeJobExecutions.size() == 1 && ownStripes.size() < threads) {
+                ownStripes.add(contentionJobExecution);
+            } else if (stripeJobExecutions.size() > sharedStripe.size() && sharedStripe.size() < threads) {
+                sharedStripe = stripeJobExecutions;
+            }
+        }
+
+        var ownStripesRate = updatesPerSecond(ownStripes);
+        var sharedStripeRate = updatesPerSecond(sharedStripe.subList(0, threads));
+
+        System.out.printf("%-24s %12s%n", "lock stripes", "updates/s");
+        System.out.printf("%-24s %12.0f%n", "one per job execution", ownStripesRate);
+        System.out.printf("%-24s %12.0f%n", "shared", sharedStripeRate);
+
+        assertTrue(ownStripesRate > 0);
+        assertTrue(sharedStripeRate > 0);
+    }
+
+    /**
+     * @return step and job execution updates per second, with one platform thread per job execution
+     */
+    private double updatesPerSecond(List<JobExecution> jobExecutions) throws Exception {
+        var updatesPerThread = 200;
+        var stepExecutions = new ArrayList<StepExecution>();
+        for (var contentionJobExecution : jobExecutions) {
+            var stepExecution = contentionJobExecution.createStepExecution("Step 1");
+            repository.add(stepExecution);
+            stepExecutions.add(stepExecution);
+        }
+
+        var executor = Executors.newFixedThreadPool(jobExecutions.size());
+        try {
+            var start = System.nanoTime();
+            var updates = new ArrayList<Future<?>>();
+            for (var stepExecution : stepExecutions) {
+                updates.add(executor.submit(() -> {
+                    for (var commit = 1; commit <= updatesPerThread; commit++) {
+                        stepExecution.setCommitCount(commit);
+                        repository.update(stepExecution);
+                        stepExecution.getJobExecution().setLastUpdated(new Date());
+                        repository.update(stepExecution.getJobExecution());
+                    }
+                    return null;
+                }));
+            }
+            for (var update : updates) {
+                update.get(5, TimeUnit.MINUTES);
+            }
+            return 2.0 * updatesPerThread * stepExecutions.size() / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void updateStep_JobIsStopping() {
+        jobExecution.setStatus(BatchStatus.STOPPING);
+
+        var step = jobExecution.getStepExecutions().iterator().next();
+        assertFalse(step.isTerminateOnly());
+        repository.update(step);
+
+        assertTrue(step.isTerminateOnly());
+
+        assertEquals(1, appender.list.size());
+        assertEquals(Level.INFO, appender.list.get(0).getLevel());
+        assertEquals("Parent JobExecution is stopped, so passing message on to StepExecution",
+                appender.list.get(0).getMessage());
+    }
+
+    @Test
+    void updateStepExecutionContext() {
+        var step2 = jobExecution.createStepExecution("Step 2");
+        var step3 = jobExecution.createStepExecution("Step 3");
+
+        step2.getExecutionContext().put("Existing", "Existing");
+
+        repository.add(step2);
+        repository.add(step3);
+
+        assertEquals(1L, step2.getId());
+        assertEquals(2L, step3.getId());
 
         step2.getExecutionContext().put("TestKey", "TestValue");
 
@@ -1148,6 +1915,545 @@ class MongodbJobRepositoryTest extends MongoDBContainerConfig {
         }
     }
 
+    @Test
+    void updateWithExecutionContext() {
+        var beforeVersion = jobExecution.getVersion();
+        var step = jobExecution.getStepExecutions().iterator().next();
+        step.setCommitCount(9999);
+        step.getExecutionContext().put("TestKey", "TestValue");
+
+        repository.updateWithExecutionContext(step);
+
+        assertEquals(beforeVersion, jobExecution.getVersion());
+        assertEquals(0, step.getVersion());
+        assertFalse(step.isTerminateOnly());
+
+        var updatedDoc = mongoTemplate.findOne(Query
+                .query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())), Document.class, jobCollectionName);
+        assertEquals(beforeVersion, updatedDoc.getInteger(VERSION));
+
+        var stepDoc = updatedDoc.getList(STEP_EXECUTIONS, Document.class).get(0);
+        assertEquals(0, stepDoc.getInteger(VERSION));
+        assertEquals(9999, stepDoc.getInteger(COMMIT_COUNT));
+        assertEquals(step.getLastUpdated(), stepDoc.getDate(LAST_UPDATED));
+        assertEquals("TestValue", jobExecutionDocumentMapper
+                .deserializeContext(stepDoc.getString(EXECUTION_CONTEXT)).getString("TestKey"));
+    }
+
+    @Test
+    void updateWithExecutionContext_differentVersion() {
+        var beforeVersion = jobExecution.getVersion();
+
+        mongoTemplate.updateFirst(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Update.update(STATUS, "STOPPING")
+                        .set(VERSION, beforeVersion + 1), jobCollectionName);
+        jobExecution.setStatus(BatchStatus.STARTED);
+
+        var step = jobExecution.getStepExecutions().iterator().next();
+        step.getExecutionContext().put("TestKey", "TestValue");
+
+        repository.updateWithExecutionContext(step);
+
+        assertEquals(BatchStatus.STOPPING, jobExecution.getStatus());
+        assertEquals(beforeVersion + 1, jobExecution.getVersion());
+        assertTrue(step.isTerminateOnly());
+
+        var updatedDoc = mongoTemplate.findOne(Query
+                .query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())), Document.class, jobCollectionName);
+        assertEquals(beforeVersion + 1, updatedDoc.getInteger(VERSION));
+        assertEquals("TestValue", jobExecutionDocumentMapper.deserializeContext(updatedDoc
+                .getList(STEP_EXECUTIONS, Document.class).get(0).getString(EXECUTION_CONTEXT)).getString("TestKey"));
+    }
+
+    @Test
+    void updateWithExecutionContext_notFound() {
+        jobExecution.setId(repository.getJobExecutionCounter().nextValue());
+
+        try {
+            repository.updateWithExecutionContext(jobExecution.getStepExecutions().iterator().next());
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Job Execution not found for jobExecutionId=1", e.getMessage());
+        }
+    }
+
+    @Test
+    void updateWithExecutionContext_nullStepExecutionId() {
+        var step2 = jobExecution.createStepExecution("Step 2");
+        step2.setId(null);
+
+        try {
+            repository.updateWithExecutionContext(step2);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("StepExecution must already be saved (have an id assigned)", e.getMessage());
+        }
+    }
+
+    @Test
+    void combinedStepExecutionUpdate() {
+        repository.setCombinedStepExecutionUpdate(true);
+        var beforeVersion = jobExecution.getVersion();
+
+        var step = jobExecution.getStepExecutions().iterator().next();
+        step.getExecutionContext().put("TestKey", "TestValue");
+
+        repository.updateExecutionContext(step);
+
+        var savedDoc = mongoTemplate.findOne(Query
+                .query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())), Document.class, jobCollectionName);
+        assertFalse(jobExecutionDocumentMapper.deserializeContext(savedDoc
+                .getList(STEP_EXECUTIONS, Document.class).get(0).getString(EXECUTION_CONTEXT)).containsKey("TestKey"));
+
+        step.setCommitCount(9999);
+        repository.update(step);
+
+        assertEquals(beforeVersion, jobExecution.getVersion());
+
+        var updatedDoc = mongoTemplate.findOne(Query
+                .query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())), Document.class, jobCollectionName);
+        var stepDoc = updatedDoc.getList(STEP_EXECUTIONS, Document.class).get(0);
+        assertEquals(9999, stepDoc.getInteger(COMMIT_COUNT));
+        assertEquals("TestValue", jobExecutionDocumentMapper
+                .deserializeContext(stepDoc.getString(EXECUTION_CONTEXT)).getString("TestKey"));
+    }
+
+    @Test
+    void executionContextFormat_bson() throws Exception {
+        repository.getJobExecutionDocumentMapper().setExecutionContextFormat(ExecutionContextFormat.BSON);
+
+        var newJobExecution = repository.createJobExecution("Bson Job", new JobParameters());
+        var step = newJobExecution.createStepExecution("Step 1");
+        repository.add(step);
+
+        newJobExecution.getExecutionContext().putString("job.key", "job value");
+        repository.updateExecutionContext(newJobExecution);
+        step.getExecutionContext().putLong("reader.read.count", 10L);
+        repository.updateExecutionContext(step);
+
+        var savedDoc = mongoTemplate.findOne(Query.query(Criteria
+                .where(JOB_EXECUTION_ID).is(newJobExecution.getId())), Document.class, jobCollectionName);
+        assertEquals("job value", savedDoc.get(EXECUTION_CONTEXT, Document.class).getString("job%2Ekey"));
+        assertEquals(10L, savedDoc.getList(STEP_EXECUTIONS, Document.class).get(0)
+                .get(EXECUTION_CONTEXT, Document.class).getLong("reader%2Eread%2Ecount"));
+
+        var lastStep = repository.getLastStepExecution(newJobExecution.getJobInstance(), "Step 1");
+        assertEquals(10L, lastStep.getExecutionContext().getLong("reader.read.count"));
+        assertEquals("job value", lastStep.getJobExecution().getExecutionContext().getString("job.key"));
+    }
+
+    @Test
+    void executionContextFormat_bson_readsStringFormat() {
+        repository.getJobExecutionDocumentMapper().setExecutionContextFormat(ExecutionContextFormat.BSON);
+
+        var lastJobExecution = repository.getLastJobExecution(jobExecution.getJobInstance().getJobName(),
+                jobExecution.getJobParameters());
+
+        assertEquals("String Value", lastJobExecution.getExecutionContext().getString("String"));
+        assertEquals("String Value", lastJobExecution.getStepExecutions().iterator().next()
+                .getExecutionContext().getString("String"));
+    }
+
+    @Test
+    void executionContextOverflow_jobExecution() throws Exception {
+        var overflow = new MongodbExecutionContextOverflow(mongoTemplate, "testOverflow", 1000);
+        repository.setExecutionContextOverflow(overflow);
+        assertSame(overflow, repository.getExecutionContextOverflow());
+
+        var newJobExecution = repository.createJobExecution("Overflow Job", new JobParameters());
+        newJobExecution.getExecutionContext().putString("large", "x".repeat(1000));
+        repository.updateExecutionContext(newJobExecution);
+
+        var savedDoc = mongoTemplate.findOne(Query.query(Criteria
+                .where(JOB_EXECUTION_ID).is(newJobExecution.getId())), Document.class, jobCollectionName);
+        assertTrue(savedDoc.get(EXECUTION_CONTEXT) instanceof ObjectId);
+        assertEquals(1, mongoTemplate.count(new Query(), "testOverflow"));
+
+        var lastJobExecution = repository.getLastJobExecution("Overflow Job", new JobParameters());
+        assertEquals("x".repeat(1000), lastJobExecution.getExecutionContext().getString("large"));
+
+        newJobExecution.getExecutionContext().putString("large", "y".repeat(1000));
+        repository.updateExecutionContext(newJobExecution);
+        assertEquals(1, mongoTemplate.count(new Query(), "testOverflow"));
+
+        newJobExecution.getExecutionContext().remove("large");
+        repository.updateExecutionContext(newJobExecution);
+        savedDoc = mongoTemplate.findOne(Query.query(Criteria
+                .where(JOB_EXECUTION_ID).is(newJobExecution.getId())), Document.class, jobCollectionName);
+        assertTrue(savedDoc.get(EXECUTION_CONTEXT) instanceof String);
+        assertEquals(0, mongoTemplate.count(new Query(), "testOverflow"));
+    }
+
+    @Test
+    void executionContextOverflow_restart() throws Exception {
+        repository.setExecutionContextOverflow(new MongodbExecutionContextOverflow(mongoTemplate, "testOverflow", 1000));
+
+        var firstJobExecution = repository.createJobExecution("Overflow Job", new JobParameters());
+        var firstStep = firstJobExecution.createStepExecution("Step 1");
+        repository.add(firstStep);
+        firstJobExecution.getExecutionContext().putString("large", "x".repeat(1000));
+        repository.updateExecutionContext(firstJobExecution);
+        firstStep.getExecutionContext().putString("large", "y".repeat(1000));
+        repository.updateExecutionContext(firstStep);
+        firstStep.setStatus(BatchStatus.FAILED);
+        repository.update(firstStep);
+        firstJobExecution.setStatus(BatchStatus.FAILED);
+        firstJobExecution.setEndTime(new Date());
+        repository.update(firstJobExecution);
+
+        var restartedJobExecution = repository.createJobExecution("Overflow Job", new JobParameters());
+        assertEquals("x".repeat(1000), restartedJobExecution.getExecutionContext().getString("large"));
+
+        var lastStep = repository.getLastStepExecution(restartedJobExecution.getJobInstance(), "Step 1");
+        assertEquals("y".repeat(1000), lastStep.getExecutionContext().getString("large"));
+
+        var restartedStep = restartedJobExecution.createStepExecution("Step 1");
+        restartedStep.setExecutionContext(lastStep.getExecutionContext());
+        repository.add(restartedStep);
+
+        var savedDoc = mongoTemplate.findOne(Query.query(Criteria
+                .where(JOB_EXECUTION_ID).is(restartedJobExecution.getId())), Document.class, jobCollectionName);
+        assertTrue(savedDoc.get(EXECUTION_CONTEXT) instanceof ObjectId);
+        assertTrue(savedDoc.getList(STEP_EXECUTIONS, Document.class).get(0).get(EXECUTION_CONTEXT) instanceof ObjectId);
+        assertEquals(4, mongoTemplate.count(new Query(), "testOverflow"));
+    }
+
+    @Test
+    void executionContextOverflow_stepCollection() throws Exception {
+        repository.setExecutionContextOverflow(new MongodbExecutionContextOverflow(mongoTemplate, "testOverflow", 1000));
+        repository.setStepCollectionName("testSteps");
+        repository.setCombinedStepExecutionUpdate(true);
+
+        var newJobExecution = repository.createJobExecution("Overflow Job", new JobParameters());
+        var step = newJobExecution.createStepExecution("Step 1");
+        step.getExecutionContext().putString("large", "x".repeat(1000));
+        repository.add(step);
+
+        var stepDoc = mongoTemplate.findOne(new Query(), Document.class, "testSteps");
+        assertTrue(stepDoc.get(EXECUTION_CONTEXT) instanceof ObjectId);
+
+        step.getExecutionContext().putString("large", "y".repeat(1000));
+        repository.updateExecutionContext(step);
+        repository.update(step);
+        assertEquals(1, mongoTemplate.count(new Query(), "testOverflow"));
+
+        var lastStep = repository.getLastStepExecution(newJobExecution.getJobInstance(), "Step 1");
+        assertEquals("y".repeat(1000), lastStep.getExecutionContext().getString("large"));
+    }
+
+    @Test
+    void operationConcern() throws Exception {
+        repository.setOperationConcern(OperationCategory.CREATION, WriteConcern.MAJORITY, ReadConcern.MAJORITY);
+
+        var creationTemplate = (ConcernMongoTemplate) repository.getOperationTemplate(OperationCategory.CREATION);
+        assertEquals(WriteConcern.MAJORITY, creationTemplate.getWriteConcern());
+        assertEquals(ReadConcern.MAJORITY, creationTemplate.getReadConcern());
+        assertSame(mongoTemplate, repository.getOperationTemplate(OperationCategory.STATUS));
+
+        var newJobExecution = repository.createJobExecution("New Job", new JobParameters());
+        assertEquals(newJobExecution.getId(), repository.getLastJobExecution("New Job", new JobParameters()).getId());
+
+        repository.setOperationConcern(OperationCategory.CREATION, null, null);
+        assertSame(mongoTemplate, repository.getOperationTemplate(OperationCategory.CREATION));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void operationConcern_stepExecutionCategories() throws Exception {
+        var operationTemplates = (Map<OperationCategory, MongoTemplate>) ReflectionTestUtils.getField(repository, "operationTemplates");
+        for (var category : OperationCategory.values()) {
+            operationTemplates.put(category, Mockito.spy(mongoTemplate));
+        }
+
+        var newJobExecution = repository.createJobExecution("New Job", new JobParameters());
+        var step = newJobExecution.createStepExecution("Step 1");
+        repository.add(step);
+
+        step.setStatus(BatchStatus.STARTED);
+        repository.update(step);
+        step.getExecutionContext().putString("key", "value");
+        repository.updateWithExecutionContext(step);
+        step.setStatus(BatchStatus.COMPLETED);
+        repository.update(step);
+
+        verify(operationTemplates.get(OperationCategory.PROGRESS), times(1))
+                .findAndModify(any(Query.class), any(Update.class), eq(Document.class), eq(jobCollectionName));
+        verify(operationTemplates.get(OperationCategory.CONTEXT), times(1))
+                .findAndModify(any(Query.class), any(Update.class), eq(Document.class), eq(jobCollectionName));
+        verify(operationTemplates.get(OperationCategory.STATUS), times(1))
+                .findAndModify(any(Query.class), any(Update.class), eq(Document.class), eq(jobCollectionName));
+    }
+
+    @Test
+    void operationConcern_nullCategory() {
+        try {
+            repository.setOperationConcern(null, WriteConcern.MAJORITY, null);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Operation Category must not be null", e.getMessage());
+        }
+    }
+
+    @Test
+    void deltaExecutionContextUpdate_jobExecution() {
+        repository.setDeltaExecutionContextUpdate(true);
+        repository.getJobExecutionDocumentMapper().setExecutionContextFormat(ExecutionContextFormat.BSON);
+        jobExecution.getExecutionContext().put("Key", "Value");
+        jobExecution.getExecutionContext().put("Removed Key", "Value");
+
+        repository.updateExecutionContext(jobExecution);
+        repository.updateExecutionContext(jobExecution);
+        assertEquals(1, repository.getExecutionContextSkippedWriteCount());
+
+        mongoTemplate.updateFirst(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Update.update(EXECUTION_CONTEXT + ".String", "not written"), jobCollectionName);
+
+        jobExecution.getExecutionContext().put("Key", "Updated Value");
+        jobExecution.getExecutionContext().remove("Removed Key");
+        jobExecution.getExecutionContext().putLong("Offset", 10L);
+        repository.updateExecutionContext(jobExecution);
+        assertEquals(1, repository.getExecutionContextSkippedWriteCount());
+
+        var savedContext = mongoTemplate.findOne(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Document.class, jobCollectionName).get(EXECUTION_CONTEXT, Document.class);
+        assertEquals("Updated Value", savedContext.getString("Key"));
+        assertEquals(10L, savedContext.getLong("Offset"));
+        assertFalse(savedContext.containsKey("Removed Key"));
+        // Only the changed keys are written
+        assertEquals("not written", savedContext.getString("String"));
+    }
+
+    @Test
+    void deltaExecutionContextUpdate_stepExecution() {
+        repository.setDeltaExecutionContextUpdate(true);
+        repository.getJobExecutionDocumentMapper().setExecutionContextFormat(ExecutionContextFormat.BSON);
+        var step = jobExecution.getStepExecutions().iterator().next();
+        step.setStatus(BatchStatus.STARTED);
+
+        repository.updateExecutionContext(step);
+
+        mongoTemplate.updateFirst(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Update.update(STEP_EXECUTIONS + ".0." + EXECUTION_CONTEXT + ".String", "not written"), jobCollectionName);
+
+        repository.updateExecutionContext(step);
+        assertEquals(1, repository.getExecutionContextSkippedWriteCount());
+
+        step.getExecutionContext().putLong("Offset", 10L);
+        repository.updateExecutionContext(step);
+        assertEquals(1, repository.getExecutionContextSkippedWriteCount());
+
+        var savedContext = mongoTemplate.findOne(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Document.class, jobCollectionName).getList(STEP_EXECUTIONS, Document.class).get(0)
+                .get(EXECUTION_CONTEXT, Document.class);
+        assertEquals(10L, savedContext.getLong("Offset"));
+        assertEquals("not written", savedContext.getString("String"));
+    }
+
+    @Test
+    void deltaExecutionContextUpdate_stepCollection() throws Exception {
+        repository.setDeltaExecutionContextUpdate(true);
+        repository.getJobExecutionDocumentMapper().setExecutionContextFormat(ExecutionContextFormat.BSON);
+        repository.setStepCollectionName("testSteps");
+
+        var newJobExecution = repository.createJobExecution("Step Collection Job", new JobParameters());
+        var step = newJobExecution.createStepExecution("Step 1");
+        repository.add(step);
+        step.setStatus(BatchStatus.STARTED);
+        step.getExecutionContext().putString("Name", "Value");
+        repository.updateWithExecutionContext(step);
+
+        mongoTemplate.updateFirst(Query.query(Criteria.where(STEP_EXECUTION_ID).is(step.getId())),
+                Update.update(EXECUTION_CONTEXT + ".Name", "not written"), "testSteps");
+
+        step.getExecutionContext().putLong("Offset", 10L);
+        repository.updateWithExecutionContext(step);
+
+        var savedContext = mongoTemplate.findOne(Query.query(Criteria.where(STEP_EXECUTION_ID).is(step.getId())),
+                Document.class, "testSteps").get(EXECUTION_CONTEXT, Document.class);
+        assertEquals(10L, savedContext.getLong("Offset"));
+        assertEquals("not written", savedContext.getString("Name"));
+    }
+
+    @Test
+    void deltaExecutionContextUpdate_stringFormat() {
+        repository.setDeltaExecutionContextUpdate(true);
+
+        repository.updateExecutionContext(jobExecution);
+        repository.updateExecutionContext(jobExecution);
+
+        assertEquals(0, repository.getExecutionContextSkippedWriteCount());
+    }
+
+    @Test
+    void deltaExecutionContextUpdate_combinedStepExecutionUpdate() {
+        repository.setDeltaExecutionContextUpdate(true);
+        repository.getJobExecutionDocumentMapper().setExecutionContextFormat(ExecutionContextFormat.BSON);
+        repository.setCombinedStepExecutionUpdate(true);
+        var step = jobExecution.getStepExecutions().iterator().next();
+        step.setStatus(BatchStatus.STARTED);
+
+        repository.updateExecutionContext(step);
+        repository.update(step);
+        assertEquals(0, repository.getExecutionContextSkippedWriteCount());
+
+        step.setCommitCount(100);
+        repository.updateExecutionContext(step);
+        repository.update(step);
+        assertEquals(1, repository.getExecutionContextSkippedWriteCount());
+        assertEquals(2, repository.getStepExecutionWriteCount());
+
+        var savedDoc = mongoTemplate.findOne(Query
+                .query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())), Document.class, jobCollectionName);
+        assertEquals(100, savedDoc.getList(STEP_EXECUTIONS, Document.class).get(0).getInteger(COMMIT_COUNT));
+    }
+
+    @Test
+    void deltaExecutionContextUpdate_completedStep() {
+        repository.setDeltaExecutionContextUpdate(true);
+        repository.getJobExecutionDocumentMapper().setExecutionContextFormat(ExecutionContextFormat.BSON);
+        var step = jobExecution.getStepExecutions().iterator().next();
+        step.setStatus(BatchStatus.STARTED);
+
+        repository.updateExecutionContext(step);
+        step.setStatus(BatchStatus.COMPLETED);
+        repository.update(step);
+
+        repository.updateExecutionContext(step);
+        assertEquals(0, repository.getExecutionContextSkippedWriteCount());
+    }
+
+    @Test
+    void deltaExecutionContextUpdate_disabled() {
+        repository.updateExecutionContext(jobExecution);
+        repository.updateExecutionContext(jobExecution);
+
+        var step = jobExecution.getStepExecutions().iterator().next();
+        repository.updateExecutionContext(step);
+        repository.updateExecutionContext(step);
+
+        assertFalse(repository.isDeltaExecutionContextUpdate());
+        assertEquals(0, repository.getExecutionContextSkippedWriteCount());
+    }
+
+    @Test
+    void stepExecutionWriteBehind_commits() {
+        repository.setStepExecutionFlushCommits(3);
+        var step = jobExecution.getStepExecutions().iterator().next();
+        step.setStatus(BatchStatus.STARTED);
+        step.setCommitCount(0);
+
+        repository.update(step);  // first update is always written
+        for (int i = 1; i <= 6; i++) {
+            step.setCommitCount(i);
+            repository.update(step);
+        }
+
+        assertEquals(3, repository.getStepExecutionWriteCount());
+        assertEquals(4, repository.getStepExecutionSkippedWriteCount());
+        assertEquals(2, step.getVersion());
+        assertEquals(6, getSavedStep().getInteger(COMMIT_COUNT));
+
+        step.setCommitCount(7);
+        repository.update(step);
+        assertEquals(6, getSavedStep().getInteger(COMMIT_COUNT));
+
+        step.setStatus(BatchStatus.COMPLETED);
+        repository.update(step);  // status changes are always written
+
+        assertEquals(4, repository.getStepExecutionWriteCount());
+        assertEquals(5, repository.getStepExecutionSkippedWriteCount());
+        assertEquals(7, getSavedStep().getInteger(COMMIT_COUNT));
+        assertEquals("COMPLETED", getSavedStep().getString(STATUS));
+    }
+
+    @Test
+    void stepExecutionWriteBehind_interval() throws Exception {
+        repository.setStepExecutionFlushIntervalMillis(50);
+        var step = jobExecution.getStepExecutions().iterator().next();
+        step.setStatus(BatchStatus.STARTED);
+
+        repository.update(step);
+        step.setCommitCount(100);
+        repository.update(step);
+        assertEquals(1, repository.getStepExecutionSkippedWriteCount());
+        assertNotEquals(100, getSavedStep().getInteger(COMMIT_COUNT));
+
+        Thread.sleep(60);
+        repository.update(step);
+
+        assertEquals(2, repository.getStepExecutionWriteCount());
+        assertEquals(100, getSavedStep().getInteger(COMMIT_COUNT));
+    }
+
+    @Test
+    void stepExecutionWriteBehind_exitCode() {
+        repository.setStepExecutionFlushCommits(100);
+        var step = jobExecution.getStepExecutions().iterator().next();
+        step.setStatus(BatchStatus.STARTED);
+
+        repository.update(step);
+        step.setExitStatus(ExitStatus.FAILED);
+        repository.update(step);
+
+        assertEquals(2, repository.getStepExecutionWriteCount());
+        assertEquals(0, repository.getStepExecutionSkippedWriteCount());
+        assertEquals("FAILED", getSavedStep().getString(EXIT_CODE));
+    }
+
+    @Test
+    void stepExecutionWriteBehind_clearedWhenJobExecutionEnds() {
+        repository.setStepExecutionFlushCommits(100);
+        repository.setCombinedStepExecutionUpdate(true);
+        var step = jobExecution.getStepExecutions().iterator().next();
+        step.setStatus(BatchStatus.STARTED);
+        repository.update(step);
+        step.getExecutionContext().put("TestKey", "TestValue");
+        repository.updateExecutionContext(step);
+
+        Map<?, ?> stepExecutionFlushes = (Map<?, ?>) ReflectionTestUtils.getField(repository, "stepExecutionFlushes");
+        Set<?> pendingStepExecutionContexts = (Set<?>) ReflectionTestUtils
+                .getField(repository, "pendingStepExecutionContexts");
+        assertTrue(stepExecutionFlushes.containsKey(step.getId()));
+        assertTrue(pendingStepExecutionContexts.contains(step.getId()));
+
+        jobExecution.setStatus(BatchStatus.FAILED);
+        jobExecution.setEndTime(new Date());
+        repository.update(jobExecution);
+
+        assertTrue(stepExecutionFlushes.isEmpty());
+        assertTrue(pendingStepExecutionContexts.isEmpty());
+    }
+
+    @Test
+    void stepExecutionWriteBehind_executionContextAlwaysWritten() {
+        repository.setStepExecutionFlushCommits(100);
+        var step = jobExecution.getStepExecutions().iterator().next();
+        step.setStatus(BatchStatus.STARTED);
+        repository.update(step);
+
+        step.getExecutionContext().put("TestKey", "TestValue");
+        repository.updateExecutionContext(step);
+        repository.update(step);
+
+        assertEquals(1, repository.getStepExecutionSkippedWriteCount());
+        assertEquals("TestValue", jobExecutionDocumentMapper
+                .deserializeContext(getSavedStep().getString(EXECUTION_CONTEXT)).getString("TestKey"));
+
+        repository.setCombinedStepExecutionUpdate(true);
+        step.getExecutionContext().put("TestKey", "TestValue2");
+        repository.updateExecutionContext(step);
+        repository.update(step);
+
+        assertEquals(1, repository.getStepExecutionSkippedWriteCount());
+        assertEquals("TestValue2", jobExecutionDocumentMapper
+                .deserializeContext(getSavedStep().getString(EXECUTION_CONTEXT)).getString("TestKey"));
+    }
+
+    private Document getSavedStep() {
+        return mongoTemplate.findOne(Query.query(Criteria.where(JOB_EXECUTION_ID).is(jobExecution.getId())),
+                Document.class, jobCollectionName).getList(STEP_EXECUTIONS, Document.class).get(0);
+    }
+
     private JobInstance getLastStepExecution_setup() {
         var jobInstance = new JobInstance(10L, "Job1");
         var jobExecution1 = new JobExecution(jobInstance, 11L, new JobParameters(), "");
@@ -1164,7 +2470,12 @@ class MongodbJobRepositoryTest extends MongoDBContainerConfig {
         step.setStartTime(Date.from(OffsetDateTime.of(2020, 1, 3, 0, 0, 0, 0, ZoneOffset.UTC).toInstant()));
         step.setId(13L);
 
+        step = jobExecution1.createStepExecution("Step4");
+        step.setStartTime(Date.from(OffsetDateTime.of(2020, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC).toInstant()));
+        step.setId(14L);
+
         var jobExecution2 = new JobExecution(jobInstance, 12L, new JobParameters(), "");
+        jobExecution2.getExecutionContext().putString("job.key", "job value");
         step = jobExecution2.createStepExecution("Step1");
         step.setStartTime(Date.from(OffsetDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC).toInstant()));
         step.setId(21L);
@@ -1181,6 +2492,10 @@ class MongodbJobRepositoryTest extends MongoDBContainerConfig {
         step.setStartTime(Date.from(OffsetDateTime.of(2020, 2, 4, 0, 0, 0, 0, ZoneOffset.UTC).toInstant()));
         step.setId(24L);
 
+        step = jobExecution2.createStepExecution("Step4");
+        step.setStartTime(Date.from(OffsetDateTime.of(2020, 2, 1, 0, 0, 0, 0, ZoneOffset.UTC).toInstant()));
+        step.setId(25L);
+
         mongoTemplate.insert(jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution1), jobCollectionName);
         mongoTemplate.insert(jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution2), jobCollectionName);
 
@@ -1214,6 +2529,28 @@ class MongodbJobRepositoryTest extends MongoDBContainerConfig {
         assertEquals(24L, foundStep.getId());
     }
 
+    @Test
+    void getLastStepExecution_onlyMatchingStep() {
+        var jobInstance = getLastStepExecution_setup();
+        // Job Execution only contains the step execution that was found
+        var foundStep = repository.getLastStepExecution(jobInstance, "Step3");
+        assertEquals(12L, foundStep.getJobExecution().getId());
+        assertEquals(jobInstance, foundStep.getJobExecution().getJobInstance());
+        assertEquals(1, foundStep.getJobExecution().getStepExecutions().size());
+        assertSame(foundStep, foundStep.getJobExecution().getStepExecutions().iterator().next());
+        assertEquals("job value", foundStep.getJobExecution().getExecutionContext().getString("job.key"));
+    }
+
+    @Test
+    void getLastStepExecution_olderJobExecution() {
+        var jobInstance = getLastStepExecution_setup();
+        // The step started later in the older job execution, so it is chosen over the step of the last job execution
+        var foundStep = repository.getLastStepExecution(jobInstance, "Step4");
+        assertEquals(11L, foundStep.getJobExecutionId());
+        assertEquals(14L, foundStep.getId());
+        assertTrue(foundStep.getJobExecution().getExecutionContext().isEmpty());
+    }
+
     @Test
     void getLastStepExecution_notFound() {
         assertNull(repository.getLastStepExecution(jobExecution.getJobInstance(), "StepZ"));
@@ -1246,7 +2583,53 @@ class MongodbJobRepositoryTest extends MongoDBContainerConfig {
         assertEquals(2, repository.getStepExecutionCount(jobInstance, "Step1"));
         assertEquals(2, repository.getStepExecutionCount(jobInstance, "Step2"));
         assertEquals(3, repository.getStepExecutionCount(jobInstance, "Step3"));
-        assertEquals(0, repository.getStepExecutionCount(jobInstance, "Step4"));
+        assertEquals(2, repository.getStepExecutionCount(jobInstance, "Step4"));
+        assertEquals(0, repository.getStepExecutionCount(jobInstance, "Step5"));
+    }
+
+    @Test
+    void getStepExecutionCount_stepExecutionCounts() {
+        var jobExecution2 = new JobExecution(jobExecution.getJobInstance(), 3L, new JobParameters(), "");
+        mongoTemplate.insert(jobExecutionDocumentMapper.toJobExecutionDocument(jobExecution2), jobCollectionName);
+
+        repository.addAll(Lists.newArrayList(jobExecution2.createStepExecution("Step.$1"),
+                jobExecution2.createStepExecution("Step 2"), jobExecution2.createStepExecution("Step.$1")));
+        repository.add(jobExecution2.createStepExecution("Step 2"));
+
+        var counts = mongoTemplate.findOne(Query.query(Criteria.where(JOB_EXECUTION_ID).is(3L)),
+                Document.class, jobCollectionName).get(STEP_EXECUTION_COUNTS, Document.class);
+        assertEquals(2, counts.size());
+        assertEquals(2, counts.get("Step%2E%241", Number.class).intValue());
+        assertEquals(2, counts.get("Step 2", Number.class).intValue());
+
+        assertEquals(2, repository.getStepExecutionCount(jobExecution.getJobInstance(), "Step.$1"));
+        assertEquals(2, repository.getStepExecutionCount(jobExecution.getJobInstance(), "Step 2"));
+        assertEquals(0, repository.getStepExecutionCount(jobExecution.getJobInstance(), "Step 3"));
+        // Job Execution without stepExecutionCounts is counted from the stepExecutions array
+        assertEquals(1, repository.getStepExecutionCount(jobExecution.getJobInstance(), "Example Step"));
+    }
+
+    @Test
+    void getStepExecutionCount_newJobExecution() throws Exception {
+        var jobInstance = repository.createJobInstance("Count Job", new JobParameters());
+        // Only the job instance document exists
+        assertEquals(0, repository.getStepExecutionCount(jobInstance, "Step 1"));
+
+        var newJobExecution = repository.createJobExecution(jobInstance, new JobParameters(), "");
+        var counts = mongoTemplate.findOne(Query.query(Criteria.where(JOB_EXECUTION_ID).is(newJobExecution.getId())),
+                Document.class, jobCollectionName).get(STEP_EXECUTION_COUNTS, Document.class);
+        assertTrue(counts.isEmpty());
+        assertEquals(0, repository.getStepExecutionCount(jobInstance, "Step 1"));
+
+        repository.add(newJobExecution.createStepExecution("Step 1"));
+        newJobExecution.setStatus(BatchStatus.FAILED);
+        newJobExecution.setEndTime(new Date());
+        repository.update(newJobExecution);
+        var secondJobExecution = repository.createJobExecution(jobInstance, new JobParameters(), "");
+        repository.add(secondJobExecution.createStepExecution("Step 1"));
+
+        assertEquals(2, repository.getStepExecutionCount(jobInstance, "Step 1"));
+        assertEquals(0, repository.getStepExecutionCount(jobInstance, "Step 2"));
     }
 
     @Test
@@ -0,0 +1,139 @@
+package io.github.wirednerd.springbatch.mongo.repository;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnowflakeIdGeneratorTest {
+
+    private static final Instant NOW = Instant.parse("2022-06-01T12:00:00Z");
+
+    private final Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+
+    @Test
+    void constructor() {
+        assertEquals(5L, new SnowflakeIdGenerator(5L).getNodeId());
+        assertEquals(1023L, new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID, clock).getNodeId());
+    }
+
+    @Test
+    void constructor_invalidNodeId() {
+        try {
+            new SnowflakeIdGenerator(-1L);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Node id must be between 0 and 1023", e.getMessage());
+        }
+
+        try {
+            new SnowflakeIdGenerator(1024L);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Node id must be between 0 and 1023", e.getMessage());
+        }
+    }
+
+    @Test
+    void nextValue_layout() {
+        var generator = new SnowflakeIdGenerator(7L, clock);
+
+        long id = generator.nextValue();
+
+        assertTrue(id > 0);
+        assertEquals(NOW.toEpochMilli() - SnowflakeIdGenerator.EPOCH, id >>> 22);
+        assertEquals(7L, (id >>> 12) & 1023L);
+        assertEquals(0L, id & 4095L);
+
+        assertEquals(id + 1, generator.nextValue());
+    }
+
+    @Test
+    void nextValues() {
+        var generator = new SnowflakeIdGenerator(7L, clock);
+
+        var first = generator.nextValue();
+
+        assertEquals(List.of(first + 1, first + 2, first + 3), generator.nextValues(3));
+    }
+
+    @Test
+    void nextValue_sequenceOverflow() {
+        var generator = new SnowflakeIdGenerator(7L, clock);
+
+        long previous = generator.nextValue();
+        for (int i = 0; i < 5000; i++) {
+            long next = generator.nextValue();
+            assertTrue(next > previous);
+            assertEquals(7L, (next >>> 12) & 1023L);
+            previous = next;
+        }
+        assertEquals(NOW.toEpochMilli() - SnowflakeIdGenerator.EPOCH + 1, previous >>> 22);
+    }
+
+    @Test
+    void nextValue_clockMovesBackwards() {
+        var movingClock = Mockito.mock(Clock.class);
+        Mockito.when(movingClock.millis()).thenReturn(NOW.toEpochMilli(), NOW.toEpochMilli() - 1000L);
+        var generator = new SnowflakeIdGenerator(3L, movingClock);
+
+        long first = generator.nextValue();
+        long second = generator.nextValue();
+
+        assertEquals(first + 1, second);
+    }
+
+    @Test
+    void nextValue_clockBeforeEpoch() {
+        var generator = new SnowflakeIdGenerator(3L, Clock.fixed(Instant.parse("2021-01-01T00:00:00Z"), ZoneOffset.UTC));
+
+        try {
+            generator.nextValue();
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Clock is set before SnowflakeIdGenerator.EPOCH", e.getMessage());
+        }
+    }
+
+    @Test
+    void nextValue_differentNodes() {
+        var node1 = new SnowflakeIdGenerator(1L, clock);
+        var node2 = new SnowflakeIdGenerator(2L, clock);
+
+        assertNotEquals(node1.nextValue(), node2.nextValue());
+    }
+
+    @Test
+    void nextValue_concurrent() throws Exception {
+        var generator = new SnowflakeIdGenerator(9L);
+        var values = ConcurrentHashMap.<Long>newKeySet();
+
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 10000; j++) {
+                        assertTrue(values.add(generator.nextValue()));
+                    }
+                }));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(80000, values.size());
+    }
+}